@@ -0,0 +1,72 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.benchmarks;
+
+import javafx.scene.image.Image;
+import org.openjdk.jmh.annotations.*;
+import zenengine.fx.FxImageConverter;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the construction of JavaFX Images, comparing decoding PNG bytes with writing the pixels of a
+ * BufferedImage directly through a PixelWriter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FxImageBenchmark {
+
+    @Param({"16", "32", "48", "64", "128", "256"})
+    public int size;
+
+    private byte[] png;
+    private BufferedImage image;
+
+    @Setup
+    public void setUp() {
+        png = SyntheticIcons.png(size);
+        image = SyntheticIcons.image(size);
+    }
+
+    @Benchmark
+    public Image decodePng() {
+        return new Image(new ByteArrayInputStream(png));
+    }
+
+    @Benchmark
+    public Image decodePngScaled() {
+        return new Image(new ByteArrayInputStream(png), 16, 16, true, true);
+    }
+
+    @Benchmark
+    public Image direct() {
+        return FxImageConverter.toFxImage(image);
+    }
+
+    @Benchmark
+    public Image directScaled() {
+        return FxImageConverter.toFxImage(image, 16, 16, true, true);
+    }
+
+}
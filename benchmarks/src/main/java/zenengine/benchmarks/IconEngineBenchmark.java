@@ -0,0 +1,133 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.benchmarks;
+
+import javafx.scene.image.Image;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import zenengine.base.IconEngine;
+import zenengine.fx.FxIconEngine;
+import zenengine.nativeaccess.SyntheticIconExtractor;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the complete IconEngine lookup through the synthetic extractor, with the icon caches enabled and
+ * disabled, from a single thread and from as many threads as there are processors.  The pyramid benchmarks request
+ * 24 pixel levels, which compare with scaling the full size icon on every request in {@link FxImageBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IconEngineBenchmark {
+
+    @Param({"16", "64", "256"})
+    public int size;
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    /**
+     * The number of distinct file types the lookups cycle through.
+     */
+    @Param({"64"})
+    public int types;
+
+    private Path directory;
+    private File[] files;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("IconEngineBenchmark");
+        files = new File[types];
+        for (int i = 0; i < types; i++) {
+            files[i] = Files.createFile(directory.resolve("file" + i + ".ext" + i)).toFile();
+        }
+        IconEngine.setIconExtractor(new SyntheticIconExtractor(size, 0));
+        long cacheSize = cached ? 256L * 1024 * 1024 : 0;
+        IconEngine.getBufferedImageCache().setMaximumWeight(cacheSize);
+        IconEngine.getByteArrayCache().setMaximumWeight(cacheSize);
+        FxIconEngine.getImageCache().setMaximumWeight(cacheSize);
+        IconEngine.getLevelCache().setMaximumWeight(cacheSize);
+        FxIconEngine.getImageLevelCache().setMaximumWeight(cacheSize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        IconEngine.setIconExtractor(null);
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int index;
+
+        File next(File[] files) {
+            index = (index + 1) % files.length;
+            return files[index];
+        }
+
+    }
+
+    @Benchmark
+    public BufferedImage bufferedImage(Cursor cursor) {
+        return IconEngine.getIconBufferedImage(cursor.next(files));
+    }
+
+    @Benchmark
+    public byte[] byteArray(Cursor cursor) throws IOException {
+        return IconEngine.getIconByteArray(cursor.next(files));
+    }
+
+    @Benchmark
+    public Image image(Cursor cursor) throws IOException {
+        return FxIconEngine.getIconImage(cursor.next(files));
+    }
+
+    @Benchmark
+    public BufferedImage pyramidBufferedImage(Cursor cursor) {
+        return IconEngine.getIconBufferedImage(cursor.next(files), 24);
+    }
+
+    @Benchmark
+    public Image pyramidImage(Cursor cursor) {
+        return FxIconEngine.getIconImage(cursor.next(files), 24);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public BufferedImage bufferedImageContended(Cursor cursor) {
+        return IconEngine.getIconBufferedImage(cursor.next(files));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] byteArrayContended(Cursor cursor) throws IOException {
+        return IconEngine.getIconByteArray(cursor.next(files));
+    }
+
+}
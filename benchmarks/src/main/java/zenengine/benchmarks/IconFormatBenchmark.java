@@ -0,0 +1,88 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import zenengine.codec.IconFormat;
+import zenengine.codec.PngEncoder;
+import zenengine.codec.QoiCodec;
+import zenengine.codec.RawArgbCodec;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares encoding and decoding icons as PNG, QOI and raw premultiplied ARGB.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IconFormatBenchmark {
+
+    @Param({"16", "48", "256"})
+    public int size;
+
+    private BufferedImage image;
+    private final PngEncoder pngEncoder = new PngEncoder();
+    private byte[] png;
+    private byte[] qoi;
+    private byte[] raw;
+
+    @Setup
+    public void setUp() {
+        image = SyntheticIcons.image(size);
+        png = pngEncoder.encode(image);
+        qoi = QoiCodec.encode(image);
+        raw = RawArgbCodec.encode(image);
+    }
+
+    @Benchmark
+    public byte[] encodePng() {
+        return pngEncoder.encode(image);
+    }
+
+    @Benchmark
+    public byte[] encodeQoi() {
+        return QoiCodec.encode(image);
+    }
+
+    @Benchmark
+    public byte[] encodeRaw() {
+        return RawArgbCodec.encode(image);
+    }
+
+    @Benchmark
+    public BufferedImage decodePng() throws IOException {
+        return IconFormat.PNG.decode(png);
+    }
+
+    @Benchmark
+    public BufferedImage decodeQoi() throws IOException {
+        return QoiCodec.decode(qoi);
+    }
+
+    @Benchmark
+    public BufferedImage decodeRaw() throws IOException {
+        return RawArgbCodec.decode(raw);
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import zenengine.base.PixelConverter;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the conversion of the bottom-up BGRA bitmaps returned by GetDIBits into ARGB BufferedImages, as performed
+ * by WindowsIconExtractor.drawIcon, comparing the original per pixel loop with the bulk row copies of PixelConverter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixelConversionBenchmark {
+
+    @Param({"16", "32", "48", "64", "128", "256"})
+    public int size;
+
+    private byte[] bytes;
+    private ByteBuffer nativeBytes;
+
+    @Setup
+    public void setUp() {
+        bytes = SyntheticIcons.bottomUpBgra(size);
+        nativeBytes = ByteBuffer.allocateDirect(bytes.length);
+        nativeBytes.put(bytes).flip();
+    }
+
+    /**
+     * The per pixel setRGB loop used by drawIcon.
+     */
+    @Benchmark
+    public BufferedImage perPixelSetRgb() {
+        int width = size;
+        int height = size;
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int r, g, b, a, argb;
+        int x = 0;
+        int y = height - 1;
+        for (int i = 0; i < bytes.length; i = i + 4) {
+            b = bytes[i] & 0xFF;
+            g = bytes[i + 1] & 0xFF;
+            r = bytes[i + 2] & 0xFF;
+            a = bytes[i + 3] & 0xFF;
+            argb = (a << 24) | (r << 16) | (g << 8) | b;
+            image.setRGB(x, y, argb);
+            x = (x + 1) % width;
+            if (x == 0)
+                y--;
+        }
+        return image;
+    }
+
+    /**
+     * Bulk row copies from a heap array.
+     */
+    @Benchmark
+    public BufferedImage bulkHeap() {
+        return PixelConverter.bottomUpBgraToImage(bytes, 0, size, size, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * Bulk row copies from native memory, as used by drawIcon.
+     */
+    @Benchmark
+    public BufferedImage bulkNative() {
+        return PixelConverter.bottomUpBgraToImage(nativeBytes, size, size, BufferedImage.TYPE_INT_ARGB);
+    }
+
+}
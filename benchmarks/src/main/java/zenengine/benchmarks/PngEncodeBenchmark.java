@@ -0,0 +1,80 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import zenengine.codec.PngEncoder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the PNG encoding performed by IconEngine.getIconByteArray, comparing ImageIO with PngEncoder at its
+ * default settings, with SUB filtering and when writing into a reused buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PngEncodeBenchmark {
+
+    @Param({"16", "32", "48", "64", "128", "256"})
+    public int size;
+
+    private BufferedImage image;
+    private final PngEncoder encoder = new PngEncoder();
+    private final PngEncoder subEncoder = new PngEncoder(PngEncoder.DEFAULT_LEVEL, PngEncoder.Filter.SUB);
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        image = SyntheticIcons.image(size);
+        buffer = ByteBuffer.allocateDirect(PngEncoder.getMaxEncodedSize(size, size));
+    }
+
+    @Benchmark
+    public byte[] imageIo() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        out.flush();
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] pngEncoder() {
+        return encoder.encode(image);
+    }
+
+    @Benchmark
+    public byte[] pngEncoderSub() {
+        return subEncoder.encode(image);
+    }
+
+    @Benchmark
+    public int pngEncoderBuffer() {
+        buffer.clear();
+        return encoder.encode(image, buffer);
+    }
+
+}
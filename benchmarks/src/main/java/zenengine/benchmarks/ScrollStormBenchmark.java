@@ -0,0 +1,137 @@
+package zenengine.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import zenengine.base.IconEngine;
+import zenengine.base.IconPriority;
+import zenengine.base.IconRequest;
+import zenengine.base.IconScheduler;
+import zenengine.nativeaccess.SyntheticIconExtractor;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Simulates a virtualized list being scrolled faster than its icons can be extracted, and measures the time from the
+ * start of the scroll until every icon of the final viewport is loaded.  Each frame moves the viewport by a page and
+ * requests the icons of the rows that came into view.  The executor variant requests them through
+ * {@link IconEngine#getIconBufferedImageAsync(Path)}, so every row the scroll passes over is extracted in order.  The
+ * scheduler variant requests them through an {@link IconScheduler}, prefetches the next page at a lower priority and
+ * cancels the requests of the rows that scrolled out of view.  The sample time mode reports the tail of the settle
+ * time as well as its mean.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScrollStormBenchmark {
+
+    @Param({"scheduler", "executor"})
+    public String mode;
+
+    /**
+     * The simulated latency of each extraction in microseconds.
+     */
+    @Param({"200"})
+    public int latencyMicros;
+
+    /**
+     * The number of rows in view.
+     */
+    @Param({"40"})
+    public int viewport;
+
+    /**
+     * The number of frames the scroll lasts, each of which moves the viewport by a page.
+     */
+    @Param({"25"})
+    public int frames;
+
+    /**
+     * The time between frames in microseconds.
+     */
+    @Param({"1000"})
+    public int frameMicros;
+
+    private Path directory;
+    private Path[] rows;
+    private IconScheduler scheduler;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ScrollStormBenchmark");
+        rows = new Path[viewport * (frames + 2)];
+        for (int i = 0; i < rows.length; i++) {
+            // Distinct extensions give every row its own cache key, as distinct files do on a real file system
+            rows[i] = Files.createFile(directory.resolve("row" + i + ".ext" + i));
+        }
+        IconEngine.setIconExtractor(new SyntheticIconExtractor(32, TimeUnit.MICROSECONDS.toNanos(latencyMicros)));
+        scheduler = new IconScheduler();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCaches() {
+        IconEngine.clearCaches();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        scheduler.close();
+        IconEngine.setIconExtractor(null);
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Benchmark
+    public Object scrollStorm() {
+        return mode.equals("scheduler") ? scrollWithScheduler() : scrollWithExecutor();
+    }
+
+    private Object scrollWithExecutor() {
+        CompletableFuture<?>[] visible = new CompletableFuture<?>[viewport];
+        for (int frame = 0; frame < frames; frame++) {
+            for (int i = 0; i < viewport; i++) {
+                visible[i] = IconEngine.getIconBufferedImageAsync(rows[frame * viewport + i]);
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(frameMicros));
+        }
+        return CompletableFuture.allOf(visible).join();
+    }
+
+    private Object scrollWithScheduler() {
+        IconRequest[] visible = new IconRequest[viewport];
+        IconRequest[] near = new IconRequest[viewport];
+        for (int frame = 0; frame < frames; frame++) {
+            int first = frame * viewport;
+            for (int i = 0; i < viewport; i++) {
+                if (visible[i] != null) {
+                    visible[i].cancel();
+                }
+                if (near[i] != null && near[i].setPriority(IconPriority.VISIBLE)) {
+                    visible[i] = near[i];
+                } else {
+                    visible[i] = scheduler.submit(rows[first + i], IconPriority.VISIBLE);
+                }
+                near[i] = scheduler.submit(rows[first + viewport + i], IconPriority.NEAR_VISIBLE);
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(frameMicros));
+        }
+        BufferedImage last = null;
+        for (IconRequest request : visible) {
+            last = request.getFuture().join();
+        }
+        for (IconRequest request : near) {
+            request.cancel();
+        }
+        return last;
+    }
+
+}
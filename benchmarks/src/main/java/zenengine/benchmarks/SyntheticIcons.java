@@ -0,0 +1,79 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.benchmarks;
+
+import zenengine.nativeaccess.SyntheticIconExtractor;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+
+/**
+ * Builds the synthetic icon data used as benchmark input, so that every stage of the pipeline can be measured
+ * without a native extractor.
+ */
+final class SyntheticIcons {
+
+    private static final int SEED = 0x5EED;
+
+    private SyntheticIcons() {
+    }
+
+    /**
+     * @return A synthetic TYPE_INT_ARGB icon of the supplied size.
+     */
+    static BufferedImage image(int size) {
+        return SyntheticIconExtractor.generateIcon(SEED, size);
+    }
+
+    /**
+     * @return The pixels of a synthetic icon laid out as a bottom-up 32 bit BGRA bitmap, in the same layout that
+     * GetDIBits returns to the Windows extractor.
+     */
+    static byte[] bottomUpBgra(int size) {
+        BufferedImage image = image(size);
+        byte[] bytes = new byte[size * size * 4];
+        int i = 0;
+        for (int y = size - 1; y >= 0; y--) {
+            for (int x = 0; x < size; x++) {
+                int argb = image.getRGB(x, y);
+                bytes[i++] = (byte) argb;
+                bytes[i++] = (byte) (argb >>> 8);
+                bytes[i++] = (byte) (argb >>> 16);
+                bytes[i++] = (byte) (argb >>> 24);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return A synthetic icon of the supplied size encoded as PNG by ImageIO.
+     */
+    static byte[] png(int size) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image(size), "png", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+module ZenNativeIconEngine {
+
+    requires org.apache.commons.io;
+    requires jna;
+    requires jna.platform;
+    requires java.logging;
+    requires java.desktop;
+    requires java.management;
+    requires jdk.jfr;
+
+    exports zenengine.atlas;
+    exports zenengine.base;
+    exports zenengine.codec;
+    exports zenengine.freedesktop;
+    exports zenengine.store;
+    exports zenengine.metrics;
+
+    uses zenengine.base.IconExtractor;
+
+    provides zenengine.base.IconExtractor with
+            zenengine.nativeaccess.WindowsIconExtractor,
+            zenengine.nativeaccess.MacIconExtractor,
+            zenengine.nativeaccess.LinuxIconExtractor,
+            zenengine.nativeaccess.SyntheticIconExtractor;
+
+}
@@ -0,0 +1,93 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package zenengine.atlas;
+
+
+/**
+ * The rectangle an icon occupies on a page of an {@link IconAtlas}.  Regions are immutable; when the atlas is
+ * repacked its icons move to new regions.
+ */
+public final class AtlasRegion {
+
+    private final int page;
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+
+    public AtlasRegion(int page, int x, int y, int width, int height) {
+        this.page = page;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return The index of the page holding the icon.
+     */
+    public int getPage() {
+        return page;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The number of pixels in the region.
+     */
+    public long getArea() {
+        return (long) width * height;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (! (o instanceof AtlasRegion)) {
+            return false;
+        }
+        AtlasRegion that = (AtlasRegion) o;
+        return page == that.page && x == that.x && y == that.y && width == that.width && height == that.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return (((page * 31 + x) * 31 + y) * 31 + width) * 31 + height;
+    }
+
+    @Override
+    public String toString() {
+        return "AtlasRegion{page=" + page + ", x=" + x + ", y=" + y + ", width=" + width + ", height=" + height + "}";
+    }
+
+}
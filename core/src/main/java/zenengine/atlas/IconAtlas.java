@@ -0,0 +1,519 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package zenengine.atlas;
+
+import zenengine.base.IconEngine;
+import zenengine.base.IconInterner;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Packs the icons displayed by a view into a few large pages, so that a grid showing thousands of icons draws them
+ * from a handful of textures instead of uploading one texture per file.  Each key maps to the region of a page
+ * holding its icon, and keys whose icons have the same pixels share a region.
+ * <p>
+ * Icons are packed onto horizontal shelves as they are added, which places icons of equal height, the usual case for
+ * a view showing one icon size, side by side.  Each icon is surrounded by a gutter of {@link #GUTTER} pixels that
+ * repeats its edge pixels, so that drawing a region with filtering, or at a fractional scale, never samples the
+ * neighbouring icons.  Regions only cover the icons themselves.  The slot of a removed icon is reused by the next icon
+ * that fits.  Once
+ * the slots freed by removed icons exceed {@link #getMaxFragmentation()} of the allocated area, the atlas repacks
+ * every icon from scratch, which moves icons to new regions and increments {@link #getVersion()}, so a view should
+ * look regions up again whenever the version changes.
+ * <p>
+ * The pages are kept as BufferedImages, and {@link #takeDirtyRegions(int)} reports the regions of a page that changed
+ * since the previous call, so that a view copying the pages into textures only uploads those regions again.  The
+ * atlas is thread safe, and locks itself while it is updated, so a view can read a page and its changed regions
+ * consistently by synchronizing on the atlas.
+ * @param <K> The type of the keys of the icons, such as the paths of the files displayed by the view.
+ */
+public class IconAtlas<K> {
+
+    /**
+     * The default width and height of a page, which every current GPU supports as a texture size.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 2048;
+
+    /**
+     * The default fraction of the allocated area that may be freed before the atlas is repacked.
+     */
+    public static final double DEFAULT_MAX_FRAGMENTATION = 0.5;
+
+    /**
+     * The width of the border around each icon, which holds copies of the icon's edge pixels.
+     */
+    public static final int GUTTER = 1;
+
+    /**
+     * The number of changed regions of a page that are tracked before the whole page is reported as dirty instead.
+     */
+    private static final int MAX_DIRTY_REGIONS = 256;
+
+    private final int iconSize;
+    private final int pageSize;
+    private double maxFragmentation = DEFAULT_MAX_FRAGMENTATION;
+
+    private final List<Page> pages = new ArrayList<>();
+    private final Map<K, Entry> entries = new HashMap<>();
+
+    /**
+     * The entry of each distinct icon, keyed by the interned image.
+     */
+    private final Map<BufferedImage, Entry> distinct = new IdentityHashMap<>();
+    private final IconInterner interner = new IconInterner();
+
+    private long slotArea;
+    private long freedArea;
+    private long version;
+    private int repackCount;
+
+    /**
+     * Creates an atlas with the default page size.
+     * @param iconSize The size of the icons requested by {@link #add(Object, File)}.
+     */
+    public IconAtlas(int iconSize) {
+        this(iconSize, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @param iconSize The size of the icons requested by {@link #add(Object, File)}.
+     * @param pageSize The width and height of each page.
+     */
+    public IconAtlas(int iconSize, int pageSize) {
+        if (iconSize <= 0 || pageSize < iconSize + 2 * GUTTER) {
+            throw new IllegalArgumentException("Invalid icon size " + iconSize + " for page size " + pageSize);
+        }
+        this.iconSize = iconSize;
+        this.pageSize = pageSize;
+    }
+
+    public int getIconSize() {
+        return iconSize;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public synchronized double getMaxFragmentation() {
+        return maxFragmentation;
+    }
+
+    /**
+     * @param maxFragmentation The fraction of the allocated area that may be freed by removed icons before the atlas
+     *                         is repacked, from 0 to 1.  A fraction of 1 only repacks when {@link #repack()} is called.
+     */
+    public synchronized void setMaxFragmentation(double maxFragmentation) {
+        if (maxFragmentation < 0 || maxFragmentation > 1) {
+            throw new IllegalArgumentException("Fragmentation out of range: " + maxFragmentation);
+        }
+        this.maxFragmentation = maxFragmentation;
+    }
+
+    /**
+     * Adds the icon of a file at the icon size of the atlas, as returned by
+     * {@link IconEngine#getIconBufferedImage(File, int)}.
+     * @param key The key of the icon.
+     * @param file The file or directory whose icon is added.
+     * @return The region holding the icon, or null if the file does not exist or has no icon, in which case the atlas
+     * is not changed.
+     */
+    public AtlasRegion add(K key, File file) {
+        BufferedImage icon = IconEngine.getIconBufferedImage(file, iconSize);
+        return icon == null ? null : add(key, icon);
+    }
+
+    /**
+     * Adds an icon, replacing the icon previously added under the same key.  If an icon with the same pixels is
+     * already in the atlas, the key shares its region.
+     * @param key The key of the icon.
+     * @param icon The icon, which must fit on a page along with its gutter.  It is copied into the atlas.
+     * @return The region holding the icon.
+     */
+    public synchronized AtlasRegion add(K key, BufferedImage icon) {
+        if (icon.getWidth() + 2 * GUTTER > pageSize || icon.getHeight() + 2 * GUTTER > pageSize) {
+            throw new IllegalArgumentException("Icon of " + icon.getWidth() + "x" + icon.getHeight()
+                    + " does not fit on a page of " + pageSize + "x" + pageSize + " with its gutter");
+        }
+        BufferedImage canonical = interner.intern(icon);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.image == canonical) {
+                return entry.region;
+            }
+            release(entry);
+        }
+        entry = distinct.get(canonical);
+        if (entry == null) {
+            entry = new Entry(canonical);
+            place(entry);
+            distinct.put(canonical, entry);
+        }
+        entry.references++;
+        entries.put(key, entry);
+        repackIfFragmented();
+        return entry.region;
+    }
+
+    /**
+     * Removes the icon of a key.  The region of the icon is freed once no other key shares it.
+     * @param key The key of the icon.
+     * @return true if the key was in the atlas.
+     */
+    public synchronized boolean remove(K key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        release(entry);
+        repackIfFragmented();
+        return true;
+    }
+
+    /**
+     * Removes every icon and page.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        distinct.clear();
+        interner.clear();
+        pages.clear();
+        slotArea = 0;
+        freedArea = 0;
+        version++;
+    }
+
+    /**
+     * @param key The key of an icon.
+     * @return The region holding the icon of the key, or null if the key is not in the atlas.
+     */
+    public synchronized AtlasRegion getRegion(K key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.region;
+    }
+
+    /**
+     * @return A snapshot of the region of every key, which stays valid until the version of the atlas changes.
+     */
+    public synchronized Map<K, AtlasRegion> getRegions() {
+        Map<K, AtlasRegion> regions = new LinkedHashMap<>();
+        entries.forEach((key, entry) -> regions.put(key, entry.region));
+        return regions;
+    }
+
+    /**
+     * @return The number of keys in the atlas.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of distinct icons in the atlas, which is the number of regions in use.
+     */
+    public synchronized int getDistinctCount() {
+        return distinct.size();
+    }
+
+    public synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * @param index The index of the page.
+     * @return The page, which is updated in place as icons are added and must not be modified.
+     */
+    public synchronized BufferedImage getPage(int index) {
+        return pages.get(index).image;
+    }
+
+    /**
+     * Returns the regions of a page that changed since the previous call for the page, and forgets them.  A new or
+     * repacked page, or a page on which too many regions changed to track them individually, is reported as a single
+     * region covering every shelf of the page.
+     * @param index The index of the page.
+     * @return The regions whose pixels changed, which is empty if the page did not change.
+     */
+    public synchronized List<AtlasRegion> takeDirtyRegions(int index) {
+        Page page = pages.get(index);
+        List<AtlasRegion> regions;
+        if (page.allDirty) {
+            regions = page.top > 0 ? List.of(new AtlasRegion(index, 0, 0, pageSize, page.top)) : List.of();
+        } else {
+            regions = new ArrayList<>(page.dirty);
+        }
+        page.allDirty = false;
+        page.dirty.clear();
+        return regions;
+    }
+
+    /**
+     * @return The fraction of the allocated area of the pages that was freed by removed icons and has not been reused
+     * yet.
+     */
+    public synchronized double getFragmentation() {
+        long allocated = slotArea + freedArea;
+        return allocated == 0 ? 0 : (double) freedArea / allocated;
+    }
+
+    /**
+     * @return The layout version, which is incremented whenever icons move to new regions.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return The number of times the atlas has been repacked.
+     */
+    public synchronized int getRepackCount() {
+        return repackCount;
+    }
+
+    /**
+     * Packs every icon onto new pages, tallest first, which reclaims the slots freed by removed icons and releases
+     * the pages that are no longer needed.  Every remaining page is reported as dirty in full.
+     */
+    public synchronized void repack() {
+        List<Entry> live = new ArrayList<>(distinct.values());
+        live.sort(Comparator.comparingInt((Entry entry) -> entry.image.getHeight())
+                .thenComparingInt(entry -> entry.image.getWidth()).reversed());
+        pages.clear();
+        slotArea = 0;
+        freedArea = 0;
+        for (Entry entry : live) {
+            place(entry);
+        }
+        version++;
+        repackCount++;
+    }
+
+    private void repackIfFragmented() {
+        if (freedArea > 0 && getFragmentation() > maxFragmentation) {
+            repack();
+        }
+    }
+
+    /**
+     * Allocates a slot for an icon and its gutter, and copies both into it.
+     */
+    private void place(Entry entry) {
+        int width = entry.image.getWidth();
+        int height = entry.image.getHeight();
+        int paddedWidth = width + 2 * GUTTER;
+        int paddedHeight = height + 2 * GUTTER;
+        AtlasRegion slot = null;
+        for (Iterator<Page> iterator = pages.iterator(); slot == null && iterator.hasNext(); ) {
+            slot = iterator.next().allocate(paddedWidth, paddedHeight);
+        }
+        if (slot == null) {
+            Page page = new Page(pages.size());
+            pages.add(page);
+            slot = page.allocate(paddedWidth, paddedHeight);
+        }
+        entry.slot = slot;
+        entry.region = new AtlasRegion(slot.getPage(), slot.getX() + GUTTER, slot.getY() + GUTTER, width, height);
+        slotArea += slot.getArea();
+
+        Page page = pages.get(slot.getPage());
+        int[] pixels = entry.image.getRGB(0, 0, width, height, null, 0, width);
+        page.image.getRaster().setDataElements(slot.getX(), slot.getY(), paddedWidth, paddedHeight,
+                pad(pixels, width, height));
+        page.markDirty(new AtlasRegion(slot.getPage(), slot.getX(), slot.getY(), paddedWidth, paddedHeight));
+    }
+
+    /**
+     * Surrounds the pixels of an icon with its gutter, in which every pixel repeats the nearest edge pixel of the icon.
+     */
+    private static int[] pad(int[] pixels, int width, int height) {
+        int paddedWidth = width + 2 * GUTTER;
+        int paddedHeight = height + 2 * GUTTER;
+        int[] padded = new int[paddedWidth * paddedHeight];
+        for (int y = 0; y < paddedHeight; y++) {
+            int sourceRow = Math.min(Math.max(y - GUTTER, 0), height - 1) * width;
+            int row = y * paddedWidth;
+            System.arraycopy(pixels, sourceRow, padded, row + GUTTER, width);
+            for (int x = 0; x < GUTTER; x++) {
+                padded[row + x] = pixels[sourceRow];
+                padded[row + GUTTER + width + x] = pixels[sourceRow + width - 1];
+            }
+        }
+        return padded;
+    }
+
+    /**
+     * Releases a reference to an entry, freeing its slot once it is no longer referenced.
+     */
+    private void release(Entry entry) {
+        if (--entry.references > 0) {
+            return;
+        }
+        distinct.remove(entry.image);
+        slotArea -= entry.slot.getArea();
+        pages.get(entry.slot.getPage()).free(entry.slot);
+    }
+
+    /**
+     * A distinct icon and the slot it was packed into.  The slot can be taller or wider than the icon and its gutter,
+     * which occupy its top left corner.
+     */
+    private static final class Entry {
+
+        private final BufferedImage image;
+        private AtlasRegion slot;
+        private AtlasRegion region;
+        private int references;
+
+        private Entry(BufferedImage image) {
+            this.image = image;
+        }
+
+    }
+
+    /**
+     * A row of a page that icons are placed in from left to right.
+     */
+    private static final class Shelf {
+
+        private final int y;
+        private final int height;
+        private int next;
+
+        private Shelf(int y, int height) {
+            this.y = y;
+            this.height = height;
+        }
+
+    }
+
+    private final class Page {
+
+        private final int index;
+        private final BufferedImage image = new BufferedImage(pageSize, pageSize, BufferedImage.TYPE_INT_ARGB);
+        private final List<Shelf> shelves = new ArrayList<>();
+        private final List<AtlasRegion> freed = new ArrayList<>();
+        private final List<AtlasRegion> dirty = new ArrayList<>();
+        private int top;
+        private boolean allDirty = true;
+
+        private Page(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Allocates the smallest freed slot that fits the icon, or else a slot on the shortest shelf with room for it,
+         * or else a slot on a new shelf.
+         * @return The slot, or null if the page is full.
+         */
+        private AtlasRegion allocate(int width, int height) {
+            AtlasRegion best = null;
+            for (AtlasRegion slot : freed) {
+                if (slot.getWidth() >= width && slot.getHeight() >= height
+                        && (best == null || slot.getArea() < best.getArea())) {
+                    best = slot;
+                }
+            }
+            if (best != null) {
+                freed.remove(best);
+                freedArea -= best.getArea();
+                return best;
+            }
+
+            Shelf fit = null;
+            for (Shelf shelf : shelves) {
+                if (shelf.height >= height && shelf.next + width <= pageSize
+                        && (fit == null || shelf.height < fit.height)) {
+                    fit = shelf;
+                }
+            }
+            // Starting a new shelf wastes less space than placing an icon on a shelf twice its height
+            if ((fit == null || fit.height >= 2 * height) && top + height <= pageSize) {
+                fit = new Shelf(top, height);
+                shelves.add(fit);
+                top += height;
+            }
+            if (fit == null) {
+                return null;
+            }
+            AtlasRegion slot = new AtlasRegion(index, fit.next, fit.y, width, fit.height);
+            fit.next += width;
+            return slot;
+        }
+
+        /**
+         * Frees a slot.  A slot at the end of its shelf shortens the shelf, along with any freed slots it uncovers,
+         * and an empty shelf at the bottom of the page is removed.  Other slots are kept for reuse.
+         */
+        private void free(AtlasRegion slot) {
+            Shelf shelf = null;
+            for (Shelf candidate : shelves) {
+                if (candidate.y == slot.getY()) {
+                    shelf = candidate;
+                    break;
+                }
+            }
+            if (shelf == null || slot.getX() + slot.getWidth() != shelf.next) {
+                freed.add(slot);
+                freedArea += slot.getArea();
+                return;
+            }
+            shelf.next = slot.getX();
+            boolean shortened = true;
+            while (shortened) {
+                shortened = false;
+                for (Iterator<AtlasRegion> iterator = freed.iterator(); iterator.hasNext(); ) {
+                    AtlasRegion other = iterator.next();
+                    if (other.getY() == shelf.y && other.getX() + other.getWidth() == shelf.next) {
+                        shelf.next = other.getX();
+                        freedArea -= other.getArea();
+                        iterator.remove();
+                        shortened = true;
+                    }
+                }
+            }
+            if (shelf.next == 0 && shelf.y + shelf.height == top) {
+                shelves.remove(shelf);
+                top = shelf.y;
+            }
+        }
+
+        private void markDirty(AtlasRegion region) {
+            if (allDirty) {
+                return;
+            }
+            if (dirty.size() == MAX_DIRTY_REGIONS) {
+                allDirty = true;
+                dirty.clear();
+            } else {
+                dirty.add(region);
+            }
+        }
+
+    }
+
+}
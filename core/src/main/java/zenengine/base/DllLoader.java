@@ -16,27 +16,22 @@
 
 package zenengine.base;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
-
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
 /**
  * Class responsible for loading the icon extractor dll for the operating system.  Dll files packaged in the jar
  * file with this utility must be extracted in order to be used.  This class handles this operation.
+ * @deprecated Native libraries are extracted and verified by {@link NativeLibraryLoader}, which this class delegates
+ * to.
  */
+@Deprecated
 public class DllLoader {
 
     private static final Logger logger = Logger.getLogger(DllLoader.class.getName());
 
-    private final static String LIB = System.getProperty("java.io.tmpdir") + File.separator + "SomeGuySoftware" +
-            File.separator + "ZenNativeIconEngine" + File.separator + "lib" + File.separator;
-
     public static void loadDll(String system) {
         if (system.equals("win32")) {
             loadWindowsIconExtractorDll();
@@ -48,25 +43,13 @@ public class DllLoader {
 
     /**
      * Extracts the WindowsIconExtractor.dll file from the resource package to a temp directory on the Windows system
-     * when this utility is packaged as a jar file.
+     * and loads it.
      */
     private static void loadWindowsIconExtractorDll() {
-        String dllName = "WindowsIconExtractor.dll";
-        File windowsDll = new File(LIB + dllName);
-        if (! windowsDll.exists()) {
-            try {
-                InputStream dllFileStream = DllLoader.class.getClassLoader().getResourceAsStream(dllName);
-                OutputStream out = FileUtils.openOutputStream(windowsDll);
-                IOUtils.copy(dllFileStream, out);
-                dllFileStream.close();
-                out.close();
-                System.load(windowsDll.toString());
-                System.out.println("Dll loaded");
-            } catch (IOException e) {
-                System.out.println("Failed to load dll");
-            }
-        } else {
-            System.load(windowsDll.toString());
+        try {
+            NativeLibraryLoader.getDefault().load("WindowsIconExtractor");
+        } catch (IOException | UnsatisfiedLinkError e) {
+            logger.log(Level.WARNING, "Failed to load dll", e);
         }
     }
 
@@ -0,0 +1,239 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.base;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+
+/**
+ * A thread safe, least recently used cache that is bounded by the total weight of its values rather than by the
+ * number of entries.  The weight of a value is supplied by a weigher function, which for icons is normally the number
+ * of bytes the value occupies.
+ * @param <K> The type of the cache keys.
+ * @param <V> The type of the cached values.
+ */
+public class IconCache<K, V> {
+
+    private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(64, 0.75f, true);
+    private final ToLongFunction<? super V> weigher;
+    private final IconCacheStats stats = new IconCacheStats();
+
+    private long maximumWeight;
+    private long weight;
+    private volatile Consumer<? super K> evictionListener;
+
+    /**
+     * @param maximumWeight The maximum total weight of the values held by the cache.  A maximum weight of zero
+     *                      disables the cache.
+     * @param weigher A function returning the weight of a cached value.
+     */
+    public IconCache(long maximumWeight, ToLongFunction<? super V> weigher) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("Maximum weight must not be negative: " + maximumWeight);
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the value cached for the supplied key and marks it as the most recently used entry.
+     * @param key The key of the requested value.
+     * @return The cached value, or null if no value is cached for the supplied key.
+     */
+    public V get(K key) {
+        Entry<V> entry;
+        synchronized (this) {
+            entry = map.get(key);
+        }
+        if (entry != null) {
+            stats.recordHit();
+            return entry.value;
+        }
+        stats.recordMiss();
+        return null;
+    }
+
+    /**
+     * Returns the value cached for the supplied key without recording a hit or miss.
+     */
+    synchronized V peek(K key) {
+        Entry<V> entry = map.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Caches the supplied value, replacing any value already cached for the key, and evicts the least recently used
+     * entries until the cache is within its maximum weight.  Values that are heavier than the maximum weight on their
+     * own are not cached.
+     * @param key The key under which the value is cached.
+     * @param value The value to cache.
+     */
+    public void put(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        List<K> evicted;
+        synchronized (this) {
+            if (valueWeight > maximumWeight) {
+                remove(key);
+                return;
+            }
+            Entry<V> previous = map.put(key, new Entry<>(value, valueWeight));
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += valueWeight;
+            evicted = evict();
+        }
+        notifyEvicted(evicted);
+    }
+
+    /**
+     * Removes the value cached for the supplied key, if any.
+     * @param key The key of the value to remove.
+     */
+    public synchronized void invalidate(K key) {
+        remove(key);
+    }
+
+    /**
+     * Removes the values cached for every key accepted by the supplied filter.
+     * @param filter The filter selecting the keys whose values are removed.
+     */
+    public synchronized void invalidateIf(Predicate<? super K> filter) {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = iterator.next();
+            if (filter.test(entry.getKey())) {
+                weight -= entry.getValue().weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes every value from the cache.
+     */
+    public synchronized void invalidateAll() {
+        map.clear();
+        weight = 0;
+    }
+
+    /**
+     * Changes the maximum weight of the cache, evicting entries immediately if the cache is now over its limit.
+     * @param maximumWeight The new maximum total weight.  A maximum weight of zero disables the cache.
+     */
+    public void setMaximumWeight(long maximumWeight) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("Maximum weight must not be negative: " + maximumWeight);
+        }
+        List<K> evicted;
+        synchronized (this) {
+            this.maximumWeight = maximumWeight;
+            evicted = evict();
+        }
+        notifyEvicted(evicted);
+    }
+
+    /**
+     * Sets the listener that is told about every key whose value is evicted to keep the cache within its maximum
+     * weight.  The listener is called after the cache's lock is released, so it may use the cache.  Values that are
+     * replaced, invalidated or too heavy to cache are not reported.
+     * @param listener The listener, or null to stop reporting evictions.
+     */
+    public void setEvictionListener(Consumer<? super K> listener) {
+        evictionListener = listener;
+    }
+
+    public synchronized long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * @return The total weight of the values currently held by the cache.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return The number of entries currently held by the cache.
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public IconCacheStats getStats() {
+        return stats;
+    }
+
+    private void remove(K key) {
+        Entry<V> removed = map.remove(key);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache is within its maximum weight.
+     * @return The keys of the evicted entries if an eviction listener is set, or else an empty list.
+     */
+    private List<K> evict() {
+        List<K> evicted = List.of();
+        Iterator<Map.Entry<K, Entry<V>>> iterator = map.entrySet().iterator();
+        while (weight > maximumWeight && iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = iterator.next();
+            weight -= entry.getValue().weight;
+            iterator.remove();
+            stats.recordEviction();
+            if (evictionListener != null) {
+                if (evicted.isEmpty()) {
+                    evicted = new ArrayList<>();
+                }
+                evicted.add(entry.getKey());
+            }
+        }
+        return evicted;
+    }
+
+    private void notifyEvicted(List<K> evicted) {
+        Consumer<? super K> listener = evictionListener;
+        if (listener != null) {
+            for (K key : evicted) {
+                listener.accept(key);
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+        private final long weight;
+
+        private Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+
+    }
+
+}
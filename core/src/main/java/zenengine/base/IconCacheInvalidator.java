@@ -0,0 +1,477 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package zenengine.base;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+
+/**
+ * Evicts icons cached by path once their files change, so that the caches can hold icons indefinitely without
+ * serving a stale icon.  Icons are only cached by path for files that carry their own icon, such as executables and
+ * .desktop files, and for directories customised with a desktop.ini file, so those are the only files tracked.
+ * <p>
+ * Each icon the engine caches by path is tracked with the last modified time of its file, and the directory holding
+ * the file is registered with a {@link WatchService}.  Events for untracked files are ignored.  Events for a tracked
+ * file are coalesced until the file has been quiet for the debounce period, so rewriting a file in many small writes
+ * evicts its icon once.  The icon is evicted through {@link IconEngine#invalidate(IconCacheKey)}, after which the file
+ * is no longer tracked until its icon is cached again, and directories without tracked files are no longer watched.
+ * Files are also untracked once the engine's caches have evicted every form of their icon, or are cleared, so the
+ * number of tracked files and watched directories is bounded by the contents of the caches.
+ * <p>
+ * When the watch service overflows and events are lost, the last modified times of the tracked files of the directory
+ * are compared instead.  Directories that cannot be watched, because the watch limit of the invalidator or of the host
+ * system was reached, are checked the same way on every scan interval.
+ */
+public class IconCacheInvalidator implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(IconCacheInvalidator.class.getName());
+
+    private static final AtomicInteger invalidatorCount = new AtomicInteger();
+
+    public static final Duration DEFAULT_DEBOUNCE = Duration.ofMillis(250);
+    public static final Duration DEFAULT_SCAN_INTERVAL = Duration.ofSeconds(10);
+    public static final int DEFAULT_MAX_WATCHED_DIRECTORIES = 4096;
+
+    /**
+     * The longest a stream of events can postpone an eviction, as a multiple of the debounce period, so that a file
+     * that is written continuously still has its icon evicted.
+     */
+    private static final int MAX_DEBOUNCES = 8;
+
+    private final WatchService watchService;
+    private final Consumer<IconCacheKey> invalidation;
+    private final long debounceNanos;
+    private final long scanIntervalNanos;
+    private final int maxWatchedDirectories;
+    private final Thread thread;
+
+    private final Map<Path, WatchedDirectory> directories = new HashMap<>();
+    private final Map<IconCacheKey, Path> trackedPaths = new HashMap<>();
+    private final Map<WatchKey, WatchedDirectory> watchKeys = new HashMap<>();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * The tracked files with outstanding events, in the order of their first event.  Only used by the watch thread.
+     */
+    private final Map<Path, PendingChange> pending = new LinkedHashMap<>();
+
+    private volatile boolean closed;
+
+    /**
+     * A directory holding tracked files, and the watch key it is registered under, or null if it is not watched.
+     */
+    private static final class WatchedDirectory {
+
+        private final Path path;
+        private final Map<Path, TrackedFile> files = new HashMap<>();
+        private WatchKey watchKey;
+
+        private WatchedDirectory(Path path) {
+            this.path = path;
+        }
+
+    }
+
+    private static final class TrackedFile {
+
+        private final IconCacheKey key;
+        private final long lastModified;
+
+        private TrackedFile(IconCacheKey key, long lastModified) {
+            this.key = key;
+            this.lastModified = lastModified;
+        }
+
+    }
+
+    private static final class PendingChange {
+
+        private final long firstEvent;
+        private long lastEvent;
+
+        /**
+         * Indicates that the change was inferred from an overflow, and the last modified time must confirm it.
+         */
+        private boolean unconfirmed;
+
+        private PendingChange(long now, boolean unconfirmed) {
+            firstEvent = now;
+            lastEvent = now;
+            this.unconfirmed = unconfirmed;
+        }
+
+    }
+
+    /**
+     * Creates an invalidator with the default debounce period, scan interval and watch limit, which evicts icons from
+     * the engine's caches.
+     * @throws IOException if the file system cannot be watched.
+     */
+    public IconCacheInvalidator() throws IOException {
+        this(DEFAULT_DEBOUNCE, DEFAULT_SCAN_INTERVAL, DEFAULT_MAX_WATCHED_DIRECTORIES);
+    }
+
+    /**
+     * Creates an invalidator which evicts icons from the engine's caches.
+     * @param debounce How long a tracked file must be quiet before its icon is evicted.
+     * @param scanInterval How often the tracked files of directories that are not watched are checked.
+     * @param maxWatchedDirectories The maximum number of directories registered with the watch service.  Directories
+     *                              beyond the limit are checked on every scan interval instead.
+     * @throws IOException if the file system cannot be watched.
+     */
+    public IconCacheInvalidator(Duration debounce, Duration scanInterval, int maxWatchedDirectories)
+            throws IOException {
+        this(debounce, scanInterval, maxWatchedDirectories, IconEngine::invalidate);
+    }
+
+    IconCacheInvalidator(Duration debounce, Duration scanInterval, int maxWatchedDirectories,
+                         Consumer<IconCacheKey> invalidation) throws IOException {
+        if (debounce.isNegative() || scanInterval.isNegative() || scanInterval.isZero()) {
+            throw new IllegalArgumentException("Invalid debounce or scan interval: " + debounce + ", " + scanInterval);
+        }
+        if (maxWatchedDirectories < 0) {
+            throw new IllegalArgumentException("Maximum watched directories must not be negative: "
+                    + maxWatchedDirectories);
+        }
+        this.debounceNanos = debounce.toNanos();
+        this.scanIntervalNanos = scanInterval.toNanos();
+        this.maxWatchedDirectories = maxWatchedDirectories;
+        this.invalidation = invalidation;
+        watchService = FileSystems.getDefault().newWatchService();
+        thread = new Thread(this::run, "zenengine-invalidator-" + invalidatorCount.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Tracks the file whose icon was just cached under the supplied key, unless it is already tracked.  The icon of a
+     * directory depends on its desktop.ini file, so that file is tracked instead of the directory itself.
+     * @param file The file or directory whose icon was cached.
+     * @param key The key the icon was cached under.
+     */
+    void track(File file, IconCacheKey key) {
+        if (closed) {
+            return;
+        }
+        synchronized (this) {
+            if (trackedPaths.containsKey(key)) {
+                return;
+            }
+        }
+        Path path = file.getAbsoluteFile().toPath().normalize();
+        Path tracked;
+        Path directory;
+        if (file.isDirectory()) {
+            tracked = path.resolve("desktop.ini");
+            directory = path;
+        } else {
+            tracked = path;
+            directory = path.getParent();
+        }
+        if (directory == null) {
+            return;
+        }
+        long lastModified = tracked.toFile().lastModified();
+        synchronized (this) {
+            WatchedDirectory watched = directories.get(directory);
+            if (watched == null) {
+                watched = new WatchedDirectory(directory);
+                directories.put(directory, watched);
+                watch(watched);
+            }
+            TrackedFile previous = watched.files.put(tracked, new TrackedFile(key, lastModified));
+            if (previous != null) {
+                trackedPaths.remove(previous.key);
+            }
+            trackedPaths.put(key, tracked);
+        }
+    }
+
+    /**
+     * Stops tracking the file whose icon was cached under the supplied key, since the icon is no longer cached.
+     * @param key The key the icon was cached under.
+     */
+    synchronized void untrack(IconCacheKey key) {
+        Path path = trackedPaths.get(key);
+        if (path != null) {
+            remove(path);
+        }
+    }
+
+    /**
+     * Stops tracking every file and watching every directory, since the caches were cleared.
+     */
+    synchronized void untrackAll() {
+        for (WatchKey watchKey : watchKeys.keySet()) {
+            watchKey.cancel();
+        }
+        watchKeys.clear();
+        directories.clear();
+        trackedPaths.clear();
+    }
+
+    /**
+     * Registers the supplied directory with the watch service, unless the watch limit has been reached.  Directories
+     * that are not registered are checked on every scan.
+     */
+    private void watch(WatchedDirectory watched) {
+        if (watchKeys.size() >= maxWatchedDirectories) {
+            return;
+        }
+        try {
+            WatchKey watchKey = watched.path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watched.watchKey = watchKey;
+            watchKeys.put(watchKey, watched);
+        } catch (IOException | ClosedWatchServiceException e) {
+            // The host's watch limit is a normal condition for large trees, which are scanned instead
+            logger.fine("Failed to watch " + watched.path + ", scanning it instead: " + e);
+        }
+    }
+
+    /**
+     * @return The number of directories registered with the watch service.
+     */
+    public synchronized int getWatchedDirectoryCount() {
+        return watchKeys.size();
+    }
+
+    /**
+     * @return The number of files whose icons are tracked.
+     */
+    public synchronized int getTrackedFileCount() {
+        int count = 0;
+        for (WatchedDirectory watched : directories.values()) {
+            count += watched.files.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of icons evicted since the invalidator was created.
+     */
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops watching the file system.  Icons that are cached stay cached.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        thread.interrupt();
+        watchService.close();
+    }
+
+    private void run() {
+        long nextScan = System.nanoTime() + scanIntervalNanos;
+        while (! closed) {
+            long now = System.nanoTime();
+            long timeout = Math.max(1, Math.min(nextScan, nextFlush(now)) - now);
+            try {
+                WatchKey watchKey = watchService.poll(timeout, TimeUnit.NANOSECONDS);
+                while (watchKey != null) {
+                    process(watchKey, System.nanoTime());
+                    watchKey = watchService.poll();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+            now = System.nanoTime();
+            if (now - nextScan >= 0) {
+                scan(now);
+                nextScan = now + scanIntervalNanos;
+            }
+            flush(now);
+        }
+    }
+
+    /**
+     * @return The time at which the oldest pending change should be flushed, or a scan interval from now.
+     */
+    private long nextFlush(long now) {
+        long next = now + scanIntervalNanos;
+        for (PendingChange change : pending.values()) {
+            next = Math.min(next, flushTime(change));
+        }
+        return next;
+    }
+
+    private long flushTime(PendingChange change) {
+        return Math.min(change.lastEvent + debounceNanos, change.firstEvent + MAX_DEBOUNCES * debounceNanos);
+    }
+
+    private void process(WatchKey watchKey, long now) {
+        List<WatchEvent<?>> events = watchKey.pollEvents();
+        boolean valid = watchKey.reset();
+        List<Path> changed = new ArrayList<>();
+        List<Path> unconfirmed = new ArrayList<>();
+        synchronized (this) {
+            WatchedDirectory watched = watchKeys.get(watchKey);
+            if (watched == null) {
+                return;
+            }
+            if (! valid) {
+                // The directory was deleted or can no longer be watched, so every tracked file may have changed
+                watchKeys.remove(watchKey);
+                watched.watchKey = null;
+                changed.addAll(watched.files.keySet());
+            }
+            for (WatchEvent<?> event : events) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    unconfirmed.addAll(watched.files.keySet());
+                } else {
+                    Path child = watched.path.resolve((Path) event.context());
+                    if (watched.files.containsKey(child)) {
+                        changed.add(child);
+                    }
+                }
+            }
+        }
+        for (Path path : unconfirmed) {
+            addPending(path, now, true);
+        }
+        for (Path path : changed) {
+            addPending(path, now, false);
+        }
+    }
+
+    private void addPending(Path path, long now, boolean unconfirmed) {
+        PendingChange change = pending.get(path);
+        if (change == null) {
+            pending.put(path, new PendingChange(now, unconfirmed));
+        } else {
+            change.lastEvent = now;
+            change.unconfirmed &= unconfirmed;
+        }
+    }
+
+    /**
+     * Checks the last modified times of the tracked files of every directory that is not watched.
+     */
+    private void scan(long now) {
+        List<Path> unwatched = new ArrayList<>();
+        synchronized (this) {
+            for (WatchedDirectory watched : directories.values()) {
+                if (watched.watchKey == null) {
+                    unwatched.addAll(watched.files.keySet());
+                }
+            }
+        }
+        for (Path path : unwatched) {
+            if (! pending.containsKey(path)) {
+                pending.put(path, new PendingChange(now - debounceNanos, true));
+            }
+        }
+    }
+
+    /**
+     * Evicts the icons of the tracked files that have been quiet for the debounce period.  Changes inferred from an
+     * overflow or a scan only evict icons whose files have a different last modified time.
+     */
+    private void flush(long now) {
+        Iterator<Map.Entry<Path, PendingChange>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, PendingChange> entry = iterator.next();
+            if (now - flushTime(entry.getValue()) < 0) {
+                continue;
+            }
+            iterator.remove();
+            IconCacheKey key = untrack(entry.getKey(), entry.getValue().unconfirmed);
+            if (key != null) {
+                invalidations.increment();
+                try {
+                    invalidation.accept(key);
+                } catch (RuntimeException e) {
+                    logger.warning("Failed to invalidate icon for " + key + ": " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops tracking the supplied file, and stops watching its directory if no other file in it is tracked.
+     * @param unconfirmed Indicates that the file should only be untracked if its last modified time changed.
+     * @return The key of the icon to evict, or null if the file is not tracked or has not changed.
+     */
+    private IconCacheKey untrack(Path path, boolean unconfirmed) {
+        long lastModified = unconfirmed ? path.toFile().lastModified() : 0;
+        synchronized (this) {
+            Path directory = path.getParent();
+            WatchedDirectory watched = directory == null ? null : directories.get(directory);
+            if (watched == null) {
+                return null;
+            }
+            TrackedFile tracked = watched.files.get(path);
+            if (tracked == null || unconfirmed && tracked.lastModified == lastModified) {
+                return null;
+            }
+            remove(path);
+            return tracked.key;
+        }
+    }
+
+    /**
+     * Removes a tracked file, and stops watching its directory if no other file in it is tracked.
+     */
+    private void remove(Path path) {
+        Path directory = path.getParent();
+        WatchedDirectory watched = directory == null ? null : directories.get(directory);
+        if (watched == null) {
+            return;
+        }
+        TrackedFile tracked = watched.files.remove(path);
+        if (tracked != null) {
+            trackedPaths.remove(tracked.key);
+        }
+        if (watched.files.isEmpty()) {
+            directories.remove(directory);
+            if (watched.watchKey != null) {
+                watched.watchKey.cancel();
+                watchKeys.remove(watched.watchKey);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.base;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+
+/**
+ * The key used to cache icons.  Most files share the icon of their file type, so they are keyed by extension and every
+ * file with that extension resolves to the same cache entry.  Files that carry their own icon (executables, shortcuts,
+ * icon files, etc.), directories customised with a desktop.ini file and the roots of the file system, such as drives,
+ * are keyed by their full path instead.  All other directories share a single key.  Extractors that determine the type of a file by other means than its
+ * extension key files by that type instead, through {@link IconExtractor#getCacheKey(File, boolean)}.
+ */
+public final class IconCacheKey {
+
+    /**
+     * The kind of cache key, which determines how many files share the key.
+     */
+    public enum Type {
+        /** Shared by every file with the same extension. */
+        EXTENSION,
+        /** Unique to a single file or directory. */
+        PATH,
+        /** Shared by every directory that does not carry its own icon. */
+        DIRECTORY,
+        /** Shared by every file of the same MIME type. */
+        MIME_TYPE
+    }
+
+    /**
+     * Extensions of files that carry their own icon, and so cannot share an icon with other files of the same type.
+     */
+    private static final Set<String> SELF_ICON_EXTENSIONS = Set.of("exe", "lnk", "ico", "url", "cur", "ani", "scr",
+            "cpl", "msc", "appref-ms", "desktop");
+
+    private static final IconCacheKey DIRECTORY_KEY = new IconCacheKey(Type.DIRECTORY, "");
+
+    private final Type type;
+    private final String value;
+
+    private IconCacheKey(Type type, String value) {
+        this.type = type;
+        this.value = value;
+    }
+
+    /**
+     * Creates the cache key for the supplied file or directory.
+     * @param file The file or directory for which a cache key is requested.
+     * @return The cache key under which the icon for the supplied file is cached.
+     */
+    public static IconCacheKey forFile(File file) {
+        return forFile(file, file.isDirectory());
+    }
+
+    /**
+     * Creates the cache key for the supplied file or directory without querying the file system to determine whether
+     * the file is a directory.
+     * @param file The file or directory for which a cache key is requested.
+     * @param directory Indicates whether the supplied file is a directory.
+     * @return The cache key under which the icon for the supplied file is cached.
+     */
+    public static IconCacheKey forFile(File file, boolean directory) {
+        if (directory) {
+            // Drive roots have their own icons, usually without a desktop.ini
+            if (file.getAbsoluteFile().getParentFile() == null || new File(file, "desktop.ini").isFile()) {
+                return forPath(file);
+            }
+            return DIRECTORY_KEY;
+        }
+        String extension = getExtension(file.getName());
+        if (SELF_ICON_EXTENSIONS.contains(extension)) {
+            return forPath(file);
+        }
+        return forExtension(extension);
+    }
+
+    /**
+     * Creates the cache key shared by every file with the supplied extension.
+     * @param extension The file extension, without the leading dot.
+     * @return The cache key shared by files with the supplied extension.
+     */
+    public static IconCacheKey forExtension(String extension) {
+        return new IconCacheKey(Type.EXTENSION, extension.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Creates the cache key shared by every file of the supplied MIME type.
+     * @param mimeType The MIME type, such as {@code text/plain}.
+     * @return The cache key shared by files of the supplied MIME type.
+     */
+    public static IconCacheKey forMimeType(String mimeType) {
+        return new IconCacheKey(Type.MIME_TYPE, mimeType);
+    }
+
+    /**
+     * Creates the cache key unique to the supplied file or directory.
+     * @param file The file or directory for which a cache key is requested.
+     * @return The cache key under which only the icon for the supplied file is cached.
+     */
+    public static IconCacheKey forPath(File file) {
+        return new IconCacheKey(Type.PATH, file.getAbsoluteFile().toPath().normalize().toString());
+    }
+
+    /**
+     * Returns the lower case extension of the supplied file name, or an empty String if the name has no extension.
+     * Leading dots, as used by hidden files, do not start an extension.
+     */
+    private static String getExtension(String name) {
+        int index = name.lastIndexOf('.');
+        if (index <= 0 || index == name.length() - 1) {
+            return "";
+        }
+        return name.substring(index + 1).toLowerCase(Locale.ROOT);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return The extension for EXTENSION keys, the absolute path for PATH keys, the MIME type for MIME_TYPE keys, or an
+     * empty String for DIRECTORY keys.
+     */
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (! (o instanceof IconCacheKey)) {
+            return false;
+        }
+        IconCacheKey other = (IconCacheKey) o;
+        return type == other.type && value.equals(other.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, value);
+    }
+
+    @Override
+    public String toString() {
+        return type.name().toLowerCase(Locale.ROOT) + ":" + value;
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.base;
+
+
+/**
+ * Listens for icons being removed from the icon caches of the {@link IconEngine}, so that caches holding other forms
+ * of the icons, such as JavaFX Images, stay consistent with the engine's.
+ * @see IconEngine#addCacheListener(IconCacheListener)
+ */
+public interface IconCacheListener {
+
+    /**
+     * Called after the icon cached under the supplied key has been removed by {@link IconEngine#invalidate}.
+     * @param key The cache key of the removed icon.
+     */
+    void invalidated(IconCacheKey key);
+
+    /**
+     * Called after every icon has been removed by {@link IconEngine#clearCaches()}.
+     */
+    void cleared();
+
+}
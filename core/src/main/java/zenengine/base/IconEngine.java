@@ -0,0 +1,1235 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.base;
+
+import zenengine.codec.IconFormat;
+import zenengine.codec.PngEncoder;
+import zenengine.codec.QoiCodec;
+import zenengine.codec.RawArgbCodec;
+import zenengine.freedesktop.ThumbnailCache;
+import zenengine.metrics.IconMetrics;
+import zenengine.metrics.IconStage;
+import zenengine.store.OffHeapIconStore;
+import zenengine.store.PersistentIconStore;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BaseMultiResolutionImage;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+public class IconEngine {
+
+    private static final Logger logger = Logger.getLogger(IconEngine.class.getName());
+
+    /**
+     * The os type.  Determines which of the native extractors supports the host system.
+     */
+    public static String os = getOs();
+
+    private static volatile IconExtractor iconExtractor;
+
+    private static volatile Executor executor;
+
+    private static volatile PersistentIconStore persistentStore;
+
+    private static volatile IconCacheInvalidator cacheInvalidator;
+
+    private static volatile OffHeapIconStore<IconCacheKey> offHeapStore;
+
+    private static volatile ThumbnailCache thumbnailCache;
+
+    /**
+     * The size of the thumbnails returned in place of icons, matching the size of the icons extractors return.
+     */
+    private static final int THUMBNAIL_SIZE = 256;
+
+    /**
+     * The time after which a file that had no thumbnail is looked up again, since its thumbnail may have been generated
+     * in the meantime.
+     */
+    private static final long THUMBNAIL_RECHECK_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * The time after which stored icons shared between files are extracted again, since an extractor cannot always
+     * tell that a file association or icon theme has changed.
+     */
+    private static final long SHARED_ICON_MAX_AGE = TimeUnit.DAYS.toMillis(1);
+
+    private static volatile PngEncoder pngEncoder = new PngEncoder();
+
+    /**
+     * The icons currently being extracted, used to share one extraction between concurrent requests for the same key.
+     */
+    private static final ConcurrentHashMap<IconCacheKey, CompletableFuture<BufferedImage>> inFlight =
+            new ConcurrentHashMap<>();
+
+    private static final long DEFAULT_IMAGE_CACHE_SIZE = 64L * 1024 * 1024;
+    private static final long DEFAULT_BYTE_ARRAY_CACHE_SIZE = 16L * 1024 * 1024;
+
+    private static final IconCache<IconCacheKey, BufferedImage> bufferedImageCache =
+            new IconCache<>(DEFAULT_IMAGE_CACHE_SIZE, image -> 4L * image.getWidth() * image.getHeight());
+
+    private static final IconCache<IconCacheKey, byte[]> byteArrayCache =
+            new IconCache<>(DEFAULT_BYTE_ARRAY_CACHE_SIZE, bytes -> bytes.length);
+
+    /**
+     * The cache of encoded icons for each format.  PNG encodings are held by the byte array cache.
+     */
+    private static final EnumMap<IconFormat, IconCache<IconCacheKey, byte[]>> byteCaches =
+            new EnumMap<>(IconFormat.class);
+
+    private static final long DEFAULT_LEVEL_CACHE_SIZE = 32L * 1024 * 1024;
+
+    private static final IconCache<IconPyramid.Level, BufferedImage> levelCache =
+            new IconCache<>(DEFAULT_LEVEL_CACHE_SIZE, image -> 4L * image.getWidth() * image.getHeight());
+
+    private static final long DEFAULT_THUMBNAIL_CACHE_SIZE = 8L * 1024 * 1024;
+
+    /**
+     * The thumbnail lookups of recently requested files, keyed by path since thumbnails belong to a single file.
+     */
+    private static final IconCache<IconCacheKey, ThumbnailLookup> thumbnailLookups =
+            new IconCache<>(DEFAULT_THUMBNAIL_CACHE_SIZE, ThumbnailLookup::getWeight);
+
+    /**
+     * Deduplicates extracted icons, so that every cache key whose icon has the same pixels shares one BufferedImage.
+     */
+    private static final IconInterner interner = new IconInterner();
+
+    /**
+     * The listeners told about invalidated icons, such as the caches of the JavaFX adapter.
+     */
+    private static final List<IconCacheListener> cacheListeners = new CopyOnWriteArrayList<>();
+
+    static {
+        byteCaches.put(IconFormat.PNG, byteArrayCache);
+        byteCaches.put(IconFormat.QOI, new IconCache<>(DEFAULT_BYTE_ARRAY_CACHE_SIZE, bytes -> bytes.length));
+        byteCaches.put(IconFormat.RAW_ARGB_PRE, new IconCache<>(DEFAULT_BYTE_ARRAY_CACHE_SIZE, bytes -> bytes.length));
+
+        bufferedImageCache.setEvictionListener(IconEngine::evicted);
+        for (IconCache<IconCacheKey, byte[]> cache : byteCaches.values()) {
+            cache.setEvictionListener(IconEngine::evicted);
+        }
+
+        registerCacheMetrics("bufferedImage", bufferedImageCache);
+        registerCacheMetrics("byteArray", byteArrayCache);
+        registerCacheMetrics("qoi", byteCaches.get(IconFormat.QOI));
+        registerCacheMetrics("rawArgbPre", byteCaches.get(IconFormat.RAW_ARGB_PRE));
+        registerCacheMetrics("level", levelCache);
+        registerCacheMetrics("thumbnail", thumbnailLookups);
+        IconMetrics.registerCache("interner", () -> "size=" + interner.size() + ", interned="
+                + interner.getInternCount() + ", duplicates=" + interner.getDuplicateCount() + ", bytesSaved="
+                + interner.getBytesSaved());
+    }
+
+    /**
+     * Publishes the statistics of the supplied cache through the icon metrics under the supplied name.
+     * @param name The name of the cache.
+     * @param cache The cache.
+     */
+    public static void registerCacheMetrics(String name, IconCache<?, ?> cache) {
+        IconMetrics.registerCache(name, () -> cache.getStats() + ", size=" + cache.size() + ", weight="
+                + cache.getWeight() + "/" + cache.getMaximumWeight());
+    }
+
+    /**
+     * Determines the host os and returns an os code String to be used in by this class.
+     * @return An os code String that indicates the host os.
+     */
+    private static String getOs() {
+        String name = System.getProperty("os.name").toLowerCase();
+        if (name.contains("windows")) {
+            return "win32";
+        } else if (name.contains("mac")) {
+            return "mac";
+        } else if (name.contains("linux") || name.contains("nix")) {
+            return "linux";
+        } else {
+            logger.warning("Unsupported operating system: " + name);
+            return "unknown";
+        }
+    }
+
+    /**
+     * Quarries the host file system for the icon based on the supplied file and returns a byte array of the
+     * icon image.
+     * @param file The file or directory for which the icon is requested.
+     * @return A byte array which contains the icon image bytes used by the system to represent the supplied file.  If
+     * the supplied file/directory does not exist or an icon cannot be retrieved from the system, this method returns
+     * null.  The returned array may be shared with other callers through the icon cache and must not be modified.
+     * @throws IOException if the BufferedImage returned from the native icon extractor cannot be read.
+     */
+    public static byte[] getIconByteArray(File file) throws IOException {
+        byte[] bytes = null;
+        if (exists(file)) {
+            bytes = getThumbnailBytes(file, IconFormat.PNG);
+            if (bytes == null) {
+                bytes = getIconByteArray(file, getCacheKey(file, file.isDirectory()));
+            }
+        }
+        if (bytes == null) {
+            logger.warning("Failed to retrieve byte array for file: " + file.getName());
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the PNG encoding of the icon cached under the supplied key, extracting and encoding it for the supplied
+     * file if it is not cached.  Unlike {@link #getIconByteArray(File)}, this method does not query the file system to
+     * resolve the key and never returns a thumbnail.
+     * @param file The file or directory for which the icon is requested.
+     * @param key The cache key of the file, as returned by {@link #getCacheKey(File)}.
+     * @return The PNG bytes, or null if the icon cannot be retrieved from the system.  The returned array may be shared
+     * with other callers through the icon cache and must not be modified.
+     * @throws IOException if the BufferedImage returned from the native icon extractor cannot be read.
+     */
+    public static byte[] getIconByteArray(File file, IconCacheKey key) throws IOException {
+        byte[] bytes = byteArrayCache.get(key);
+        if (bytes == null) {
+            bytes = loadStoredBytes(file, key);
+        }
+        if (bytes == null) {
+            BufferedImage bufferedImage = getIconBufferedImage(file, key);
+            if (bufferedImage != null) {
+                bytes = getEncodedPng(key, bufferedImage);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Quarries the host file system for the icon based on the supplied file and returns it encoded in the supplied
+     * format.
+     * @param file The file or directory for which the icon is requested.
+     * @param format The format of the returned bytes.  {@link IconFormat#PNG} returns the same bytes as
+     *               {@link #getIconByteArray(File)}, and every format represents the file by its thumbnail while a
+     *               thumbnail cache holds one.
+     * @return The encoded icon, which can be decoded with {@link IconFormat#decode(byte[])}, or null if the supplied
+     * file/directory does not exist or an icon cannot be retrieved from the system.  The returned array may be shared
+     * with other callers through the icon cache and must not be modified.
+     * @throws IOException if the BufferedImage returned from the native icon extractor cannot be read.
+     */
+    public static byte[] getIconBytes(File file, IconFormat format) throws IOException {
+        if (format == IconFormat.PNG) {
+            return getIconByteArray(file);
+        }
+        byte[] bytes = null;
+        if (exists(file)) {
+            bytes = getThumbnailBytes(file, format);
+            if (bytes == null) {
+                bytes = getIconBytes(file, getCacheKey(file, file.isDirectory()), format);
+            }
+        }
+        if (bytes == null) {
+            logger.warning("Failed to retrieve " + format + " bytes for file: " + file.getName());
+        }
+        return bytes;
+    }
+
+    static byte[] getIconBytes(File file, IconCacheKey key, IconFormat format) throws IOException {
+        if (format == IconFormat.PNG) {
+            return getIconByteArray(file, key);
+        }
+        IconCache<IconCacheKey, byte[]> cache = byteCaches.get(format);
+        byte[] bytes = cache.get(key);
+        if (bytes == null) {
+            BufferedImage bufferedImage = getIconBufferedImage(file, key);
+            if (bufferedImage != null) {
+                long start = IconMetrics.start();
+                bytes = format == IconFormat.QOI ? QoiCodec.encode(bufferedImage)
+                        : RawArgbCodec.encode(bufferedImage);
+                IconMetrics.record(IconStage.ENCODE, start, bytes.length);
+                cache.put(key, bytes);
+                track(key);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the PNG encoding of the supplied icon from the byte array cache, or encodes the icon and caches the
+     * encoded bytes under the supplied key.
+     */
+    private static byte[] getEncodedPng(IconCacheKey key, BufferedImage bufferedImage) {
+        byte[] bytes = byteArrayCache.peek(key);
+        if (bytes == null) {
+            long start = IconMetrics.start();
+            bytes = pngEncoder.encode(bufferedImage);
+            IconMetrics.record(IconStage.ENCODE, start, bytes.length);
+            byteArrayCache.put(key, bytes);
+            track(key);
+        }
+        return bytes;
+    }
+
+    /**
+     * Quarries the file system for the icon based on the supplied file and returns a BufferedImage of the icon image.
+     * @param file The file or directory for which an icon is requested.
+     * @return A BufferedImage which contains the icon the system uses to represent the supplied file/directory.  If
+     * the supplied file/directory does not exist or the icon cannot be retrieved from the system, this method returns
+     * null.  The returned image may be shared with other callers through the icon cache and must not be modified.
+     */
+    public static BufferedImage getIconBufferedImage(File file) {
+        if (exists(file)) {
+            BufferedImage thumbnail = getThumbnail(file);
+            return thumbnail != null ? thumbnail : getIconBufferedImage(file, getCacheKey(file, file.isDirectory()));
+        }
+        return null;
+    }
+
+    /**
+     * Looks up the thumbnail of the supplied file in the thumbnail cache, if one is in use.  The result is kept by path
+     * while the file and its thumbnail are unchanged, so repeated requests only read their attributes.
+     * @return The lookup, or null if no thumbnail cache is in use or the file is not a regular file.
+     */
+    private static ThumbnailLookup lookUpThumbnail(File file) {
+        ThumbnailCache cache = thumbnailCache;
+        if (cache == null) {
+            return null;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+        if (! attributes.isRegularFile()) {
+            return null;
+        }
+        IconCacheKey key = IconCacheKey.forPath(file);
+        long now = System.currentTimeMillis();
+        ThumbnailLookup lookup = thumbnailLookups.get(key);
+        if (lookup == null || ! lookup.isCurrent(attributes, now, THUMBNAIL_RECHECK_INTERVAL)) {
+            lookup = new ThumbnailLookup(attributes, cache.getThumbnail(file.toPath(), THUMBNAIL_SIZE), now);
+            thumbnailLookups.put(key, lookup);
+        }
+        return lookup;
+    }
+
+    /**
+     * Returns the thumbnail of the supplied file from the thumbnail cache, if one is in use and holds a valid thumbnail
+     * of the file, encoded in the supplied format.  PNG bytes are the thumbnail as it is stored; other formats are
+     * encoded from the decoded thumbnail and kept with the lookup.  Thumbnails belong to a single file, so they are not
+     * held by the icon caches.
+     */
+    private static byte[] getThumbnailBytes(File file, IconFormat format) {
+        ThumbnailLookup lookup = lookUpThumbnail(file);
+        if (lookup == null || ! lookup.hasThumbnail()) {
+            return null;
+        }
+        byte[] bytes = lookup.getBytes(format);
+        if (bytes == null) {
+            BufferedImage image = getThumbnail(file, lookup);
+            if (image == null) {
+                return null;
+            }
+            long start = IconMetrics.start();
+            bytes = format == IconFormat.QOI ? QoiCodec.encode(image) : RawArgbCodec.encode(image);
+            IconMetrics.record(IconStage.ENCODE, start, bytes.length);
+            IconCacheKey key = IconCacheKey.forPath(file);
+            ThumbnailLookup current = thumbnailLookups.peek(key);
+            if (current == null || current.getImage() != image) {
+                current = lookup.withImage(image);
+            }
+            thumbnailLookups.put(key, current.withBytes(format, bytes));
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the decoded thumbnail of the supplied file from the thumbnail cache.
+     * @see #getThumbnailBytes(File, IconFormat)
+     */
+    private static BufferedImage getThumbnail(File file) {
+        ThumbnailLookup lookup = lookUpThumbnail(file);
+        return lookup == null || ! lookup.hasThumbnail() ? null : getThumbnail(file, lookup);
+    }
+
+    /**
+     * Returns the decoded thumbnail held by the supplied lookup, decoding it and keeping the image with the lookup if
+     * it has not been decoded yet.
+     */
+    private static BufferedImage getThumbnail(File file, ThumbnailLookup lookup) {
+        BufferedImage image = lookup.getImage();
+        if (image != null) {
+            return image;
+        }
+        long start = IconMetrics.start();
+        try {
+            image = ImageIO.read(new ByteArrayInputStream(lookup.getBytes(IconFormat.PNG)));
+            if (image != null) {
+                image = PixelConverter.toIntArgb(image);
+                IconMetrics.record(IconStage.DECODE, start);
+                thumbnailLookups.put(IconCacheKey.forPath(file), lookup.withImage(image));
+            }
+            return image;
+        } catch (IOException e) {
+            IconMetrics.recordFailure(IconStage.DECODE, e);
+            logger.warning("Failed to decode thumbnail of " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the icon for the supplied file or directory at the supplied size, taken from the icon's pyramid.  The
+     * larger dimension of the image is the supplied size and the aspect ratio of the icon is preserved.
+     * @param file The file or directory for which an icon is requested.
+     * @param size The size of the requested icon, normally one of {@link IconPyramid#getStandardSizes()}.
+     * @return The icon at the requested size, or null if the supplied file/directory does not exist or the icon
+     * cannot be retrieved from the system.  The returned image may be shared with other callers through the icon
+     * caches and must not be modified.
+     */
+    public static BufferedImage getIconBufferedImage(File file, int size) {
+        if (! exists(file)) {
+            return null;
+        }
+        IconCacheKey key = getCacheKey(file, file.isDirectory());
+        BufferedImage bufferedImage = getIconBufferedImage(file, key);
+        return bufferedImage == null ? null : IconPyramid.getLevel(levelCache, key, bufferedImage, size);
+    }
+
+    /**
+     * Returns the pyramid of the icon for the supplied file or directory as a multi-resolution image, whose base image
+     * is the level at the supplied size.  Java2D draws the variant that best matches the scale of the display, so the
+     * icon stays sharp on high DPI displays.
+     * @param file The file or directory for which an icon is requested.
+     * @param size The size at which the icon is drawn on a display without scaling.
+     * @return A multi-resolution image holding the standard levels of the icon, or null if the supplied file/directory
+     * does not exist or the icon cannot be retrieved from the system.
+     */
+    public static BaseMultiResolutionImage getIconMultiResolutionImage(File file, int size) {
+        if (! exists(file)) {
+            return null;
+        }
+        IconCacheKey key = getCacheKey(file, file.isDirectory());
+        BufferedImage bufferedImage = getIconBufferedImage(file, key);
+        if (bufferedImage == null) {
+            return null;
+        }
+        BufferedImage base = IconPyramid.getLevel(levelCache, key, bufferedImage, size);
+        List<BufferedImage> levels = IconPyramid.getLevels(levelCache, key, bufferedImage);
+        int baseIndex = 0;
+        while (baseIndex < levels.size() && levels.get(baseIndex).getWidth() < base.getWidth()) {
+            baseIndex++;
+        }
+        if (baseIndex == levels.size() || levels.get(baseIndex) != base) {
+            levels.add(baseIndex, base);
+        }
+        return new BaseMultiResolutionImage(baseIndex, levels.toArray(new BufferedImage[0]));
+    }
+
+    /**
+     * Returns the cache key of the icon for the supplied file or directory, which queries the file system.
+     * @param file The file or directory for which an icon is requested.
+     * @return The cache key, or null if the file/directory does not exist.
+     */
+    public static IconCacheKey getCacheKey(File file) {
+        return exists(file) ? getCacheKey(file, file.isDirectory()) : null;
+    }
+
+    /**
+     * Returns the cache key the icon extractor assigns to the supplied file or directory, without checking that it
+     * exists.
+     */
+    static IconCacheKey getCacheKey(File file, boolean directory) {
+        return getIconExtractor().getCacheKey(file, directory);
+    }
+
+    /**
+     * Returns the icon cached under the supplied key, extracting it for the supplied file if it is not cached.  Unlike
+     * {@link #getIconBufferedImage(File)}, this method does not query the file system to resolve the key.
+     * @param file The file or directory for which an icon is requested.
+     * @param key The cache key of the file, as returned by {@link #getCacheKey(File)}.
+     * @return The icon, or null if the icon cannot be retrieved from the system.  The returned image may be shared
+     * with other callers through the icon cache and must not be modified.
+     */
+    public static BufferedImage getIconBufferedImage(File file, IconCacheKey key) {
+        BufferedImage image = bufferedImageCache.get(key);
+        if (image == null) {
+            image = join(loadIcon(file, key, Runnable::run));
+        }
+        return image;
+    }
+
+    /**
+     * Loads the icon for the supplied key on the supplied executor.  Concurrent requests for the same key share a
+     * single extraction: only the first request extracts the icon, and the others receive the same future.
+     */
+    private static CompletableFuture<BufferedImage> loadIcon(File file, IconCacheKey key, Executor executor) {
+        CompletableFuture<BufferedImage> future = new CompletableFuture<>();
+        CompletableFuture<BufferedImage> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    // Another request may have completed between the caller's cache miss and this load
+                    BufferedImage image = bufferedImageCache.peek(key);
+                    if (image == null) {
+                        image = loadStoredIcon(file, key);
+                        if (image == null) {
+                            image = extractIcon(file);
+                            storeIcon(file, key, image);
+                        }
+                        if (image != null) {
+                            image = interner.intern(image);
+                            bufferedImageCache.put(key, image);
+                            track(key);
+                        }
+                    }
+                    inFlight.remove(key, future);
+                    future.complete(image);
+                } catch (Throwable e) {
+                    IconMetrics.recordFailure(IconStage.EXTRACT, e);
+                    inFlight.remove(key, future);
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Returns a copy of the PNG bytes held for the supplied key by the persistent store, if one is in use, and adds
+     * them to the byte array cache.
+     */
+    private static byte[] loadStoredBytes(File file, IconCacheKey key) {
+        PersistentIconStore store = persistentStore;
+        if (store == null) {
+            return null;
+        }
+        byte[] bytes = store.getBytes(key.toString(), getStoredModified(file, key), getStoredSize(file, key));
+        if (bytes != null) {
+            byteArrayCache.put(key, bytes);
+            track(key);
+        }
+        return bytes;
+    }
+
+    /**
+     * Decodes the icon held for the supplied key by the persistent store, if one is in use.  Icons that cannot be
+     * decoded are removed from the store, so that they are extracted again.
+     */
+    private static BufferedImage loadStoredIcon(File file, IconCacheKey key) {
+        PersistentIconStore store = persistentStore;
+        if (store == null) {
+            return null;
+        }
+        byte[] bytes = byteArrayCache.peek(key);
+        if (bytes == null) {
+            bytes = loadStoredBytes(file, key);
+        }
+        if (bytes == null) {
+            return null;
+        }
+        long start = IconMetrics.start();
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+            if (image != null) {
+                image = PixelConverter.toIntArgb(image);
+                IconMetrics.record(IconStage.DECODE, start, 4L * image.getWidth() * image.getHeight());
+                return image;
+            }
+        } catch (IOException e) {
+            IconMetrics.recordFailure(IconStage.DECODE, e);
+            logger.warning("Failed to decode stored icon for " + key + ": " + e);
+        }
+        byteArrayCache.invalidate(key);
+        try {
+            store.remove(key.toString());
+        } catch (IOException e) {
+            logger.warning("Failed to remove stored icon for " + key + ": " + e);
+        }
+        return null;
+    }
+
+    /**
+     * Adds the PNG encoding of a newly extracted icon to the persistent store, if one is in use.
+     */
+    private static void storeIcon(File file, IconCacheKey key, BufferedImage image) {
+        PersistentIconStore store = persistentStore;
+        if (store == null || image == null) {
+            return;
+        }
+        try {
+            store.put(key.toString(), getStoredModified(file, key), getStoredSize(file, key),
+                    getEncodedPng(key, image));
+        } catch (IOException e) {
+            logger.warning("Failed to store icon for " + key + ": " + e);
+        }
+    }
+
+    /**
+     * Returns the value that a stored icon is validated against in place of a last modified time.  Icons cached by
+     * path belong to a single file and are validated against it.  Icons shared between files are validated against the
+     * extractor's fingerprint, so that they are extracted again once the host configuration changes.
+     */
+    private static long getStoredModified(File file, IconCacheKey key) {
+        return key.getType() == IconCacheKey.Type.PATH ? file.lastModified() : getIconExtractor().getFingerprint();
+    }
+
+    /**
+     * Returns the value that a stored icon is validated against in place of a size.  Icons shared between files are
+     * validated against a generation that advances every {@link #SHARED_ICON_MAX_AGE}, so that they are extracted
+     * again even when the extractor cannot detect that they changed.
+     */
+    private static long getStoredSize(File file, IconCacheKey key) {
+        if (key.getType() == IconCacheKey.Type.PATH) {
+            return file.length();
+        }
+        return System.currentTimeMillis() / SHARED_ICON_MAX_AGE;
+    }
+
+    /**
+     * Waits for the supplied future, rethrowing the unchecked exception it failed with, if any.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Asynchronously queries the file system for the icon that represents the supplied file or directory.  The
+     * request is executed on the executor returned by {@link #getExecutor()}, and shares the extraction with any
+     * concurrent request for a file with the same cache key.
+     * @param path The file or directory for which an icon is requested.
+     * @return A future that completes with the icon, or with null if the file does not exist or no icon could be
+     *         retrieved.  The image may be shared with other callers and must not be modified.
+     */
+    public static CompletableFuture<BufferedImage> getIconBufferedImageAsync(Path path) {
+        File file = path.toFile();
+        Executor executor = getExecutor();
+        return getCacheKeyAsync(file, executor).thenCompose(key -> key == null
+                ? CompletableFuture.completedFuture(null) : getIconBufferedImageAsync(file, key));
+    }
+
+    /**
+     * Returns the icon cached under the supplied key, or asynchronously extracts it for the supplied file on the
+     * executor returned by {@link #getExecutor()}, sharing the extraction with any concurrent request for the key.
+     * @param file The file or directory for which an icon is requested.
+     * @param key The cache key of the file, as returned by {@link #getCacheKey(File)}.
+     * @return A future that completes with the icon, or with null if no icon could be retrieved.  The image may be
+     *         shared with other callers and must not be modified.
+     */
+    public static CompletableFuture<BufferedImage> getIconBufferedImageAsync(File file, IconCacheKey key) {
+        BufferedImage cached = bufferedImageCache.get(key);
+        return cached != null ? CompletableFuture.completedFuture(cached) : loadIcon(file, key, getExecutor());
+    }
+
+    /**
+     * Asynchronously queries the file system for the icon that represents the supplied file or directory and returns
+     * it as PNG bytes.
+     * @param path The file or directory for which an icon is requested.
+     * @return A future that completes with the PNG bytes, or with null if the file does not exist or no icon could be
+     *         retrieved.  The array may be shared with other callers and must not be modified.
+     * @see #getIconBufferedImageAsync(Path)
+     */
+    public static CompletableFuture<byte[]> getIconByteArrayAsync(Path path) {
+        File file = path.toFile();
+        Executor executor = getExecutor();
+        return getCacheKeyAsync(file, executor).thenCompose(key -> {
+            if (key == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            byte[] cached = byteArrayCache.get(key);
+            if (cached == null) {
+                cached = loadStoredBytes(file, key);
+            }
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+            return loadIcon(file, key, executor).thenApplyAsync(image -> image == null ? null
+                    : getEncodedPng(key, image), executor);
+        });
+    }
+
+    /**
+     * Asynchronously queries the file system for the icons of all the supplied files and directories, and passes each
+     * result to the supplied consumer as soon as it is available, so that icons can be displayed while the remaining
+     * icons are extracted.  The consumer is called from the executor threads, one result at a time, in the order the
+     * results complete, which is not necessarily the order of the supplied paths.
+     * @param paths The files and directories for which icons are requested.
+     * @param consumer The consumer that receives the result for each path.
+     * @return A future that completes once every result has been passed to the consumer.
+     */
+    public static CompletableFuture<Void> getIconsAsync(Collection<? extends Path> paths,
+                                                        Consumer<? super IconResult> consumer) {
+        Object lock = new Object();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[paths.size()];
+        int i = 0;
+        for (Path path : paths) {
+            futures[i++] = getIconBufferedImageAsync(path).handle((image, error) -> {
+                IconResult result = new IconResult(path, image,
+                        error instanceof CompletionException ? error.getCause() : error);
+                synchronized (lock) {
+                    consumer.accept(result);
+                }
+                return null;
+            });
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * Publishes the icons of every file and directory in the tree below the supplied root, with default options.
+     * @see #streamIcons(Path, IconStreamOptions)
+     */
+    public static Flow.Publisher<IconResult> streamIcons(Path root) {
+        return streamIcons(root, new IconStreamOptions());
+    }
+
+    /**
+     * Publishes the icons of every file and directory in the tree below the supplied root.  Each subscriber walks the
+     * tree independently while the icons are extracted on the executor, and receives a result per entry in the order
+     * the results complete.  The walk only runs ahead of the subscriber's demand by the maximum number of results in
+     * flight, so streaming a tree of any size uses a bounded amount of memory.  Entries that cannot be read are
+     * published as results holding the error.
+     * @param root The root of the tree to stream the icons of.
+     * @param options The options controlling the walk and the contents of the results.
+     * @return A publisher of the icon results of the entries of the tree.
+     */
+    public static Flow.Publisher<IconResult> streamIcons(Path root, IconStreamOptions options) {
+        return new IconStreamPublisher(root, options);
+    }
+
+    /**
+     * Resolves the cache key of the supplied file on the executor, since doing so queries the file system.
+     * @return A future that completes with the cache key, or with null if the file does not exist.
+     */
+    private static CompletableFuture<IconCacheKey> getCacheKeyAsync(File file, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> getCacheKey(file), executor);
+    }
+
+    /**
+     * Returns the executor that runs asynchronous icon requests.  Unless an executor has been set, a pool with one
+     * daemon thread per available processor, and at least two so a slow extraction cannot hold up every other request,
+     * is created on first use.
+     * @return The executor for asynchronous icon requests.
+     */
+    public static Executor getExecutor() {
+        Executor current = executor;
+        if (current == null) {
+            synchronized (IconEngine.class) {
+                current = executor;
+                if (current == null) {
+                    int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+                    AtomicInteger threadCount = new AtomicInteger();
+                    current = Executors.newFixedThreadPool(threads, runnable -> {
+                        Thread thread = new Thread(runnable, "zenengine-icon-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Sets the executor that runs asynchronous icon requests.  The previous executor is not shut down.
+     * @param iconExecutor The executor to use, or null to use a default pool.
+     */
+    public static synchronized void setExecutor(Executor iconExecutor) {
+        executor = iconExecutor;
+    }
+
+    /**
+     * Runs asynchronous icon requests on virtual threads, one per request.  Virtual threads require Java 21 or
+     * later.
+     * @throws UnsupportedOperationException if the runtime does not support virtual threads.
+     */
+    public static void useVirtualThreads() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            setExecutor((Executor) factory.invoke(null));
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+        }
+    }
+
+    /**
+     * Opens the persistent icon store for the current icon extractor in the default store directory and uses it from
+     * now on.  The store is closed when the virtual machine shuts down.
+     * @return The opened store.
+     * @throws IOException if the store cannot be opened, for example because another process is using it.
+     * @see PersistentIconStore#getDefaultDirectory()
+     */
+    public static PersistentIconStore usePersistentStore() throws IOException {
+        Path directory = PersistentIconStore.getDefaultDirectory().resolve(getIconExtractor().getName());
+        PersistentIconStore store = PersistentIconStore.open(directory);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                store.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close icon store: " + e);
+            }
+        }, "zenengine-store-shutdown"));
+        setPersistentStore(store);
+        return store;
+    }
+
+    /**
+     * Sets the persistent store that icons are loaded from before they are extracted, and that newly extracted icons
+     * are added to.  The store holds the icons of a single extractor, so a store should not be shared between
+     * extractors.  The previous store is not closed.
+     * @param store The store to use, or null to stop using a persistent store.
+     */
+    public static void setPersistentStore(PersistentIconStore store) {
+        persistentStore = store;
+    }
+
+    /**
+     * @return The persistent store in use, or null if icons are not persisted.
+     */
+    public static PersistentIconStore getPersistentStore() {
+        return persistentStore;
+    }
+
+    /**
+     * Returns a handle on the icon for the supplied file or directory held in the off heap store, extracting the icon
+     * and copying it into the store if it is not held yet.  Icons extracted for a handle are not added to the
+     * BufferedImage cache, so the heap only holds the icons that are materialised from their handles.
+     * @param file The file or directory for which an icon is requested.
+     * @return A handle on the icon, or null if the file does not exist, no icon could be retrieved or the icon does not
+     * fit in the store.  The handle becomes invalid if the store evicts the icon, after which the icon should be
+     * requested again.
+     * @throws IllegalStateException if no off heap store is in use.
+     */
+    public static OffHeapIconStore.Handle getIconHandle(File file) {
+        OffHeapIconStore<IconCacheKey> store = offHeapStore;
+        if (store == null) {
+            throw new IllegalStateException("No off heap icon store is in use");
+        }
+        if (! exists(file)) {
+            return null;
+        }
+        IconCacheKey key = getCacheKey(file, file.isDirectory());
+        OffHeapIconStore.Handle handle = store.get(key);
+        if (handle != null) {
+            return handle;
+        }
+        // Extract without adding the icon to the BufferedImage cache, so that its pixels are only held off heap
+        BufferedImage image = bufferedImageCache.peek(key);
+        if (image == null) {
+            image = loadStoredIcon(file, key);
+        }
+        if (image == null) {
+            image = extractIcon(file);
+            storeIcon(file, key, image);
+        }
+        if (image == null) {
+            return null;
+        }
+        handle = store.put(key, image);
+        if (handle != null) {
+            track(key);
+        }
+        return handle;
+    }
+
+    /**
+     * Sets the store that {@link #getIconHandle(File)} holds icon pixels in, outside the Java heap.  The previous store
+     * is cleared.
+     * @param store The store to use, or null to stop using an off heap store.
+     */
+    public static synchronized void setOffHeapStore(OffHeapIconStore<IconCacheKey> store) {
+        OffHeapIconStore<IconCacheKey> previous = offHeapStore;
+        if (previous != null && previous != store) {
+            previous.clear();
+        }
+        offHeapStore = store;
+        if (store != null) {
+            store.setEvictionListener(IconEngine::evicted);
+            IconMetrics.registerCache("offHeap", store::toString);
+        }
+    }
+
+    /**
+     * @return The off heap store in use, or null if icons are only held on the heap.
+     */
+    public static OffHeapIconStore<IconCacheKey> getOffHeapStore() {
+        return offHeapStore;
+    }
+
+    /**
+     * Serves the thumbnails that the desktop keeps for images, videos and documents in the user's freedesktop.org
+     * thumbnail cache in place of their icons.
+     * @param generateMissing Indicates whether missing thumbnails of images are generated into the cache on the
+     *                        executor, so that later requests find them.
+     * @return The thumbnail cache in use.
+     * @see ThumbnailCache
+     */
+    public static ThumbnailCache useThumbnailCache(boolean generateMissing) {
+        ThumbnailCache cache = ThumbnailCache.getDefault();
+        if (generateMissing) {
+            cache.setGenerator(getExecutor());
+        }
+        setThumbnailCache(cache);
+        return cache;
+    }
+
+    /**
+     * Sets the thumbnail cache that is looked up before the icon extractor.  While a cache is in use, the thumbnail of
+     * a file is returned by {@link #getIconByteArray(File)}, {@link #getIconBytes(File, IconFormat)} in every format
+     * and {@link #getIconBufferedImage(File)} in place of its icon whenever the cache holds a valid thumbnail of the
+     * file.  The PNG methods return the thumbnail's bytes without decoding them.  The other methods, including those
+     * that take a cache key or a size, the asynchronous methods, icon handles and the JavaFX and server modules,
+     * always return icons.
+     * <p>
+     * The result of each lookup is kept for the file's path while the file and its thumbnail are unchanged, so that
+     * repeated requests do not read the thumbnail again.
+     * @param cache The thumbnail cache to use, or null to always return icons.
+     */
+    public static void setThumbnailCache(ThumbnailCache cache) {
+        thumbnailCache = cache;
+        thumbnailLookups.invalidateAll();
+    }
+
+    /**
+     * @return The thumbnail cache in use, or null if thumbnails are not served.
+     */
+    public static ThumbnailCache getThumbnailCache() {
+        return thumbnailCache;
+    }
+
+    /**
+     * Starts watching the files whose icons are cached by path, and evicts their icons from the caches when they
+     * change.  The invalidator runs until the virtual machine exits.
+     * @return The started invalidator.
+     * @throws IOException if the file system cannot be watched.
+     * @see IconCacheInvalidator
+     */
+    public static IconCacheInvalidator useCacheInvalidator() throws IOException {
+        IconCacheInvalidator invalidator = new IconCacheInvalidator();
+        setCacheInvalidator(invalidator);
+        return invalidator;
+    }
+
+    /**
+     * Sets the invalidator that is told about every icon cached by path, so that it can evict the icon once its file
+     * changes.  The previous invalidator is not closed.
+     * @param invalidator The invalidator to use, or null to stop watching files.
+     */
+    public static void setCacheInvalidator(IconCacheInvalidator invalidator) {
+        cacheInvalidator = invalidator;
+    }
+
+    /**
+     * @return The invalidator in use, or null if files are not watched.
+     */
+    public static IconCacheInvalidator getCacheInvalidator() {
+        return cacheInvalidator;
+    }
+
+    /**
+     * Passes an icon that was just cached by path to the cache invalidator, if one is in use.  Icons cached by
+     * extension or shared by directories do not belong to a single file, so changes to files never invalidate them.
+     */
+    private static void track(IconCacheKey key) {
+        IconCacheInvalidator invalidator = cacheInvalidator;
+        if (invalidator != null && key.getType() == IconCacheKey.Type.PATH) {
+            invalidator.track(new File(key.getValue()), key);
+        }
+    }
+
+    /**
+     * Stops tracking the file of an icon cached by path once a cache evicts the last form of the icon.  The levels of
+     * its pyramid, and the icons derived from it by the cache listeners, are dropped too, since nothing would evict
+     * them once their file changes.
+     */
+    private static void evicted(IconCacheKey key) {
+        IconCacheInvalidator invalidator = cacheInvalidator;
+        if (invalidator == null || key.getType() != IconCacheKey.Type.PATH || isCached(key)) {
+            return;
+        }
+        invalidator.untrack(key);
+        levelCache.invalidateIf(level -> level.getKey().equals(key));
+        for (IconCacheListener listener : cacheListeners) {
+            listener.invalidated(key);
+        }
+        if (isCached(key)) {
+            // Cached again by another request while the file was being untracked
+            track(key);
+        }
+    }
+
+    /**
+     * Checks whether any cache, or the off heap store, holds a form of the icon cached under the supplied key.
+     */
+    private static boolean isCached(IconCacheKey key) {
+        if (bufferedImageCache.peek(key) != null) {
+            return true;
+        }
+        for (IconCache<IconCacheKey, byte[]> cache : byteCaches.values()) {
+            if (cache.peek(key) != null) {
+                return true;
+            }
+        }
+        OffHeapIconStore<IconCacheKey> offHeap = offHeapStore;
+        return offHeap != null && offHeap.contains(key);
+    }
+
+    /**
+     * Sets the encoder used to produce the PNG encodings returned by {@link #getIconByteArray(File)}, which selects
+     * the deflate level and row filtering.  Encodings that are already cached or stored are not encoded again.
+     * @param encoder The encoder to use.
+     */
+    public static void setPngEncoder(PngEncoder encoder) {
+        if (encoder == null) {
+            throw new IllegalArgumentException("Encoder must not be null");
+        }
+        pngEncoder = encoder;
+    }
+
+    public static PngEncoder getPngEncoder() {
+        return pngEncoder;
+    }
+
+    /**
+     * Extracts the icon for the supplied file from the icon extractor, bypassing the icon cache.
+     */
+    private static BufferedImage extractIcon(File file) {
+        long start = IconMetrics.start();
+        BufferedImage image = getIconExtractor().getIcon(file);
+        IconMetrics.record(IconStage.EXTRACT, start);
+        if (image == null) {
+            IconMetrics.recordFailure(IconStage.EXTRACT, IconMetrics.NO_ICON);
+        }
+        return image;
+    }
+
+    /**
+     * Checks whether the supplied file exists, recording a failure in the icon metrics if it does not.
+     */
+    private static boolean exists(File file) {
+        if (file.exists()) {
+            return true;
+        }
+        IconMetrics.recordFailure(IconStage.EXTRACT, IconMetrics.NOT_FOUND);
+        return false;
+    }
+
+    /**
+     * Returns the icon extractor used by the engine.  Unless an extractor has been set explicitly, the extractor
+     * named by the {@code zenengine.extractor} system property is used, and failing that the first installed
+     * extractor that supports the host system.
+     * @return The icon extractor used by the engine.
+     * @throws UnsupportedOSException if no installed icon extractor supports the host system.
+     */
+    public static IconExtractor getIconExtractor() {
+        IconExtractor extractor = iconExtractor;
+        if (extractor == null) {
+            synchronized (IconEngine.class) {
+                extractor = iconExtractor;
+                if (extractor == null) {
+                    extractor = selectIconExtractor();
+                    iconExtractor = extractor;
+                }
+            }
+        }
+        return extractor;
+    }
+
+    /**
+     * Sets the icon extractor used by the engine and clears the icon caches, since the cached icons were produced
+     * by the previous extractor.
+     * @param extractor The icon extractor to use, or null to select an extractor automatically.
+     */
+    public static synchronized void setIconExtractor(IconExtractor extractor) {
+        iconExtractor = extractor;
+        clearCaches();
+    }
+
+    /**
+     * Finds the installed icon extractor with the supplied name, whether or not it supports the host system.
+     * @param name The name of the requested icon extractor.
+     * @return The icon extractor with the supplied name, or null if no such extractor is installed.
+     */
+    public static IconExtractor findIconExtractor(String name) {
+        for (IconExtractor extractor : ServiceLoader.load(IconExtractor.class, IconEngine.class.getClassLoader())) {
+            if (extractor.getName().equals(name)) {
+                return extractor;
+            }
+        }
+        return null;
+    }
+
+    private static IconExtractor selectIconExtractor() {
+        String name = System.getProperty("zenengine.extractor");
+        if (name != null) {
+            IconExtractor extractor = findIconExtractor(name);
+            if (extractor != null) {
+                return extractor;
+            }
+            logger.warning("No icon extractor named " + name + " is installed");
+        }
+        for (IconExtractor extractor : ServiceLoader.load(IconExtractor.class, IconEngine.class.getClassLoader())) {
+            if (extractor.isSupported()) {
+                return extractor;
+            }
+        }
+        throw new UnsupportedOSException("No icon extractor supports this operating system: " + os);
+    }
+
+    /**
+     * @return The cache holding the BufferedImages returned by {@link #getIconBufferedImage(File)}.  The maximum
+     * weight of the cache is measured in bytes of pixel data.
+     */
+    public static IconCache<IconCacheKey, BufferedImage> getBufferedImageCache() {
+        return bufferedImageCache;
+    }
+
+    /**
+     * @return The cache holding the PNG encoded icons returned by {@link #getIconByteArray(File)}.  The maximum
+     * weight of the cache is measured in bytes.
+     */
+    public static IconCache<IconCacheKey, byte[]> getByteArrayCache() {
+        return byteArrayCache;
+    }
+
+    /**
+     * @param format The format of the encoded icons.
+     * @return The cache holding the icons returned by {@link #getIconBytes(File, IconFormat)} in the supplied format.
+     * The maximum weight of the cache is measured in bytes.
+     */
+    public static IconCache<IconCacheKey, byte[]> getByteCache(IconFormat format) {
+        return byteCaches.get(format);
+    }
+
+    /**
+     * @return The cache holding the scaled levels of icon pyramids returned by
+     * {@link #getIconBufferedImage(File, int)}.  The maximum weight of the cache is measured in bytes of pixel data.
+     */
+    public static IconCache<IconPyramid.Level, BufferedImage> getLevelCache() {
+        return levelCache;
+    }
+
+    /**
+     * @return The interner that deduplicates extracted icons by their pixels, which reports how many icons were shared
+     * and how much memory that saved.
+     */
+    public static IconInterner getInterner() {
+        return interner;
+    }
+
+    /**
+     * Removes the icon cached for the supplied key from every icon cache, including its pyramid levels and any stored
+     * copy, so that the next request for it queries the host system again.
+     * @param key The cache key of the icon to remove.
+     */
+    public static void invalidate(IconCacheKey key) {
+        bufferedImageCache.invalidate(key);
+        for (IconCache<IconCacheKey, byte[]> cache : byteCaches.values()) {
+            cache.invalidate(key);
+        }
+        levelCache.invalidateIf(level -> level.getKey().equals(key));
+        thumbnailLookups.invalidate(key);
+        OffHeapIconStore<IconCacheKey> offHeap = offHeapStore;
+        if (offHeap != null) {
+            offHeap.remove(key);
+        }
+        PersistentIconStore store = persistentStore;
+        if (store != null) {
+            try {
+                store.remove(key.toString());
+            } catch (IOException e) {
+                logger.warning("Failed to remove stored icon for " + key + ": " + e);
+            }
+        }
+        IconCacheInvalidator invalidator = cacheInvalidator;
+        if (invalidator != null) {
+            invalidator.untrack(key);
+        }
+        for (IconCacheListener listener : cacheListeners) {
+            listener.invalidated(key);
+        }
+    }
+
+    /**
+     * Removes every icon from the icon caches, so that subsequent requests query the host system again.
+     */
+    public static void clearCaches() {
+        bufferedImageCache.invalidateAll();
+        for (IconCache<IconCacheKey, byte[]> cache : byteCaches.values()) {
+            cache.invalidateAll();
+        }
+        levelCache.invalidateAll();
+        thumbnailLookups.invalidateAll();
+        interner.clear();
+        OffHeapIconStore<IconCacheKey> offHeap = offHeapStore;
+        if (offHeap != null) {
+            offHeap.clear();
+        }
+        IconCacheInvalidator invalidator = cacheInvalidator;
+        if (invalidator != null) {
+            invalidator.untrackAll();
+        }
+        for (IconCacheListener listener : cacheListeners) {
+            listener.cleared();
+        }
+    }
+
+    /**
+     * Adds a listener that is told whenever an icon is invalidated or the icon caches are cleared, so that caches
+     * built on top of the engine's, such as those of the JavaFX adapter, can drop the icons too.
+     * @param listener The listener to add.
+     */
+    public static void addCacheListener(IconCacheListener listener) {
+        cacheListeners.add(listener);
+    }
+
+    public static void removeCacheListener(IconCacheListener listener) {
+        cacheListeners.remove(listener);
+    }
+
+}
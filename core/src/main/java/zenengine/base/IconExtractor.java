@@ -0,0 +1,77 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.base;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+
+/**
+ * A service that extracts the icon a host system uses to represent a file or directory.  Implementations are
+ * discovered through {@link java.util.ServiceLoader}, and {@link IconEngine} uses the first implementation that
+ * reports itself as supported on the host system unless an extractor is selected explicitly.
+ * <p>
+ * Implementations must be safe to call from multiple threads, and must be cheap to instantiate, since every provider
+ * is instantiated when the engine selects an extractor.  Any native libraries should only be loaded once the
+ * extractor is used.
+ */
+public interface IconExtractor {
+
+    /**
+     * @return A short, unique name for the extractor, which can be used to select it through
+     * {@link IconEngine#findIconExtractor(String)} or the {@code zenengine.extractor} system property.
+     */
+    String getName();
+
+    /**
+     * Indicates whether this extractor can serve the icons of the host system.  Only supported extractors are
+     * selected automatically; an extractor that is selected explicitly is used regardless.
+     * @return True if the extractor can serve icons on the host system.
+     */
+    boolean isSupported();
+
+    /**
+     * Extracts the icon that represents the supplied file or directory.
+     * @param file An existing file or directory for which an icon is requested.
+     * @return A BufferedImage containing the icon, or null if no icon could be extracted.
+     */
+    BufferedImage getIcon(File file);
+
+    /**
+     * Returns the key under which the icon of the supplied file or directory is cached.  Files that share a key share
+     * one icon, so the key must capture everything the extractor uses to choose the icon.  The default implementation
+     * keys files by their extension, as described by {@link IconCacheKey}.
+     * @param file The file or directory for which a cache key is requested.
+     * @param directory Indicates whether the supplied file is a directory.
+     * @return The cache key under which the icon for the supplied file is cached.
+     */
+    default IconCacheKey getCacheKey(File file, boolean directory) {
+        return IconCacheKey.forFile(file, directory);
+    }
+
+    /**
+     * Returns a fingerprint of the host configuration that the icons shared between files depend on, such as the icon
+     * theme and the file associations.  Shared icons kept by the persistent store are only reused while the
+     * fingerprint is unchanged.  The default implementation returns 0, for extractors that cannot detect such changes,
+     * whose stored shared icons are then only reused for a limited time.
+     * @return The fingerprint of the host configuration.
+     */
+    default long getFingerprint() {
+        return 0;
+    }
+
+}
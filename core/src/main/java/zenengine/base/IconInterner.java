@@ -0,0 +1,254 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.base;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Deduplicates icons by their pixel content, so that every file whose icon has the same pixels shares a single image
+ * instance, however many cache keys the icon is cached under.  Images are identified by a 64 bit hash of their size,
+ * type and pixels, and a candidate is only replaced by an interned image after their pixels have been compared, so a
+ * hash collision never substitutes a different icon.
+ * <p>
+ * The interner only holds weak references to its images, so an interned image is discarded once no cache or caller
+ * refers to it.  Interning is thread safe; concurrent inserts of the same icon all receive the first image inserted.
+ */
+public final class IconInterner {
+
+    private final ConcurrentHashMap<Long, ImageReference> images = new ConcurrentHashMap<>();
+    private final ReferenceQueue<BufferedImage> collected = new ReferenceQueue<>();
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    private static final ThreadLocal<int[][]> rows = ThreadLocal.withInitial(() -> new int[2][0]);
+
+    /**
+     * A weak reference to an interned image that remembers its hash, so the map entry can be removed once the image
+     * has been collected.
+     */
+    private static final class ImageReference extends WeakReference<BufferedImage> {
+
+        private final long hash;
+
+        private ImageReference(BufferedImage image, long hash, ReferenceQueue<BufferedImage> queue) {
+            super(image, queue);
+            this.hash = hash;
+        }
+
+    }
+
+    /**
+     * Returns the interned image with the same pixels as the supplied image, interning the supplied image if there is
+     * none.
+     * @param image The image to intern.
+     * @return The interned image with the same pixels as the supplied image, which is the supplied image itself if it
+     * is the first of its kind.  If another image with different pixels has the same hash, the supplied image is
+     * returned without being interned.
+     */
+    public BufferedImage intern(BufferedImage image) {
+        expungeCollected();
+        lookups.increment();
+        Long hash = hash(image);
+        ImageReference reference = null;
+        while (true) {
+            ImageReference existing = images.get(hash);
+            if (existing == null) {
+                if (reference == null) {
+                    reference = new ImageReference(image, hash, collected);
+                }
+                if (images.putIfAbsent(hash, reference) == null) {
+                    return image;
+                }
+                continue;
+            }
+            BufferedImage interned = existing.get();
+            if (interned == null) {
+                images.remove(hash, existing);
+            } else if (interned == image) {
+                return image;
+            } else if (samePixels(interned, image)) {
+                duplicates.increment();
+                bytesSaved.add(4L * image.getWidth() * image.getHeight());
+                return interned;
+            } else {
+                collisions.increment();
+                return image;
+            }
+        }
+    }
+
+    /**
+     * Removes the entries of images that have been garbage collected.
+     */
+    private void expungeCollected() {
+        ImageReference reference;
+        while ((reference = (ImageReference) collected.poll()) != null) {
+            images.remove(reference.hash, reference);
+        }
+    }
+
+    /**
+     * Computes a 64 bit hash of the size, type and pixels of the supplied image.  Pixels are combined two at a time
+     * with a multiply and rotate step, and the result is mixed with the MurmurHash3 finaliser.
+     */
+    static long hash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[][] buffers = rows.get();
+        int[] row = buffers[0] = rowBuffer(buffers[0], width);
+        long hash = 0x9E3779B97F4A7C15L ^ ((long) width << 32 | height) ^ ((long) image.getType() << 48);
+        for (int y = 0; y < height; y++) {
+            readRow(image, y, row);
+            int x = 0;
+            for (; x + 1 < width; x += 2) {
+                hash = mix(hash, (long) row[x] << 32 | (row[x + 1] & 0xFFFFFFFFL));
+            }
+            if (x < width) {
+                hash = mix(hash, row[x] & 0xFFFFFFFFL);
+            }
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        return Long.rotateLeft(hash ^ value * 0xC2B2AE3D27D4EB4FL, 31) * 0x9E3779B97F4A7C15L;
+    }
+
+    private static boolean samePixels(BufferedImage a, BufferedImage b) {
+        int width = a.getWidth();
+        int height = a.getHeight();
+        if (width != b.getWidth() || height != b.getHeight() || a.getType() != b.getType()) {
+            return false;
+        }
+        int[][] buffers = rows.get();
+        int[] rowA = buffers[0] = rowBuffer(buffers[0], width);
+        int[] rowB = buffers[1] = rowBuffer(buffers[1], width);
+        for (int y = 0; y < height; y++) {
+            readRow(a, y, rowA);
+            readRow(b, y, rowB);
+            for (int x = 0; x < width; x++) {
+                if (rowA[x] != rowB[x]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int[] rowBuffer(int[] buffer, int width) {
+        return buffer.length >= width ? buffer : new int[width];
+    }
+
+    /**
+     * Reads a row of pixels through the raster for int packed images, and through getRGB for other image types.
+     */
+    private static void readRow(BufferedImage image, int y, int[] row) {
+        WritableRaster raster = image.getRaster();
+        int type = image.getType();
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_ARGB_PRE)
+                && raster.getDataBuffer().getDataType() == DataBuffer.TYPE_INT) {
+            raster.getDataElements(0, y, image.getWidth(), 1, row);
+        } else {
+            image.getRGB(0, y, image.getWidth(), 1, row, 0, image.getWidth());
+        }
+    }
+
+    /**
+     * @return The number of distinct icons currently interned.
+     */
+    public int size() {
+        expungeCollected();
+        return images.size();
+    }
+
+    /**
+     * Removes every interned icon.  Images already returned remain valid but are no longer shared with new icons.
+     */
+    public void clear() {
+        images.clear();
+    }
+
+    /**
+     * @return The number of images passed to {@link #intern(BufferedImage)}.
+     */
+    public long getInternCount() {
+        return lookups.sum();
+    }
+
+    /**
+     * @return The number of images that were replaced by an interned image with the same pixels.
+     */
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    /**
+     * @return The number of images that had the hash of an interned image with different pixels.
+     */
+    public long getCollisionCount() {
+        return collisions.sum();
+    }
+
+    /**
+     * @return The number of bytes of ARGB pixel data that did not have to be retained because an interned image was
+     * shared instead.
+     */
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    /**
+     * @return The number of images interned per image retained, or 1.0 if no image has been interned yet.
+     */
+    public double getDeduplicationRatio() {
+        long internCount = getInternCount();
+        long retained = internCount - getDuplicateCount();
+        return retained == 0 ? 1.0 : (double) internCount / retained;
+    }
+
+    /**
+     * Resets all counters to zero.
+     */
+    public void resetStats() {
+        lookups.reset();
+        duplicates.reset();
+        collisions.reset();
+        bytesSaved.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("interned=%d, distinct=%d, duplicates=%d, bytesSaved=%d, ratio=%.3f", getInternCount(),
+                size(), getDuplicateCount(), getBytesSaved(), getDeduplicationRatio());
+    }
+
+}
@@ -0,0 +1,32 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package zenengine.base;
+
+
+/**
+ * The priority of a request made through an {@link IconScheduler}.  Requests with a higher priority are always started
+ * before requests with a lower priority, so the constants are declared from the most to the least urgent.
+ */
+public enum IconPriority {
+    /** The icon is on screen and the user is waiting for it. */
+    VISIBLE,
+    /** The icon is just outside the viewport, such as the rows a page above or below the visible rows. */
+    NEAR_VISIBLE,
+    /** The icon is prefetched speculatively and can wait for every other request. */
+    BACKGROUND
+}
@@ -0,0 +1,159 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.base;
+
+import zenengine.metrics.IconMetrics;
+import zenengine.metrics.IconStage;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+
+/**
+ * Builds the scaled levels of an icon at the standard icon sizes.  Each level is downsampled from a larger standard
+ * level rather than from the full size icon, so a whole pyramid is built with one chain of high quality reductions,
+ * and a level is only built when it is first requested.  Levels are cached under a {@link Level} key in their own
+ * cache, so they are shared between callers and evicted independently of the full size icon.
+ */
+public final class IconPyramid {
+
+    private static final int[] STANDARD_SIZES = {16, 24, 32, 48, 64, 128, 256};
+
+    private IconPyramid() {
+    }
+
+    /**
+     * The cache key of a single level of an icon pyramid.
+     */
+    public static final class Level {
+
+        private final IconCacheKey key;
+        private final int size;
+
+        public Level(IconCacheKey key, int size) {
+            this.key = key;
+            this.size = size;
+        }
+
+        public IconCacheKey getKey() {
+            return key;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (! (o instanceof Level)) {
+                return false;
+            }
+            Level other = (Level) o;
+            return size == other.size && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(key, size);
+        }
+
+        @Override
+        public String toString() {
+            return key + "@" + size;
+        }
+
+    }
+
+    /**
+     * @return The standard icon sizes, in ascending order.
+     */
+    public static int[] getStandardSizes() {
+        return STANDARD_SIZES.clone();
+    }
+
+    /**
+     * Returns the level of the supplied icon at the requested size, building it and any larger levels it is reduced
+     * from if they are not cached.  The larger dimension of the level is the requested size, and the aspect ratio of
+     * the icon is preserved.
+     * @param cache The cache holding the levels of icon pyramids.
+     * @param key The cache key of the icon.
+     * @param source The full size icon.
+     * @param size The requested size of the level.
+     * @return The level of the requested size, which is the full size icon itself if it already has that size.
+     */
+    public static BufferedImage getLevel(IconCache<Level, BufferedImage> cache, IconCacheKey key,
+                                         BufferedImage source, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Invalid size: " + size);
+        }
+        int sourceSize = Math.max(source.getWidth(), source.getHeight());
+        if (size == sourceSize) {
+            return source;
+        }
+        Level level = new Level(key, size);
+        BufferedImage image = cache.get(level);
+        if (image == null) {
+            int parentSize = getParentSize(size, sourceSize);
+            BufferedImage parent = parentSize == sourceSize ? source : getLevel(cache, key, source, parentSize);
+            int[] dimensions = ImageScaler.fitSize(source.getWidth(), source.getHeight(), size, size, true);
+            long start = IconMetrics.start();
+            image = ImageScaler.scale(parent, dimensions[0], dimensions[1], true);
+            IconMetrics.record(IconStage.SCALE, start, 4L * image.getWidth() * image.getHeight());
+            cache.put(level, image);
+        }
+        return image;
+    }
+
+    /**
+     * Returns every level of the supplied icon at the standard sizes no larger than the icon, followed by the icon
+     * itself if it is not a standard size.
+     * @return The levels of the icon in ascending order of size.
+     */
+    public static List<BufferedImage> getLevels(IconCache<Level, BufferedImage> cache, IconCacheKey key,
+                                                BufferedImage source) {
+        int sourceSize = Math.max(source.getWidth(), source.getHeight());
+        List<BufferedImage> levels = new ArrayList<>(STANDARD_SIZES.length + 1);
+        for (int size : STANDARD_SIZES) {
+            if (size < sourceSize) {
+                levels.add(getLevel(cache, key, source, size));
+            }
+        }
+        levels.add(source);
+        return levels;
+    }
+
+    /**
+     * Returns the size of the level that the level of the supplied size is reduced from: the smallest standard size at
+     * least twice as large, so that every level is filtered from at least twice its resolution, or the full size when
+     * no such standard size is smaller than the full size icon.  Levels larger than the full size icon are enlarged
+     * from the full size icon directly.
+     */
+    public static int getParentSize(int size, int sourceSize) {
+        for (int standardSize : STANDARD_SIZES) {
+            if (standardSize >= size * 2) {
+                return standardSize < sourceSize ? standardSize : sourceSize;
+            }
+        }
+        return sourceSize;
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package zenengine.base;
+
+import zenengine.metrics.IconMetrics;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A handle on an icon request submitted to an {@link IconScheduler}.  While the request is waiting in the queue, it
+ * can be moved to another priority or cancelled, for example when the row it was made for scrolls in or out of view.
+ * Once a worker has started the request, it runs to completion.
+ */
+public final class IconRequest {
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+
+    private final IconScheduler scheduler;
+    private final Path path;
+    private final CompletableFuture<BufferedImage> future = new CompletableFuture<>();
+    private final AtomicInteger state = new AtomicInteger(QUEUED);
+    private final long queuedAt = IconMetrics.start();
+
+    /**
+     * The queue entry that currently represents this request.  Entries replaced by a change of priority stay in the
+     * queue and are skipped by the workers, which is cheaper than removing them from the heap.
+     */
+    private volatile IconScheduler.Entry entry;
+
+    IconRequest(IconScheduler scheduler, Path path) {
+        this.scheduler = scheduler;
+        this.path = path;
+        future.whenComplete((image, error) -> {
+            if (future.isCancelled()) {
+                cancel();
+            }
+        });
+    }
+
+    /**
+     * @return The file or directory for which the icon was requested.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return The priority the request is queued at, or was last queued at if it has already started.
+     */
+    public IconPriority getPriority() {
+        return entry.priority;
+    }
+
+    /**
+     * Moves the request to another priority.  A request moved to a priority starts before the requests already
+     * waiting at that priority.
+     * @param priority The new priority of the request.
+     * @return True if the request was still waiting and has been moved, false if it has started, completed or been
+     * cancelled.
+     */
+    public boolean setPriority(IconPriority priority) {
+        synchronized (this) {
+            if (state.get() != QUEUED) {
+                return false;
+            }
+            IconScheduler.Entry replacement = scheduler.newEntry(this, priority);
+            entry = replacement;
+            scheduler.requeue(replacement);
+        }
+        return true;
+    }
+
+    /**
+     * Cancels the request if it has not started yet, so that it never reaches the icon extractor.  Cancelling the
+     * future returned by {@link #getFuture()} has the same effect.
+     * @return True if the request was cancelled, false if it has already started, completed or been cancelled.
+     */
+    public boolean cancel() {
+        if (! state.compareAndSet(QUEUED, DONE)) {
+            return false;
+        }
+        scheduler.requestDropped();
+        future.cancel(false);
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return future.isCancelled();
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * @return A future that completes with the icon, or with null if the file does not exist or no icon could be
+     * retrieved.  The image may be shared with other callers and must not be modified.
+     */
+    public CompletableFuture<BufferedImage> getFuture() {
+        return future;
+    }
+
+    synchronized void enqueue(IconScheduler.Entry first) {
+        entry = first;
+    }
+
+    /**
+     * @return True if the supplied queue entry still represents this request.
+     */
+    boolean isCurrent(IconScheduler.Entry queued) {
+        return entry == queued && state.get() == QUEUED;
+    }
+
+    /**
+     * Claims the request for the calling worker if the supplied entry still represents it.
+     * @return True if the worker should run the request.
+     */
+    boolean claim(IconScheduler.Entry queued) {
+        return entry == queued && state.compareAndSet(QUEUED, RUNNING);
+    }
+
+    long getQueuedAt() {
+        return queuedAt;
+    }
+
+    void complete(BufferedImage image, Throwable error) {
+        state.set(DONE);
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(image);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IconRequest[" + path + ", " + getPriority() + "]";
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.base;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+
+
+/**
+ * The result of an icon request for a single file, as delivered by the bulk icon methods of {@link IconEngine}.
+ */
+public class IconResult {
+
+    private final Path path;
+    private final BufferedImage image;
+    private final byte[] bytes;
+    private final Throwable error;
+
+    IconResult(Path path, BufferedImage image, Throwable error) {
+        this(path, image, null, error);
+    }
+
+    IconResult(Path path, BufferedImage image, byte[] bytes, Throwable error) {
+        this.path = path;
+        this.image = image;
+        this.bytes = bytes;
+        this.error = error;
+    }
+
+    /**
+     * @return The file or directory for which the icon was requested.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return The icon, or null if the file does not exist, no icon could be retrieved or the request failed.
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * @return The PNG encoded icon if the request asked for it, otherwise null.  The array may be shared with other
+     * callers through the icon cache and must not be modified.
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return The exception the request failed with, or null if the request did not fail.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package zenengine.base;
+
+import zenengine.metrics.IconMetrics;
+import zenengine.metrics.IconStage;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+
+/**
+ * Schedules icon requests by priority, for views that only need the icons of the rows currently on screen.  When a
+ * virtualized list is scrolled quickly, most of the rows that requested an icon are already off screen by the time a
+ * thread is free to extract it.  Requests submitted to a scheduler wait in a priority queue until a worker is free, and
+ * can be moved to another {@link IconPriority} or cancelled while they wait, so the workers spend their time on the
+ * rows the user can see and cancelled requests never reach the icon extractor.
+ * <p>
+ * Within a priority, the most recently submitted or reprioritised request starts first, since during a scroll the rows
+ * that were requested last are the ones most likely to still be in view.  Changing the priority of a request does not
+ * search the queue: the request is queued again and its previous entry is skipped when a worker reaches it.
+ * <p>
+ * The requests are run by a fixed set of dedicated daemon threads that live as long as the scheduler, rather than on
+ * the executor returned by {@link IconEngine#getExecutor()}.  Extractors with thread affinity, such as the Windows
+ * extractor whose native callback must run on the thread that requested the icon, therefore always run on the same
+ * few platform threads.  Each request goes through {@link IconEngine#getIconBufferedImage(java.io.File)}, so cached
+ * icons are served from the caches and concurrent requests for the same icon share a single extraction.
+ */
+public class IconScheduler implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(IconScheduler.class.getName());
+
+    private static final AtomicInteger schedulerCount = new AtomicInteger();
+
+    /**
+     * The number of skipped entries above which the queue is purged of them, so that a view that keeps reprioritising
+     * the same requests does not grow the queue without bound.
+     */
+    private static final int PURGE_THRESHOLD = 1024;
+
+    private final PriorityBlockingQueue<Entry> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger staleEntries = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final List<Thread> workers = new ArrayList<>();
+
+    private volatile boolean closed;
+
+    /**
+     * An entry of the queue.  A request is represented by one current entry, and by any number of stale entries that
+     * were replaced by a change of priority.
+     */
+    static final class Entry implements Comparable<Entry> {
+
+        final IconRequest request;
+        final IconPriority priority;
+        final long sequence;
+
+        private Entry(IconRequest request, IconPriority priority, long sequence) {
+            this.request = request;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int order = priority.compareTo(other.priority);
+            return order != 0 ? order : Long.compare(other.sequence, sequence);
+        }
+
+    }
+
+    /**
+     * Creates a scheduler with one worker per available processor, and at least two so that a slow extraction cannot
+     * hold up every other request.
+     */
+    public IconScheduler() {
+        this(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param threads The number of worker threads.
+     */
+    public IconScheduler(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        }
+        int id = schedulerCount.incrementAndGet();
+        for (int i = 1; i <= threads; i++) {
+            Thread thread = new Thread(this::work, "zenengine-scheduler-" + id + "-" + i);
+            thread.setDaemon(true);
+            workers.add(thread);
+        }
+        workers.forEach(Thread::start);
+    }
+
+    /**
+     * Queues a request for the icon of the supplied file or directory.
+     * @param path The file or directory for which an icon is requested.
+     * @param priority The priority of the request.
+     * @return A handle on the request, through which it can be reprioritised or cancelled, and whose future completes
+     * with the icon.
+     * @throws RejectedExecutionException if the scheduler has been closed.
+     */
+    public IconRequest submit(Path path, IconPriority priority) {
+        Objects.requireNonNull(path);
+        Objects.requireNonNull(priority);
+        if (closed) {
+            throw new RejectedExecutionException("Icon scheduler is closed");
+        }
+        IconRequest request = new IconRequest(this, path);
+        Entry entry = newEntry(request, priority);
+        request.enqueue(entry);
+        queued.incrementAndGet();
+        queue.add(entry);
+        if (closed) {
+            request.cancel();
+        }
+        return request;
+    }
+
+    /**
+     * @return The number of requests that are waiting for a worker.
+     */
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * @return The number of requests the workers have completed, successfully or not.
+     */
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    /**
+     * @return The number of requests that were cancelled before a worker started them.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops the workers and cancels every request that is still waiting.  Requests that are running complete, but
+     * their workers exit afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        workers.forEach(Thread::interrupt);
+        List<Entry> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.forEach(entry -> entry.request.cancel());
+    }
+
+    Entry newEntry(IconRequest request, IconPriority priority) {
+        return new Entry(request, priority, sequence.incrementAndGet());
+    }
+
+    /**
+     * Queues the replacement entry of a reprioritised request, and purges the queue of stale entries once enough have
+     * accumulated.
+     */
+    void requeue(Entry entry) {
+        queue.add(entry);
+        staleEntry();
+    }
+
+    /**
+     * Accounts for a request that was cancelled while it was waiting.  Its entry stays in the queue until a worker or
+     * a purge reaches it.
+     */
+    void requestDropped() {
+        queued.decrementAndGet();
+        dropped.increment();
+        staleEntry();
+    }
+
+    private void staleEntry() {
+        int stale = staleEntries.incrementAndGet();
+        if (stale > PURGE_THRESHOLD && stale > queue.size() / 2) {
+            // The count is approximate, since workers skip stale entries concurrently, but it only decides when to purge
+            staleEntries.set(0);
+            queue.removeIf(entry -> ! entry.request.isCurrent(entry));
+        }
+    }
+
+    private void work() {
+        while (! closed) {
+            Entry entry;
+            try {
+                entry = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            IconRequest request = entry.request;
+            if (! request.claim(entry)) {
+                staleEntries.decrementAndGet();
+                continue;
+            }
+            queued.decrementAndGet();
+            IconMetrics.record(IconStage.QUEUE, request.getQueuedAt());
+            BufferedImage image = null;
+            Throwable error = null;
+            try {
+                image = IconEngine.getIconBufferedImage(request.getPath().toFile());
+            } catch (Throwable e) {
+                logger.fine("Scheduled icon request failed for " + request.getPath() + ": " + e);
+                error = e;
+            }
+            completed.increment();
+            request.complete(image, error);
+        }
+    }
+
+}
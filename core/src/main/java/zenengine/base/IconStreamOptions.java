@@ -0,0 +1,131 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.base;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+
+
+/**
+ * Options controlling how {@link IconEngine#streamIcons(Path, IconStreamOptions)} walks a directory tree.  The setters
+ * return the options themselves so that they can be chained.
+ */
+public class IconStreamOptions {
+
+    /**
+     * The default maximum number of results that are being extracted or waiting for the subscriber at once.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    private int maxDepth = Integer.MAX_VALUE;
+    private boolean followLinks;
+    private boolean includeDirectories = true;
+    private boolean encodePng;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private Executor executor;
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @param maxDepth The maximum number of directory levels below the root to visit.  A depth of zero visits only
+     *                 the root itself.
+     * @return These options.
+     */
+    public IconStreamOptions setMaxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Maximum depth must not be negative: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public boolean isFollowLinks() {
+        return followLinks;
+    }
+
+    /**
+     * @param followLinks Indicates whether symbolic links to directories are followed.
+     * @return These options.
+     */
+    public IconStreamOptions setFollowLinks(boolean followLinks) {
+        this.followLinks = followLinks;
+        return this;
+    }
+
+    public boolean isIncludeDirectories() {
+        return includeDirectories;
+    }
+
+    /**
+     * @param includeDirectories Indicates whether a result is published for each directory, including the root, as
+     *                           well as for each file.
+     * @return These options.
+     */
+    public IconStreamOptions setIncludeDirectories(boolean includeDirectories) {
+        this.includeDirectories = includeDirectories;
+        return this;
+    }
+
+    public boolean isEncodePng() {
+        return encodePng;
+    }
+
+    /**
+     * @param encodePng Indicates whether each result also carries the PNG encoding of its icon.
+     * @return These options.
+     */
+    public IconStreamOptions setEncodePng(boolean encodePng) {
+        this.encodePng = encodePng;
+        return this;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @param maxInFlight The maximum number of results that are being extracted or are waiting for the subscriber to
+     *                    request them.  Once the limit is reached, the directory walk pauses until the subscriber
+     *                    requests more results, which bounds the memory used by a stream regardless of the size of
+     *                    the tree.
+     * @return These options.
+     */
+    public IconStreamOptions setMaxInFlight(int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Maximum in flight must be positive: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @param executor The executor that extracts and encodes the icons, or null to use the executor returned by
+     *                 {@link IconEngine#getExecutor()}.
+     * @return These options.
+     */
+    public IconStreamOptions setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+}
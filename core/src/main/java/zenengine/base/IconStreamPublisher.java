@@ -0,0 +1,278 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.base;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Publishes the icons of every entry of a directory tree.  Each subscription walks the tree on its own thread and
+ * extracts the icons on an executor, so traversal, extraction and encoding overlap.  The number of entries that are
+ * being extracted or are waiting for the subscriber is bounded, and the walk pauses while the bound is reached, so
+ * the stream only advances as fast as the subscriber requests results.
+ * <p>
+ * The file attributes read by the walk are reused to build the cache keys, so entries are not queried again to find
+ * out whether they exist or are directories.  Results are published in the order they complete.
+ */
+final class IconStreamPublisher implements Flow.Publisher<IconResult> {
+
+    private static final AtomicInteger walkerCount = new AtomicInteger();
+
+    private final Path root;
+    private final IconStreamOptions options;
+
+    IconStreamPublisher(Path root, IconStreamOptions options) {
+        this.root = root;
+        this.options = options;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super IconResult> subscriber) {
+        Objects.requireNonNull(subscriber);
+        Executor executor = options.getExecutor() != null ? options.getExecutor() : IconEngine.getExecutor();
+        IconStreamSubscription subscription = new IconStreamSubscription(subscriber, executor);
+        subscriber.onSubscribe(subscription);
+        subscription.start();
+    }
+
+    private final class IconStreamSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super IconResult> subscriber;
+        private final Executor executor;
+
+        private final Semaphore permits = new Semaphore(options.getMaxInFlight());
+        private final ConcurrentLinkedQueue<IconResult> ready = new ConcurrentLinkedQueue<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /**
+         * Counts the calls to {@link #drain()}, so that only one thread signals the subscriber at a time.
+         */
+        private final AtomicInteger drains = new AtomicInteger();
+
+        private volatile boolean cancelled;
+        private volatile boolean walked;
+        private volatile Throwable walkFailure;
+        private volatile Throwable requestFailure;
+        private volatile Thread walker;
+
+        private IconStreamSubscription(Flow.Subscriber<? super IconResult> subscriber, Executor executor) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+        }
+
+        private void start() {
+            if (cancelled) {
+                return;
+            }
+            Thread thread = new Thread(this::walk, "zenengine-walk-" + walkerCount.incrementAndGet());
+            thread.setDaemon(true);
+            walker = thread;
+            thread.start();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                requestFailure = new IllegalArgumentException("Requested a non-positive number of results: " + n);
+                stopWalk();
+            } else {
+                requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE
+                        : current + added);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            stopWalk();
+            drain();
+        }
+
+        private void stopWalk() {
+            Thread thread = walker;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        private void walk() {
+            Set<FileVisitOption> visitOptions = options.isFollowLinks() ? EnumSet.of(FileVisitOption.FOLLOW_LINKS)
+                    : EnumSet.noneOf(FileVisitOption.class);
+            try {
+                Files.walkFileTree(root, visitOptions, options.getMaxDepth(), new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                        if (! options.isIncludeDirectories()) {
+                            return isStopped() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                        }
+                        return submit(dir, attributes);
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        return submit(file, attributes);
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        if (! acquire()) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        publish(new IconResult(file, null, e));
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                walkFailure = e;
+            } finally {
+                walked = true;
+                drain();
+            }
+        }
+
+        private boolean isStopped() {
+            return cancelled || requestFailure != null;
+        }
+
+        /**
+         * Waits until fewer than the maximum number of results are in flight.
+         * @return false if the stream was stopped while waiting.
+         */
+        private boolean acquire() {
+            if (isStopped()) {
+                return false;
+            }
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                return false;
+            }
+            return ! isStopped();
+        }
+
+        private FileVisitResult submit(Path path, BasicFileAttributes attributes) {
+            if (! acquire()) {
+                return FileVisitResult.TERMINATE;
+            }
+            pending.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    if (! isStopped()) {
+                        ready.offer(load(path, attributes));
+                    }
+                    pending.decrementAndGet();
+                    drain();
+                });
+            } catch (RejectedExecutionException e) {
+                pending.decrementAndGet();
+                publish(new IconResult(path, null, e));
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        private IconResult load(Path path, BasicFileAttributes attributes) {
+            try {
+                File file = path.toFile();
+                IconCacheKey key = IconEngine.getCacheKey(file, attributes.isDirectory());
+                BufferedImage image = IconEngine.getIconBufferedImage(file, key);
+                byte[] bytes = image != null && options.isEncodePng() ? IconEngine.getIconByteArray(file, key) : null;
+                return new IconResult(path, image, bytes, null);
+            } catch (IOException | RuntimeException e) {
+                return new IconResult(path, null, e);
+            }
+        }
+
+        private void publish(IconResult result) {
+            ready.offer(result);
+            drain();
+        }
+
+        /**
+         * Delivers as many ready results as the subscriber has requested, and completes the subscription once the walk
+         * has finished and every result has been delivered.  Calls made while another thread is draining are counted,
+         * and that thread drains again on their behalf.
+         */
+        private void drain() {
+            if (drains.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            while (true) {
+                if (cancelled) {
+                    ready.clear();
+                    return;
+                }
+                Throwable failure = requestFailure;
+                if (failure != null) {
+                    cancelled = true;
+                    ready.clear();
+                    subscriber.onError(failure);
+                    return;
+                }
+                long demand = requested.get();
+                long delivered = 0;
+                while (delivered != demand && ! cancelled) {
+                    IconResult result = ready.poll();
+                    if (result == null) {
+                        break;
+                    }
+                    subscriber.onNext(result);
+                    permits.release();
+                    delivered++;
+                }
+                if (delivered > 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-delivered);
+                }
+                if (! cancelled && walked && pending.get() == 0 && ready.isEmpty()) {
+                    cancelled = true;
+                    if (walkFailure != null) {
+                        subscriber.onError(walkFailure);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                missed = drains.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,290 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package zenengine.base;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+
+/**
+ * Extracts the native libraries packaged with the engine so that they can be loaded.  Libraries are packaged as
+ * resources under {@code native/<platform>/}, where the platform names the operating system and architecture, such as
+ * {@code win32-x86-64}.
+ * <p>
+ * Each library is extracted into a directory named after the engine version and the SHA-256 checksum of the library,
+ * so a stale or truncated copy left by another version is never loaded.  An extracted copy is reused only if its
+ * checksum matches the packaged library, and the packaged library is checked against the checksum published beside
+ * it in a {@code .sha256} resource, if there is one.  Extraction holds a file lock, so processes starting at the same
+ * time do not race on the same file, and writes to a temporary file that is moved into place atomically, so a library
+ * is never seen half written.
+ * <p>
+ * {@link #extractAsync(String)} extracts a library on a background thread, so that callers can start extraction early
+ * and only wait for it when the library is first used.
+ */
+public class NativeLibraryLoader {
+
+    private static final Logger logger = Logger.getLogger(NativeLibraryLoader.class.getName());
+
+    private static final String RESOURCE_ROOT = "native";
+    private static final String LOCK_FILE = ".lock";
+
+    /**
+     * The number of hex digits of the checksum used to name the extraction directory.
+     */
+    private static final int HASH_DIGITS = 16;
+
+    private static final NativeLibraryLoader defaultLoader = new NativeLibraryLoader(NativeLibraryLoader.class,
+            Paths.get(System.getProperty("java.io.tmpdir"), "SomeGuySoftware", "ZenNativeIconEngine", "lib"));
+
+    private final Class<?> owner;
+    private final Path directory;
+    private final String version;
+    private final ConcurrentHashMap<String, CompletableFuture<Path>> extractions = new ConcurrentHashMap<>();
+
+    /**
+     * @param owner The class whose module or class loader holds the library resources.
+     * @param directory The directory that libraries are extracted under.
+     */
+    public NativeLibraryLoader(Class<?> owner, Path directory) {
+        this.owner = owner;
+        this.directory = directory;
+        String implementationVersion = NativeLibraryLoader.class.getPackage().getImplementationVersion();
+        this.version = implementationVersion != null ? implementationVersion : "dev";
+    }
+
+    /**
+     * @return The loader of the libraries packaged with the engine, which extracts them under
+     * {@code SomeGuySoftware/ZenNativeIconEngine/lib} in the system temp directory.
+     */
+    public static NativeLibraryLoader getDefault() {
+        return defaultLoader;
+    }
+
+    /**
+     * Returns the name of the host platform, made of the operating system and the architecture, such as
+     * {@code win32-x86-64}, {@code linux-aarch64} or {@code darwin-x86-64}.
+     */
+    public static String getPlatform() {
+        return getPlatform(System.getProperty("os.name"), System.getProperty("os.arch"));
+    }
+
+    static String getPlatform(String osName, String osArch) {
+        String name = osName.toLowerCase(Locale.ROOT);
+        String os = name.startsWith("windows") ? "win32" : name.startsWith("mac") ? "darwin"
+                : name.replaceAll("[^a-z0-9]", "");
+        String arch = osArch.toLowerCase(Locale.ROOT);
+        switch (arch) {
+            case "amd64":
+            case "x86_64":
+                arch = "x86-64";
+                break;
+            case "i386":
+            case "i486":
+            case "i586":
+            case "i686":
+                arch = "x86";
+                break;
+            case "arm64":
+                arch = "aarch64";
+                break;
+            default:
+                arch = arch.replace('_', '-');
+        }
+        return os + "-" + arch;
+    }
+
+    /**
+     * @param libraryName The name of a library without its platform prefix or suffix, such as
+     *                    {@code WindowsIconExtractor}.
+     * @return The path of the resource holding the library for the host platform.
+     */
+    public static String getResourcePath(String libraryName) {
+        return RESOURCE_ROOT + "/" + getPlatform() + "/" + System.mapLibraryName(libraryName);
+    }
+
+    /**
+     * Extracts the library for the host platform, unless a verified copy has already been extracted.
+     * @param libraryName The name of the library without its platform prefix or suffix.
+     * @return The path of the extracted library.
+     * @throws IOException If the library is not packaged for the host platform, fails its checksum or cannot be
+     * extracted.
+     */
+    public Path extract(String libraryName) throws IOException {
+        return extract(getResourcePath(libraryName), System.mapLibraryName(libraryName));
+    }
+
+    /**
+     * Extracts the library for the host platform on a background thread.  Concurrent and repeated calls for the same
+     * library share one extraction, and a failed extraction is retried by the next call.
+     * @param libraryName The name of the library without its platform prefix or suffix.
+     * @return A future that completes with the path of the extracted library.
+     */
+    public CompletableFuture<Path> extractAsync(String libraryName) {
+        return extractions.compute(libraryName, (name, existing) -> {
+            if (existing != null && ! existing.isCompletedExceptionally()) {
+                return existing;
+            }
+            CompletableFuture<Path> future = new CompletableFuture<>();
+            Thread thread = new Thread(() -> {
+                try {
+                    future.complete(extract(name));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }, "zenengine-native-" + name);
+            thread.setDaemon(true);
+            thread.start();
+            return future;
+        });
+    }
+
+    /**
+     * Extracts and loads the library for the host platform with {@link System#load(String)}.
+     * @param libraryName The name of the library without its platform prefix or suffix.
+     * @return The path of the loaded library.
+     * @throws IOException If the library cannot be extracted.
+     */
+    public Path load(String libraryName) throws IOException {
+        Path library;
+        try {
+            library = extractAsync(libraryName).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        System.load(library.toString());
+        return library;
+    }
+
+    /**
+     * Extracts a resource into a directory named after the engine version and the checksum of the resource.
+     * @param resource The path of the resource, relative to the root of the owner's module or class path.
+     * @param fileName The name of the extracted file.
+     * @return The path of the extracted file.
+     */
+    Path extract(String resource, String fileName) throws IOException {
+        byte[] bytes = readResource(resource);
+        String checksum = sha256(bytes);
+        byte[] published = readResourceIfPresent(resource + ".sha256");
+        if (published != null) {
+            String expected = new String(published, StandardCharsets.US_ASCII).trim().split("\\s+")[0];
+            if (! expected.equalsIgnoreCase(checksum)) {
+                throw new IOException("Checksum of " + resource + " is " + checksum + " but " + expected
+                        + " was published");
+            }
+        }
+
+        Path target = directory.resolve(version).resolve(checksum.substring(0, HASH_DIGITS)).resolve(fileName);
+        if (isExtracted(target, checksum)) {
+            return target;
+        }
+        Path parent = target.getParent();
+        Files.createDirectories(parent);
+        // File locks are held by the whole process, so threads of this process are serialised separately
+        synchronized (NativeLibraryLoader.class) {
+            try (FileChannel channel = FileChannel.open(parent.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+                if (isExtracted(target, checksum)) {
+                    return target;
+                }
+                Path temporary = Files.createTempFile(parent, fileName, ".tmp");
+                try {
+                    Files.write(temporary, bytes);
+                    if (! isExtracted(temporary, checksum)) {
+                        throw new IOException("Extracted copy of " + resource + " does not match its checksum");
+                    }
+                    move(temporary, target);
+                } finally {
+                    Files.deleteIfExists(temporary);
+                }
+                logger.fine("Extracted " + resource + " to " + target);
+            }
+        }
+        return target;
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return true if the file exists and has the supplied checksum.
+     */
+    private static boolean isExtracted(Path file, String checksum) throws IOException {
+        if (! Files.isRegularFile(file)) {
+            return false;
+        }
+        if (sha256(Files.readAllBytes(file)).equals(checksum)) {
+            return true;
+        }
+        logger.warning("Replacing " + file + ", which does not match its checksum");
+        return false;
+    }
+
+    private byte[] readResource(String resource) throws IOException {
+        byte[] bytes = readResourceIfPresent(resource);
+        if (bytes == null) {
+            throw new FileNotFoundException("No native library resource " + resource + " for " + getPlatform());
+        }
+        return bytes;
+    }
+
+    private byte[] readResourceIfPresent(String resource) throws IOException {
+        try (InputStream in = owner.getResourceAsStream("/" + resource)) {
+            return in == null ? null : in.readAllBytes();
+        }
+    }
+
+    static String sha256(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.base;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+/**
+ * Converts the bottom-up 32 bit BGRA bitmaps produced by native icon APIs into ARGB BufferedImages.  A little endian
+ * BGRA pixel read as an int is already an ARGB value, so each row is copied in bulk into the image rather than
+ * converting and setting pixels one at a time.  The pixels are written through the image raster rather than by taking
+ * the backing array, so that Java2D can still accelerate the image.
+ * <p>
+ * Extractors can borrow their scratch memory from the small shared pool of this class, whose buffers grow to the
+ * largest icon they have held, so that converting an icon does not allocate anything beyond the image itself.  With a
+ * bounded pool instead of a buffer per thread, the direct memory held for conversions stays fixed even when every
+ * extraction runs on a virtual thread of its own.
+ */
+public final class PixelConverter {
+
+    /**
+     * The size of the largest icon returned by the supported native APIs, which the scratch buffers are sized for
+     * initially.
+     */
+    public static final int MAX_ICON_SIZE = 256;
+
+    private static final int INITIAL_SCRATCH_BYTES = MAX_ICON_SIZE * MAX_ICON_SIZE * 4;
+
+    private static final BlockingQueue<Scratch> pool =
+            new ArrayBlockingQueue<>(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private PixelConverter() {
+    }
+
+    /**
+     * Takes idle scratch memory from the pool, or creates new scratch memory if every pooled scratch is in use.  The
+     * scratch must be closed once its buffers are no longer used, which returns it to the pool.
+     * @return The borrowed scratch memory.
+     */
+    public static Scratch borrowScratch() {
+        Scratch scratch = pool.poll();
+        return scratch != null ? scratch : new Scratch();
+    }
+
+    /**
+     * Converts a bottom-up BGRA bitmap into a BufferedImage.
+     * @param bgra A buffer holding the bitmap from its position onwards.  The position of the buffer is not changed.
+     * @param width The width of the bitmap.
+     * @param height The height of the bitmap.
+     * @param imageType Either TYPE_INT_ARGB if the bitmap holds straight alpha values, or TYPE_INT_ARGB_PRE if the
+     *                  bitmap holds premultiplied alpha values.
+     * @return A new BufferedImage of the requested type holding the bitmap the right way up.
+     */
+    public static BufferedImage bottomUpBgraToImage(ByteBuffer bgra, int width, int height, int imageType) {
+        checkImageType(imageType);
+        BufferedImage image = new BufferedImage(width, height, imageType);
+        IntBuffer source = bgra.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        try (Scratch scratch = borrowScratch()) {
+            int[] pixels = scratch.pixelBuffer(width * height);
+            bottomUpBgraToArgb(source, width, height, pixels);
+            WritableRaster raster = image.getRaster();
+            raster.setDataElements(0, 0, width, height, pixels);
+        }
+        return image;
+    }
+
+    /**
+     * Converts a bottom-up BGRA bitmap into a BufferedImage.
+     * @param bgra An array holding the bitmap.
+     * @param offset The index of the first byte of the bitmap in the array.
+     * @param width The width of the bitmap.
+     * @param height The height of the bitmap.
+     * @param imageType Either TYPE_INT_ARGB if the bitmap holds straight alpha values, or TYPE_INT_ARGB_PRE if the
+     *                  bitmap holds premultiplied alpha values.
+     * @return A new BufferedImage of the requested type holding the bitmap the right way up.
+     */
+    public static BufferedImage bottomUpBgraToImage(byte[] bgra, int offset, int width, int height, int imageType) {
+        return bottomUpBgraToImage(ByteBuffer.wrap(bgra, offset, width * height * 4).slice(), width, height,
+                imageType);
+    }
+
+    /**
+     * Copies a bottom-up bitmap of little endian BGRA ints into a top-down array of ARGB ints.
+     * @param source A buffer holding the bitmap as little endian ints from its position onwards.
+     * @param width The width of the bitmap.
+     * @param height The height of the bitmap.
+     * @param argb The array that receives the pixels, starting at index zero.
+     */
+    public static void bottomUpBgraToArgb(IntBuffer source, int width, int height, int[] argb) {
+        int base = source.position();
+        for (int y = 0; y < height; y++) {
+            source.position(base + (height - 1 - y) * width);
+            source.get(argb, y * width, width);
+        }
+        source.position(base);
+    }
+
+    /**
+     * Returns the supplied image as a TYPE_INT_ARGB image, which is the type produced by the extractors, redrawing it
+     * if it has another type.  Images decoded by ImageIO usually have a byte based type.
+     * @param image The image to convert.
+     * @return The supplied image if it is already a TYPE_INT_ARGB image or null, otherwise a converted copy.
+     */
+    public static BufferedImage toIntArgb(BufferedImage image) {
+        if (image == null || image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return image;
+        }
+        BufferedImage argb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = argb.createGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return argb;
+    }
+
+    private static void checkImageType(int imageType) {
+        if (imageType != BufferedImage.TYPE_INT_ARGB && imageType != BufferedImage.TYPE_INT_ARGB_PRE) {
+            throw new IllegalArgumentException("Unsupported image type: " + imageType);
+        }
+    }
+
+    /**
+     * Scratch memory borrowed from the pool by a single thread at a time.  Each buffer is only allocated when it is
+     * first requested.  The buffers are reused once the scratch is returned to the pool, so they must not be retained
+     * after the scratch is closed.
+     */
+    public static final class Scratch implements AutoCloseable {
+
+        private ByteBuffer nativeBuffer;
+        private byte[] heapBuffer = new byte[0];
+        private int[] pixelBuffer = new int[0];
+
+        private Scratch() {
+        }
+
+        /**
+         * Returns the native scratch buffer, which can receive bitmap data from native APIs directly.  The buffer is
+         * little endian, positioned at zero and limited to the requested number of bytes.
+         * @param bytes The number of bytes required.
+         * @return A direct ByteBuffer of at least the requested capacity.
+         */
+        public ByteBuffer nativeBuffer(int bytes) {
+            if (nativeBuffer == null || nativeBuffer.capacity() < bytes) {
+                nativeBuffer = ByteBuffer.allocateDirect(Math.max(bytes, INITIAL_SCRATCH_BYTES));
+            }
+            nativeBuffer.clear().limit(bytes);
+            return nativeBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * @param bytes The number of bytes required.
+         * @return The heap scratch array, of at least the requested length.
+         */
+        public byte[] heapBuffer(int bytes) {
+            if (heapBuffer.length < bytes) {
+                heapBuffer = new byte[Math.max(bytes, INITIAL_SCRATCH_BYTES)];
+            }
+            return heapBuffer;
+        }
+
+        private int[] pixelBuffer(int pixels) {
+            if (pixelBuffer.length < pixels) {
+                pixelBuffer = new int[Math.max(pixels, INITIAL_SCRATCH_BYTES / 4)];
+            }
+            return pixelBuffer;
+        }
+
+        /**
+         * Returns the scratch memory to the pool, or leaves it to be collected if the pool is already full.
+         */
+        @Override
+        public void close() {
+            pool.offer(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.base;
+
+import zenengine.codec.IconFormat;
+import zenengine.freedesktop.ThumbnailCache;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumMap;
+
+
+/**
+ * The result of looking up the thumbnail of a file, kept by the engine so that repeated requests for the file only
+ * compare modification times instead of hashing the file's URI and reading the thumbnail again.  A lookup that found a
+ * thumbnail also holds its decoded image and its encodings in other formats once they are requested, so that every
+ * format returns the same picture.
+ * <p>
+ * A lookup is current while the file's modification time and size are unchanged and, if a thumbnail was found, the
+ * thumbnail file has not been replaced or removed.  A lookup that found no thumbnail is only current for a short
+ * interval, since thumbnails may be generated in the background.  Lookups are immutable; adding an image or an
+ * encoding returns a new lookup.
+ */
+final class ThumbnailLookup {
+
+    private final long modified;
+    private final long size;
+    private final long checked;
+    private final ThumbnailCache.Thumbnail thumbnail;
+    private final BufferedImage image;
+    private final EnumMap<IconFormat, byte[]> encodings;
+
+    /**
+     * @param attributes The attributes of the file, read before its thumbnail was looked up.
+     * @param thumbnail The valid thumbnail of the file, or null if it has none.
+     * @param checked The time of the lookup in milliseconds.
+     */
+    ThumbnailLookup(BasicFileAttributes attributes, ThumbnailCache.Thumbnail thumbnail, long checked) {
+        this(attributes.lastModifiedTime().toMillis(), attributes.size(), checked, thumbnail, null,
+                new EnumMap<>(IconFormat.class));
+    }
+
+    private ThumbnailLookup(long modified, long size, long checked, ThumbnailCache.Thumbnail thumbnail,
+                            BufferedImage image, EnumMap<IconFormat, byte[]> encodings) {
+        this.modified = modified;
+        this.size = size;
+        this.checked = checked;
+        this.thumbnail = thumbnail;
+        this.image = image;
+        this.encodings = encodings;
+    }
+
+    /**
+     * @param attributes The current attributes of the file.
+     * @param now The current time in milliseconds.
+     * @param recheckInterval The time after which a file without a thumbnail is looked up again.
+     * @return True if the lookup still describes the file's thumbnail.
+     */
+    boolean isCurrent(BasicFileAttributes attributes, long now, long recheckInterval) {
+        if (attributes.lastModifiedTime().toMillis() != modified || attributes.size() != size) {
+            return false;
+        }
+        if (thumbnail == null) {
+            return now - checked < recheckInterval;
+        }
+        return thumbnail.getPath().toFile().lastModified() == thumbnail.getLastModified();
+    }
+
+    boolean hasThumbnail() {
+        return thumbnail != null;
+    }
+
+    /**
+     * @return The thumbnail encoded in the supplied format, or null if there is no thumbnail or it has not been
+     * encoded in the format yet.  PNG bytes are the thumbnail as it is stored.
+     */
+    byte[] getBytes(IconFormat format) {
+        if (thumbnail == null) {
+            return null;
+        }
+        return format == IconFormat.PNG ? thumbnail.getBytes() : encodings.get(format);
+    }
+
+    /**
+     * @return The decoded thumbnail, or null if it has not been decoded yet.
+     */
+    BufferedImage getImage() {
+        return image;
+    }
+
+    ThumbnailLookup withImage(BufferedImage image) {
+        return new ThumbnailLookup(modified, size, checked, thumbnail, image, encodings);
+    }
+
+    ThumbnailLookup withBytes(IconFormat format, byte[] bytes) {
+        EnumMap<IconFormat, byte[]> copy = new EnumMap<>(encodings);
+        copy.put(format, bytes);
+        return new ThumbnailLookup(modified, size, checked, thumbnail, image, copy);
+    }
+
+    /**
+     * @return The approximate number of bytes held by the lookup.
+     */
+    long getWeight() {
+        long weight = 64;
+        if (thumbnail != null) {
+            weight += thumbnail.getBytes().length;
+        }
+        if (image != null) {
+            weight += 4L * image.getWidth() * image.getHeight();
+        }
+        for (byte[] bytes : encodings.values()) {
+            weight += bytes.length;
+        }
+        return weight;
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package zenengine.codec;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+
+/**
+ * The formats the icon engine can encode icons in.
+ */
+public enum IconFormat {
+
+    /**
+     * Compressed PNG, which any image library can read.
+     */
+    PNG("image/png", "png"),
+
+    /**
+     * The Quite OK Image format, which is lossless like PNG but several times faster to encode and decode.
+     * @see QoiCodec
+     */
+    QOI("image/qoi", "qoi"),
+
+    /**
+     * Uncompressed premultiplied ARGB pixels behind a small header, which need no decoding at all.
+     * @see RawArgbCodec
+     */
+    RAW_ARGB_PRE("application/x-argb-pre", "argb");
+
+    private final String mediaType;
+    private final String extension;
+
+    IconFormat(String mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Decodes an icon encoded in this format.
+     * @param bytes The encoded icon.
+     * @return The decoded icon.  Raw ARGB icons are decoded as TYPE_INT_ARGB_PRE images.
+     * @throws IOException If the bytes are not a valid encoding in this format.
+     */
+    public BufferedImage decode(byte[] bytes) throws IOException {
+        switch (this) {
+            case PNG:
+                BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+                if (image == null) {
+                    throw new IOException("Not a PNG image");
+                }
+                return image;
+            case QOI:
+                return QoiCodec.decode(bytes);
+            default:
+                return RawArgbCodec.decode(bytes);
+        }
+    }
+
+}
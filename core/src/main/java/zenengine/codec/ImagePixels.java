@@ -0,0 +1,75 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package zenengine.codec;
+
+import java.awt.image.BufferedImage;
+
+
+/**
+ * Reads the pixels of an image as ints, through the raster when the image already has the requested layout so that
+ * Java2D can still accelerate it.
+ */
+final class ImagePixels {
+
+    private ImagePixels() {
+    }
+
+    /**
+     * @return The pixels of the image as straight ARGB ints, row by row.
+     */
+    static int[] getArgb(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return (int[]) image.getRaster().getDataElements(0, 0, width, height, null);
+        }
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    /**
+     * @return The pixels of the image as premultiplied ARGB ints, row by row.
+     */
+    static int[] getArgbPre(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB_PRE) {
+            return (int[]) image.getRaster().getDataElements(0, 0, image.getWidth(), image.getHeight(), null);
+        }
+        int[] pixels = getArgb(image);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = premultiply(pixels[i]);
+        }
+        return pixels;
+    }
+
+    /**
+     * Premultiplies a straight ARGB pixel, rounding each channel to the nearest value as Java2D does.
+     */
+    static int premultiply(int argb) {
+        int a = argb >>> 24;
+        if (a == 0xff) {
+            return argb;
+        }
+        if (a == 0) {
+            return 0;
+        }
+        int r = (((argb >> 16) & 0xff) * a + 127) / 255;
+        int g = (((argb >> 8) & 0xff) * a + 127) / 255;
+        int b = ((argb & 0xff) * a + 127) / 255;
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+}
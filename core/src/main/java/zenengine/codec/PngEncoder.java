@@ -0,0 +1,497 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package zenengine.codec;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+
+/**
+ * A PNG writer specialised for the 32 bit icons produced by the extractors.  Every image is written as an 8 bit RGBA
+ * PNG, without the plugin lookup, metadata handling and stream wrapping of ImageIO, and the compressed data is written
+ * straight to an OutputStream or ByteBuffer chunk by chunk rather than collected and copied.
+ * <p>
+ * Deflaters and scratch rows are borrowed from a small shared pool for the duration of each encoding, and are reset
+ * rather than reallocated between icons, so encoding an icon only allocates the output.  The pool is bounded rather
+ * than kept per thread, so that encoding on short lived threads, such as virtual threads, neither leaks native deflate
+ * state nor allocates new scratch memory for every icon.  Encoders are immutable and can be shared between threads.
+ */
+public final class PngEncoder {
+
+    /**
+     * The strategies for filtering each row before compression, as defined by the PNG specification.
+     */
+    public enum Filter {
+
+        NONE, SUB, UP, AVERAGE, PAETH,
+
+        /**
+         * Chooses the filter of each row that minimises the sum of the absolute values of the filtered bytes, which
+         * is the heuristic recommended by the specification.  It computes every filter for every row, so it is the
+         * slowest strategy, and SUB alone often compresses antialiased icons as well.
+         */
+        ADAPTIVE
+    }
+
+    /**
+     * The default deflate level, which compresses icons nearly as well as level 9 at a fraction of the time.
+     */
+    public static final int DEFAULT_LEVEL = 4;
+
+    /**
+     * The default filter.  Unfiltered rows at the default level produce encodings of the same size as ImageIO in
+     * less time, while {@link Filter#SUB} trades that speed for encodings that are typically a quarter smaller.
+     */
+    public static final Filter DEFAULT_FILTER = Filter.NONE;
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int IHDR = 0x49484452;
+    private static final int IDAT = 0x49444154;
+    private static final int IEND = 0x49454e44;
+
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    /**
+     * The size of the data of each IDAT chunk.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The length, type and CRC fields surrounding the data of a chunk.
+     */
+    private static final int CHUNK_OVERHEAD = 12;
+
+    /**
+     * The filters tried for each row by adaptive filtering, indexed by their filter type.
+     */
+    private static final Filter[] ADAPTIVE_CANDIDATES = {Filter.NONE, Filter.SUB, Filter.UP, Filter.AVERAGE,
+            Filter.PAETH};
+
+    /**
+     * The idle states, enough for every processor to encode at once.  States beyond that are discarded once they are
+     * returned, and their deflaters are ended.
+     */
+    private static final BlockingQueue<State> pool =
+            new ArrayBlockingQueue<>(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private final int level;
+    private final Filter filter;
+
+    /**
+     * Creates an encoder using the default level and filter.
+     */
+    public PngEncoder() {
+        this(DEFAULT_LEVEL, DEFAULT_FILTER);
+    }
+
+    /**
+     * @param level The deflate level, from 0 for no compression to 9 for the best compression.
+     * @param filter The strategy for filtering rows.
+     */
+    public PngEncoder(int level, Filter filter) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Deflate level out of range: " + level);
+        }
+        if (filter == null) {
+            throw new IllegalArgumentException("Filter must not be null");
+        }
+        this.level = level;
+        this.filter = filter;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Encodes the supplied image into a new array of exactly the encoded length.
+     * @param image The image to encode.
+     * @return The PNG encoding of the image.
+     */
+    public byte[] encode(BufferedImage image) {
+        State current = borrow();
+        try {
+            current.outputLength = 0;
+            encodeToMemory(image, current, current::append);
+            return Arrays.copyOf(current.output, current.outputLength);
+        } finally {
+            release(current);
+        }
+    }
+
+    /**
+     * Encodes the supplied image into a stream.  The image is written in chunks of up to 64KB, so the stream does
+     * not need to be buffered.
+     * @param image The image to encode.
+     * @param out The stream that receives the encoding.  It is neither flushed nor closed.
+     * @throws IOException If the stream fails.
+     */
+    public void encode(BufferedImage image, OutputStream out) throws IOException {
+        State current = borrow();
+        try {
+            encode(image, current, out::write);
+        } finally {
+            release(current);
+        }
+    }
+
+    /**
+     * Encodes the supplied image into a buffer, from its position onwards.
+     * @param image The image to encode.
+     * @param buffer The buffer that receives the encoding.  Its position is advanced past the encoding.  A buffer
+     *               with at least {@link #getMaxEncodedSize(int, int)} bytes remaining always has room.
+     * @return The number of bytes written.
+     * @throws java.nio.BufferOverflowException If the buffer does not have room for the encoding, in which case its
+     * position is undefined.
+     */
+    public int encode(BufferedImage image, ByteBuffer buffer) {
+        int start = buffer.position();
+        State current = borrow();
+        try {
+            encodeToMemory(image, current, buffer::put);
+        } finally {
+            release(current);
+        }
+        return buffer.position() - start;
+    }
+
+    /**
+     * Takes an idle state from the pool, or creates one if every pooled state is in use.
+     */
+    private static State borrow() {
+        State current = pool.poll();
+        return current != null ? current : new State();
+    }
+
+    /**
+     * Returns a state to the pool, or releases its deflater if the pool is already full.
+     */
+    private static void release(State current) {
+        if (! pool.offer(current)) {
+            current.deflater.end();
+        }
+    }
+
+    /**
+     * Returns an upper bound of the length of the encoding of an image, based on the worst case expansion of deflate.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The maximum number of bytes any encoder writes for an image of the supplied dimensions.
+     */
+    public static int getMaxEncodedSize(int width, int height) {
+        long raw = (long) height * (1 + (long) width * BYTES_PER_PIXEL);
+        long compressed = raw + (raw >> 12) + (raw >> 14) + (raw >> 25) + 13 + 6;
+        long chunks = compressed / CHUNK_SIZE + 1;
+        long size = SIGNATURE.length + (CHUNK_OVERHEAD + 13) + chunks * CHUNK_OVERHEAD + compressed + CHUNK_OVERHEAD;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Image too large: " + width + "x" + height);
+        }
+        return (int) size;
+    }
+
+    /**
+     * Encodes an image into a sink that cannot fail.
+     */
+    private void encodeToMemory(BufferedImage image, State current, Sink sink) {
+        try {
+            encode(image, current, sink);
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to memory failed", e);
+        }
+    }
+
+    private void encode(BufferedImage image, State current, Sink sink) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int rowLength = width * BYTES_PER_PIXEL;
+        current.prepare(width, level, filter);
+
+        sink.write(SIGNATURE, 0, SIGNATURE.length);
+        byte[] chunk = current.chunk;
+        putInt(chunk, 8, width);
+        putInt(chunk, 12, height);
+        chunk[16] = 8;
+        chunk[17] = COLOR_TYPE_RGBA;
+        chunk[18] = 0;
+        chunk[19] = 0;
+        chunk[20] = 0;
+        writeChunk(current, sink, IHDR, 13);
+
+        Deflater deflater = current.deflater;
+        byte[] previous = current.previous;
+        byte[] row = current.row;
+        Arrays.fill(previous, 0, rowLength, (byte) 0);
+        int dataLength = 0;
+        for (int y = 0; y < height; y++) {
+            readRow(image, y, current.pixels, row);
+            byte[] filtered = filterRow(current, row, previous, rowLength);
+            deflater.setInput(filtered, 0, rowLength + 1);
+            while (! deflater.needsInput()) {
+                dataLength = deflate(current, sink, dataLength);
+            }
+            byte[] swap = previous;
+            previous = row;
+            row = swap;
+        }
+        current.previous = previous;
+        current.row = row;
+        deflater.finish();
+        while (! deflater.finished()) {
+            dataLength = deflate(current, sink, dataLength);
+        }
+        if (dataLength > 0) {
+            writeChunk(current, sink, IDAT, dataLength);
+        }
+        writeChunk(current, sink, IEND, 0);
+    }
+
+    /**
+     * Deflates into the data of the current IDAT chunk, writing the chunk once it is full.
+     * @return The length of the data of the current chunk.
+     */
+    private static int deflate(State current, Sink sink, int dataLength) throws IOException {
+        dataLength += current.deflater.deflate(current.chunk, 8 + dataLength, CHUNK_SIZE - dataLength);
+        if (dataLength == CHUNK_SIZE) {
+            writeChunk(current, sink, IDAT, dataLength);
+            return 0;
+        }
+        return dataLength;
+    }
+
+    /**
+     * Writes the chunk whose data has been placed in the chunk buffer after its length and type fields.
+     */
+    private static void writeChunk(State current, Sink sink, int type, int dataLength) throws IOException {
+        byte[] chunk = current.chunk;
+        putInt(chunk, 0, dataLength);
+        putInt(chunk, 4, type);
+        CRC32 crc = current.crc;
+        crc.reset();
+        crc.update(chunk, 4, 4 + dataLength);
+        putInt(chunk, 8 + dataLength, (int) crc.getValue());
+        sink.write(chunk, 0, dataLength + CHUNK_OVERHEAD);
+    }
+
+    /**
+     * Reads a row of the image as non premultiplied RGBA bytes.
+     */
+    private static void readRow(BufferedImage image, int y, int[] pixels, byte[] row) {
+        int width = image.getWidth();
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            image.getRaster().getDataElements(0, y, width, 1, pixels);
+        } else {
+            image.getRGB(0, y, width, 1, pixels, 0, width);
+        }
+        for (int x = 0, i = 0; x < width; x++, i += BYTES_PER_PIXEL) {
+            int argb = pixels[x];
+            row[i] = (byte) (argb >> 16);
+            row[i + 1] = (byte) (argb >> 8);
+            row[i + 2] = (byte) argb;
+            row[i + 3] = (byte) (argb >>> 24);
+        }
+    }
+
+    /**
+     * Filters a row, preceded by its filter type byte.
+     * @return The array holding the filtered row.
+     */
+    private byte[] filterRow(State current, byte[] row, byte[] previous, int rowLength) {
+        if (filter != Filter.ADAPTIVE) {
+            byte[] filtered = current.filtered[0];
+            filterRow(filter, row, previous, rowLength, filtered);
+            return filtered;
+        }
+        byte[] none = current.filtered[0];
+        byte[] sub = current.filtered[1];
+        byte[] up = current.filtered[2];
+        byte[] average = current.filtered[3];
+        byte[] paeth = current.filtered[4];
+        int noneSum = 0;
+        int subSum = 0;
+        int upSum = 0;
+        int averageSum = 0;
+        int paethSum = 0;
+        // Every candidate is computed in a single pass over the row, which is far cheaper than five separate passes.
+        // The first pixel has no left or upper left neighbours, so they are taken as zero.
+        for (int i = 0; i < rowLength; i++) {
+            int value = row[i] & 0xff;
+            int above = previous[i] & 0xff;
+            int left = 0;
+            int upLeft = 0;
+            if (i >= BYTES_PER_PIXEL) {
+                left = row[i - BYTES_PER_PIXEL] & 0xff;
+                upLeft = previous[i - BYTES_PER_PIXEL] & 0xff;
+            }
+            byte subValue = (byte) (value - left);
+            byte upValue = (byte) (value - above);
+            byte averageValue = (byte) (value - ((left + above) >> 1));
+            byte paethValue = (byte) (value - paeth(left, above, upLeft));
+            none[i + 1] = (byte) value;
+            sub[i + 1] = subValue;
+            up[i + 1] = upValue;
+            average[i + 1] = averageValue;
+            paeth[i + 1] = paethValue;
+            noneSum += Math.abs((byte) value);
+            subSum += Math.abs(subValue);
+            upSum += Math.abs(upValue);
+            averageSum += Math.abs(averageValue);
+            paethSum += Math.abs(paethValue);
+        }
+        none[0] = 0;
+        sub[0] = 1;
+        up[0] = 2;
+        average[0] = 3;
+        paeth[0] = 4;
+        byte[] best = none;
+        int bestSum = noneSum;
+        if (subSum < bestSum) {
+            best = sub;
+            bestSum = subSum;
+        }
+        if (upSum < bestSum) {
+            best = up;
+            bestSum = upSum;
+        }
+        if (averageSum < bestSum) {
+            best = average;
+            bestSum = averageSum;
+        }
+        if (paethSum < bestSum) {
+            best = paeth;
+        }
+        return best;
+    }
+
+    /**
+     * Applies a single filter to a row.
+     */
+    private static void filterRow(Filter filter, byte[] row, byte[] previous, int rowLength, byte[] filtered) {
+        filtered[0] = (byte) filter.ordinal();
+        switch (filter) {
+            case NONE:
+                System.arraycopy(row, 0, filtered, 1, rowLength);
+                break;
+            case SUB:
+                for (int i = 0; i < rowLength; i++) {
+                    int left = i < BYTES_PER_PIXEL ? 0 : row[i - BYTES_PER_PIXEL] & 0xff;
+                    filtered[i + 1] = (byte) ((row[i] & 0xff) - left);
+                }
+                break;
+            case UP:
+                for (int i = 0; i < rowLength; i++) {
+                    filtered[i + 1] = (byte) ((row[i] & 0xff) - (previous[i] & 0xff));
+                }
+                break;
+            case AVERAGE:
+                for (int i = 0; i < rowLength; i++) {
+                    int left = i < BYTES_PER_PIXEL ? 0 : row[i - BYTES_PER_PIXEL] & 0xff;
+                    filtered[i + 1] = (byte) ((row[i] & 0xff) - ((left + (previous[i] & 0xff)) >> 1));
+                }
+                break;
+            case PAETH:
+                for (int i = 0; i < rowLength; i++) {
+                    int left = i < BYTES_PER_PIXEL ? 0 : row[i - BYTES_PER_PIXEL] & 0xff;
+                    int upLeft = i < BYTES_PER_PIXEL ? 0 : previous[i - BYTES_PER_PIXEL] & 0xff;
+                    filtered[i + 1] = (byte) ((row[i] & 0xff) - paeth(left, previous[i] & 0xff, upLeft));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Not a single filter: " + filter);
+        }
+    }
+
+    /**
+     * Returns the Paeth predictor of a byte.  The distances of the estimate {@code left + up - upLeft} from each
+     * neighbour are simplified algebraically so that the estimate itself is never computed.
+     */
+    private static int paeth(int left, int up, int upLeft) {
+        int leftDistance = Math.abs(up - upLeft);
+        int upDistance = Math.abs(left - upLeft);
+        int upLeftDistance = Math.abs(left + up - upLeft - upLeft);
+        int nearest = upDistance <= upLeftDistance ? up : upLeft;
+        return leftDistance <= upDistance && leftDistance <= upLeftDistance ? left : nearest;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Receives the encoded bytes.
+     */
+    private interface Sink {
+
+        void write(byte[] bytes, int offset, int length) throws IOException;
+
+    }
+
+    /**
+     * The deflater and scratch memory used by one encoding at a time, which grow to the widest icon encoded with them.
+     */
+    private static final class State {
+
+        private final Deflater deflater = new Deflater();
+        private final CRC32 crc = new CRC32();
+        private final byte[] chunk = new byte[CHUNK_SIZE + CHUNK_OVERHEAD];
+        private final byte[][] filtered = new byte[ADAPTIVE_CANDIDATES.length][];
+        private int[] pixels = new int[0];
+        private byte[] row = new byte[0];
+        private byte[] previous = new byte[0];
+        private byte[] output = new byte[0];
+        private int outputLength;
+
+        private void prepare(int width, int level, Filter filter) {
+            if (pixels.length < width) {
+                pixels = new int[width];
+                row = new byte[width * BYTES_PER_PIXEL];
+                previous = new byte[width * BYTES_PER_PIXEL];
+                for (int i = 0; i < filtered.length; i++) {
+                    filtered[i] = new byte[width * BYTES_PER_PIXEL + 1];
+                }
+            }
+            deflater.reset();
+            deflater.setLevel(level);
+            deflater.setStrategy(filter == Filter.NONE ? Deflater.DEFAULT_STRATEGY : Deflater.FILTERED);
+        }
+
+        private void append(byte[] bytes, int offset, int length) {
+            if (output.length < outputLength + length) {
+                output = Arrays.copyOf(output, Math.max(outputLength + length, output.length * 2));
+            }
+            System.arraycopy(bytes, offset, output, outputLength, length);
+            outputLength += length;
+        }
+
+    }
+
+}
@@ -0,0 +1,267 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package zenengine.codec;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+/**
+ * Encodes and decodes icons in the Quite OK Image format, a lossless format that compresses icons nearly as well as
+ * PNG while encoding and decoding several times faster, since each pixel is coded in a single pass without a
+ * separate entropy coder.  Images are encoded with four channels and straight alpha, as specified at
+ * <a href="https://qoiformat.org">qoiformat.org</a>.
+ */
+public final class QoiCodec {
+
+    private static final int MAGIC = 0x716f6966;
+    private static final int HEADER_SIZE = 14;
+    private static final byte[] END_MARKER = {0, 0, 0, 0, 0, 0, 0, 1};
+
+    /**
+     * The largest number of pixels a decoder is required to accept, which bounds the memory a corrupt header can
+     * make the decoder allocate.
+     */
+    private static final int MAX_PIXELS = 400_000_000;
+
+    private static final int OP_INDEX = 0x00;
+    private static final int OP_DIFF = 0x40;
+    private static final int OP_LUMA = 0x80;
+    private static final int OP_RUN = 0xc0;
+    private static final int OP_RGB = 0xfe;
+    private static final int OP_RGBA = 0xff;
+    private static final int MASK = 0xc0;
+    private static final int MAX_RUN = 62;
+
+    /**
+     * The largest scratch buffer kept for reuse, which holds the encoding of a 256x256 icon.  Larger images are encoded
+     * into a buffer sized to the call, which is dropped afterwards.
+     */
+    private static final int MAX_POOLED_SCRATCH = HEADER_SIZE + 256 * 256 * 5 + END_MARKER.length;
+
+    /**
+     * Scratch buffers shared by encodings, so that the buffers held stay bounded however many threads encode icons.
+     */
+    private static final BlockingQueue<byte[]> scratch =
+            new ArrayBlockingQueue<>(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private QoiCodec() {
+    }
+
+    /**
+     * Returns an upper bound of the length of the encoding of an image.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The maximum number of bytes an image of the supplied dimensions is encoded into.
+     */
+    public static int getMaxEncodedSize(int width, int height) {
+        long size = HEADER_SIZE + (long) width * height * 5 + END_MARKER.length;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Image too large: " + width + "x" + height);
+        }
+        return (int) size;
+    }
+
+    /**
+     * Encodes the supplied image.
+     * @param image The image to encode.
+     * @return The QOI encoding of the image.
+     */
+    public static byte[] encode(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ImagePixels.getArgb(image);
+        int maxSize = getMaxEncodedSize(width, height);
+        byte[] out = maxSize <= MAX_POOLED_SCRATCH ? scratch.poll() : null;
+        if (out == null) {
+            out = new byte[maxSize <= MAX_POOLED_SCRATCH ? MAX_POOLED_SCRATCH : maxSize];
+        }
+        try {
+            return encode(pixels, width, height, out);
+        } finally {
+            if (out.length == MAX_POOLED_SCRATCH) {
+                scratch.offer(out);
+            }
+        }
+    }
+
+    /**
+     * Encodes the supplied pixels into the supplied scratch buffer, which must hold the largest possible encoding.
+     * @return A copy of the encoding.
+     */
+    private static byte[] encode(int[] pixels, int width, int height, byte[] out) {
+
+        int p = putInt(out, 0, MAGIC);
+        p = putInt(out, p, width);
+        p = putInt(out, p, height);
+        out[p++] = 4;
+        out[p++] = 0;
+
+        int[] index = new int[64];
+        int previous = 0xff000000;
+        int run = 0;
+        int last = width * height - 1;
+        for (int i = 0; i <= last; i++) {
+            int pixel = pixels[i];
+            if (pixel == previous) {
+                run++;
+                if (run == MAX_RUN || i == last) {
+                    out[p++] = (byte) (OP_RUN | (run - 1));
+                    run = 0;
+                }
+                continue;
+            }
+            if (run > 0) {
+                out[p++] = (byte) (OP_RUN | (run - 1));
+                run = 0;
+            }
+            int hash = hash(pixel);
+            if (index[hash] == pixel) {
+                out[p++] = (byte) (OP_INDEX | hash);
+            } else {
+                index[hash] = pixel;
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                if ((pixel ^ previous) >>> 24 == 0) {
+                    int dr = (byte) (r - ((previous >> 16) & 0xff));
+                    int dg = (byte) (g - ((previous >> 8) & 0xff));
+                    int db = (byte) (b - (previous & 0xff));
+                    int drg = dr - dg;
+                    int dbg = db - dg;
+                    if (dr >= -2 && dr <= 1 && dg >= -2 && dg <= 1 && db >= -2 && db <= 1) {
+                        out[p++] = (byte) (OP_DIFF | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));
+                    } else if (dg >= -32 && dg <= 31 && drg >= -8 && drg <= 7 && dbg >= -8 && dbg <= 7) {
+                        out[p++] = (byte) (OP_LUMA | (dg + 32));
+                        out[p++] = (byte) ((drg + 8) << 4 | (dbg + 8));
+                    } else {
+                        out[p++] = (byte) OP_RGB;
+                        out[p++] = (byte) r;
+                        out[p++] = (byte) g;
+                        out[p++] = (byte) b;
+                    }
+                } else {
+                    out[p++] = (byte) OP_RGBA;
+                    out[p++] = (byte) r;
+                    out[p++] = (byte) g;
+                    out[p++] = (byte) b;
+                    out[p++] = (byte) (pixel >>> 24);
+                }
+            }
+            previous = pixel;
+        }
+        System.arraycopy(END_MARKER, 0, out, p, END_MARKER.length);
+        return Arrays.copyOf(out, p + END_MARKER.length);
+    }
+
+    /**
+     * Decodes a QOI image.  Images with three channels are decoded as opaque.
+     * @param bytes The encoding of the image.
+     * @return A TYPE_INT_ARGB image.
+     * @throws IOException If the bytes are not a valid QOI image.
+     */
+    public static BufferedImage decode(byte[] bytes) throws IOException {
+        if (bytes.length < HEADER_SIZE + END_MARKER.length || getInt(bytes, 0) != MAGIC) {
+            throw new IOException("Not a QOI image");
+        }
+        int width = getInt(bytes, 4);
+        int height = getInt(bytes, 8);
+        int channels = bytes[12];
+        if (width <= 0 || height <= 0 || (long) width * height > MAX_PIXELS || (channels != 3 && channels != 4)) {
+            throw new IOException("Invalid QOI header: " + width + "x" + height + ", " + channels + " channels");
+        }
+
+        int[] pixels = new int[width * height];
+        int[] index = new int[64];
+        int pixel = 0xff000000;
+        int end = bytes.length - END_MARKER.length;
+        int p = HEADER_SIZE;
+        int i = 0;
+        try {
+            while (i < pixels.length) {
+                if (p >= end) {
+                    throw new IOException("Truncated QOI image");
+                }
+                int op = bytes[p++] & 0xff;
+                if (op == OP_RGB) {
+                    pixel = (pixel & 0xff000000) | (bytes[p] & 0xff) << 16 | (bytes[p + 1] & 0xff) << 8
+                            | (bytes[p + 2] & 0xff);
+                    p += 3;
+                } else if (op == OP_RGBA) {
+                    pixel = (bytes[p + 3] & 0xff) << 24 | (bytes[p] & 0xff) << 16 | (bytes[p + 1] & 0xff) << 8
+                            | (bytes[p + 2] & 0xff);
+                    p += 4;
+                } else if ((op & MASK) == OP_INDEX) {
+                    pixel = index[op];
+                } else if ((op & MASK) == OP_DIFF) {
+                    pixel = withRgb(pixel, ((op >> 4) & 3) - 2, ((op >> 2) & 3) - 2, (op & 3) - 2);
+                } else if ((op & MASK) == OP_LUMA) {
+                    int second = bytes[p++] & 0xff;
+                    int dg = (op & 0x3f) - 32;
+                    pixel = withRgb(pixel, dg + ((second >> 4) & 0x0f) - 8, dg, dg + (second & 0x0f) - 8);
+                } else {
+                    int run = Math.min((op & 0x3f) + 1, pixels.length - i);
+                    Arrays.fill(pixels, i, i + run, pixel);
+                    i += run;
+                    index[hash(pixel)] = pixel;
+                    continue;
+                }
+                index[hash(pixel)] = pixel;
+                pixels[i++] = pixel;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated QOI image", e);
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.getRaster().setDataElements(0, 0, width, height, pixels);
+        return image;
+    }
+
+    private static int withRgb(int pixel, int dr, int dg, int db) {
+        int r = ((pixel >> 16) + dr) & 0xff;
+        int g = ((pixel >> 8) + dg) & 0xff;
+        int b = (pixel + db) & 0xff;
+        return (pixel & 0xff000000) | r << 16 | g << 8 | b;
+    }
+
+    private static int hash(int pixel) {
+        int r = (pixel >> 16) & 0xff;
+        int g = (pixel >> 8) & 0xff;
+        int b = pixel & 0xff;
+        int a = pixel >>> 24;
+        return (r * 3 + g * 5 + b * 7 + a * 11) & 63;
+    }
+
+    private static int putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+        return offset + 4;
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16 | (bytes[offset + 2] & 0xff) << 8
+                | (bytes[offset + 3] & 0xff);
+    }
+
+}
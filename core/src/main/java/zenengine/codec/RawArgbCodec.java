@@ -0,0 +1,91 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package zenengine.codec;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * Encodes icons as uncompressed premultiplied ARGB pixels behind a 16 byte header, for consumers such as texture
+ * uploads and other processes that want pixels rather than a compressed image.
+ * <p>
+ * The header holds the ASCII magic {@code ARGB} followed by the width, the height and the stride of a row in bytes,
+ * each a little endian int.  Each pixel follows as a little endian premultiplied ARGB int, which is BGRA in byte order:
+ * the layout of JavaFX's {@code ByteBgraPre} pixel format and of the BGRA8 textures of most graphics APIs, so the
+ * pixels can be handed over from offset 16 without conversion.
+ */
+public final class RawArgbCodec {
+
+    /**
+     * The length of the header, which keeps the pixels 16 byte aligned within the encoding.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    private static final int MAGIC = 0x42475241;
+
+    private RawArgbCodec() {
+    }
+
+    /**
+     * Encodes the supplied image, premultiplying its pixels unless it is a TYPE_INT_ARGB_PRE image.
+     * @param image The image to encode.
+     * @return The header followed by the premultiplied pixels.
+     */
+    public static byte[] encode(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ImagePixels.getArgbPre(image);
+        byte[] bytes = new byte[HEADER_SIZE + pixels.length * 4];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(width).putInt(height).putInt(width * 4);
+        buffer.asIntBuffer().put(pixels);
+        return bytes;
+    }
+
+    /**
+     * Decodes an encoding made by {@link #encode(BufferedImage)}.
+     * @param bytes The encoding.
+     * @return A TYPE_INT_ARGB_PRE image holding the pixels.
+     * @throws IOException If the bytes are not a valid encoding.
+     */
+    public static BufferedImage decode(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a raw ARGB image");
+        }
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int stride = buffer.getInt();
+        if (width <= 0 || height <= 0 || stride < width * 4L || stride % 4 != 0
+                || HEADER_SIZE + (long) stride * height > bytes.length) {
+            throw new IOException("Invalid raw ARGB header: " + width + "x" + height + ", stride " + stride);
+        }
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            buffer.position(HEADER_SIZE + y * stride);
+            buffer.asIntBuffer().get(pixels, y * width, width);
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        image.getRaster().setDataElements(0, 0, width, height, pixels);
+        return image;
+    }
+
+}
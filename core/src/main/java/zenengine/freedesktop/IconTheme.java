@@ -0,0 +1,212 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.freedesktop;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * An icon theme as described by its {@code index.theme} file, following the freedesktop.org Icon Theme
+ * Specification.
+ */
+public class IconTheme {
+
+    private static final String GROUP = "Icon Theme";
+
+    private final String name;
+    private final List<String> inherits;
+    private final List<Directory> directories;
+
+    private IconTheme(String name, List<String> inherits, List<Directory> directories) {
+        this.name = name;
+        this.inherits = inherits;
+        this.directories = directories;
+    }
+
+    /**
+     * Reads the {@code index.theme} file of a theme.
+     * @param name The name of the theme, which is the name of its directory.
+     * @param indexFile The {@code index.theme} file of the theme.
+     * @return The parsed theme.
+     * @throws IOException if the index file cannot be read.
+     */
+    public static IconTheme read(String name, Path indexFile) throws IOException {
+        KeyFile keyFile = KeyFile.read(indexFile);
+        List<String> inherits = split(keyFile.get(GROUP, "Inherits"));
+        List<String> directoryNames = new ArrayList<>(split(keyFile.get(GROUP, "Directories")));
+        directoryNames.addAll(split(keyFile.get(GROUP, "ScaledDirectories")));
+
+        List<Directory> directories = new ArrayList<>();
+        for (String directoryName : directoryNames) {
+            if (! keyFile.hasGroup(directoryName)) {
+                continue;
+            }
+            int size = keyFile.getInt(directoryName, "Size", 0);
+            if (size <= 0) {
+                continue;
+            }
+            directories.add(new Directory(directoryName, size,
+                    keyFile.getInt(directoryName, "Scale", 1),
+                    Type.parse(keyFile.get(directoryName, "Type")),
+                    keyFile.getInt(directoryName, "MinSize", size),
+                    keyFile.getInt(directoryName, "MaxSize", size),
+                    keyFile.getInt(directoryName, "Threshold", 2)));
+        }
+        return new IconTheme(name, Collections.unmodifiableList(inherits), Collections.unmodifiableList(directories));
+    }
+
+    /**
+     * Finds the {@code index.theme} file of the named theme in the first base directory that contains it.
+     * @param name The name of the theme.
+     * @param baseDirectories The icon base directories, in order of preference.
+     * @return The parsed theme, or null if no base directory contains the theme.
+     */
+    public static IconTheme find(String name, List<Path> baseDirectories) {
+        for (Path baseDirectory : baseDirectories) {
+            Path indexFile = baseDirectory.resolve(name).resolve("index.theme");
+            if (Files.isRegularFile(indexFile)) {
+                try {
+                    return read(name, indexFile);
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<String> split(String value) {
+        List<String> values = new ArrayList<>();
+        if (value != null) {
+            for (String part : value.split(",")) {
+                if (! part.isBlank()) {
+                    values.add(part.trim());
+                }
+            }
+        }
+        return values;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getInherits() {
+        return inherits;
+    }
+
+    public List<Directory> getDirectories() {
+        return directories;
+    }
+
+    /**
+     * The way a theme directory matches icon sizes.
+     */
+    public enum Type {
+        FIXED, SCALABLE, THRESHOLD;
+
+        private static Type parse(String value) {
+            if ("Fixed".equals(value)) {
+                return FIXED;
+            } else if ("Scalable".equals(value)) {
+                return SCALABLE;
+            }
+            return THRESHOLD;
+        }
+    }
+
+    /**
+     * A subdirectory of a theme holding icons of one nominal size and scale.
+     */
+    public static final class Directory {
+
+        private final String path;
+        private final int size;
+        private final int scale;
+        private final Type type;
+        private final int minSize;
+        private final int maxSize;
+        private final int threshold;
+
+        Directory(String path, int size, int scale, Type type, int minSize, int maxSize, int threshold) {
+            this.path = path;
+            this.size = size;
+            this.scale = scale;
+            this.type = type;
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            this.threshold = threshold;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getScale() {
+            return scale;
+        }
+
+        /**
+         * Implements DirectoryMatchesSize from the Icon Theme Specification.
+         */
+        public boolean matchesSize(int iconSize, int iconScale) {
+            if (scale != iconScale) {
+                return false;
+            }
+            switch (type) {
+                case FIXED:
+                    return size == iconSize;
+                case SCALABLE:
+                    return minSize <= iconSize && iconSize <= maxSize;
+                default:
+                    return size - threshold <= iconSize && iconSize <= size + threshold;
+            }
+        }
+
+        /**
+         * Implements DirectorySizeDistance from the Icon Theme Specification.
+         */
+        public int sizeDistance(int iconSize, int iconScale) {
+            int scaled = iconSize * iconScale;
+            switch (type) {
+                case FIXED:
+                    return Math.abs(size * scale - scaled);
+                case SCALABLE:
+                    if (scaled < minSize * scale) {
+                        return minSize * scale - scaled;
+                    }
+                    return scaled > maxSize * scale ? scaled - maxSize * scale : 0;
+                default:
+                    if (scaled < (size - threshold) * scale) {
+                        return minSize * scale - scaled;
+                    }
+                    return scaled > (size + threshold) * scale ? scaled - maxSize * scale : 0;
+            }
+        }
+
+    }
+
+}
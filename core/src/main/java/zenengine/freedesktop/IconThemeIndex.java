@@ -0,0 +1,239 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.freedesktop;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * An in-memory index of the icons available to an icon theme and the themes it inherits from.  The theme directories
+ * are scanned once when the index is built, so that looking up an icon is a hash probe followed by the size
+ * matching rules of the freedesktop.org Icon Theme Specification, rather than a walk of the file system.
+ * <p>
+ * Only PNG icons are indexed, since they are the only icon format ImageIO can read without additional libraries.
+ */
+public class IconThemeIndex {
+
+    /**
+     * The fallback theme that every theme implicitly inherits from.
+     */
+    public static final String FALLBACK_THEME = "hicolor";
+
+    private static final String ICON_EXTENSION = ".png";
+
+    private final List<String> themeChain;
+    private final Map<String, List<Entry>> icons;
+    private final long fingerprint;
+
+    private IconThemeIndex(List<String> themeChain, Map<String, List<Entry>> icons, long fingerprint) {
+        this.themeChain = themeChain;
+        this.icons = icons;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Builds the index for the named theme from the default icon base directories and pixmap directories.
+     * @param themeName The name of the theme.
+     * @return The index of the theme.
+     */
+    public static IconThemeIndex build(String themeName) {
+        List<Path> baseDirectories = new ArrayList<>();
+        List<Path> pixmapDirectories = new ArrayList<>();
+        baseDirectories.add(XdgDirectories.getHome().resolve(".icons"));
+        for (Path dataDirectory : XdgDirectories.getDataDirectories()) {
+            baseDirectories.add(dataDirectory.resolve("icons"));
+            pixmapDirectories.add(dataDirectory.resolve("pixmaps"));
+        }
+        return build(themeName, baseDirectories, pixmapDirectories);
+    }
+
+    /**
+     * Builds the index for the named theme.
+     * @param themeName The name of the theme.
+     * @param baseDirectories The icon base directories that hold themes, in order of preference.
+     * @param pixmapDirectories Directories holding unthemed icons, which are used when no theme has an icon.
+     * @return The index of the theme.
+     */
+    public static IconThemeIndex build(String themeName, List<Path> baseDirectories, List<Path> pixmapDirectories) {
+        List<IconTheme> themes = new ArrayList<>();
+        addTheme(themeName, baseDirectories, themes);
+        addTheme(FALLBACK_THEME, baseDirectories, themes);
+
+        Map<String, List<Entry>> icons = new HashMap<>();
+        List<String> themeChain = new ArrayList<>();
+        long fingerprint = 0;
+        for (int order = 0; order < themes.size(); order++) {
+            IconTheme theme = themes.get(order);
+            themeChain.add(theme.getName());
+            fingerprint = fingerprint * 31 + theme.getName().hashCode();
+            for (IconTheme.Directory directory : theme.getDirectories()) {
+                for (Path baseDirectory : baseDirectories) {
+                    Path path = baseDirectory.resolve(theme.getName()).resolve(directory.getPath());
+                    fingerprint = XdgDirectories.fingerprint(fingerprint, path);
+                    scan(path, order, directory, icons);
+                }
+            }
+        }
+        for (Path pixmapDirectory : pixmapDirectories) {
+            fingerprint = XdgDirectories.fingerprint(fingerprint, pixmapDirectory);
+            scan(pixmapDirectory, themes.size(), null, icons);
+        }
+        return new IconThemeIndex(Collections.unmodifiableList(themeChain), icons, fingerprint);
+    }
+
+    /**
+     * Adds the named theme and, depth first, the themes it inherits from.
+     */
+    private static void addTheme(String name, List<Path> baseDirectories, List<IconTheme> themes) {
+        for (IconTheme theme : themes) {
+            if (theme.getName().equals(name)) {
+                return;
+            }
+        }
+        IconTheme theme = IconTheme.find(name, baseDirectories);
+        if (theme != null) {
+            themes.add(theme);
+            for (String parent : theme.getInherits()) {
+                addTheme(parent, baseDirectories, themes);
+            }
+        }
+    }
+
+    private static void scan(Path directory, int themeOrder, IconTheme.Directory themeDirectory,
+                             Map<String, List<Entry>> icons) {
+        if (! Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + ICON_EXTENSION)) {
+            for (Path file : stream) {
+                String fileName = file.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - ICON_EXTENSION.length());
+                List<Entry> entries = icons.computeIfAbsent(name, key -> new ArrayList<>(2));
+                if (! containsDirectory(entries, themeOrder, themeDirectory)) {
+                    entries.add(new Entry(themeOrder, themeDirectory, file));
+                }
+            }
+        } catch (IOException e) {
+            // Unreadable directories simply contribute no icons
+        }
+    }
+
+    /**
+     * Returns true if an earlier base directory already provided an icon for the same theme directory, which takes
+     * precedence.
+     */
+    private static boolean containsDirectory(List<Entry> entries, int themeOrder, IconTheme.Directory directory) {
+        for (Entry entry : entries) {
+            if (entry.themeOrder == themeOrder && entry.directory == directory) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the icon that best matches the supplied size for the first of the supplied names that the theme, or
+     * any of the themes it inherits from, provides.  Themes take precedence over names, so a specific icon from a
+     * parent theme is only used if the theme itself has none of the names.
+     * @param names The icon names, in order of preference.
+     * @param size The requested icon size.
+     * @param scale The requested icon scale.
+     * @return The icon file, or null if none of the names is available.
+     */
+    public Path lookup(List<String> names, int size, int scale) {
+        for (int order = 0; order <= themeChain.size(); order++) {
+            for (String name : names) {
+                Path file = lookup(name, order, size, scale);
+                if (file != null) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Path lookup(String name, int themeOrder, int size, int scale) {
+        List<Entry> entries = icons.get(name);
+        if (entries == null) {
+            return null;
+        }
+        Entry closest = null;
+        int closestDistance = Integer.MAX_VALUE;
+        for (Entry entry : entries) {
+            if (entry.themeOrder != themeOrder) {
+                continue;
+            }
+            if (entry.directory == null) {
+                return entry.file;
+            }
+            if (entry.directory.matchesSize(size, scale)) {
+                return entry.file;
+            }
+            int distance = entry.directory.sizeDistance(size, scale);
+            if (distance < closestDistance) {
+                closest = entry;
+                closestDistance = distance;
+            }
+        }
+        return closest == null ? null : closest.file;
+    }
+
+    /**
+     * @return The names of the indexed themes, in lookup order.
+     */
+    public List<String> getThemeChain() {
+        return themeChain;
+    }
+
+    /**
+     * @return A fingerprint of the indexed themes and the directories they were scanned from, which changes when a
+     * different theme is selected or icons are added to or removed from the theme.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return The number of distinct icon names in the index.
+     */
+    public int size() {
+        return icons.size();
+    }
+
+    private static final class Entry {
+
+        private final int themeOrder;
+        private final IconTheme.Directory directory;
+        private final Path file;
+
+        private Entry(int themeOrder, IconTheme.Directory directory, Path file) {
+            this.themeOrder = themeOrder;
+            this.directory = directory;
+            this.file = file;
+        }
+
+    }
+
+}
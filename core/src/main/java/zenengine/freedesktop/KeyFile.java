@@ -0,0 +1,101 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.freedesktop;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A reader for the key file format used by freedesktop.org specifications, such as {@code index.theme} and
+ * {@code .desktop} files.  Localised keys are kept as is, under their full key name.
+ */
+public class KeyFile {
+
+    private final Map<String, Map<String, String>> groups;
+
+    private KeyFile(Map<String, Map<String, String>> groups) {
+        this.groups = groups;
+    }
+
+    /**
+     * Reads the key file at the supplied path.
+     * @param file The key file to read.
+     * @return The parsed key file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static KeyFile read(Path file) throws IOException {
+        Map<String, Map<String, String>> groups = new LinkedHashMap<>();
+        Map<String, String> group = null;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#") || line.startsWith(";")) {
+                continue;
+            }
+            if (line.startsWith("[") && line.endsWith("]")) {
+                group = groups.computeIfAbsent(line.substring(1, line.length() - 1), key -> new LinkedHashMap<>());
+            } else if (group != null) {
+                int index = line.indexOf('=');
+                if (index > 0) {
+                    group.putIfAbsent(line.substring(0, index).trim(), line.substring(index + 1).trim());
+                }
+            }
+        }
+        return new KeyFile(groups);
+    }
+
+    /**
+     * @param group The name of the group, without brackets.
+     * @param key The key within the group.
+     * @return The value of the key, or null if the group or key does not exist.
+     */
+    public String get(String group, String key) {
+        return groups.getOrDefault(group, Collections.emptyMap()).get(key);
+    }
+
+    /**
+     * @param group The name of the group, without brackets.
+     * @param key The key within the group.
+     * @param defaultValue The value returned if the key does not exist or is not an integer.
+     * @return The integer value of the key.
+     */
+    public int getInt(String group, String key, int defaultValue) {
+        String value = get(group, key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @param group The name of the group, without brackets.
+     * @return True if the key file contains the group.
+     */
+    public boolean hasGroup(String group) {
+        return groups.containsKey(group);
+    }
+
+}
@@ -0,0 +1,647 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.freedesktop;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+
+/**
+ * A pure Java reader for the shared-mime-info database.  The {@code globs2}, {@code magic}, {@code icons},
+ * {@code generic-icons} and {@code subclasses} files of every mime directory are parsed once, so that resolving the
+ * MIME type of a file by name is a hash lookup and only files that match no glob are sniffed for magic.
+ */
+public class MimeDatabase {
+
+    private static final Logger logger = Logger.getLogger(MimeDatabase.class.getName());
+
+    public static final String DIRECTORY = "inode/directory";
+    public static final String OCTET_STREAM = "application/octet-stream";
+    public static final String PLAIN_TEXT = "text/plain";
+    public static final String ZERO_SIZE = "application/x-zerosize";
+    public static final String FIFO = "inode/fifo";
+    public static final String CHARACTER_DEVICE = "inode/chardevice";
+    public static final String BLOCK_DEVICE = "inode/blockdevice";
+    public static final String SOCKET = "inode/socket";
+
+    /**
+     * The file type bits of a unix mode, and the values they take for special files.
+     */
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFIFO = 0010000;
+    private static final int S_IFCHR = 0020000;
+    private static final int S_IFBLK = 0060000;
+    private static final int S_IFSOCK = 0140000;
+
+    private static final byte[] MAGIC_HEADER = "MIME-Magic\0\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Map<String, Glob> literalGlobs = new HashMap<>();
+    private final Map<String, Glob> caseSensitiveLiteralGlobs = new HashMap<>();
+    private final Map<String, Glob> suffixGlobs = new HashMap<>();
+    private final Map<String, Glob> caseSensitiveSuffixGlobs = new HashMap<>();
+    private final List<Glob> complexGlobs = new ArrayList<>();
+    private final List<MagicSection> magic = new ArrayList<>();
+    private final Map<String, String> icons = new HashMap<>();
+    private final Map<String, String> genericIcons = new HashMap<>();
+    private final Map<String, List<String>> parents = new HashMap<>();
+    private int magicExtent;
+    private long fingerprint;
+
+    /**
+     * Loads the database from the {@code mime} directories of the XDG data directories.
+     * @return The MIME database of the host system.
+     */
+    public static MimeDatabase load() {
+        List<Path> mimeDirectories = new ArrayList<>();
+        for (Path dataDirectory : XdgDirectories.getDataDirectories()) {
+            mimeDirectories.add(dataDirectory.resolve("mime"));
+        }
+        return load(mimeDirectories);
+    }
+
+    /**
+     * Loads the database from the supplied mime directories.  Entries from earlier directories take precedence over
+     * entries from later directories.  Missing directories and files are skipped.
+     * @param mimeDirectories The mime directories, in order of preference.
+     * @return A MIME database holding the entries of all the supplied directories.
+     */
+    public static MimeDatabase load(List<Path> mimeDirectories) {
+        MimeDatabase database = new MimeDatabase();
+        List<Path> reversed = new ArrayList<>(mimeDirectories);
+        Collections.reverse(reversed);
+        for (Path directory : reversed) {
+            for (String name : List.of("globs2", "magic", "icons", "generic-icons", "subclasses")) {
+                database.fingerprint = XdgDirectories.fingerprint(database.fingerprint, directory.resolve(name));
+            }
+            try {
+                database.readGlobs(directory.resolve("globs2"));
+                database.readMagic(directory.resolve("magic"));
+                database.readPairs(directory.resolve("icons"), ':', database.icons);
+                database.readPairs(directory.resolve("generic-icons"), ':', database.genericIcons);
+                database.readSubclasses(directory.resolve("subclasses"));
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to read MIME database in " + directory, e);
+            }
+        }
+        database.magic.sort((a, b) -> Integer.compare(b.priority, a.priority));
+        return database;
+    }
+
+    /**
+     * Determines the MIME type of the supplied file from its name, falling back on its contents if no glob matches.
+     * @param file The file whose MIME type is requested.
+     * @param directory Indicates whether the file is a directory.
+     * @return The MIME type of the file.
+     */
+    public String getMimeType(Path file, boolean directory) {
+        if (directory) {
+            return DIRECTORY;
+        }
+        Path fileName = file.getFileName();
+        if (fileName != null) {
+            String mimeType = getMimeTypeForName(fileName.toString());
+            if (mimeType != null) {
+                return mimeType;
+            }
+        }
+        return getMimeTypeForContent(file);
+    }
+
+    /**
+     * Determines the MIME type of a file from its name alone.
+     * @param name The file name.
+     * @return The MIME type matched by the globs of the database, or null if no glob matches the name.
+     */
+    public String getMimeTypeForName(String name) {
+        Glob glob = caseSensitiveLiteralGlobs.get(name);
+        if (glob == null) {
+            glob = literalGlobs.get(name.toLowerCase(Locale.ROOT));
+        }
+        if (glob != null) {
+            return glob.mimeType;
+        }
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        Glob best = null;
+        for (int i = name.indexOf('.'); i >= 0; i = name.indexOf('.', i + 1)) {
+            best = better(best, caseSensitiveSuffixGlobs.get(name.substring(i)));
+            best = better(best, suffixGlobs.get(lowerName.substring(i)));
+        }
+        for (Glob complex : complexGlobs) {
+            if (complex.pattern.matcher(complex.caseSensitive ? name : lowerName).matches()) {
+                best = better(best, complex);
+            }
+        }
+        return best == null ? null : best.mimeType;
+    }
+
+    /**
+     * Determines the MIME type of a file by sniffing its first bytes for magic.  Only regular files are read: reading a
+     * FIFO could block forever and reading a device has side effects, so special files are typed by their attributes.
+     * @param file The file whose MIME type is requested.
+     * @return The matched MIME type, {@link #ZERO_SIZE} for empty files, {@link #PLAIN_TEXT} for unmatched files that
+     *         look like text, one of the {@code inode/} types for special files, or {@link #OCTET_STREAM} otherwise.
+     */
+    public String getMimeTypeForContent(Path file) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return OCTET_STREAM;
+        }
+        if (attributes.isDirectory()) {
+            return DIRECTORY;
+        }
+        if (! attributes.isRegularFile()) {
+            return getSpecialFileMimeType(file);
+        }
+        if (attributes.size() == 0) {
+            return ZERO_SIZE;
+        }
+        byte[] header;
+        try (InputStream in = Files.newInputStream(file)) {
+            header = in.readNBytes(Math.max(magicExtent, 256));
+        } catch (IOException e) {
+            return OCTET_STREAM;
+        }
+        for (MagicSection section : magic) {
+            if (section.matches(header)) {
+                return section.mimeType;
+            }
+        }
+        return looksLikeText(header) ? PLAIN_TEXT : OCTET_STREAM;
+    }
+
+    /**
+     * Determines the {@code inode/} MIME type of a file that is neither a regular file nor a directory from the file
+     * type bits of its unix mode, if the file system exposes them.
+     */
+    private static String getSpecialFileMimeType(Path file) {
+        int mode;
+        try {
+            mode = (Integer) Files.getAttribute(file, "unix:mode");
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return OCTET_STREAM;
+        }
+        switch (mode & S_IFMT) {
+            case S_IFIFO:
+                return FIFO;
+            case S_IFCHR:
+                return CHARACTER_DEVICE;
+            case S_IFBLK:
+                return BLOCK_DEVICE;
+            case S_IFSOCK:
+                return SOCKET;
+            default:
+                return OCTET_STREAM;
+        }
+    }
+
+    /**
+     * @return A fingerprint of the files the database was loaded from, which changes when the database is updated, for
+     * example when an application registers new file types.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns the icon names that can represent the supplied MIME type, in order of preference: the icon declared
+     * for the type, the name derived from the type, the icons of its parent types, and finally its generic icon.
+     * @param mimeType The MIME type.
+     * @return The icon names for the MIME type.
+     */
+    public List<String> getIconNames(String mimeType) {
+        Set<String> names = new LinkedHashSet<>();
+        addIconNames(mimeType, names, new HashSet<>());
+        String media = mimeType.substring(0, Math.max(mimeType.indexOf('/'), 0));
+        String generic = genericIcons.get(mimeType);
+        names.add(generic != null ? generic : media + "-x-generic");
+        if (DIRECTORY.equals(mimeType)) {
+            names.add("folder");
+        }
+        names.add("unknown");
+        return new ArrayList<>(names);
+    }
+
+    private void addIconNames(String mimeType, Set<String> names, Set<String> visited) {
+        if (! visited.add(mimeType)) {
+            return;
+        }
+        String icon = icons.get(mimeType);
+        if (icon != null) {
+            names.add(icon);
+        }
+        names.add(mimeType.replace('/', '-'));
+        for (String parent : parents.getOrDefault(mimeType, List.of())) {
+            addIconNames(parent, names, visited);
+        }
+    }
+
+    private static Glob better(Glob current, Glob candidate) {
+        if (candidate == null) {
+            return current;
+        }
+        if (current == null || candidate.weight > current.weight
+                || (candidate.weight == current.weight && candidate.length > current.length)) {
+            return candidate;
+        }
+        return current;
+    }
+
+    private static boolean looksLikeText(byte[] header) {
+        for (byte b : header) {
+            if (b == 0 || (b > 0 && b < 0x20 && b != '\n' && b != '\r' && b != '\t' && b != '\f' && b != 0x1B)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a {@code globs2} file, whose lines have the form {@code weight:mime:glob[:flags]}.  A line whose glob is
+     * {@code __NOGLOBS__} discards the globs read for the type from less preferred directories, which are read first.
+     */
+    private void readGlobs(Path file) throws IOException {
+        if (! Files.isRegularFile(file)) {
+            return;
+        }
+        List<Glob> globs = new ArrayList<>();
+        Set<String> discarded = new HashSet<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(":", 4);
+            if (fields.length < 3) {
+                continue;
+            }
+            if (fields[2].equals("__NOGLOBS__")) {
+                discarded.add(fields[1]);
+                continue;
+            }
+            int weight;
+            try {
+                weight = Integer.parseInt(fields[0]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            boolean caseSensitive = fields.length == 4 && Arrays.asList(fields[3].split(",")).contains("cs");
+            globs.add(new Glob(fields[1], fields[2], weight, caseSensitive));
+        }
+        if (! discarded.isEmpty()) {
+            for (Map<String, Glob> map : List.of(literalGlobs, caseSensitiveLiteralGlobs, suffixGlobs,
+                    caseSensitiveSuffixGlobs)) {
+                map.values().removeIf(glob -> discarded.contains(glob.mimeType));
+            }
+            complexGlobs.removeIf(glob -> discarded.contains(glob.mimeType));
+        }
+        for (Glob glob : globs) {
+            addGlob(glob);
+        }
+    }
+
+    private void addGlob(Glob glob) {
+        String pattern = glob.caseSensitive ? glob.glob : glob.glob.toLowerCase(Locale.ROOT);
+        if (! containsWildcard(pattern)) {
+            (glob.caseSensitive ? caseSensitiveLiteralGlobs : literalGlobs).put(pattern, glob);
+        } else if (pattern.startsWith("*.") && ! containsWildcard(pattern.substring(1))) {
+            Map<String, Glob> suffixes = glob.caseSensitive ? caseSensitiveSuffixGlobs : suffixGlobs;
+            suffixes.put(pattern.substring(1), better(suffixes.get(pattern.substring(1)), glob));
+        } else {
+            glob.pattern = Pattern.compile(globToRegex(pattern));
+            complexGlobs.add(glob);
+        }
+    }
+
+    private static boolean containsWildcard(String pattern) {
+        return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0 || pattern.indexOf('[') >= 0;
+    }
+
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '[') {
+                int end = glob.indexOf(']', i + 1);
+                if (end < 0) {
+                    regex.append("\\[");
+                } else {
+                    String set = glob.substring(i + 1, end);
+                    if (set.startsWith("!")) {
+                        set = "^" + set.substring(1);
+                    }
+                    regex.append('[').append(set.replace("\\", "\\\\")).append(']');
+                    i = end;
+                }
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+
+    private void readPairs(Path file, char separator, Map<String, String> target) throws IOException {
+        if (! Files.isRegularFile(file)) {
+            return;
+        }
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int index = line.indexOf(separator);
+            if (index > 0 && ! line.startsWith("#")) {
+                target.put(line.substring(0, index), line.substring(index + 1).trim());
+            }
+        }
+    }
+
+    private void readSubclasses(Path file) throws IOException {
+        if (! Files.isRegularFile(file)) {
+            return;
+        }
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] fields = line.trim().split(" ");
+            if (fields.length == 2 && ! line.startsWith("#")) {
+                parents.computeIfAbsent(fields[0], key -> new ArrayList<>()).add(fields[1]);
+            }
+        }
+    }
+
+    /**
+     * Parses the binary magic file format described by the shared-mime-info specification.
+     */
+    private void readMagic(Path file) throws IOException {
+        if (! Files.isRegularFile(file)) {
+            return;
+        }
+        byte[] data = Files.readAllBytes(file);
+        if (data.length < MAGIC_HEADER.length
+                || ! Arrays.equals(Arrays.copyOf(data, MAGIC_HEADER.length), MAGIC_HEADER)) {
+            logger.warning("Ignoring magic file with unknown format: " + file);
+            return;
+        }
+        MagicReader reader = new MagicReader(data, MAGIC_HEADER.length);
+        try {
+            MagicSection section;
+            while ((section = reader.readSection()) != null) {
+                magic.add(section);
+                magicExtent = Math.max(magicExtent, section.extent());
+            }
+        } catch (IllegalStateException | IndexOutOfBoundsException e) {
+            logger.log(Level.WARNING, "Failed to parse magic file " + file, e);
+        }
+    }
+
+    private static final class Glob {
+
+        private final String mimeType;
+        private final String glob;
+        private final int weight;
+        private final int length;
+        private final boolean caseSensitive;
+        private Pattern pattern;
+
+        private Glob(String mimeType, String glob, int weight, boolean caseSensitive) {
+            this.mimeType = mimeType;
+            this.glob = glob;
+            this.weight = weight;
+            this.length = glob.length();
+            this.caseSensitive = caseSensitive;
+        }
+
+    }
+
+    private static final class MagicSection {
+
+        private final int priority;
+        private final String mimeType;
+        private final List<MagicRule> rules = new ArrayList<>();
+
+        private MagicSection(int priority, String mimeType) {
+            this.priority = priority;
+            this.mimeType = mimeType;
+        }
+
+        private boolean matches(byte[] data) {
+            for (MagicRule rule : rules) {
+                if (rule.matches(data)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int extent() {
+            int extent = 0;
+            for (MagicRule rule : rules) {
+                extent = Math.max(extent, rule.extent());
+            }
+            return extent;
+        }
+
+    }
+
+    private static final class MagicRule {
+
+        private final int offset;
+        private final byte[] value;
+        private final byte[] mask;
+        private final int range;
+        private final List<MagicRule> children = new ArrayList<>();
+
+        private MagicRule(int offset, byte[] value, byte[] mask, int range) {
+            this.offset = offset;
+            this.value = value;
+            this.mask = mask;
+            this.range = range;
+        }
+
+        /**
+         * A rule matches if its value is found within its range and, if it has child rules, any child matches.
+         */
+        private boolean matches(byte[] data) {
+            for (int start = offset; start < offset + range && start + value.length <= data.length; start++) {
+                if (matchesAt(data, start)) {
+                    if (children.isEmpty()) {
+                        return true;
+                    }
+                    for (MagicRule child : children) {
+                        if (child.matches(data)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        private boolean matchesAt(byte[] data, int start) {
+            for (int i = 0; i < value.length; i++) {
+                byte b = data[start + i];
+                if (mask != null) {
+                    b &= mask[i];
+                }
+                if (b != value[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int extent() {
+            int extent = offset + range + value.length;
+            for (MagicRule child : children) {
+                extent = Math.max(extent, child.extent());
+            }
+            return Math.min(extent, 64 * 1024);
+        }
+
+    }
+
+    private static final class MagicReader {
+
+        private final byte[] data;
+        private int position;
+
+        private MagicReader(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        private MagicSection readSection() {
+            if (position >= data.length) {
+                return null;
+            }
+            expect('[');
+            int priority = readNumber();
+            expect(':');
+            int start = position;
+            while (data[position] != ']') {
+                position++;
+            }
+            String mimeType = new String(data, start, position - start, StandardCharsets.US_ASCII);
+            position++;
+            expect('\n');
+
+            MagicSection section = new MagicSection(priority, mimeType);
+            List<MagicRule> parents = new ArrayList<>();
+            while (position < data.length && data[position] != '[') {
+                int indent = data[position] == '>' ? 0 : readNumber();
+                MagicRule rule = readRule();
+                while (parents.size() > indent) {
+                    parents.remove(parents.size() - 1);
+                }
+                if (indent == 0) {
+                    section.rules.add(rule);
+                } else if (! parents.isEmpty()) {
+                    parents.get(parents.size() - 1).children.add(rule);
+                }
+                parents.add(rule);
+            }
+            return section;
+        }
+
+        private MagicRule readRule() {
+            expect('>');
+            int offset = readNumber();
+            expect('=');
+            int length = ((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF);
+            position += 2;
+            byte[] value = Arrays.copyOfRange(data, position, position + length);
+            position += length;
+            byte[] mask = null;
+            int wordSize = 1;
+            int range = 1;
+            if (data[position] == '&') {
+                position++;
+                mask = Arrays.copyOfRange(data, position, position + length);
+                position += length;
+            }
+            if (data[position] == '~') {
+                position++;
+                wordSize = readNumber();
+            }
+            if (data[position] == '+') {
+                position++;
+                range = readNumber();
+            }
+            // Skip any extensions this reader does not understand
+            while (data[position] != '\n') {
+                position++;
+            }
+            position++;
+            if (wordSize > 1 && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+                swap(value, wordSize);
+                if (mask != null) {
+                    swap(mask, wordSize);
+                }
+            }
+            return new MagicRule(offset, value, mask, range);
+        }
+
+        private static void swap(byte[] bytes, int wordSize) {
+            for (int i = 0; i + wordSize <= bytes.length; i += wordSize) {
+                for (int j = 0; j < wordSize / 2; j++) {
+                    byte b = bytes[i + j];
+                    bytes[i + j] = bytes[i + wordSize - 1 - j];
+                    bytes[i + wordSize - 1 - j] = b;
+                }
+            }
+        }
+
+        private int readNumber() {
+            int number = 0;
+            int start = position;
+            while (position < data.length && data[position] >= '0' && data[position] <= '9') {
+                number = number * 10 + (data[position++] - '0');
+            }
+            if (position == start) {
+                throw new IllegalStateException("Expected a number at offset " + position);
+            }
+            return number;
+        }
+
+        private void expect(char c) {
+            if (position >= data.length || data[position] != c) {
+                throw new IllegalStateException("Expected '" + c + "' at offset " + position);
+            }
+            position++;
+        }
+
+    }
+
+}
@@ -0,0 +1,515 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package zenengine.freedesktop;
+
+import zenengine.base.ImageScaler;
+import zenengine.base.PixelConverter;
+import zenengine.codec.PngEncoder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+
+/**
+ * Reads the thumbnails that Linux desktops keep for images, videos and documents, following the freedesktop.org
+ * Thumbnail Managing Standard.  Thumbnails are PNG files named after the MD5 hash of the file's URI, in a directory per
+ * size under {@code $XDG_CACHE_HOME/thumbnails}.  A thumbnail is only returned while the {@code Thumb::MTime} it
+ * records matches the modification time of the file, and its {@code Thumb::URI} and any {@code Thumb::Size} match
+ * the file, so thumbnails of files that have since changed are never served.  The PNG bytes are returned as they are
+ * stored, without decoding them.
+ * <p>
+ * If a generator executor is set, missing thumbnails of images that ImageIO can read are generated into the cache in
+ * the background, so that they are found by later lookups and by other applications.
+ */
+public final class ThumbnailCache {
+
+    private static final Logger logger = Logger.getLogger(ThumbnailCache.class.getName());
+
+    /**
+     * The sizes of thumbnail defined by the standard, each kept in its own directory.
+     */
+    public enum Size {
+        NORMAL("normal", 128),
+        LARGE("large", 256),
+        X_LARGE("x-large", 512),
+        XX_LARGE("xx-large", 1024);
+
+        private final String directoryName;
+        private final int pixels;
+
+        Size(String directoryName, int pixels) {
+            this.directoryName = directoryName;
+            this.pixels = pixels;
+        }
+
+        public String getDirectoryName() {
+            return directoryName;
+        }
+
+        /**
+         * @return The largest width or height of a thumbnail of this size.
+         */
+        public int getPixels() {
+            return pixels;
+        }
+
+        /**
+         * @return The smallest size whose thumbnails are at least as large as the supplied number of pixels, or the
+         * largest size if none is.
+         */
+        public static Size forPixels(int pixels) {
+            for (Size size : values()) {
+                if (size.pixels >= pixels) {
+                    return size;
+                }
+            }
+            return XX_LARGE;
+        }
+    }
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * The end of the IHDR chunk, which must be the first chunk, and where the text chunks of a generated thumbnail are
+     * inserted.
+     */
+    private static final int IHDR_END = 8 + 8 + 13 + 4;
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * The characters GLib leaves unescaped in the path of a file URI, beside letters and digits.  Thumbnails are
+     * named after the URI, so it must be escaped exactly as the desktop escapes it.
+     */
+    private static final String URI_PATH_CHARACTERS = "!$&'()*+,-./:=@_~";
+
+    /**
+     * A valid thumbnail of a file, with the path and modification time of the thumbnail file it was read from, so that
+     * callers that keep it can tell when it is replaced or removed.
+     */
+    public static final class Thumbnail {
+
+        private final Path path;
+        private final long lastModified;
+        private final byte[] bytes;
+
+        private Thumbnail(Path path, long lastModified, byte[] bytes) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.bytes = bytes;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * @return The modification time of the thumbnail file in milliseconds, read before its contents.
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return The thumbnail's PNG bytes.
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+    }
+
+    private final Path directory;
+    private final Set<Path> generating = ConcurrentHashMap.newKeySet();
+    private final PngEncoder encoder = new PngEncoder();
+    private volatile Executor generator;
+
+    /**
+     * @param directory The thumbnail directory, which holds a directory per {@link Size}.
+     */
+    public ThumbnailCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return A cache of the user's thumbnails, in the thumbnails directory of the XDG cache directory.
+     */
+    public static ThumbnailCache getDefault() {
+        return new ThumbnailCache(XdgDirectories.getCacheHome().resolve("thumbnails"));
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Executor getGenerator() {
+        return generator;
+    }
+
+    /**
+     * @param generator The executor on which missing thumbnails are generated, or null to never generate thumbnails.
+     */
+    public void setGenerator(Executor generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * Returns the URI of the supplied file, escaped the way GLib escapes it.
+     * @param file The file, which is made absolute.
+     * @return The file URI.
+     */
+    public static String getUri(Path file) {
+        byte[] path = file.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8);
+        StringBuilder uri = new StringBuilder(path.length + 16).append("file://");
+        for (byte b : path) {
+            int c = b & 0xFF;
+            if (c < 0x80 && (Character.isLetterOrDigit(c) || URI_PATH_CHARACTERS.indexOf(c) >= 0)) {
+                uri.append((char) c);
+            } else {
+                uri.append('%').append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+        }
+        return uri.toString();
+    }
+
+    /**
+     * @return The file name of the thumbnails of the file with the supplied URI: the lower case hex MD5 hash of the
+     * URI followed by .png.
+     */
+    public static String getThumbnailName(String uri) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(uri.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(36);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return name.append(".png").toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    /**
+     * @return The path the thumbnail of the supplied size of the supplied file would have.
+     */
+    public Path getThumbnailPath(Path file, Size size) {
+        return directory.resolve(size.getDirectoryName()).resolve(getThumbnailName(getUri(file)));
+    }
+
+    /**
+     * Returns the PNG bytes of a valid thumbnail of the supplied file, preferring the smallest size at least as large as
+     * the requested number of pixels, then larger sizes, then smaller sizes.  If no valid thumbnail exists and a
+     * generator is set, a thumbnail of the preferred size is generated in the background.
+     * @param file The file whose thumbnail is requested.
+     * @param pixels The requested width and height of the thumbnail.
+     * @return The thumbnail's PNG bytes, or null if the file has no valid thumbnail.
+     */
+    public byte[] getThumbnailBytes(Path file, int pixels) {
+        Thumbnail thumbnail = getThumbnail(file, pixels);
+        return thumbnail == null ? null : thumbnail.getBytes();
+    }
+
+    /**
+     * Returns a valid thumbnail of the supplied file, looked up like {@link #getThumbnailBytes(Path, int)}.
+     * @param file The file whose thumbnail is requested.
+     * @param pixels The requested width and height of the thumbnail.
+     * @return The thumbnail, or null if the file has no valid thumbnail.
+     */
+    public Thumbnail getThumbnail(Path file, int pixels) {
+        BasicFileAttributes attributes = readAttributes(file);
+        if (attributes == null) {
+            return null;
+        }
+        String uri = getUri(file);
+        String name = getThumbnailName(uri);
+        Size preferred = Size.forPixels(pixels);
+        Size[] sizes = Size.values();
+        for (int i = preferred.ordinal(); i < sizes.length; i++) {
+            Thumbnail thumbnail = readThumbnail(sizes[i], name, uri, attributes);
+            if (thumbnail != null) {
+                return thumbnail;
+            }
+        }
+        for (int i = preferred.ordinal() - 1; i >= 0; i--) {
+            Thumbnail thumbnail = readThumbnail(sizes[i], name, uri, attributes);
+            if (thumbnail != null) {
+                return thumbnail;
+            }
+        }
+        generateAsync(file, preferred);
+        return null;
+    }
+
+    /**
+     * Returns the PNG bytes of the thumbnail of the supplied size of the supplied file, if it is valid.
+     * @return The thumbnail's PNG bytes, or null if the file has no valid thumbnail of the size.
+     */
+    public byte[] getThumbnailBytes(Path file, Size size) {
+        BasicFileAttributes attributes = readAttributes(file);
+        if (attributes == null) {
+            return null;
+        }
+        String uri = getUri(file);
+        Thumbnail thumbnail = readThumbnail(size, getThumbnailName(uri), uri, attributes);
+        return thumbnail == null ? null : thumbnail.getBytes();
+    }
+
+    private static BasicFileAttributes readAttributes(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.isRegularFile() ? attributes : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Thumbnail readThumbnail(Size size, String name, String uri, BasicFileAttributes attributes) {
+        Path thumbnail = directory.resolve(size.getDirectoryName()).resolve(name);
+        long lastModified;
+        byte[] bytes;
+        try {
+            lastModified = Files.getLastModifiedTime(thumbnail).toMillis();
+            bytes = Files.readAllBytes(thumbnail);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.fine("Failed to read thumbnail " + thumbnail + ": " + e);
+            return null;
+        }
+        return isValid(bytes, uri, attributes) ? new Thumbnail(thumbnail, lastModified, bytes) : null;
+    }
+
+    /**
+     * Checks that the supplied thumbnail was made from the current contents of a file.
+     * @return True if the URI and modification time recorded by the thumbnail, and its size if one is recorded, match
+     * the file.
+     */
+    static boolean isValid(byte[] thumbnail, String uri, BasicFileAttributes attributes) {
+        Map<String, String> text = readTextChunks(thumbnail);
+        if (text == null || ! uri.equals(text.get("Thumb::URI"))) {
+            return false;
+        }
+        String mtime = text.get("Thumb::MTime");
+        if (mtime == null) {
+            return false;
+        }
+        try {
+            // The standard records whole seconds, but some thumbnailers add a fraction
+            long seconds = (long) Double.parseDouble(mtime.trim());
+            if (seconds != attributes.lastModifiedTime().to(TimeUnit.SECONDS)) {
+                return false;
+            }
+            String size = text.get("Thumb::Size");
+            return size == null || Long.parseLong(size.trim()) == attributes.size();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the uncompressed text chunks of a PNG file.
+     * @return The keywords and text of the tEXt and uncompressed iTXt chunks, or null if the bytes are not a PNG file.
+     */
+    static Map<String, String> readTextChunks(byte[] png) {
+        if (png.length < IHDR_END || ! Arrays.equals(png, 0, PNG_SIGNATURE.length, PNG_SIGNATURE, 0,
+                PNG_SIGNATURE.length)) {
+            return null;
+        }
+        Map<String, String> text = new HashMap<>();
+        ByteBuffer buffer = ByteBuffer.wrap(png);
+        int offset = PNG_SIGNATURE.length;
+        while (offset + 12 <= png.length) {
+            int length = buffer.getInt(offset);
+            if (length < 0 || offset + 12L + length > png.length) {
+                break;
+            }
+            String type = new String(png, offset + 4, 4, StandardCharsets.ISO_8859_1);
+            int data = offset + 8;
+            if (type.equals("tEXt") || type.equals("iTXt")) {
+                int separator = indexOf(png, data, data + length);
+                if (separator > data) {
+                    String keyword = new String(png, data, separator - data, StandardCharsets.ISO_8859_1);
+                    if (type.equals("tEXt")) {
+                        text.put(keyword, new String(png, separator + 1, data + length - separator - 1,
+                                StandardCharsets.ISO_8859_1));
+                    } else if (separator + 2 < data + length && png[separator + 1] == 0) {
+                        // Skip the compression flag and method, the language tag and the translated keyword
+                        int language = indexOf(png, separator + 3, data + length);
+                        int translated = language < 0 ? -1 : indexOf(png, language + 1, data + length);
+                        if (translated >= 0) {
+                            text.put(keyword, new String(png, translated + 1, data + length - translated - 1,
+                                    StandardCharsets.UTF_8));
+                        }
+                    }
+                }
+            } else if (type.equals("IEND")) {
+                break;
+            }
+            offset += 12 + length;
+        }
+        return text;
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Generates the thumbnail of the supplied size of the supplied file on the generator, unless no generator is set,
+     * the file is not an image ImageIO can read, or the thumbnail is already being generated.
+     */
+    private void generateAsync(Path file, Size size) {
+        Executor executor = generator;
+        if (executor == null || ! canGenerate(file)) {
+            return;
+        }
+        Path thumbnail = getThumbnailPath(file, size);
+        if (! generating.add(thumbnail)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(file, size);
+                } catch (IOException | RuntimeException e) {
+                    logger.fine("Failed to generate thumbnail of " + file + ": " + e);
+                } finally {
+                    generating.remove(thumbnail);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            generating.remove(thumbnail);
+        }
+    }
+
+    private static boolean canGenerate(Path file) {
+        String name = file.getFileName().toString();
+        int index = name.lastIndexOf('.');
+        if (index <= 0) {
+            return false;
+        }
+        return ImageIO.getImageReadersBySuffix(name.substring(index + 1).toLowerCase(Locale.ROOT)).hasNext();
+    }
+
+    /**
+     * Generates the thumbnail of the supplied size of the supplied image file and writes it into the cache, with the
+     * file's URI, modification time and size recorded in it.  Images smaller than the thumbnail size are stored at
+     * their own size.
+     * @param file An image file ImageIO can read.
+     * @param size The size of the thumbnail.
+     * @return The path of the written thumbnail, or null if the file could not be read as an image.
+     * @throws IOException if the file's attributes cannot be read or the thumbnail cannot be written.
+     */
+    public Path generate(Path file, Size size) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        BufferedImage image = ImageIO.read(file.toFile());
+        if (image == null) {
+            return null;
+        }
+        image = PixelConverter.toIntArgb(image);
+        if (Math.max(image.getWidth(), image.getHeight()) > size.getPixels()) {
+            int[] dimensions = ImageScaler.fitSize(image.getWidth(), image.getHeight(), size.getPixels(),
+                    size.getPixels(), true);
+            image = ImageScaler.scale(image, dimensions[0], dimensions[1], true);
+        }
+        byte[] png = encoder.encode(image);
+        ByteArrayOutputStream thumbnail = new ByteArrayOutputStream(png.length + 256);
+        thumbnail.write(png, 0, IHDR_END);
+        writeTextChunk(thumbnail, "Thumb::URI", getUri(file));
+        writeTextChunk(thumbnail, "Thumb::MTime", Long.toString(attributes.lastModifiedTime().to(TimeUnit.SECONDS)));
+        writeTextChunk(thumbnail, "Thumb::Size", Long.toString(attributes.size()));
+        writeTextChunk(thumbnail, "Software", "ZenNativeIconEngine");
+        thumbnail.write(png, IHDR_END, png.length - IHDR_END);
+
+        Path target = getThumbnailPath(file, size);
+        createPrivateDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), ".zenengine-", ".png");
+        try {
+            Files.write(temp, thumbnail.toByteArray());
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return target;
+    }
+
+    /**
+     * Writes a tEXt chunk.  Keywords and text are Latin-1; thumbnail URIs are escaped, so they are ASCII.
+     */
+    private static void writeTextChunk(ByteArrayOutputStream out, String keyword, String value) {
+        byte[] data = (keyword + '\0' + value).getBytes(StandardCharsets.ISO_8859_1);
+        byte[] header = ByteBuffer.allocate(8).putInt(data.length).put("tEXt".getBytes(StandardCharsets.ISO_8859_1))
+                .array();
+        CRC32 crc = new CRC32();
+        crc.update(header, 4, 4);
+        crc.update(data);
+        out.write(header, 0, header.length);
+        out.write(data, 0, data.length);
+        out.write(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array(), 0, 4);
+    }
+
+    /**
+     * Creates the supplied directory readable only by the user, as the standard requires, where the file system
+     * supports POSIX permissions.
+     */
+    private static void createPrivateDirectories(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            return;
+        }
+        try {
+            Files.createDirectories(path, PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rwx------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createDirectories(path);
+        }
+    }
+
+}
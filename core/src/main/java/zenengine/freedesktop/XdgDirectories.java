@@ -0,0 +1,105 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.freedesktop;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Resolves the base directories defined by the XDG Base Directory specification.
+ */
+public final class XdgDirectories {
+
+    private XdgDirectories() {
+    }
+
+    /**
+     * @return The user data directory followed by the system data directories, in order of preference.
+     */
+    public static List<Path> getDataDirectories() {
+        List<Path> directories = new ArrayList<>();
+        directories.add(getDataHome());
+        String dataDirs = System.getenv("XDG_DATA_DIRS");
+        if (dataDirs == null || dataDirs.isBlank()) {
+            dataDirs = "/usr/local/share/:/usr/share/";
+        }
+        for (String dir : dataDirs.split(File.pathSeparator)) {
+            if (! dir.isBlank()) {
+                directories.add(Paths.get(dir));
+            }
+        }
+        return Collections.unmodifiableList(directories);
+    }
+
+    /**
+     * @return The directory holding user specific data files.
+     */
+    public static Path getDataHome() {
+        return getDirectory("XDG_DATA_HOME", ".local/share");
+    }
+
+    /**
+     * @return The directory holding user specific configuration files.
+     */
+    public static Path getConfigHome() {
+        return getDirectory("XDG_CONFIG_HOME", ".config");
+    }
+
+    /**
+     * @return The directory holding user specific non-essential cached data.
+     */
+    public static Path getCacheHome() {
+        return getDirectory("XDG_CACHE_HOME", ".cache");
+    }
+
+    /**
+     * @return The user's home directory.
+     */
+    public static Path getHome() {
+        return Paths.get(System.getProperty("user.home"));
+    }
+
+    /**
+     * Mixes the path and last modified time of the supplied file or directory into the supplied fingerprint, so that
+     * the fingerprint changes when the file does.  Missing files only contribute their path.
+     */
+    static long fingerprint(long fingerprint, Path file) {
+        long lastModified;
+        try {
+            lastModified = Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            lastModified = 0;
+        }
+        return (fingerprint * 31 + file.toString().hashCode()) * 31 + lastModified;
+    }
+
+    private static Path getDirectory(String variable, String defaultPath) {
+        String value = System.getenv(variable);
+        if (value != null && ! value.isBlank()) {
+            return Paths.get(value);
+        }
+        return getHome().resolve(defaultPath);
+    }
+
+}
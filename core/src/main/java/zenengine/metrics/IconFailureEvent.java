@@ -14,10 +14,28 @@
  *    limitations under the License.
  */
 
-package zenengine.nativeaccess;
+package zenengine.metrics;
 
-public class LinuxIconExtractor {
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 
-    
+
+/**
+ * A Flight Recorder event recording an icon request that failed or produced no icon.
+ */
+@Name("zenengine.IconFailure")
+@Label("Icon Failure")
+@Category({"Zen Native Icon Engine"})
+@Description("An icon request that failed or produced no icon")
+class IconFailureEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Reason")
+    String reason;
 
 }
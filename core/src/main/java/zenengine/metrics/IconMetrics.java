@@ -0,0 +1,295 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+
+/**
+ * Collects latency histograms, byte counts and failure reasons for each stage of the icon pipeline, publishes them
+ * through JMX and emits a Flight Recorder event per timed stage.  Metrics are disabled unless the
+ * {@code zenengine.metrics} system property is true or {@link #setEnabled(boolean)} is called.  While disabled, timing
+ * a stage costs a single volatile read, so the instrumentation can stay in place in production.
+ * <p>
+ * A stage is timed by taking a start time and recording it once the stage completes:
+ * <pre>
+ * long start = IconMetrics.start();
+ * BufferedImage image = extractor.getIcon(file);
+ * IconMetrics.record(IconStage.EXTRACT, start);
+ * </pre>
+ */
+public final class IconMetrics {
+
+    private static final Logger logger = Logger.getLogger(IconMetrics.class.getName());
+
+    /**
+     * The name the management bean is registered under.
+     */
+    public static final String OBJECT_NAME = "zenengine:type=IconMetrics";
+
+    /**
+     * The reason recorded when an icon is requested for a file that does not exist.
+     */
+    public static final String NOT_FOUND = "not found";
+
+    /**
+     * The reason recorded when an extractor returns no icon for a file.
+     */
+    public static final String NO_ICON = "no icon";
+
+    private static volatile boolean enabled = Boolean.getBoolean("zenengine.metrics");
+
+    private static final EnumMap<IconStage, LatencyHistogram> histograms = new EnumMap<>(IconStage.class);
+    private static final EnumMap<IconStage, LongAdder> bytes = new EnumMap<>(IconStage.class);
+    private static final ConcurrentHashMap<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private static final Map<String, Supplier<String>> caches = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    private static boolean registered;
+
+    static {
+        for (IconStage stage : IconStage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+            bytes.put(stage, new LongAdder());
+        }
+        if (enabled) {
+            registerMBean();
+        }
+    }
+
+    private IconMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the collection of metrics.  Enabling metrics also registers the management bean.
+     * @param enable Indicates whether metrics are collected.
+     */
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+        if (enable) {
+            registerMBean();
+        }
+    }
+
+    /**
+     * Returns the start time of a stage.
+     * @return The current value of {@link System#nanoTime()}, or zero if metrics are disabled, in which case recording
+     * the stage does nothing.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the completion of a stage that started at the supplied time.
+     * @param stage The stage that completed.
+     * @param start The start time returned by {@link #start()}.
+     */
+    public static void record(IconStage stage, long start) {
+        record(stage, start, 0);
+    }
+
+    /**
+     * Records the completion of a stage that started at the supplied time and produced the supplied number of bytes.
+     * @param stage The stage that completed.
+     * @param start The start time returned by {@link #start()}.
+     * @param producedBytes The number of bytes the stage produced.
+     */
+    public static void record(IconStage stage, long start, long producedBytes) {
+        if (start == 0) {
+            return;
+        }
+        long latency = System.nanoTime() - start;
+        histograms.get(stage).record(latency);
+        if (producedBytes > 0) {
+            bytes.get(stage).add(producedBytes);
+        }
+        IconStageEvent event = new IconStageEvent();
+        if (event.shouldCommit()) {
+            event.stage = stage.name();
+            event.latency = latency;
+            event.bytes = producedBytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a failed request.
+     * @param stage The stage that failed.
+     * @param reason The reason of the failure, such as {@link #NOT_FOUND}, {@link #NO_ICON} or an exception.
+     */
+    public static void recordFailure(IconStage stage, String reason) {
+        if (! enabled) {
+            return;
+        }
+        failures.computeIfAbsent(stage.name() + ": " + reason, key -> new LongAdder()).increment();
+        IconFailureEvent event = new IconFailureEvent();
+        if (event.shouldCommit()) {
+            event.stage = stage.name();
+            event.reason = reason;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a request that failed with the supplied exception, using the name of the exception class as the reason.
+     * @see #recordFailure(IconStage, String)
+     */
+    public static void recordFailure(IconStage stage, Throwable error) {
+        if (enabled) {
+            recordFailure(stage, error.getClass().getName());
+        }
+    }
+
+    /**
+     * Registers a cache whose statistics are published through the management bean.
+     * @param name The name of the cache.
+     * @param statistics A supplier of a description of the current statistics of the cache.
+     */
+    public static void registerCache(String name, Supplier<String> statistics) {
+        caches.put(name, statistics);
+    }
+
+    /**
+     * @return The latency histogram of the supplied stage.
+     */
+    public static LatencyHistogram getHistogram(IconStage stage) {
+        return histograms.get(stage);
+    }
+
+    /**
+     * @return The number of bytes produced by the supplied stage.
+     */
+    public static long getBytes(IconStage stage) {
+        return bytes.get(stage).sum();
+    }
+
+    /**
+     * @return A snapshot of the statistics of each stage that has been recorded, keyed by stage name.
+     */
+    public static Map<String, IconStageStatistics> getStageStatistics() {
+        Map<String, IconStageStatistics> statistics = new LinkedHashMap<>();
+        for (IconStage stage : IconStage.values()) {
+            statistics.put(stage.name(), IconStageStatistics.of(histograms.get(stage), getBytes(stage)));
+        }
+        return statistics;
+    }
+
+    /**
+     * @return The number of failures recorded, keyed by stage and reason.
+     */
+    public static Map<String, Long> getFailures() {
+        Map<String, Long> counts = new TreeMap<>();
+        failures.forEach((reason, count) -> counts.put(reason, count.sum()));
+        return counts;
+    }
+
+    /**
+     * @return A description of the statistics of each registered cache, keyed by cache name.
+     */
+    public static Map<String, String> getCacheStatistics() {
+        Map<String, String> statistics = new LinkedHashMap<>();
+        synchronized (caches) {
+            caches.forEach((name, supplier) -> statistics.put(name, supplier.get()));
+        }
+        return statistics;
+    }
+
+    /**
+     * Resets the stage statistics and failure counts.
+     */
+    public static void reset() {
+        for (IconStage stage : IconStage.values()) {
+            histograms.get(stage).reset();
+            bytes.get(stage).reset();
+        }
+        failures.clear();
+    }
+
+    /**
+     * Registers the management bean with the platform MBean server, if it is not registered yet.
+     */
+    public static synchronized void registerMBean() {
+        if (registered) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            logger.fine("Icon metrics bean already registered by another class loader");
+        } catch (JMException | RuntimeException e) {
+            logger.warning("Failed to register icon metrics bean: " + e);
+            return;
+        }
+        registered = true;
+    }
+
+    /**
+     * The management bean, which delegates to the static metrics.
+     */
+    private static final class Bean implements IconMetricsMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return IconMetrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            IconMetrics.setEnabled(enabled);
+        }
+
+        @Override
+        public Map<String, IconStageStatistics> getStages() {
+            return getStageStatistics();
+        }
+
+        @Override
+        public Map<String, Long> getFailures() {
+            return IconMetrics.getFailures();
+        }
+
+        @Override
+        public Map<String, String> getCaches() {
+            return getCacheStatistics();
+        }
+
+        @Override
+        public void reset() {
+            IconMetrics.reset();
+        }
+
+    }
+
+}
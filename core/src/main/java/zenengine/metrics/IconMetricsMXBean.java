@@ -0,0 +1,51 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.metrics;
+
+import java.util.Map;
+
+
+/**
+ * The management interface of {@link IconMetrics}, registered as {@value IconMetrics#OBJECT_NAME}.
+ */
+public interface IconMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return The latency and byte statistics of each stage of the icon pipeline, keyed by stage name.
+     */
+    Map<String, IconStageStatistics> getStages();
+
+    /**
+     * @return The number of failed icon requests, keyed by stage and reason.
+     */
+    Map<String, Long> getFailures();
+
+    /**
+     * @return The statistics of the registered icon caches, keyed by cache name.
+     */
+    Map<String, String> getCaches();
+
+    /**
+     * Resets the stage statistics and failure counts.
+     */
+    void reset();
+
+}
@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.metrics;
+
+
+/**
+ * The stages of the icon pipeline that are timed by {@link IconMetrics}.
+ */
+public enum IconStage {
+    /** The complete extraction of an icon by the icon extractor, including any conversion inside the extractor. */
+    EXTRACT,
+    /** The conversion of native bitmap data into a BufferedImage inside an extractor. */
+    CONVERT,
+    /** The encoding of an icon as PNG. */
+    ENCODE,
+    /** The decoding of a stored PNG icon. */
+    DECODE,
+    /** The conversion of an icon into a JavaFX Image. */
+    FX_IMAGE,
+    /** The reduction of an icon to a level of its icon pyramid. */
+    SCALE,
+    /** The time a request waits in the queue of an {@link zenengine.base.IconScheduler} before a worker starts it. */
+    QUEUE
+}
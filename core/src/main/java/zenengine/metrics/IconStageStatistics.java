@@ -0,0 +1,87 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.metrics;
+
+import java.beans.ConstructorProperties;
+
+
+/**
+ * A snapshot of the latency histogram and byte count of one stage of the icon pipeline, as published through the
+ * {@link IconMetricsMXBean}.  Latencies are in microseconds and percentiles are upper bounds accurate to within a
+ * factor of two.
+ */
+public class IconStageStatistics {
+
+    private final long count;
+    private final double meanMicros;
+    private final long p50Micros;
+    private final long p99Micros;
+    private final long maxMicros;
+    private final long bytes;
+
+    @ConstructorProperties({"count", "meanMicros", "p50Micros", "p99Micros", "maxMicros", "bytes"})
+    public IconStageStatistics(long count, double meanMicros, long p50Micros, long p99Micros, long maxMicros,
+                               long bytes) {
+        this.count = count;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.maxMicros = maxMicros;
+        this.bytes = bytes;
+    }
+
+    static IconStageStatistics of(LatencyHistogram histogram, long bytes) {
+        return new IconStageStatistics(histogram.getCount(), histogram.getMeanNanos() / 1000,
+                histogram.getPercentileNanos(50) / 1000, histogram.getPercentileNanos(99) / 1000,
+                histogram.getMaxNanos() / 1000, bytes);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * @return The number of bytes produced by the stage, such as the size of the encoded PNGs or of the pixel data of
+     * the images created.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%.1fus, p50<=%dus, p99<=%dus, max=%dus, bytes=%d", count, meanMicros,
+                p50Micros, p99Micros, maxMicros, bytes);
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A lock free histogram of latencies in nanoseconds with power of two buckets.  Bucket {@code i} counts latencies
+ * from {@code 2^(i-1)} up to {@code 2^i - 1} nanoseconds, so percentiles are accurate to within a factor of two, which
+ * is enough to tell which stage of the pipeline is slow at the cost of one array increment per sample.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a single latency.
+     * @param nanos The latency in nanoseconds.  Negative latencies are recorded as zero.
+     */
+    public void record(long nanos) {
+        long latency = Math.max(0, nanos);
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(latency));
+        count.increment();
+        total.add(latency);
+        max.accumulate(latency);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return total.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * @return The mean latency in nanoseconds, or zero if nothing has been recorded.
+     */
+    public double getMeanNanos() {
+        long samples = getCount();
+        return samples == 0 ? 0 : (double) getTotalNanos() / samples;
+    }
+
+    /**
+     * Returns an upper bound of the supplied percentile: the largest latency of the bucket that holds it, limited to
+     * the largest latency recorded.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The upper bound of the percentile in nanoseconds, or zero if nothing has been recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile out of range: " + percentile);
+        }
+        long[] snapshot = getBuckets();
+        long samples = 0;
+        for (long bucket : snapshot) {
+            samples += bucket;
+        }
+        if (samples == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(samples * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                long upperBound = i == 0 ? 0 : i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+                return Math.min(upperBound, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * @return A copy of the bucket counts, where bucket {@code i} counts latencies below {@code 2^i} nanoseconds that
+     * are not counted by a lower bucket.
+     */
+    public long[] getBuckets() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Resets the histogram.  Samples recorded concurrently with a reset may be partially retained.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+}
@@ -0,0 +1,216 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.nativeaccess;
+
+import zenengine.base.IconCacheKey;
+import zenengine.base.IconEngine;
+import zenengine.base.IconExtractor;
+import zenengine.base.PixelConverter;
+import zenengine.metrics.IconMetrics;
+import zenengine.metrics.IconStage;
+import zenengine.freedesktop.IconThemeIndex;
+import zenengine.freedesktop.KeyFile;
+import zenengine.freedesktop.MimeDatabase;
+import zenengine.freedesktop.XdgDirectories;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * A class that extracts system icons from Linux desktops that follow the freedesktop.org specifications.  The MIME
+ * type of a file is resolved from the shared-mime-info database, and the icon for that type is resolved from the
+ * user's icon theme.  The MIME database and theme index are loaded once, on first use.
+ */
+public class LinuxIconExtractor implements IconExtractor {
+
+    private static final Logger logger = Logger.getLogger(LinuxIconExtractor.class.getName());
+
+    /**
+     * The requested icon size, matching the jumbo icons extracted on Windows.
+     */
+    private static final int ICON_SIZE = 256;
+
+    private volatile MimeDatabase mimeDatabase;
+    private volatile IconThemeIndex themeIndex;
+
+    /**
+     * Creates an extractor that loads the host MIME database and the user's icon theme when it is first used.
+     */
+    public LinuxIconExtractor() {
+
+    }
+
+    /**
+     * Creates an extractor that resolves icons with the supplied MIME database and theme index.
+     * @param mimeDatabase The MIME database used to determine file types.
+     * @param themeIndex The index of the icon theme used to resolve icons.
+     */
+    public LinuxIconExtractor(MimeDatabase mimeDatabase, IconThemeIndex themeIndex) {
+        this.mimeDatabase = mimeDatabase;
+        this.themeIndex = themeIndex;
+    }
+
+    @Override
+    public String getName() {
+        return "linux";
+    }
+
+    @Override
+    public boolean isSupported() {
+        return IconEngine.os.equals("linux");
+    }
+
+    @Override
+    public BufferedImage getIcon(File file) {
+        Path iconFile = findIconFile(file.toPath(), file.isDirectory());
+        if (iconFile == null) {
+            return null;
+        }
+        long start = IconMetrics.start();
+        try {
+            BufferedImage image = PixelConverter.toIntArgb(ImageIO.read(iconFile.toFile()));
+            IconMetrics.record(IconStage.CONVERT, start);
+            return image;
+        } catch (IOException e) {
+            IconMetrics.recordFailure(IconStage.CONVERT, e);
+            logger.log(Level.WARNING, "Failed to read icon " + iconFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Keys files by the MIME type their name resolves to, so that files only share an icon when the database gives them
+     * the same type, whatever the case or number of their extensions.  Desktop entries name their own icon, and the
+     * type of a file that matches no glob is sniffed from its contents, so both are keyed by path.
+     */
+    @Override
+    public IconCacheKey getCacheKey(File file, boolean directory) {
+        if (directory) {
+            return IconCacheKey.forFile(file, true);
+        }
+        String name = file.getName();
+        if (name.endsWith(".desktop")) {
+            return IconCacheKey.forPath(file);
+        }
+        initialise();
+        String mimeType = mimeDatabase.getMimeTypeForName(name);
+        return mimeType != null ? IconCacheKey.forMimeType(mimeType) : IconCacheKey.forPath(file);
+    }
+
+    /**
+     * Combines the fingerprints of the MIME database and the theme index, so that stored icons are extracted again once
+     * file types are registered or the icon theme changes.
+     */
+    @Override
+    public long getFingerprint() {
+        initialise();
+        return mimeDatabase.getFingerprint() * 31 + themeIndex.getFingerprint();
+    }
+
+    /**
+     * Resolves the icon file that represents the supplied file or directory.
+     * @param file The file or directory for which an icon is requested.
+     * @param directory Indicates whether the file is a directory.
+     * @return The icon file, or null if the icon theme has no suitable icon.
+     */
+    public Path findIconFile(Path file, boolean directory) {
+        initialise();
+        if (! directory && file.toString().endsWith(".desktop")) {
+            Path iconFile = findDesktopEntryIconFile(file);
+            if (iconFile != null) {
+                return iconFile;
+            }
+        }
+        return themeIndex.lookup(mimeDatabase.getIconNames(mimeDatabase.getMimeType(file, directory)), ICON_SIZE, 1);
+    }
+
+    /**
+     * Resolves the icon named by the Icon key of a desktop entry, which is either an absolute path or an icon name.
+     */
+    private Path findDesktopEntryIconFile(Path file) {
+        String icon = getDesktopEntryIcon(file);
+        if (icon == null || icon.isEmpty()) {
+            return null;
+        }
+        Path iconPath = Paths.get(icon);
+        if (iconPath.isAbsolute()) {
+            return Files.isRegularFile(iconPath) ? iconPath : null;
+        }
+        return themeIndex.lookup(List.of(icon), ICON_SIZE, 1);
+    }
+
+    private void initialise() {
+        if (themeIndex == null) {
+            synchronized (this) {
+                if (themeIndex == null) {
+                    mimeDatabase = MimeDatabase.load();
+                    themeIndex = IconThemeIndex.build(detectThemeName());
+                }
+            }
+        }
+    }
+
+    private static String getDesktopEntryIcon(Path file) {
+        try {
+            return KeyFile.read(file).get("Desktop Entry", "Icon");
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Determines the user's icon theme from the {@code zenengine.icontheme} system property, the GTK settings or the
+     * KDE settings, in that order, falling back on the hicolor theme.
+     * @return The name of the user's icon theme.
+     */
+    public static String detectThemeName() {
+        String theme = System.getProperty("zenengine.icontheme");
+        if (theme != null) {
+            return theme;
+        }
+        Path config = XdgDirectories.getConfigHome();
+        theme = readSetting(config.resolve("gtk-3.0/settings.ini"), "Settings", "gtk-icon-theme-name");
+        if (theme == null) {
+            theme = readSetting(config.resolve("gtk-4.0/settings.ini"), "Settings", "gtk-icon-theme-name");
+        }
+        if (theme == null) {
+            theme = readSetting(config.resolve("kdeglobals"), "Icons", "Theme");
+        }
+        return theme != null ? theme : IconThemeIndex.FALLBACK_THEME;
+    }
+
+    private static String readSetting(Path file, String group, String key) {
+        if (! Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return KeyFile.read(file).get(group, key);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+}
@@ -16,5 +16,31 @@
 
 package zenengine.nativeaccess;
 
-public class MacIconExtractor {
+import zenengine.base.IconExtractor;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+
+/**
+ * A class that extracts system icons from MacOS.  Icon extraction is not implemented for MacOS yet, so this
+ * extractor reports itself as unsupported and is never selected automatically.
+ */
+public class MacIconExtractor implements IconExtractor {
+
+    @Override
+    public String getName() {
+        return "mac";
+    }
+
+    @Override
+    public boolean isSupported() {
+        return false;
+    }
+
+    @Override
+    public BufferedImage getIcon(File file) {
+        return null;
+    }
+
 }
@@ -0,0 +1,135 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.nativeaccess;
+
+import zenengine.base.IconCacheKey;
+import zenengine.base.IconExtractor;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * An extractor that generates icons in pure Java instead of querying the host system.  The generated icons are
+ * deterministic: every file that shares an {@link IconCacheKey} receives an identical icon, and files with different
+ * keys receive different icons.  This makes the extractor suitable for load testing and benchmarking the conversion,
+ * encoding and caching layers on any platform.
+ * <p>
+ * The extractor is never selected automatically.  It can be selected with the {@code zenengine.extractor=synthetic}
+ * system property, and the {@code zenengine.synthetic.size} and {@code zenengine.synthetic.latencyMicros} properties
+ * control the icon size and a simulated per extraction latency.
+ */
+public class SyntheticIconExtractor implements IconExtractor {
+
+    private final int size;
+    private final long latencyNanos;
+
+    /**
+     * Creates an extractor configured from the {@code zenengine.synthetic.*} system properties, which by default
+     * generates 256x256 icons without any simulated latency.
+     */
+    public SyntheticIconExtractor() {
+        this(Integer.getInteger("zenengine.synthetic.size", 256),
+                TimeUnit.MICROSECONDS.toNanos(Long.getLong("zenengine.synthetic.latencyMicros", 0L)));
+    }
+
+    /**
+     * @param size The width and height of the generated icons.
+     * @param latencyNanos The time each extraction waits before generating an icon, used to simulate the latency of
+     *                     a native extractor.
+     */
+    public SyntheticIconExtractor(int size, long latencyNanos) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Icon size must be positive: " + size);
+        }
+        this.size = size;
+        this.latencyNanos = latencyNanos;
+    }
+
+    @Override
+    public String getName() {
+        return "synthetic";
+    }
+
+    @Override
+    public boolean isSupported() {
+        return false;
+    }
+
+    @Override
+    public BufferedImage getIcon(File file) {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        return generateIcon(IconCacheKey.forFile(file).toString().hashCode(), size);
+    }
+
+    /**
+     * Generates an icon in the shape of a rounded page with a seed dependent colour and stripe pattern.
+     * @param seed The seed that determines the colour and pattern of the icon.
+     * @param size The width and height of the icon.
+     * @return A TYPE_INT_ARGB BufferedImage containing the generated icon.
+     */
+    public static BufferedImage generateIcon(int seed, int size) {
+        int hash = mix(seed);
+        float hue = (hash & 0xFFFF) / 65536f;
+        int stripes = (hash >>> 16) | 1;
+
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = new int[size * size];
+
+        float margin = size / 8f;
+        float radius = size / 10f;
+        float halfWidth = (size - 2 * margin) / 2f - radius;
+        float center = size / 2f;
+        int stripeTop = size / 2;
+        int stripeBottom = size - (int) margin - size / 8;
+
+        for (int y = 0; y < size; y++) {
+            int rgb = Color.HSBtoRGB(hue, 0.6f, 0.95f - 0.3f * y / size) & 0xFFFFFF;
+            float dy = Math.max(Math.abs(y + 0.5f - center) - halfWidth, 0f);
+            for (int x = 0; x < size; x++) {
+                float dx = Math.max(Math.abs(x + 0.5f - center) - halfWidth, 0f);
+                float distance = (float) Math.sqrt(dx * dx + dy * dy) - radius;
+                float coverage = Math.min(Math.max(0.5f - distance, 0f), 1f);
+                if (coverage == 0f) {
+                    continue;
+                }
+                int color = rgb;
+                if (y >= stripeTop && y < stripeBottom && (stripes >>> ((x * 16 / size) & 15) & 1) != 0) {
+                    color = ~rgb & 0xFFFFFF;
+                }
+                pixels[y * size + x] = ((int) (coverage * 255f + 0.5f) << 24) | color;
+            }
+        }
+        // Written through the raster, like the native extractors, so that Java2D can still accelerate the image
+        image.getRaster().setDataElements(0, 0, size, size, pixels);
+        return image;
+    }
+
+    private static int mix(int seed) {
+        int h = seed * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.nativeaccess;
+
+import com.sun.jna.Callback;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.platform.win32.*;
+import zenengine.base.IconEngine;
+import zenengine.base.IconExtractor;
+import zenengine.base.IconReceiver;
+import zenengine.base.NativeLibraryLoader;
+import zenengine.base.PixelConverter;
+import zenengine.metrics.IconMetrics;
+import zenengine.metrics.IconStage;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * A class that extracts system icons from windows.  This class relies on the WindowsIconExtractor.dll
+ * file for extracting the correct icon from the system.  The icon that is extracted is windows size
+ * Jumbo (256x256).
+ */
+public class WindowsIconExtractor implements IconExtractor {
+
+    private static final Logger logger = Logger.getLogger(WindowsIconExtractor.class.getName());
+
+    private static final String LIBRARY_NAME = "WindowsIconExtractor";
+
+    /**
+     * Starts extracting the WindowsIconExtractor library in the background when the extractor is created on Windows,
+     * so that the library is usually ready by the time the first icon is requested.
+     */
+    public WindowsIconExtractor() {
+        if (isSupported()) {
+            NativeLibraryLoader.getDefault().extractAsync(LIBRARY_NAME);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "windows";
+    }
+
+    @Override
+    public boolean isSupported() {
+        return IconEngine.os.equals("win32");
+    }
+
+    @Override
+    public BufferedImage getIcon(File file) {
+        IconReceiver iconReceiver = new IconReceiver();
+        getIcon(file.getPath(), iconReceiver);
+        return iconReceiver.bufferedImage;
+    }
+
+    /**
+     * Calls the WindowsIconExtractor library to extract the large icon for the supplied file path and send it to
+     * the supplied callback.
+     *
+     * @param path The path of the file for which an icon is to be extracted.
+     * @param callback The callback that receives the extracted HICON.
+     */
+    public static void getIcon(String path, Callback callback) {
+        Library.getIcon(path, callback);
+    }
+
+    /**
+     * Calls WindowsIconExtractor library to extract the large icon for the supplied file path
+     * and supplies it with the callback address to send the extracted icon.
+     *
+     * @param filePath The path of the file for which an icon is to be extracted.
+     */
+    public static void getIcon(String filePath, IconReceiver receiver) {
+        getIcon(filePath, new Callback() {
+            public void callback(WinDef.HICON icon) {
+                BufferedImage buffImage = drawIcon(icon);
+                User32.INSTANCE.DestroyIcon(icon);
+                receiver.bufferedImage = buffImage;
+            }
+        });
+    }
+
+    /**
+     * Extracts the bitmap information from the system HICON and draws the pixels into a
+     * BufferedImage.  The HICON is not destroyed; it remains owned by the caller.
+     *
+     * @param icon The HICON extracted from the system.
+     * @return A BufferedImage containing the byte information to make the icon image.
+     */
+    private static BufferedImage drawIcon(WinDef.HICON icon) {
+        final WinGDI.ICONINFO iconInfo = new WinGDI.ICONINFO();
+        User32.INSTANCE.GetIconInfo(icon, iconInfo);
+        if (iconInfo.hbmColor == null) {
+            return null;
+        }
+
+        // This initial bitmap is only used to get width and height information
+        WinGDI.BITMAP bitmap = new WinGDI.BITMAP();
+        GDI32.INSTANCE.GetObject(iconInfo.hbmColor, bitmap.size(), bitmap.getPointer());
+        bitmap.read();
+
+        int width = bitmap.bmWidth.intValue();
+        int height = bitmap.bmHeight.intValue();
+        short depth = 32;  // supports bitmap with alpha channel
+
+        final WinGDI.BITMAPINFO bitmapInfo = new WinGDI.BITMAPINFO();
+        WinGDI.BITMAPINFOHEADER header = new WinGDI.BITMAPINFOHEADER();
+        bitmapInfo.bmiHeader = header;
+        header.biWidth = width;
+        header.biHeight = height;
+        header.biBitCount = depth;
+        header.biPlanes = 1;
+        header.biCompression = 0;
+        header.write();
+        bitmapInfo.write();
+
+        final WinDef.HDC hdc = User32.INSTANCE.GetDC(null);
+        final BufferedImage image;
+        try (PixelConverter.Scratch scratch = PixelConverter.borrowScratch()) {
+            final ByteBuffer bytes = scratch.nativeBuffer(width * height * depth / 8);
+            final Pointer bytesPtr = Native.getDirectBufferPointer(bytes);
+            GDI32.INSTANCE.GetDIBits(hdc, iconInfo.hbmColor, 0, height, bytesPtr, bitmapInfo, 0);
+
+            // Flip the bottom-up BGRA rows straight into the image
+            long start = IconMetrics.start();
+            image = PixelConverter.bottomUpBgraToImage(bytes, width, height, BufferedImage.TYPE_INT_ARGB);
+            IconMetrics.record(IconStage.CONVERT, start, 4L * width * height);
+        }
+
+        // Clean up the windows items that have been created
+        User32.INSTANCE.ReleaseDC(null, hdc);
+        GDI32.INSTANCE.DeleteObject(iconInfo.hbmColor);
+        if (iconInfo.hbmMask != null) {
+            GDI32.INSTANCE.DeleteObject(iconInfo.hbmMask);
+        }
+
+        return image;
+    }
+
+    /**
+     * Holds the native binding to the WindowsIconExtractor library.  The library is registered when this class is
+     * first used rather than when the extractor is instantiated, so that the extractor can be discovered on systems
+     * where the library cannot be loaded.
+     */
+    private static class Library {
+
+        /**
+         * Registers the WindowsIconExtractor library so that it may be called into from this class,
+         * and the library is able to call back into this class with the extracted HICON.  The library is the copy
+         * extracted by {@link NativeLibraryLoader}, waiting for the extraction started by the extractor if it has not
+         * finished yet, or else the library found on the library path.
+         */
+        static {
+            try {
+                Path library = NativeLibraryLoader.getDefault().extractAsync(LIBRARY_NAME).join();
+                Native.register(Library.class, library.toString());
+            } catch (CompletionException | UnsatisfiedLinkError e) {
+                logger.log(Level.WARNING, "Failed to load the extracted " + LIBRARY_NAME
+                        + " library; trying the library path", e);
+                try {
+                    Native.register(Library.class, LIBRARY_NAME);
+                } catch (UnsatisfiedLinkError ex) {
+                    logger.warning("Failed to load " + LIBRARY_NAME);
+                }
+            }
+        }
+
+        static native void getIcon(String path, Callback callback);
+
+    }
+
+}
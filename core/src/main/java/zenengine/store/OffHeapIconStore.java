@@ -0,0 +1,584 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package zenengine.store;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+
+/**
+ * An in memory store of icon pixels held outside the Java heap, for working sets of icons too large to keep as
+ * BufferedImages without long garbage collection pauses.  The pixels of each icon are copied into a block of a direct
+ * buffer, and callers receive a lightweight {@link Handle} that only materialises a BufferedImage, or hands its
+ * pixels to a reader such as the JavaFX adapter, when they are needed.
+ * <p>
+ * Memory is allocated in slabs, each of which is divided into blocks of a single size class.  The size classes step
+ * by powers of two and the halfway points between them, from 1 KB to 256 KB, so a 16x16 icon fills a 1 KB block
+ * exactly, a 256x256 icon fills a 256 KB block exactly, and no icon wastes more than a third of its block.  Free
+ * blocks are kept on an explicit free list per slab.  Icons larger than the largest size class are given a slab of
+ * their own, which is released as soon as the icon is removed.
+ * <p>
+ * The store never allocates more than its capacity.  When a block of the required size class is not free and another
+ * slab does not fit, empty slabs are released first, then the least recently used icon of the same size class is
+ * evicted, and finally the least recently used icons of other size classes are evicted until a slab becomes empty.
+ * A handle becomes invalid once its icon is removed or evicted, after which materialising it returns null.  Handles
+ * refer to their slab by an identifier rather than holding it, so the direct buffer of a released slab can be
+ * reclaimed while stale handles are still referenced, and {@link #getAllocatedBytes()} accounts for all the direct
+ * memory the store keeps reachable.
+ * <p>
+ * The store is thread safe.  Materialising a handle copies its pixels while holding the store's lock, so a copy can
+ * never observe a block that is being reused.
+ * @param <K> The type of the keys icons are stored under.
+ */
+public final class OffHeapIconStore<K> {
+
+    /**
+     * The default size of a slab in bytes.
+     */
+    public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+
+    private static final int MIN_BLOCK_SIZE = 1024;
+    private static final int MAX_BLOCK_SIZE = 256 * 1024;
+
+    private final long capacity;
+    private final int slabSize;
+    private final List<SizeClass> sizeClasses = new ArrayList<>();
+    private final SizeClass largeClass = new SizeClass(-1);
+    private final HashMap<K, Handle> entries = new HashMap<>();
+    private final HashMap<Integer, Slab> liveSlabs = new HashMap<>();
+
+    private long allocatedBytes;
+    private long usedBytes;
+    private long accessCount;
+    private long evictionCount;
+    private int nextSlabId;
+    private volatile Consumer<? super K> evictionListener;
+
+    /**
+     * The keys evicted by the current operation, which are reported once the store's lock is released.
+     */
+    private final List<K> evicted = new ArrayList<>();
+
+    /**
+     * The blocks of one size, the slabs they are carved from and the icons stored in them in least recently used
+     * order.
+     */
+    private final class SizeClass {
+
+        private final int blockSize;
+        private final List<Slab> slabs = new ArrayList<>();
+        private final ArrayDeque<Slab> partialSlabs = new ArrayDeque<>();
+        private final LinkedHashMap<K, Handle> lru = new LinkedHashMap<>(64, 0.75f, true);
+
+        private SizeClass(int blockSize) {
+            this.blockSize = blockSize;
+        }
+
+    }
+
+    /**
+     * A direct buffer divided into equally sized blocks.  The generation of a block is incremented whenever it is
+     * freed, which invalidates the handles that refer to it.  A slab is only reachable from the store while it is
+     * allocated, and handles look it up by its identifier.
+     */
+    private static final class Slab {
+
+        private final int id;
+        private final IntBuffer pixels;
+        private final int blockInts;
+        private final int[] generations;
+        private final int[] freeBlocks;
+        private int freeCount;
+
+        private Slab(int id, int blockSize, int blockCount) {
+            this.id = id;
+            pixels = ByteBuffer.allocateDirect(blockSize * blockCount).order(ByteOrder.nativeOrder()).asIntBuffer();
+            blockInts = blockSize / 4;
+            generations = new int[blockCount];
+            freeBlocks = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                freeBlocks[i] = blockCount - 1 - i;
+            }
+            freeCount = blockCount;
+        }
+
+        private int getUsedCount() {
+            return generations.length - freeCount;
+        }
+
+        private long getByteSize() {
+            return 4L * pixels.capacity();
+        }
+
+    }
+
+    /**
+     * A lightweight reference to the pixels of an icon in an {@link OffHeapIconStore}.
+     */
+    public static final class Handle {
+
+        private final OffHeapIconStore<?> store;
+        private final Object key;
+        private final int slabId;
+        private final int block;
+        private final int generation;
+        private final int width;
+        private final int height;
+        private final int sizeClass;
+        private long lastAccess;
+
+        private Handle(OffHeapIconStore<?> store, Object key, Slab slab, int block, int width, int height,
+                       int sizeClass) {
+            this.store = store;
+            this.key = key;
+            this.slabId = slab.id;
+            this.block = block;
+            this.generation = slab.generations[block];
+            this.width = width;
+            this.height = height;
+            this.sizeClass = sizeClass;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * @return True if the icon is still held by the store.
+         */
+        public boolean isValid() {
+            synchronized (store) {
+                return isValidLocked();
+            }
+        }
+
+        private boolean isValidLocked() {
+            return getSlabLocked() != null;
+        }
+
+        /**
+         * @return The slab holding the icon, or null if the icon is no longer held by the store.  Only valid while
+         * the store's lock is held.
+         */
+        private Slab getSlabLocked() {
+            Slab slab = store.liveSlabs.get(slabId);
+            return slab != null && slab.generations[block] == generation ? slab : null;
+        }
+
+        /**
+         * Copies the pixels of the icon into a new BufferedImage of type {@link BufferedImage#TYPE_INT_ARGB}.
+         * @return The icon, or null if it is no longer held by the store.
+         */
+        public BufferedImage toBufferedImage() {
+            int[] data = new int[width * height];
+            synchronized (store) {
+                Slab slab = getSlabLocked();
+                if (slab == null) {
+                    return null;
+                }
+                pixels(slab).get(data, 0, width * height);
+            }
+            // Written through the raster rather than into the backing array, so that Java2D can still accelerate it
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            image.getRaster().setDataElements(0, 0, width, height, data);
+            return image;
+        }
+
+        /**
+         * Passes the pixels of the icon to the supplied reader straight from the direct buffer, so that they can be
+         * copied into another image without an intermediate array.
+         * @param reader A function that receives a read only buffer of the {@link #getWidth()} times
+         *               {@link #getHeight()} ARGB pixels of the icon, row by row.  The buffer is only valid until the
+         *               function returns, and the function is called while holding the store's lock.
+         * @param <T> The type of the result of the reader.
+         * @return The result of the reader, or null if the icon is no longer held by the store.
+         */
+        public <T> T readPixels(Function<? super IntBuffer, ? extends T> reader) {
+            synchronized (store) {
+                Slab slab = getSlabLocked();
+                if (slab == null) {
+                    return null;
+                }
+                return reader.apply(pixels(slab).asReadOnlyBuffer());
+            }
+        }
+
+        /**
+         * @return A view of the pixels of the block in the supplied slab, positioned at the first pixel.  Only valid
+         * while the store's lock is held.
+         */
+        private IntBuffer pixels(Slab slab) {
+            IntBuffer view = slab.pixels.duplicate();
+            int offset = block * slab.blockInts;
+            view.position(offset).limit(offset + width * height);
+            return view.slice();
+        }
+
+    }
+
+    /**
+     * Creates a store with the default slab size.
+     * @param capacity The maximum number of bytes of direct memory the store allocates.
+     */
+    public OffHeapIconStore(long capacity) {
+        this(capacity, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param capacity The maximum number of bytes of direct memory the store allocates.
+     * @param slabSize The size of a slab in bytes, which must be at least as large as the largest size class.
+     */
+    public OffHeapIconStore(long capacity, int slabSize) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+        if (slabSize < MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Slab size must be at least " + MAX_BLOCK_SIZE + ": " + slabSize);
+        }
+        this.capacity = capacity;
+        this.slabSize = slabSize;
+        for (int size = MIN_BLOCK_SIZE; size <= MAX_BLOCK_SIZE; size *= 2) {
+            sizeClasses.add(new SizeClass(size));
+            if (size < MAX_BLOCK_SIZE) {
+                sizeClasses.add(new SizeClass(size + size / 2));
+            }
+        }
+    }
+
+    /**
+     * Copies the pixels of the supplied icon into the store, replacing any icon stored under the key.
+     * @param key The key to store the icon under.
+     * @param image The icon to store.
+     * @return A handle on the stored icon, or null if the icon is larger than the capacity of the store.
+     */
+    public Handle put(K key, BufferedImage image) {
+        Handle handle;
+        List<K> evictedKeys;
+        synchronized (this) {
+            handle = store(key, image);
+            evictedKeys = evicted.isEmpty() ? List.of() : new ArrayList<>(evicted);
+            evicted.clear();
+        }
+        Consumer<? super K> listener = evictionListener;
+        if (listener != null) {
+            for (K evictedKey : evictedKeys) {
+                listener.accept(evictedKey);
+            }
+        }
+        return handle;
+    }
+
+    private Handle store(K key, BufferedImage image) {
+        remove(key);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int byteSize = 4 * width * height;
+        int classIndex = getSizeClassIndex(byteSize);
+        SizeClass sizeClass = classIndex < 0 ? largeClass : sizeClasses.get(classIndex);
+        Slab slab = allocate(sizeClass, byteSize);
+        if (slab == null) {
+            return null;
+        }
+        int block = slab.freeBlocks[--slab.freeCount];
+        if (slab.freeCount == 0) {
+            sizeClass.partialSlabs.remove(slab);
+        }
+        Handle handle = new Handle(this, key, slab, block, width, height, classIndex);
+        writePixels(image, handle.pixels(slab));
+        handle.lastAccess = ++accessCount;
+        entries.put(key, handle);
+        sizeClass.lru.put(key, handle);
+        usedBytes += byteSize;
+        return handle;
+    }
+
+    /**
+     * @return A handle on the icon stored under the supplied key, or null if no icon is stored under the key.
+     */
+    public synchronized Handle get(K key) {
+        Handle handle = entries.get(key);
+        if (handle != null) {
+            getSizeClass(handle).lru.get(key);
+            handle.lastAccess = ++accessCount;
+        }
+        return handle;
+    }
+
+    /**
+     * @return True if an icon is stored under the supplied key.  Unlike {@link #get(Object)}, this does not mark the
+     * icon as recently used.
+     */
+    public synchronized boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Sets the listener that is told about the key of every icon evicted to make room for another, after the store's
+     * lock is released.  Icons that are removed or cleared are not reported.
+     * @param listener The listener, or null to stop reporting evictions.
+     */
+    public void setEvictionListener(Consumer<? super K> listener) {
+        evictionListener = listener;
+    }
+
+    /**
+     * Removes the icon stored under the supplied key, invalidating its handles.
+     * @return True if an icon was stored under the key.
+     */
+    public synchronized boolean remove(K key) {
+        Handle handle = entries.remove(key);
+        if (handle == null) {
+            return false;
+        }
+        free(handle);
+        return true;
+    }
+
+    /**
+     * Removes every icon and releases every slab.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        liveSlabs.clear();
+        for (SizeClass sizeClass : sizeClasses) {
+            clear(sizeClass);
+        }
+        clear(largeClass);
+        allocatedBytes = 0;
+        usedBytes = 0;
+    }
+
+    private void clear(SizeClass sizeClass) {
+        sizeClass.slabs.clear();
+        sizeClass.partialSlabs.clear();
+        sizeClass.lru.clear();
+    }
+
+    /**
+     * Releases every slab that holds no icons.
+     */
+    public synchronized void trim() {
+        while (releaseEmptySlab()) {
+            // Release one slab at a time until none are empty
+        }
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of bytes of direct memory allocated by the store's slabs.
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return The number of bytes of pixels stored, which is at most the number of bytes allocated.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getSlabCount() {
+        int count = largeClass.slabs.size();
+        for (SizeClass sizeClass : sizeClasses) {
+            count += sizeClass.slabs.size();
+        }
+        return count;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of icons evicted to make room for others.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "size=" + entries.size() + ", slabs=" + getSlabCount() + ", allocated=" + allocatedBytes + ", used="
+                + usedBytes + ", capacity=" + capacity + ", evictions=" + evictionCount;
+    }
+
+    /**
+     * @return The index of the smallest size class holding the supplied number of bytes, or -1 if the bytes need a
+     * slab of their own.
+     */
+    private int getSizeClassIndex(int byteSize) {
+        for (int i = 0; i < sizeClasses.size(); i++) {
+            if (sizeClasses.get(i).blockSize >= byteSize) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private SizeClass getSizeClass(Handle handle) {
+        return handle.sizeClass < 0 ? largeClass : sizeClasses.get(handle.sizeClass);
+    }
+
+    /**
+     * Finds a slab of the supplied size class with a free block, allocating a slab or evicting icons if necessary.
+     * @return The slab, or null if even an empty store cannot hold the requested bytes.
+     */
+    private Slab allocate(SizeClass sizeClass, int byteSize) {
+        boolean large = sizeClass == largeClass;
+        long slabBytes = large ? byteSize : slabSize;
+        if (slabBytes > capacity) {
+            return null;
+        }
+        while (true) {
+            if (! large && ! sizeClass.partialSlabs.isEmpty()) {
+                return sizeClass.partialSlabs.peekFirst();
+            }
+            if (allocatedBytes + slabBytes <= capacity) {
+                int id = nextSlabId++;
+                Slab slab = large ? new Slab(id, byteSize, 1)
+                        : new Slab(id, sizeClass.blockSize, slabSize / sizeClass.blockSize);
+                liveSlabs.put(id, slab);
+                sizeClass.slabs.add(slab);
+                sizeClass.partialSlabs.addFirst(slab);
+                allocatedBytes += slab.getByteSize();
+                return slab;
+            }
+            if (releaseEmptySlab()) {
+                continue;
+            }
+            if (! large && ! sizeClass.lru.isEmpty()) {
+                evict(sizeClass.lru.keySet().iterator().next());
+                continue;
+            }
+            K victim = findLeastRecentlyUsed();
+            if (victim == null) {
+                return null;
+            }
+            evict(victim);
+        }
+    }
+
+    /**
+     * @return The key of the least recently used icon of any size class, or null if the store is empty.
+     */
+    private K findLeastRecentlyUsed() {
+        Handle oldest = null;
+        for (SizeClass sizeClass : sizeClasses) {
+            oldest = older(oldest, sizeClass);
+        }
+        oldest = older(oldest, largeClass);
+        @SuppressWarnings("unchecked")
+        K key = oldest == null ? null : (K) oldest.key;
+        return key;
+    }
+
+    private Handle older(Handle oldest, SizeClass sizeClass) {
+        Iterator<Handle> iterator = sizeClass.lru.values().iterator();
+        if (! iterator.hasNext()) {
+            return oldest;
+        }
+        Handle candidate = iterator.next();
+        return oldest == null || candidate.lastAccess < oldest.lastAccess ? candidate : oldest;
+    }
+
+    private void evict(K key) {
+        remove(key);
+        evictionCount++;
+        if (evictionListener != null) {
+            evicted.add(key);
+        }
+    }
+
+    private void free(Handle handle) {
+        SizeClass sizeClass = getSizeClass(handle);
+        sizeClass.lru.remove(handle.key);
+        usedBytes -= 4L * handle.width * handle.height;
+        Slab slab = liveSlabs.get(handle.slabId);
+        slab.generations[handle.block]++;
+        if (slab.freeCount == 0 && sizeClass != largeClass) {
+            sizeClass.partialSlabs.addLast(slab);
+        }
+        slab.freeBlocks[slab.freeCount++] = handle.block;
+        if (sizeClass == largeClass) {
+            release(sizeClass, slab);
+        }
+    }
+
+    /**
+     * Releases an empty slab, if any.
+     * @return True if a slab was released.
+     */
+    private boolean releaseEmptySlab() {
+        for (SizeClass sizeClass : sizeClasses) {
+            for (Slab slab : sizeClass.slabs) {
+                if (slab.getUsedCount() == 0) {
+                    release(sizeClass, slab);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void release(SizeClass sizeClass, Slab slab) {
+        liveSlabs.remove(slab.id);
+        sizeClass.slabs.remove(slab);
+        sizeClass.partialSlabs.remove(slab);
+        allocatedBytes -= slab.getByteSize();
+    }
+
+    /**
+     * Copies the pixels of the supplied image into the supplied buffer as non premultiplied ARGB, a row at a time
+     * through the raster.  Taking the backing array instead would stop Java2D from accelerating the image, which is
+     * usually shared through the engine's caches.
+     */
+    private static void writePixels(BufferedImage image, IntBuffer buffer) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean argb = image.getType() == BufferedImage.TYPE_INT_ARGB;
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            if (argb) {
+                image.getRaster().getDataElements(0, y, width, 1, row);
+            } else {
+                image.getRGB(0, y, width, 1, row, 0, width);
+            }
+            buffer.put(row);
+        }
+    }
+
+}
@@ -0,0 +1,705 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+
+/**
+ * A persistent store of encoded icons that survives restarts of the application.  Icons are appended to a pack file
+ * as self describing records, each protected by a CRC32 checksum, and an index of the records is written beside the
+ * pack when the store is flushed or closed.  The pack is memory mapped, so a lookup returns a read only view of the
+ * mapped icon bytes without copying them.
+ * <p>
+ * Existing records are never modified.  A crash during an append can only leave a torn record at the end of the pack,
+ * which fails its checksum and is discarded the next time the store is opened.  Records appended after the index was
+ * last written are recovered by scanning the pack from the end of the indexed region.
+ * <p>
+ * Every entry records the last modified time and size of the file its icon was taken from, and is only returned to
+ * callers that supply the same values.  Replaced and removed entries leave dead records in the pack, which are
+ * reclaimed by compaction into a new pack generation.  Once the pack would exceed the maximum size, the least recently
+ * used entries are dropped during compaction.
+ */
+public final class PersistentIconStore implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(PersistentIconStore.class.getName());
+
+    /**
+     * The default maximum size of the pack file in bytes.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 64L * 1024 * 1024;
+
+    private static final String PACK_PREFIX = "icons-";
+    private static final String PACK_SUFFIX = ".pack";
+    private static final String INDEX_FILE = "icons.index";
+    private static final String LOCK_FILE = "icons.lock";
+
+    private static final int PACK_MAGIC = 0x5A49504B;
+    private static final int INDEX_MAGIC = 0x5A494958;
+    private static final int RECORD_MAGIC = 0x5A495243;
+    private static final int VERSION = 1;
+
+    private static final int PACK_HEADER_SIZE = 8;
+
+    /**
+     * The fixed part of a record: magic, record length, key length, last modified, size and data length, followed by
+     * the CRC32 of everything after the magic.
+     */
+    private static final int RECORD_OVERHEAD = 4 + 4 + 2 + 8 + 8 + 4 + 4;
+
+    private static final int MAX_KEY_LENGTH = Short.MAX_VALUE;
+
+    /**
+     * The minimum pack size below which dead records are not worth compacting away.
+     */
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    private final Path directory;
+    private final long maximumSize;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(256, 0.75f, true);
+
+    private long generation;
+    private FileChannel pack;
+    private long packSize;
+    private MappedByteBuffer mapped;
+    private long liveSize;
+    private boolean indexDirty;
+    private boolean closed;
+
+    /**
+     * The location of a record in the pack, along with the file attributes it was stored for.
+     */
+    private static final class Entry {
+
+        private final long lastModified;
+        private final long size;
+        private final long recordOffset;
+        private final int recordLength;
+        private final int dataLength;
+
+        private Entry(long lastModified, long size, long recordOffset, int recordLength, int dataLength) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.recordOffset = recordOffset;
+            this.recordLength = recordLength;
+            this.dataLength = dataLength;
+        }
+
+        private long dataOffset() {
+            return recordOffset + recordLength - 4 - dataLength;
+        }
+
+    }
+
+    private PersistentIconStore(Path directory, long maximumSize, FileChannel lockChannel, FileLock lock) {
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+    }
+
+    /**
+     * @return The directory under the system temp directory in which stores are kept by default, beside the directory
+     * that native libraries are extracted to.
+     */
+    public static Path getDefaultDirectory() {
+        return Paths.get(System.getProperty("java.io.tmpdir"), "SomeGuySoftware", "ZenNativeIconEngine", "store");
+    }
+
+    /**
+     * Opens the store in the supplied directory with the default maximum size, creating it if it does not exist.
+     * @param directory The directory that holds the store files.
+     * @return The opened store.
+     * @throws IOException if the store cannot be opened, or is already open in this or another process.
+     */
+    public static PersistentIconStore open(Path directory) throws IOException {
+        return open(directory, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Opens the store in the supplied directory, creating it if it does not exist.  A store can only be open once at
+     * a time, which is enforced with a lock file in the directory.
+     * @param directory The directory that holds the store files.
+     * @param maximumSize The maximum size of the pack file in bytes.
+     * @return The opened store.
+     * @throws IOException if the store cannot be opened, or is already open in this or another process.
+     */
+    public static PersistentIconStore open(Path directory, long maximumSize) throws IOException {
+        if (maximumSize < PACK_HEADER_SIZE || maximumSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Maximum size out of range: " + maximumSize);
+        }
+        Files.createDirectories(directory);
+        FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Icon store is already open: " + directory);
+        }
+        PersistentIconStore store = new PersistentIconStore(directory, maximumSize, lockChannel, lock);
+        try {
+            store.load();
+        } catch (IOException | RuntimeException e) {
+            store.release();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * Reads the index and recovers any records appended after it was written.  Without a usable index the newest
+     * pack is scanned in full.  Pack generations that the index does not refer to are left over from an interrupted
+     * compaction and are deleted.
+     */
+    private void load() throws IOException {
+        long indexedSize = readIndex();
+        if (indexedSize < 0) {
+            index.clear();
+            generation = findNewestGeneration();
+            indexedSize = PACK_HEADER_SIZE;
+        }
+        deleteOtherGenerations();
+
+        Path packFile = getPackFile(generation);
+        pack = FileChannel.open(packFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long fileSize = pack.size();
+        if (fileSize < PACK_HEADER_SIZE || ! hasValidHeader()) {
+            if (fileSize > 0) {
+                logger.warning("Discarding unreadable icon pack: " + packFile);
+            }
+            index.clear();
+            pack.truncate(0);
+            writeHeader();
+            fileSize = PACK_HEADER_SIZE;
+            indexedSize = PACK_HEADER_SIZE;
+            indexDirty = true;
+        } else if (indexedSize > fileSize) {
+            // The index describes records that are no longer in the pack, so rebuild it from the pack alone
+            index.clear();
+            indexedSize = PACK_HEADER_SIZE;
+        }
+        packSize = fileSize;
+        map();
+        long recovered = scan(indexedSize);
+        if (recovered < packSize) {
+            // The torn tail is overwritten by the next append rather than truncated, since some systems refuse to
+            // truncate a mapped file
+            logger.warning("Discarding " + (packSize - recovered) + " bytes of incomplete records from " + packFile);
+            packSize = recovered;
+        }
+        if (indexedSize != packSize) {
+            indexDirty = true;
+        }
+        liveSize = 0;
+        for (Entry entry : index.values()) {
+            liveSize += entry.recordLength;
+        }
+    }
+
+    private boolean hasValidHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_SIZE);
+        readFully(pack, header, 0);
+        return header.getInt(0) == PACK_MAGIC && header.getInt(4) == VERSION;
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_SIZE);
+        header.putInt(PACK_MAGIC).putInt(VERSION).flip();
+        writeFully(pack, header, 0);
+    }
+
+    /**
+     * Reads records from the supplied offset to the end of the pack, adding them to the index.
+     * @return The offset following the last valid record.
+     */
+    private long scan(long offset) {
+        CRC32 crc = new CRC32();
+        while (offset + RECORD_OVERHEAD <= packSize) {
+            int position = (int) offset;
+            if (mapped.getInt(position) != RECORD_MAGIC) {
+                break;
+            }
+            int recordLength = mapped.getInt(position + 4);
+            if (recordLength < RECORD_OVERHEAD || offset + recordLength > packSize) {
+                break;
+            }
+            ByteBuffer record = slice(position, recordLength);
+            crc.reset();
+            record.position(4).limit(recordLength - 4);
+            crc.update(record);
+            if ((int) crc.getValue() != mapped.getInt(position + recordLength - 4)) {
+                break;
+            }
+            int keyLength = Short.toUnsignedInt(mapped.getShort(position + 8));
+            int fieldsOffset = position + 10 + keyLength;
+            if (keyLength + RECORD_OVERHEAD > recordLength) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            slice(position + 10, keyLength).get(keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            long lastModified = mapped.getLong(fieldsOffset);
+            long size = mapped.getLong(fieldsOffset + 8);
+            int dataLength = mapped.getInt(fieldsOffset + 16);
+            if (dataLength != recordLength - RECORD_OVERHEAD - keyLength) {
+                break;
+            }
+            if (dataLength == 0) {
+                index.remove(key);
+            } else {
+                index.put(key, new Entry(lastModified, size, offset, recordLength, dataLength));
+            }
+            offset += recordLength;
+        }
+        return offset;
+    }
+
+    /**
+     * Reads the index file.
+     * @return The size of the pack covered by the index, or -1 if there is no usable index.
+     */
+    private long readIndex() {
+        Path indexFile = directory.resolve(INDEX_FILE);
+        if (! Files.isRegularFile(indexFile)) {
+            return -1;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+            if (buffer.remaining() < 32 || buffer.getInt() != INDEX_MAGIC || buffer.getInt() != VERSION) {
+                return -1;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), 0, buffer.limit() - 4);
+            if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+                logger.warning("Ignoring corrupt icon store index: " + indexFile);
+                return -1;
+            }
+            generation = buffer.getLong();
+            long indexedSize = buffer.getLong();
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] keyBytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+                buffer.get(keyBytes);
+                index.put(new String(keyBytes, StandardCharsets.UTF_8), new Entry(buffer.getLong(), buffer.getLong(),
+                        buffer.getLong(), buffer.getInt(), buffer.getInt()));
+            }
+            return indexedSize;
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Failed to read icon store index: " + e);
+            index.clear();
+            return -1;
+        }
+    }
+
+    /**
+     * Writes the index to a temporary file and moves it over the previous index, so that a crash leaves either the
+     * old or the new index in place.
+     */
+    private void writeIndex() throws IOException {
+        int capacity = 32;
+        Map<String, byte[]> keys = new LinkedHashMap<>();
+        for (String key : index.keySet()) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            keys.put(key, keyBytes);
+            capacity += 2 + keyBytes.length + 32;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        buffer.putInt(INDEX_MAGIC).putInt(VERSION).putLong(generation).putLong(packSize).putInt(index.size());
+        for (Map.Entry<String, Entry> mapEntry : index.entrySet()) {
+            byte[] keyBytes = keys.get(mapEntry.getKey());
+            Entry entry = mapEntry.getValue();
+            buffer.putShort((short) keyBytes.length).put(keyBytes).putLong(entry.lastModified).putLong(entry.size)
+                    .putLong(entry.recordOffset).putInt(entry.recordLength).putInt(entry.dataLength);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, buffer, 0);
+            channel.force(true);
+        }
+        moveAtomically(temp, directory.resolve(INDEX_FILE));
+        indexDirty = false;
+    }
+
+    /**
+     * Returns a read only view of the icon bytes stored under the supplied key, provided they were stored for a file
+     * with the same last modified time and size.  The view maps the pack file directly and must not be used after
+     * the store is closed or compacted.
+     * @param key The key the icon is stored under.
+     * @param lastModified The last modified time of the file the icon is requested for.
+     * @param size The size of the file the icon is requested for.
+     * @return The stored icon bytes, or null if no icon is stored for the key or the stored icon is out of date.
+     */
+    public synchronized ByteBuffer get(String key, long lastModified, long size) {
+        if (closed) {
+            return null;
+        }
+        Entry entry = index.get(key);
+        if (entry == null || entry.lastModified != lastModified || entry.size != size) {
+            return null;
+        }
+        return slice((int) entry.dataOffset(), entry.dataLength).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a copy of the icon bytes stored under the supplied key.
+     * @see #get(String, long, long)
+     */
+    public byte[] getBytes(String key, long lastModified, long size) {
+        ByteBuffer buffer = get(key, lastModified, size);
+        if (buffer == null) {
+            return null;
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Appends the supplied icon bytes to the store under the supplied key, replacing any icon already stored for it.
+     * @param key The key to store the icon under.
+     * @param lastModified The last modified time of the file the icon was taken from.
+     * @param size The size of the file the icon was taken from.
+     * @param data The encoded icon.
+     * @throws IOException if the icon cannot be written to the pack.
+     */
+    public synchronized void put(String key, long lastModified, long size, byte[] data) throws IOException {
+        if (data.length == 0) {
+            throw new IllegalArgumentException("Icon data must not be empty");
+        }
+        append(key, lastModified, size, data);
+    }
+
+    /**
+     * Removes the icon stored under the supplied key by appending a record that marks it as deleted.
+     * @param key The key of the icon to remove.
+     * @return true if an icon was stored under the key.
+     * @throws IOException if the removal cannot be written to the pack.
+     */
+    public synchronized boolean remove(String key) throws IOException {
+        if (closed || ! index.containsKey(key)) {
+            return false;
+        }
+        append(key, 0, 0, new byte[0]);
+        return true;
+    }
+
+    private void append(String key, long lastModified, long size, byte[] data) throws IOException {
+        ensureOpen();
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Key too long: " + key);
+        }
+        int recordLength = RECORD_OVERHEAD + keyBytes.length + data.length;
+        if (recordLength > maximumSize - PACK_HEADER_SIZE) {
+            return;
+        }
+        if (packSize + recordLength > maximumSize) {
+            compact(maximumSize * 3 / 4 - recordLength);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(recordLength);
+        record.putInt(RECORD_MAGIC).putInt(recordLength).putShort((short) keyBytes.length).put(keyBytes)
+                .putLong(lastModified).putLong(size).putInt(data.length).put(data);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, recordLength - 8);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        long offset = packSize;
+        writeFully(pack, record, offset);
+        packSize += recordLength;
+        indexDirty = true;
+
+        Entry previous = data.length == 0 ? index.remove(key)
+                : index.put(key, new Entry(lastModified, size, offset, recordLength, data.length));
+        if (previous != null) {
+            liveSize -= previous.recordLength;
+        }
+        if (data.length > 0) {
+            liveSize += recordLength;
+        }
+        if (packSize > MIN_COMPACTION_SIZE && packSize - PACK_HEADER_SIZE > 2 * liveSize) {
+            compact(maximumSize);
+        }
+    }
+
+    /**
+     * Rewrites the live entries into a new pack generation, discarding replaced and removed records.
+     * @throws IOException if the new pack cannot be written.
+     */
+    public synchronized void compact() throws IOException {
+        ensureOpen();
+        compact(maximumSize);
+    }
+
+    /**
+     * Copies the most recently used entries that fit within the supplied size into a new pack, makes the new pack
+     * current by writing an index that refers to it, and deletes the old pack.
+     */
+    private void compact(long targetSize) throws IOException {
+        long keptSize = liveSize;
+        Iterator<Entry> eldest = index.values().iterator();
+        while (PACK_HEADER_SIZE + keptSize > targetSize && eldest.hasNext()) {
+            keptSize -= eldest.next().recordLength;
+            eldest.remove();
+        }
+
+        long nextGeneration = generation + 1;
+        Path nextFile = getPackFile(nextGeneration);
+        FileChannel next = FileChannel.open(nextFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        LinkedHashMap<String, Entry> moved = new LinkedHashMap<>(index.size() * 2, 0.75f, true);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_SIZE);
+            header.putInt(PACK_MAGIC).putInt(VERSION).flip();
+            writeFully(next, header, 0);
+            long offset = PACK_HEADER_SIZE;
+            for (Map.Entry<String, Entry> mapEntry : index.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                writeFully(next, slice((int) entry.recordOffset, entry.recordLength), offset);
+                moved.put(mapEntry.getKey(), new Entry(entry.lastModified, entry.size, offset, entry.recordLength,
+                        entry.dataLength));
+                offset += entry.recordLength;
+            }
+            next.force(true);
+        } catch (IOException e) {
+            next.close();
+            Files.deleteIfExists(nextFile);
+            throw e;
+        }
+
+        FileChannel previous = pack;
+        long previousGeneration = generation;
+        index.clear();
+        index.putAll(moved);
+        generation = nextGeneration;
+        pack = next;
+        packSize = next.size();
+        liveSize = packSize - PACK_HEADER_SIZE;
+        map();
+        writeIndex();
+        previous.close();
+        deletePack(previousGeneration);
+    }
+
+    /**
+     * Writes the index, so that the next open does not need to scan the records appended since it was last written,
+     * and forces the pack to the storage device.
+     * @throws IOException if the index cannot be written.
+     */
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        pack.force(false);
+        if (indexDirty) {
+            writeIndex();
+        }
+    }
+
+    /**
+     * Flushes and closes the store, and releases the lock on its directory.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Closes the pack and releases the lock on the store directory without writing the index.
+     */
+    private void release() throws IOException {
+        closed = true;
+        mapped = null;
+        index.clear();
+        try {
+            if (pack != null) {
+                pack.close();
+            }
+            lock.release();
+        } finally {
+            lockChannel.close();
+        }
+    }
+
+    /**
+     * @return The number of icons in the store.
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return The size of the pack file in bytes, including dead records.
+     */
+    public synchronized long getPackSize() {
+        return packSize;
+    }
+
+    /**
+     * @return The number of bytes of the pack file occupied by live records.
+     */
+    public synchronized long getLiveSize() {
+        return liveSize;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Icon store is closed: " + directory);
+        }
+    }
+
+    /**
+     * Maps the pack up to its current size.  The pack grows as records are appended, so the mapping is replaced
+     * whenever a lookup refers to a record beyond its end.
+     */
+    private void map() throws IOException {
+        mapped = pack.map(FileChannel.MapMode.READ_ONLY, 0, packSize);
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        if (offset + length > mapped.capacity()) {
+            try {
+                map();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to map icon pack", e);
+            }
+        }
+        ByteBuffer buffer = mapped.duplicate();
+        buffer.position(offset).limit(offset + length);
+        return buffer.slice();
+    }
+
+    private Path getPackFile(long packGeneration) {
+        return directory.resolve(PACK_PREFIX + packGeneration + PACK_SUFFIX);
+    }
+
+    private long findNewestGeneration() throws IOException {
+        long newest = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PACK_PREFIX + "*" + PACK_SUFFIX)) {
+            for (Path file : files) {
+                long packGeneration = parseGeneration(file);
+                if (packGeneration > newest) {
+                    newest = packGeneration;
+                }
+            }
+        }
+        return newest;
+    }
+
+    private void deleteOtherGenerations() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PACK_PREFIX + "*" + PACK_SUFFIX)) {
+            for (Path file : files) {
+                long packGeneration = parseGeneration(file);
+                if (packGeneration >= 0 && packGeneration != generation) {
+                    deletePack(packGeneration);
+                }
+            }
+        }
+    }
+
+    private static long parseGeneration(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PACK_PREFIX.length(), name.length() - PACK_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Deletes the pack of the supplied generation.  Some systems refuse to delete a file that is still mapped, in
+     * which case the pack is deleted the next time the store is opened.
+     */
+    private void deletePack(long packGeneration) {
+        try {
+            Files.deleteIfExists(getPackFile(packGeneration));
+        } catch (IOException e) {
+            logger.fine("Deferring deletion of icon pack generation " + packGeneration + ": " + e);
+        }
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+}
@@ -3,6 +3,8 @@ package zenengine.nativeaccess;
 import zenengine.base.IconEngineTest;
 import zenengine.base.IconReceiver;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
 
 import java.io.File;
 import java.net.URISyntaxException;
@@ -11,6 +13,7 @@ import java.net.URL;
 import static org.junit.jupiter.api.Assertions.*;
 
 
+@EnabledOnOs(OS.WINDOWS)
 public class WindowsIconExtractorTest {
 
     @Test
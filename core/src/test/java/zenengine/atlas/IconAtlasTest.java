@@ -0,0 +1,144 @@
+package zenengine.atlas;
+
+import org.junit.jupiter.api.Test;
+import zenengine.nativeaccess.SyntheticIconExtractor;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class IconAtlasTest {
+
+    private static BufferedImage icon(int seed, int size) {
+        return SyntheticIconExtractor.generateIcon(seed, size);
+    }
+
+    private static void assertHolds(IconAtlas<?> atlas, AtlasRegion region, BufferedImage icon) {
+        BufferedImage page = atlas.getPage(region.getPage());
+        assertEquals(icon.getWidth(), region.getWidth());
+        assertEquals(icon.getHeight(), region.getHeight());
+        for (int y = 0; y < icon.getHeight(); y++) {
+            for (int x = 0; x < icon.getWidth(); x++) {
+                assertEquals(icon.getRGB(x, y), page.getRGB(region.getX() + x, region.getY() + y));
+            }
+        }
+    }
+
+    private static boolean overlap(AtlasRegion a, AtlasRegion b) {
+        return a.getPage() == b.getPage() && a.getX() < b.getX() + b.getWidth() && b.getX() < a.getX() + a.getWidth()
+                && a.getY() < b.getY() + b.getHeight() && b.getY() < a.getY() + a.getHeight();
+    }
+
+    @Test
+    void packsDistinctIconsWithoutOverlap() {
+        IconAtlas<String> atlas = new IconAtlas<>(16, 64);
+        List<BufferedImage> icons = new ArrayList<>();
+        List<AtlasRegion> regions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            BufferedImage icon = icon(i, i % 3 == 0 ? 24 : 16);
+            icons.add(icon);
+            regions.add(atlas.add("icon" + i, icon));
+        }
+        assertEquals(20, atlas.getDistinctCount());
+        assertTrue(atlas.getPageCount() >= 2);
+        for (int i = 0; i < regions.size(); i++) {
+            assertHolds(atlas, regions.get(i), icons.get(i));
+            for (int j = i + 1; j < regions.size(); j++) {
+                assertFalse(overlap(regions.get(i), regions.get(j)), regions.get(i) + " overlaps " + regions.get(j));
+            }
+        }
+        assertEquals(regions.get(7), atlas.getRegions().get("icon7"));
+    }
+
+    @Test
+    void identicalIconsShareARegion() {
+        IconAtlas<String> atlas = new IconAtlas<>(16, 64);
+        AtlasRegion first = atlas.add("a.txt", icon(1, 16));
+        AtlasRegion second = atlas.add("b.txt", icon(1, 16));
+        assertSame(first, second);
+        assertEquals(2, atlas.size());
+        assertEquals(1, atlas.getDistinctCount());
+
+        atlas.remove("a.txt");
+        assertEquals(first, atlas.getRegion("b.txt"));
+        assertEquals(0, atlas.getFragmentation());
+        assertSame(first, atlas.add("b.txt", icon(1, 16)));
+    }
+
+    @Test
+    void freedSlotsAreReusedAndFragmentationTriggersRepack() {
+        IconAtlas<Integer> atlas = new IconAtlas<>(16, 72);
+        for (int i = 0; i < 32; i++) {
+            atlas.add(i, icon(i, 16));
+        }
+        assertEquals(2, atlas.getPageCount());
+
+        AtlasRegion freed = atlas.getRegion(5);
+        atlas.remove(5);
+        assertTrue(atlas.getFragmentation() > 0);
+        assertEquals(freed, atlas.add(100, icon(100, 16)));
+        assertEquals(0, atlas.getFragmentation());
+
+        long version = atlas.getVersion();
+        for (int i = 0; i < 32; i++) {
+            if (i % 4 != 3) {
+                atlas.remove(i);
+            }
+        }
+        assertTrue(atlas.getRepackCount() > 0);
+        assertTrue(atlas.getVersion() > version);
+        assertEquals(1, atlas.getPageCount());
+        assertTrue(atlas.getFragmentation() < atlas.getMaxFragmentation());
+        for (int i = 3; i < 32; i += 4) {
+            assertHolds(atlas, atlas.getRegion(i), icon(i, 16));
+        }
+        assertHolds(atlas, atlas.getRegion(100), icon(100, 16));
+    }
+
+    @Test
+    void iconsAreSurroundedByTheirEdgePixels() {
+        IconAtlas<String> atlas = new IconAtlas<>(16, 64);
+        BufferedImage first = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                first.setRGB(x, y, 0xFF000000 | x << 8 | y);
+            }
+        }
+        AtlasRegion region = atlas.add("first", first);
+        AtlasRegion next = atlas.add("second", icon(2, 16));
+        BufferedImage page = atlas.getPage(0);
+
+        assertEquals(1, region.getX());
+        assertEquals(1, region.getY());
+        assertEquals(region.getX() + 18, next.getX());
+        assertHolds(atlas, region, first);
+        for (int i = 0; i < 16; i++) {
+            assertEquals(first.getRGB(0, i), page.getRGB(0, region.getY() + i));
+            assertEquals(first.getRGB(15, i), page.getRGB(region.getX() + 16, region.getY() + i));
+            assertEquals(first.getRGB(i, 0), page.getRGB(region.getX() + i, 0));
+            assertEquals(first.getRGB(i, 15), page.getRGB(region.getX() + i, region.getY() + 16));
+        }
+        assertEquals(first.getRGB(0, 0), page.getRGB(0, 0));
+        assertEquals(first.getRGB(15, 15), page.getRGB(17, 17));
+    }
+
+    @Test
+    void dirtyRegionsTrackAddedIcons() {
+        IconAtlas<String> atlas = new IconAtlas<>(16, 64);
+        atlas.add("first", icon(1, 16));
+        assertEquals(List.of(new AtlasRegion(0, 0, 0, 64, 18)), atlas.takeDirtyRegions(0));
+        assertEquals(List.of(), atlas.takeDirtyRegions(0));
+
+        AtlasRegion second = atlas.add("second", icon(2, 16));
+        atlas.add("copy", icon(1, 16));
+        assertEquals(List.of(new AtlasRegion(0, second.getX() - 1, second.getY() - 1, 18, 18)),
+                atlas.takeDirtyRegions(0));
+
+        atlas.repack();
+        assertEquals(List.of(new AtlasRegion(0, 0, 0, 64, 18)), atlas.takeDirtyRegions(0));
+    }
+
+}
@@ -0,0 +1,180 @@
+package zenengine.base;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import zenengine.nativeaccess.SyntheticIconExtractor;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class IconCacheInvalidatorTest {
+
+    private Path directory;
+    private IconCacheInvalidator invalidator;
+    private final AtomicInteger extractions = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("IconCacheInvalidatorTest");
+        IconEngine.clearCaches();
+        IconEngine.setIconExtractor(new IconExtractor() {
+            @Override
+            public String getName() {
+                return "counting";
+            }
+
+            @Override
+            public boolean isSupported() {
+                return false;
+            }
+
+            @Override
+            public BufferedImage getIcon(File file) {
+                extractions.incrementAndGet();
+                return SyntheticIconExtractor.generateIcon(file.getName().hashCode(), 16);
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (invalidator != null) {
+            invalidator.close();
+        }
+        IconEngine.setCacheInvalidator(null);
+        IconEngine.setIconExtractor(null);
+        IconEngine.clearCaches();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    private void useInvalidator(Duration debounce, Duration scanInterval, int maxWatchedDirectories)
+            throws IOException {
+        invalidator = new IconCacheInvalidator(debounce, scanInterval, maxWatchedDirectories);
+        IconEngine.setCacheInvalidator(invalidator);
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (! condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for the condition");
+            Thread.sleep(20);
+        }
+    }
+
+    private static void write(Path file, String contents) throws IOException {
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void rewritingTrackedFileEvictsItsIcon() throws Exception {
+        useInvalidator(Duration.ofMillis(50), Duration.ofSeconds(10), 16);
+        Path launcher = directory.resolve("editor.desktop");
+        write(launcher, "[Desktop Entry]\nIcon=editor\n");
+        Path text = Files.createFile(directory.resolve("notes.txt"));
+
+        assertNotNull(IconEngine.getIconBufferedImage(launcher.toFile()));
+        assertNotNull(IconEngine.getIconBufferedImage(text.toFile()));
+        assertEquals(1, invalidator.getTrackedFileCount());
+        assertEquals(1, invalidator.getWatchedDirectoryCount());
+
+        write(text, "changed");
+        write(launcher, "[Desktop Entry]\nIcon=other-editor\n");
+        awaitCondition(() -> invalidator.getInvalidationCount() == 1);
+        assertEquals(0, invalidator.getTrackedFileCount());
+        assertEquals(0, invalidator.getWatchedDirectoryCount());
+
+        assertNotNull(IconEngine.getIconBufferedImage(launcher.toFile()));
+        assertNotNull(IconEngine.getIconBufferedImage(text.toFile()));
+        assertEquals(3, extractions.get());
+        assertEquals(1, invalidator.getTrackedFileCount());
+    }
+
+    @Test
+    void desktopIniEditEvictsDirectoryIcon() throws Exception {
+        useInvalidator(Duration.ofMillis(50), Duration.ofSeconds(10), 16);
+        Path custom = Files.createDirectory(directory.resolve("custom"));
+        Path desktopIni = custom.resolve("desktop.ini");
+        write(desktopIni, "[.ShellClassInfo]\nIconResource=a.ico,0\n");
+
+        assertNotNull(IconEngine.getIconBufferedImage(custom.toFile()));
+        assertEquals(1, invalidator.getTrackedFileCount());
+        write(desktopIni, "[.ShellClassInfo]\nIconResource=b.ico,0\n");
+        awaitCondition(() -> invalidator.getInvalidationCount() == 1);
+
+        assertNotNull(IconEngine.getIconBufferedImage(custom.toFile()));
+        assertEquals(2, extractions.get());
+    }
+
+    @Test
+    void eventStormIsCoalesced() throws Exception {
+        useInvalidator(Duration.ofMillis(400), Duration.ofSeconds(10), 16);
+        Path launcher = directory.resolve("editor.desktop");
+        write(launcher, "initial");
+        assertNotNull(IconEngine.getIconBufferedImage(launcher.toFile()));
+
+        for (int i = 0; i < 10; i++) {
+            write(launcher, "write " + i);
+            Thread.sleep(10);
+        }
+        assertEquals(0, invalidator.getInvalidationCount());
+        assertEquals(1, invalidator.getTrackedFileCount());
+        awaitCondition(() -> invalidator.getInvalidationCount() == 1);
+    }
+
+    @Test
+    void evictedAndClearedIconsAreNoLongerTracked() throws Exception {
+        useInvalidator(Duration.ofMillis(50), Duration.ofSeconds(10), 16);
+        Path first = directory.resolve("first.desktop");
+        Path second = directory.resolve("second.desktop");
+        write(first, "first");
+        write(second, "second");
+        IconCache<IconCacheKey, BufferedImage> cache = IconEngine.getBufferedImageCache();
+        long maximumWeight = cache.getMaximumWeight();
+        cache.setMaximumWeight(4L * 16 * 16);
+        try {
+            assertNotNull(IconEngine.getIconBufferedImage(first.toFile()));
+            assertEquals(1, invalidator.getTrackedFileCount());
+            assertNotNull(IconEngine.getIconBufferedImage(second.toFile()));
+            assertEquals(1, invalidator.getTrackedFileCount());
+            assertEquals(1, invalidator.getWatchedDirectoryCount());
+        } finally {
+            cache.setMaximumWeight(maximumWeight);
+        }
+
+        IconEngine.clearCaches();
+        assertEquals(0, invalidator.getTrackedFileCount());
+        assertEquals(0, invalidator.getWatchedDirectoryCount());
+    }
+
+    @Test
+    void unwatchedDirectoriesAreScannedForChanges() throws Exception {
+        useInvalidator(Duration.ZERO, Duration.ofMillis(50), 0);
+        Path changed = directory.resolve("changed.desktop");
+        Path unchanged = directory.resolve("unchanged.desktop");
+        write(changed, "changed");
+        write(unchanged, "unchanged");
+        assertNotNull(IconEngine.getIconBufferedImage(changed.toFile()));
+        assertNotNull(IconEngine.getIconBufferedImage(unchanged.toFile()));
+        assertEquals(0, invalidator.getWatchedDirectoryCount());
+        assertEquals(2, invalidator.getTrackedFileCount());
+
+        assertTrue(changed.toFile().setLastModified(changed.toFile().lastModified() + 10_000));
+        awaitCondition(() -> invalidator.getInvalidationCount() == 1);
+        Thread.sleep(200);
+        assertEquals(1, invalidator.getInvalidationCount());
+        assertEquals(1, invalidator.getTrackedFileCount());
+    }
+
+}
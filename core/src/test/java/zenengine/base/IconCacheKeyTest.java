@@ -0,0 +1,63 @@
+package zenengine.base;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class IconCacheKeyTest {
+
+    @Test
+    void genericFilesShareExtensionKey() {
+        IconCacheKey first = IconCacheKey.forFile(new File("notes.txt"), false);
+        IconCacheKey second = IconCacheKey.forFile(new File("other/README.TXT"), false);
+
+        assertEquals(IconCacheKey.Type.EXTENSION, first.getType());
+        assertEquals(first, second);
+        assertEquals("txt", first.getValue());
+    }
+
+    @Test
+    void filesWithOwnIconAreKeyedByPath() {
+        IconCacheKey first = IconCacheKey.forFile(new File("a/setup.exe"), false);
+        IconCacheKey second = IconCacheKey.forFile(new File("b/setup.exe"), false);
+
+        assertEquals(IconCacheKey.Type.PATH, first.getType());
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void hiddenFileHasNoExtension() {
+        IconCacheKey key = IconCacheKey.forFile(new File(".bashrc"), false);
+
+        assertEquals(IconCacheKey.forExtension(""), key);
+    }
+
+    @Test
+    void directoriesShareKeyUnlessCustomised() throws IOException {
+        Path temp = Files.createTempDirectory("IconCacheKeyTest");
+        Path plain = Files.createDirectory(temp.resolve("plain"));
+        Path custom = Files.createDirectory(temp.resolve("custom"));
+        Files.createFile(custom.resolve("desktop.ini"));
+        FileUtils.forceDeleteOnExit(temp.toFile());
+
+        assertEquals(IconCacheKey.Type.DIRECTORY, IconCacheKey.forFile(plain.toFile()).getType());
+        assertEquals(IconCacheKey.Type.PATH, IconCacheKey.forFile(custom.toFile()).getType());
+    }
+
+    @Test
+    void rootsAreKeyedByPath() {
+        for (File root : File.listRoots()) {
+            IconCacheKey key = IconCacheKey.forFile(root, true);
+            assertEquals(IconCacheKey.Type.PATH, key.getType());
+            assertEquals(IconCacheKey.forPath(root), key);
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package zenengine.base;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class IconCacheTest {
+
+    @Test
+    void getReturnsCachedValue() {
+        IconCache<String, byte[]> cache = new IconCache<>(100, bytes -> bytes.length);
+        byte[] value = new byte[10];
+        cache.put("txt", value);
+
+        assertSame(value, cache.get("txt"));
+        assertNull(cache.get("pdf"));
+        assertEquals(1, cache.getStats().getHitCount());
+        assertEquals(1, cache.getStats().getMissCount());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedWhenOverWeight() {
+        IconCache<String, byte[]> cache = new IconCache<>(100, bytes -> bytes.length);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        cache.get("a");
+        cache.put("c", new byte[40]);
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(80, cache.getWeight());
+        assertEquals(1, cache.getStats().getEvictionCount());
+    }
+
+    @Test
+    void replacingValueUpdatesWeight() {
+        IconCache<String, byte[]> cache = new IconCache<>(100, bytes -> bytes.length);
+        cache.put("a", new byte[40]);
+        cache.put("a", new byte[10]);
+
+        assertEquals(10, cache.getWeight());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void valueHeavierThanMaximumIsNotCached() {
+        IconCache<String, byte[]> cache = new IconCache<>(100, bytes -> bytes.length);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[101]);
+
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+    }
+
+    @Test
+    void shrinkingMaximumWeightEvicts() {
+        IconCache<String, byte[]> cache = new IconCache<>(100, bytes -> bytes.length);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        cache.setMaximumWeight(50);
+
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get("b"));
+    }
+
+    @Test
+    void invalidateIfRemovesMatchingKeys() {
+        IconCache<String, byte[]> cache = new IconCache<>(100, bytes -> bytes.length);
+        cache.put("a16", new byte[10]);
+        cache.put("a32", new byte[20]);
+        cache.put("b16", new byte[30]);
+        cache.invalidateIf(key -> key.startsWith("a"));
+
+        assertEquals(1, cache.size());
+        assertEquals(30, cache.getWeight());
+        assertNotNull(cache.get("b16"));
+    }
+
+    @Test
+    void evictionListenerOnlyHearsOfEvictions() {
+        IconCache<String, byte[]> cache = new IconCache<>(100, bytes -> bytes.length);
+        List<String> evicted = new ArrayList<>();
+        cache.setEvictionListener(evicted::add);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        cache.invalidate("b");
+        cache.put("c", new byte[40]);
+        cache.put("d", new byte[40]);
+        cache.setMaximumWeight(40);
+
+        assertEquals(List.of("a", "c"), evicted);
+    }
+
+}
@@ -0,0 +1,144 @@
+package zenengine.base;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import zenengine.nativeaccess.SyntheticIconExtractor;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class IconEngineAsyncTest {
+
+    private Path directory;
+    private BlockingExtractor extractor;
+    private ExecutorService executor;
+
+    /**
+     * An extractor that counts extractions and blocks extractions of pdf files until released.
+     */
+    private static class BlockingExtractor implements IconExtractor {
+
+        private final AtomicInteger extractions = new AtomicInteger();
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public String getName() {
+            return "blocking";
+        }
+
+        @Override
+        public boolean isSupported() {
+            return false;
+        }
+
+        @Override
+        public BufferedImage getIcon(File file) {
+            extractions.incrementAndGet();
+            if (file.getName().endsWith(".pdf")) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return SyntheticIconExtractor.generateIcon(file.getName().hashCode(), 16);
+        }
+
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("IconEngineAsyncTest");
+        extractor = new BlockingExtractor();
+        IconEngine.setIconExtractor(extractor);
+        executor = Executors.newFixedThreadPool(4);
+        IconEngine.setExecutor(executor);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        extractor.release.countDown();
+        IconEngine.setIconExtractor(null);
+        IconEngine.setExecutor(null);
+        executor.shutdownNow();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    private Path createFile(String name) throws IOException {
+        return Files.createFile(directory.resolve(name));
+    }
+
+    @Test
+    void concurrentRequestsShareOneExtraction() throws Exception {
+        List<CompletableFuture<BufferedImage>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(IconEngine.getIconBufferedImageAsync(createFile("document" + i + ".pdf")));
+        }
+        extractor.release.countDown();
+
+        BufferedImage first = futures.get(0).get(10, TimeUnit.SECONDS);
+        assertNotNull(first);
+        for (CompletableFuture<BufferedImage> future : futures) {
+            assertSame(first, future.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, extractor.extractions.get());
+    }
+
+    @Test
+    void deliversResultsInCompletionOrder() throws Exception {
+        Path text = createFile("notes.txt");
+        Path pdf = createFile("document.pdf");
+        Path missing = directory.resolve("missing.png");
+        List<IconResult> results = Collections.synchronizedList(new ArrayList<>());
+
+        CompletableFuture<Void> done = IconEngine.getIconsAsync(List.of(pdf, text, missing), results::add);
+        while (true) {
+            synchronized (results) {
+                if (results.size() == 2) {
+                    break;
+                }
+            }
+            Thread.sleep(5);
+        }
+        extractor.release.countDown();
+        done.get(10, TimeUnit.SECONDS);
+
+        assertEquals(3, results.size());
+        assertEquals(pdf, results.get(2).getPath());
+        assertNotNull(results.get(2).getImage());
+        for (IconResult result : results) {
+            assertNull(result.getError());
+            assertEquals(result.getPath().equals(missing), result.getImage() == null);
+        }
+    }
+
+    @Test
+    void asyncByteArrayAndImageShareCachedIcon() throws Exception {
+        Path text = createFile("notes.txt");
+
+        byte[] bytes = IconEngine.getIconByteArrayAsync(text).get(10, TimeUnit.SECONDS);
+        assertNotNull(bytes);
+        IconCacheKey key = IconEngine.getCacheKey(text.toFile());
+        assertNotNull(IconEngine.getIconBufferedImageAsync(text.toFile(), key).get(10, TimeUnit.SECONDS));
+        assertSame(bytes, IconEngine.getIconByteArray(text.toFile()));
+        assertEquals(1, extractor.extractions.get());
+    }
+
+}
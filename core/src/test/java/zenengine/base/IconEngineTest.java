@@ -0,0 +1,302 @@
+package zenengine.base;
+
+import java.awt.image.BaseMultiResolutionImage;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import zenengine.codec.IconFormat;
+import zenengine.codec.RawArgbCodec;
+import zenengine.nativeaccess.SyntheticIconExtractor;
+import zenengine.store.OffHeapIconStore;
+import zenengine.store.PersistentIconStore;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class IconEngineTest {
+
+    @BeforeEach
+    void resetStats() {
+        IconEngine.getBufferedImageCache().getStats().reset();
+        IconEngine.getInterner().resetStats();
+    }
+
+    @AfterEach
+    void resetExtractor() {
+        IconEngine.setIconExtractor(null);
+        IconEngine.setPersistentStore(null);
+        IconEngine.setOffHeapStore(null);
+    }
+
+    @Test
+    @EnabledOnOs(OS.WINDOWS)
+    void getIconImage() throws URISyntaxException, IOException {
+        URL resource = IconEngineTest.class.getClassLoader().getResource("test_icon.png");
+        File testFile = new File(resource.toURI());
+
+        assertTrue(IconEngine.getIconBufferedImage(testFile) instanceof BufferedImage);
+    }
+
+    @Test
+    void getIconImageNonExistentFileReturn() throws IOException {
+        File testFile = new File("C:/Path/To/NoWhere/fakefile.jpg");
+
+        assertNull(IconEngine.getIconBufferedImage(testFile));
+        assertNull(IconEngine.getCacheKey(testFile));
+    }
+
+    @Test
+    void getIconBufferedImageUsesSelectedExtractor() throws URISyntaxException {
+        URL resource = IconEngineTest.class.getClassLoader().getResource("TestTextFile.txt");
+        File testFile = new File(resource.toURI());
+        IconEngine.setIconExtractor(IconEngine.findIconExtractor("synthetic"));
+
+        BufferedImage icon = IconEngine.getIconBufferedImage(testFile);
+        assertEquals(256, icon.getWidth());
+        assertSame(icon, IconEngine.getIconBufferedImage(testFile));
+        assertEquals(1, IconEngine.getBufferedImageCache().getStats().getHitCount());
+    }
+
+    @Test
+    void persistentStoreServesIconsWithoutExtraction() throws URISyntaxException, IOException {
+        URL resource = IconEngineTest.class.getClassLoader().getResource("TestTextFile.txt");
+        File testFile = new File(resource.toURI());
+        Path directory = Files.createTempDirectory("IconEngineTest");
+        try (PersistentIconStore store = PersistentIconStore.open(directory)) {
+            IconEngine.setIconExtractor(IconEngine.findIconExtractor("synthetic"));
+            IconEngine.setPersistentStore(store);
+            byte[] bytes = IconEngine.getIconByteArray(testFile);
+            assertEquals(1, store.size());
+
+            IconEngine.setIconExtractor(new IconExtractor() {
+                @Override
+                public String getName() {
+                    return "failing";
+                }
+
+                @Override
+                public boolean isSupported() {
+                    return false;
+                }
+
+                @Override
+                public BufferedImage getIcon(File file) {
+                    throw new AssertionError("Stored icon was extracted again");
+                }
+            });
+            assertArrayEquals(bytes, IconEngine.getIconByteArray(testFile));
+            assertEquals(256, IconEngine.getIconBufferedImage(testFile).getWidth());
+        } finally {
+            IconEngine.setPersistentStore(null);
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @Test
+    void storedSharedIconsAreExtractedAgainWhenTheFingerprintChanges() throws URISyntaxException, IOException {
+        URL resource = IconEngineTest.class.getClassLoader().getResource("TestTextFile.txt");
+        File testFile = new File(resource.toURI());
+        Path directory = Files.createTempDirectory("IconEngineTest");
+        try (PersistentIconStore store = PersistentIconStore.open(directory)) {
+            IconEngine.setIconExtractor(IconEngine.findIconExtractor("synthetic"));
+            IconEngine.setPersistentStore(store);
+            IconEngine.getIconByteArray(testFile);
+            assertEquals(1, store.size());
+
+            BufferedImage replacement = SyntheticIconExtractor.generateIcon(7, 32);
+            IconEngine.setIconExtractor(new IconExtractor() {
+                @Override
+                public String getName() {
+                    return "rethemed";
+                }
+
+                @Override
+                public boolean isSupported() {
+                    return false;
+                }
+
+                @Override
+                public BufferedImage getIcon(File file) {
+                    return replacement;
+                }
+
+                @Override
+                public long getFingerprint() {
+                    return 1;
+                }
+            });
+            assertEquals(32, IconEngine.getIconBufferedImage(testFile).getWidth());
+        } finally {
+            IconEngine.setPersistentStore(null);
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @Test
+    void rootsDoNotShareTheDirectoryIcon() throws IOException {
+        File root = File.listRoots()[0];
+        Path directory = Files.createTempDirectory("IconEngineTest");
+        try {
+            BufferedImage drive = SyntheticIconExtractor.generateIcon(1, 32);
+            BufferedImage folder = SyntheticIconExtractor.generateIcon(2, 32);
+            IconEngine.setIconExtractor(new IconExtractor() {
+                @Override
+                public String getName() {
+                    return "drives";
+                }
+
+                @Override
+                public boolean isSupported() {
+                    return false;
+                }
+
+                @Override
+                public BufferedImage getIcon(File file) {
+                    return file.getAbsoluteFile().getParentFile() == null ? drive : folder;
+                }
+            });
+
+            assertEquals(drive.getRGB(16, 16), IconEngine.getIconBufferedImage(root).getRGB(16, 16));
+            assertEquals(folder.getRGB(16, 16), IconEngine.getIconBufferedImage(directory.toFile()).getRGB(16, 16));
+            assertEquals(drive.getRGB(16, 16), IconEngine.getIconBufferedImage(root).getRGB(16, 16));
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @Test
+    void identicalIconsShareInstances() throws IOException {
+        Path directory = Files.createTempDirectory("IconEngineTest");
+        try {
+            File text = Files.createFile(directory.resolve("notes.txt")).toFile();
+            File log = Files.createFile(directory.resolve("server.log")).toFile();
+            IconEngine.setIconExtractor(new IconExtractor() {
+                @Override
+                public String getName() {
+                    return "generic";
+                }
+
+                @Override
+                public boolean isSupported() {
+                    return false;
+                }
+
+                @Override
+                public BufferedImage getIcon(File file) {
+                    return SyntheticIconExtractor.generateIcon(0, 32);
+                }
+            });
+
+            assertSame(IconEngine.getIconBufferedImage(text), IconEngine.getIconBufferedImage(log));
+            assertEquals(1, IconEngine.getInterner().getDuplicateCount());
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @Test
+    void sizedIconsAreSharedPyramidLevels() throws URISyntaxException {
+        URL resource = IconEngineTest.class.getClassLoader().getResource("TestTextFile.txt");
+        File testFile = new File(resource.toURI());
+        IconEngine.setIconExtractor(IconEngine.findIconExtractor("synthetic"));
+
+        BufferedImage level = IconEngine.getIconBufferedImage(testFile, 48);
+        assertEquals(48, level.getWidth());
+        assertSame(level, IconEngine.getIconBufferedImage(testFile, 48));
+
+        BaseMultiResolutionImage multiResolution = IconEngine.getIconMultiResolutionImage(testFile, 32);
+        assertEquals(32, multiResolution.getWidth(null));
+        assertEquals(7, multiResolution.getResolutionVariants().size());
+        assertEquals(64, ((BufferedImage) multiResolution.getResolutionVariant(64, 64)).getWidth());
+    }
+
+    @Test
+    void iconBytesRoundTripInEveryFormat() throws URISyntaxException, IOException {
+        URL resource = IconEngineTest.class.getClassLoader().getResource("TestTextFile.txt");
+        File testFile = new File(resource.toURI());
+        IconEngine.setIconExtractor(IconEngine.findIconExtractor("synthetic"));
+        BufferedImage icon = IconEngine.getIconBufferedImage(testFile);
+
+        for (IconFormat format : IconFormat.values()) {
+            byte[] bytes = IconEngine.getIconBytes(testFile, format);
+            assertSame(bytes, IconEngine.getIconBytes(testFile, format));
+            BufferedImage decoded = format.decode(bytes);
+            assertEquals(icon.getWidth(), decoded.getWidth());
+            assertEquals(icon.getRGB(128, 128), decoded.getRGB(128, 128), format.name());
+        }
+        assertSame(IconEngine.getIconByteArray(testFile), IconEngine.getIconBytes(testFile, IconFormat.PNG));
+        assertEquals(RawArgbCodec.HEADER_SIZE + 256 * 256 * 4,
+                IconEngine.getIconBytes(testFile, IconFormat.RAW_ARGB_PRE).length);
+        assertNull(IconEngine.getIconBytes(new File("C:/Path/To/NoWhere/fakefile.jpg"), IconFormat.QOI));
+    }
+
+    @Test
+    void invalidateRemovesEveryCachedFormOfAnIcon() throws URISyntaxException, IOException {
+        URL resource = IconEngineTest.class.getClassLoader().getResource("TestTextFile.txt");
+        File testFile = new File(resource.toURI());
+        IconCacheKey key = IconCacheKey.forFile(testFile);
+        IconEngine.setIconExtractor(IconEngine.findIconExtractor("synthetic"));
+        IconEngine.getIconBufferedImage(testFile, 48);
+        IconEngine.getIconBytes(testFile, IconFormat.QOI);
+        assertNotNull(IconEngine.getBufferedImageCache().get(key));
+        assertNotNull(IconEngine.getLevelCache().get(new IconPyramid.Level(key, 48)));
+        assertNotNull(IconEngine.getLevelCache().get(new IconPyramid.Level(key, 128)));
+
+        List<IconCacheKey> invalidated = new ArrayList<>();
+        IconCacheListener listener = new IconCacheListener() {
+            @Override
+            public void invalidated(IconCacheKey key) {
+                invalidated.add(key);
+            }
+
+            @Override
+            public void cleared() {
+            }
+        };
+        IconEngine.addCacheListener(listener);
+        try {
+            IconEngine.invalidate(key);
+        } finally {
+            IconEngine.removeCacheListener(listener);
+        }
+        assertEquals(List.of(key), invalidated);
+        assertNull(IconEngine.getBufferedImageCache().get(key));
+        assertNull(IconEngine.getByteCache(IconFormat.QOI).get(key));
+        assertNull(IconEngine.getLevelCache().get(new IconPyramid.Level(key, 48)));
+        assertNull(IconEngine.getLevelCache().get(new IconPyramid.Level(key, 128)));
+    }
+
+    @Test
+    void iconHandlesAreServedFromTheOffHeapStore() throws URISyntaxException {
+        URL resource = IconEngineTest.class.getClassLoader().getResource("TestTextFile.txt");
+        File testFile = new File(resource.toURI());
+        IconEngine.setIconExtractor(IconEngine.findIconExtractor("synthetic"));
+        assertThrows(IllegalStateException.class, () -> IconEngine.getIconHandle(testFile));
+
+        OffHeapIconStore<IconCacheKey> store = new OffHeapIconStore<>(OffHeapIconStore.DEFAULT_SLAB_SIZE);
+        IconEngine.setOffHeapStore(store);
+        OffHeapIconStore.Handle handle = IconEngine.getIconHandle(testFile);
+        assertSame(handle, IconEngine.getIconHandle(testFile));
+        assertNull(IconEngine.getBufferedImageCache().peek(IconCacheKey.forFile(testFile)));
+        assertEquals(IconEngine.getIconBufferedImage(testFile).getRGB(128, 128),
+                handle.toBufferedImage().getRGB(128, 128));
+        assertNull(IconEngine.getIconHandle(new File("C:/Path/To/NoWhere/fakefile.jpg")));
+
+        IconEngine.invalidate(IconCacheKey.forFile(testFile));
+        assertFalse(handle.isValid());
+        assertEquals(0, store.size());
+    }
+
+}
@@ -0,0 +1,70 @@
+package zenengine.base;
+
+import org.junit.jupiter.api.Test;
+import zenengine.nativeaccess.SyntheticIconExtractor;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class IconInternerTest {
+
+    @Test
+    void internSharesImagesWithIdenticalPixels() {
+        IconInterner interner = new IconInterner();
+        BufferedImage first = SyntheticIconExtractor.generateIcon(1, 32);
+        BufferedImage copy = SyntheticIconExtractor.generateIcon(1, 32);
+        BufferedImage other = SyntheticIconExtractor.generateIcon(2, 32);
+
+        assertSame(first, interner.intern(first));
+        assertSame(first, interner.intern(copy));
+        assertSame(other, interner.intern(other));
+
+        assertEquals(2, interner.size());
+        assertEquals(3, interner.getInternCount());
+        assertEquals(1, interner.getDuplicateCount());
+        assertEquals(4L * 32 * 32, interner.getBytesSaved());
+        assertEquals(1.5, interner.getDeduplicationRatio(), 1e-9);
+    }
+
+    @Test
+    void internDistinguishesSizeAndType() {
+        IconInterner interner = new IconInterner();
+        BufferedImage straight = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage premultiplied = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB_PRE);
+        BufferedImage larger = new BufferedImage(16, 17, BufferedImage.TYPE_INT_ARGB);
+
+        assertSame(straight, interner.intern(straight));
+        assertSame(premultiplied, interner.intern(premultiplied));
+        assertSame(larger, interner.intern(larger));
+        assertNotEquals(IconInterner.hash(straight), IconInterner.hash(larger));
+        assertEquals(0, interner.getDuplicateCount());
+    }
+
+    @Test
+    void concurrentInsertsReceiveOneInstance() throws Exception {
+        IconInterner interner = new IconInterner();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<BufferedImage>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executor.submit(() -> interner.intern(SyntheticIconExtractor.generateIcon(7, 64))));
+            }
+            BufferedImage interned = futures.get(0).get();
+            for (Future<BufferedImage> future : futures) {
+                assertSame(interned, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, interner.size());
+        assertEquals(63, interner.getDuplicateCount());
+    }
+
+}
@@ -0,0 +1,65 @@
+package zenengine.base;
+
+import org.junit.jupiter.api.Test;
+import zenengine.nativeaccess.SyntheticIconExtractor;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class IconPyramidTest {
+
+    private final IconCache<IconPyramid.Level, BufferedImage> cache =
+            new IconCache<>(Long.MAX_VALUE, image -> 4L * image.getWidth() * image.getHeight());
+    private final IconCacheKey key = IconCacheKey.forExtension("txt");
+
+    @Test
+    void levelsAreReducedThroughTheLargerLevels() {
+        BufferedImage source = SyntheticIconExtractor.generateIcon(1, 256);
+
+        BufferedImage level = IconPyramid.getLevel(cache, key, source, 16);
+        assertEquals(16, level.getWidth());
+        assertEquals(16, level.getHeight());
+        assertEquals(4, cache.size());
+        assertEquals(32, cache.get(new IconPyramid.Level(key, 32)).getWidth());
+        assertSame(level, IconPyramid.getLevel(cache, key, source, 16));
+        assertSame(source, IconPyramid.getLevel(cache, key, source, 256));
+
+        IconPyramid.getLevel(cache, key, source, 24);
+        assertEquals(6, cache.size());
+        assertNotNull(cache.get(new IconPyramid.Level(key, 48)));
+    }
+
+    @Test
+    void levelsPreserveAspectRatio() {
+        BufferedImage source = new BufferedImage(128, 64, BufferedImage.TYPE_INT_ARGB);
+
+        BufferedImage level = IconPyramid.getLevel(cache, key, source, 32);
+        assertEquals(32, level.getWidth());
+        assertEquals(16, level.getHeight());
+    }
+
+    @Test
+    void getLevelsReturnsLevelsUpToTheSourceSize() {
+        BufferedImage source = SyntheticIconExtractor.generateIcon(1, 48);
+
+        List<BufferedImage> levels = IconPyramid.getLevels(cache, key, source);
+        assertEquals(4, levels.size());
+        assertEquals(16, levels.get(0).getWidth());
+        assertEquals(32, levels.get(2).getWidth());
+        assertSame(source, levels.get(3));
+    }
+
+    @Test
+    void getParentSize() {
+        assertEquals(32, IconPyramid.getParentSize(16, 256));
+        assertEquals(48, IconPyramid.getParentSize(24, 256));
+        assertEquals(128, IconPyramid.getParentSize(48, 256));
+        assertEquals(128, IconPyramid.getParentSize(40, 256));
+        assertEquals(100, IconPyramid.getParentSize(64, 100));
+        assertEquals(256, IconPyramid.getParentSize(512, 256));
+    }
+
+}
@@ -0,0 +1,170 @@
+package zenengine.base;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import zenengine.nativeaccess.SyntheticIconExtractor;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class IconSchedulerTest {
+
+    private Path directory;
+    private IconScheduler scheduler;
+    private final List<String> extracted = new CopyOnWriteArrayList<>();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch gate = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("IconSchedulerTest");
+        IconEngine.clearCaches();
+        IconEngine.setIconExtractor(new IconExtractor() {
+            @Override
+            public String getName() {
+                return "gated";
+            }
+
+            @Override
+            public boolean isSupported() {
+                return false;
+            }
+
+            @Override
+            public BufferedImage getIcon(File file) {
+                started.countDown();
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                extracted.add(file.getName());
+                return SyntheticIconExtractor.generateIcon(file.getName().hashCode(), 16);
+            }
+        });
+        scheduler = new IconScheduler(1);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        gate.countDown();
+        scheduler.close();
+        IconEngine.setIconExtractor(null);
+        IconEngine.clearCaches();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    private Path createFile(String name) throws IOException {
+        return Files.createFile(directory.resolve(name));
+    }
+
+    /**
+     * Submits a request that holds the only worker until the gate opens, so that the requests submitted afterwards
+     * wait in the queue.
+     */
+    private IconRequest blockWorker() throws Exception {
+        IconRequest blocker = scheduler.submit(createFile("blocker.sched0"), IconPriority.BACKGROUND);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        return blocker;
+    }
+
+    @Test
+    void runsRequestsByPriority() throws Exception {
+        IconRequest blocker = blockWorker();
+        IconRequest background = scheduler.submit(createFile("background.sched1"), IconPriority.BACKGROUND);
+        IconRequest near = scheduler.submit(createFile("near.sched2"), IconPriority.NEAR_VISIBLE);
+        IconRequest visible = scheduler.submit(createFile("visible.sched3"), IconPriority.VISIBLE);
+        IconRequest latest = scheduler.submit(createFile("latest.sched4"), IconPriority.VISIBLE);
+        assertEquals(4, scheduler.getQueuedCount());
+
+        gate.countDown();
+        for (IconRequest request : Arrays.asList(blocker, background, near, visible, latest)) {
+            assertNotNull(request.getFuture().get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(Arrays.asList("blocker.sched0", "latest.sched4", "visible.sched3", "near.sched2",
+                "background.sched1"), extracted);
+        assertEquals(0, scheduler.getQueuedCount());
+        assertEquals(5, scheduler.getCompletedCount());
+    }
+
+    @Test
+    void cancelledRequestsNeverReachTheExtractor() throws Exception {
+        IconRequest blocker = blockWorker();
+        IconRequest cancelled = scheduler.submit(createFile("cancelled.sched1"), IconPriority.VISIBLE);
+        IconRequest futureCancelled = scheduler.submit(createFile("future.sched2"), IconPriority.VISIBLE);
+        IconRequest kept = scheduler.submit(createFile("kept.sched3"), IconPriority.BACKGROUND);
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertFalse(cancelled.setPriority(IconPriority.BACKGROUND));
+        assertTrue(futureCancelled.getFuture().cancel(false));
+        assertTrue(cancelled.isCancelled());
+        assertThrows(CancellationException.class, () -> cancelled.getFuture().join());
+        assertEquals(2, scheduler.getDroppedCount());
+        assertEquals(1, scheduler.getQueuedCount());
+
+        gate.countDown();
+        assertNotNull(kept.getFuture().get(10, TimeUnit.SECONDS));
+        assertNotNull(blocker.getFuture().get(10, TimeUnit.SECONDS));
+        assertFalse(blocker.cancel());
+        assertEquals(Arrays.asList("blocker.sched0", "kept.sched3"), extracted);
+    }
+
+    @Test
+    void reprioritisedRequestsMove() throws Exception {
+        blockWorker();
+        IconRequest first = scheduler.submit(createFile("first.sched1"), IconPriority.BACKGROUND);
+        IconRequest second = scheduler.submit(createFile("second.sched2"), IconPriority.NEAR_VISIBLE);
+        IconRequest third = scheduler.submit(createFile("third.sched3"), IconPriority.VISIBLE);
+        assertTrue(first.setPriority(IconPriority.VISIBLE));
+        assertTrue(third.setPriority(IconPriority.BACKGROUND));
+        assertEquals(IconPriority.VISIBLE, first.getPriority());
+        assertEquals(3, scheduler.getQueuedCount());
+
+        gate.countDown();
+        third.getFuture().get(10, TimeUnit.SECONDS);
+        assertTrue(first.isDone() && second.isDone());
+        assertEquals(Arrays.asList("blocker.sched0", "first.sched1", "second.sched2", "third.sched3"), extracted);
+        assertEquals(4, scheduler.getCompletedCount());
+    }
+
+    @Test
+    void closeCancelsWaitingRequests() throws Exception {
+        IconRequest blocker = blockWorker();
+        IconRequest waiting = scheduler.submit(createFile("waiting.sched1"), IconPriority.VISIBLE);
+        IconRequest missing = scheduler.submit(directory.resolve("missing.sched2"), IconPriority.VISIBLE);
+
+        scheduler.close();
+        assertTrue(waiting.isCancelled());
+        assertTrue(missing.isCancelled());
+        assertThrows(RejectedExecutionException.class, () -> scheduler.submit(directory, IconPriority.VISIBLE));
+
+        gate.countDown();
+        assertNotNull(blocker.getFuture().get(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("blocker.sched0"), extracted);
+    }
+
+    @Test
+    void missingFilesCompleteWithNull() throws Exception {
+        gate.countDown();
+        IconRequest missing = scheduler.submit(directory.resolve("missing.sched1"), IconPriority.VISIBLE);
+        assertNull(missing.getFuture().get(10, TimeUnit.SECONDS));
+        assertTrue(extracted.isEmpty());
+    }
+
+}
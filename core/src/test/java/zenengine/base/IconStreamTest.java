@@ -0,0 +1,165 @@
+package zenengine.base;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import zenengine.nativeaccess.SyntheticIconExtractor;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class IconStreamTest {
+
+    private Path directory;
+    private ExecutorService executor;
+    private final AtomicInteger extractions = new AtomicInteger();
+
+    /**
+     * A subscriber that records the results it receives and requests them only when asked to.
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<IconResult> {
+
+        private final List<IconResult> results = new CopyOnWriteArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile Flow.Subscription subscription;
+        private volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(IconResult item) {
+            results.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+
+        void awaitCompletion() throws InterruptedException {
+            assertTrue(completed.await(10, TimeUnit.SECONDS));
+            assertNull(error);
+        }
+
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("IconStreamTest");
+        executor = Executors.newFixedThreadPool(4);
+        IconEngine.setIconExtractor(new IconExtractor() {
+            @Override
+            public String getName() {
+                return "counting";
+            }
+
+            @Override
+            public boolean isSupported() {
+                return false;
+            }
+
+            @Override
+            public BufferedImage getIcon(File file) {
+                extractions.incrementAndGet();
+                return SyntheticIconExtractor.generateIcon(file.getName().hashCode(), 16);
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        IconEngine.setIconExtractor(null);
+        executor.shutdownNow();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    void streamsEveryEntryOfTheTree() throws Exception {
+        Set<Path> expected = new HashSet<>();
+        expected.add(directory);
+        Path nested = Files.createDirectories(directory.resolve("a").resolve("b"));
+        expected.add(nested.getParent());
+        expected.add(nested);
+        expected.add(Files.createFile(directory.resolve("notes.txt")));
+        expected.add(Files.createFile(directory.resolve("a").resolve("report.pdf")));
+        expected.add(Files.createFile(nested.resolve("photo.png")));
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        IconEngine.streamIcons(directory, new IconStreamOptions().setEncodePng(true).setExecutor(executor))
+                .subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.awaitCompletion();
+
+        Set<Path> streamed = new HashSet<>();
+        for (IconResult result : subscriber.results) {
+            streamed.add(result.getPath());
+            assertNull(result.getError());
+            assertNotNull(result.getImage());
+            assertNotNull(result.getBytes());
+        }
+        assertEquals(expected, streamed);
+        assertEquals(expected.size(), subscriber.results.size());
+    }
+
+    @Test
+    void walkWaitsForDemand() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            Files.createFile(directory.resolve("file" + i + ".ext" + i));
+        }
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        IconEngine.streamIcons(directory, new IconStreamOptions().setIncludeDirectories(false).setMaxInFlight(4)
+                .setExecutor(executor)).subscribe(subscriber);
+        subscriber.subscription.request(2);
+        Thread.sleep(300);
+
+        assertEquals(2, subscriber.results.size());
+        assertTrue(extractions.get() <= 6, "Extracted " + extractions.get() + " icons ahead of demand");
+
+        subscriber.subscription.request(100);
+        subscriber.awaitCompletion();
+        assertEquals(40, subscriber.results.size());
+        assertEquals(40, extractions.get());
+    }
+
+    @Test
+    void missingRootIsPublishedAsError() throws Exception {
+        Path missing = directory.resolve("missing");
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        IconEngine.streamIcons(missing, new IconStreamOptions().setExecutor(executor)).subscribe(subscriber);
+        subscriber.subscription.request(1);
+        subscriber.awaitCompletion();
+
+        assertEquals(1, subscriber.results.size());
+        assertEquals(missing, subscriber.results.get(0).getPath());
+        assertTrue(subscriber.results.get(0).getError() instanceof IOException);
+    }
+
+}
@@ -0,0 +1,46 @@
+package zenengine.base;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ImageScalerTest {
+
+    private static BufferedImage solid(int size, int argb) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, argb);
+            }
+        }
+        return image;
+    }
+
+    @Test
+    void scalesDownThroughHalvingChain() {
+        BufferedImage scaled = ImageScaler.scale(solid(256, 0xFF336699), 24, 24, true);
+
+        assertEquals(24, scaled.getWidth());
+        assertEquals(24, scaled.getHeight());
+        assertEquals(0xFF336699, scaled.getRGB(12, 12));
+    }
+
+    @Test
+    void returnsSameImageAtOriginalSize() {
+        BufferedImage image = solid(16, 0xFF000000);
+
+        assertSame(image, ImageScaler.scale(image, 16, 16, true));
+    }
+
+    @Test
+    void fitsSizeLikeJavaFx() {
+        assertArrayEquals(new int[] {256, 128}, ImageScaler.fitSize(256, 128, 0, 0, true));
+        assertArrayEquals(new int[] {48, 24}, ImageScaler.fitSize(256, 128, 48, 48, true));
+        assertArrayEquals(new int[] {48, 48}, ImageScaler.fitSize(256, 128, 48, 48, false));
+        assertArrayEquals(new int[] {20, 10}, ImageScaler.fitSize(256, 128, 0, 10, true));
+    }
+
+}
@@ -0,0 +1,125 @@
+package zenengine.base;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+
+public class NativeLibraryLoaderTest {
+
+    private Path directory;
+    private NativeLibraryLoader loader;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("NativeLibraryLoaderTest");
+        loader = new NativeLibraryLoader(NativeLibraryLoaderTest.class, directory);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream in = NativeLibraryLoaderTest.class.getResourceAsStream("/nativetest/" + name)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private List<Path> extractedFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            List<Path> regular = new ArrayList<>();
+            files.filter(Files::isRegularFile).filter(file -> ! file.getFileName().toString().equals(".lock"))
+                    .forEach(regular::add);
+            return regular;
+        }
+    }
+
+    @Test
+    void platformNamesAreNormalised() {
+        assertEquals("win32-x86-64", NativeLibraryLoader.getPlatform("Windows 10", "amd64"));
+        assertEquals("linux-x86-64", NativeLibraryLoader.getPlatform("Linux", "x86_64"));
+        assertEquals("darwin-aarch64", NativeLibraryLoader.getPlatform("Mac OS X", "aarch64"));
+        assertEquals("linux-x86", NativeLibraryLoader.getPlatform("Linux", "i386"));
+        assertTrue(NativeLibraryLoader.getResourcePath("WindowsIconExtractor")
+                .startsWith("native/" + NativeLibraryLoader.getPlatform() + "/"));
+    }
+
+    @Test
+    void extractsIntoVersionedChecksumDirectory() throws IOException {
+        byte[] bytes = resource("dummy.bin");
+        Path extracted = loader.extract("nativetest/dummy.bin", "dummy.dll");
+
+        assertArrayEquals(bytes, Files.readAllBytes(extracted));
+        String checksum = NativeLibraryLoader.sha256(bytes);
+        assertEquals(checksum.substring(0, 16), extracted.getParent().getFileName().toString());
+        assertEquals(directory, extracted.getParent().getParent().getParent());
+        assertEquals(extracted, loader.extract("nativetest/dummy.bin", "dummy.dll"));
+        assertEquals(List.of(extracted), extractedFiles());
+    }
+
+    @Test
+    void corruptCopiesAreReplaced() throws IOException {
+        Path extracted = loader.extract("nativetest/dummy.bin", "dummy.dll");
+        Files.write(extracted, new byte[] {1, 2, 3});
+
+        assertEquals(extracted, loader.extract("nativetest/dummy.bin", "dummy.dll"));
+        assertArrayEquals(resource("dummy.bin"), Files.readAllBytes(extracted));
+    }
+
+    @Test
+    void publishedChecksumsAreVerified() throws IOException {
+        assertArrayEquals(resource("verified.bin"),
+                Files.readAllBytes(loader.extract("nativetest/verified.bin", "verified.dll")));
+        assertThrows(IOException.class, () -> loader.extract("nativetest/corrupt.bin", "corrupt.dll"));
+        assertThrows(FileNotFoundException.class, () -> loader.extract("nativetest/missing.bin", "missing.dll"));
+        assertEquals(1, extractedFiles().size());
+    }
+
+    @Test
+    void concurrentExtractionsShareOneCopy() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Path>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> loader.extract("nativetest/dummy.bin", "dummy.dll")));
+            }
+            Path extracted = futures.get(0).get();
+            for (Future<Path> future : futures) {
+                assertEquals(extracted, future.get());
+            }
+            assertEquals(List.of(extracted), extractedFiles());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void librariesAreExtractedInTheBackground() throws Exception {
+        assumeTrue(NativeLibraryLoader.getPlatform().equals("linux-x86-64"));
+
+        Path extracted = loader.extractAsync("zenenginedummy").get();
+        assertEquals("libzenenginedummy.so", extracted.getFileName().toString());
+        assertTrue(Files.isRegularFile(extracted));
+        assertSame(loader.extractAsync("zenenginedummy"), loader.extractAsync("zenenginedummy"));
+        assertThrows(Exception.class, () -> loader.extractAsync("missing").get());
+    }
+
+}
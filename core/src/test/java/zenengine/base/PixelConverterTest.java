@@ -0,0 +1,107 @@
+package zenengine.base;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class PixelConverterTest {
+
+    /**
+     * Builds a bottom-up BGRA bitmap in which every pixel encodes its top-down coordinates.
+     */
+    private static byte[] bitmap(int width, int height) {
+        byte[] bytes = new byte[width * height * 4];
+        int i = 0;
+        for (int y = height - 1; y >= 0; y--) {
+            for (int x = 0; x < width; x++) {
+                bytes[i++] = (byte) x;          // blue
+                bytes[i++] = (byte) y;          // green
+                bytes[i++] = (byte) (x + y);    // red
+                bytes[i++] = (byte) 0x80;       // alpha
+            }
+        }
+        return bytes;
+    }
+
+    private static int expected(int x, int y) {
+        return 0x80 << 24 | ((x + y) & 0xFF) << 16 | (y & 0xFF) << 8 | (x & 0xFF);
+    }
+
+    @Test
+    void flipsAndConvertsHeapBitmap() {
+        BufferedImage image = PixelConverter.bottomUpBgraToImage(bitmap(5, 3), 0, 5, 3, BufferedImage.TYPE_INT_ARGB);
+
+        assertEquals(BufferedImage.TYPE_INT_ARGB, image.getType());
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 5; x++) {
+                assertEquals(expected(x, y), image.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    void convertsNativeBitmapAtOffset() {
+        byte[] bytes = bitmap(4, 4);
+        try (PixelConverter.Scratch scratch = PixelConverter.borrowScratch()) {
+            ByteBuffer buffer = scratch.nativeBuffer(bytes.length + 8);
+            buffer.position(8);
+            buffer.put(bytes);
+            buffer.position(8);
+
+            BufferedImage image = PixelConverter.bottomUpBgraToImage(buffer, 4, 4, BufferedImage.TYPE_INT_ARGB);
+
+            assertEquals(8, buffer.position());
+            assertEquals(expected(0, 0), image.getRGB(0, 0));
+            assertEquals(expected(3, 2), image.getRGB(3, 2));
+        }
+    }
+
+    @Test
+    void keepsPremultipliedPixelsUnchanged() {
+        BufferedImage image = PixelConverter.bottomUpBgraToImage(bitmap(2, 2), 0, 2, 2,
+                BufferedImage.TYPE_INT_ARGB_PRE);
+
+        assertEquals(BufferedImage.TYPE_INT_ARGB_PRE, image.getType());
+        assertEquals(expected(1, 1), ((int[]) image.getRaster().getDataElements(1, 1, null))[0]);
+    }
+
+    @Test
+    void rejectsOtherImageTypes() {
+        assertThrows(IllegalArgumentException.class,
+                () -> PixelConverter.bottomUpBgraToImage(bitmap(2, 2), 0, 2, 2, BufferedImage.TYPE_INT_RGB));
+    }
+
+    @Test
+    void reusesPooledScratchBuffers() throws InterruptedException {
+        ByteBuffer first;
+        byte[] heap;
+        try (PixelConverter.Scratch scratch = PixelConverter.borrowScratch()) {
+            first = scratch.nativeBuffer(16);
+            ByteBuffer second = scratch.nativeBuffer(1024);
+            heap = scratch.heapBuffer(16);
+
+            assertSame(first, second);
+            assertTrue(first.isDirect());
+            assertEquals(1024, second.limit());
+            assertSame(heap, scratch.heapBuffer(PixelConverter.MAX_ICON_SIZE * PixelConverter.MAX_ICON_SIZE * 4));
+            assertTrue(scratch.nativeBuffer(1 << 20).capacity() >= 1 << 20);
+            first = scratch.nativeBuffer(16);
+        }
+
+        // Scratch returned on one thread is reused by the next thread instead of allocating again
+        ByteBuffer[] reused = new ByteBuffer[1];
+        Thread thread = new Thread(() -> {
+            try (PixelConverter.Scratch scratch = PixelConverter.borrowScratch()) {
+                reused[0] = scratch.nativeBuffer(16);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertSame(first, reused[0]);
+    }
+
+}
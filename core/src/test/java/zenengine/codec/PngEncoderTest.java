@@ -0,0 +1,117 @@
+package zenengine.codec;
+
+import org.junit.jupiter.api.Test;
+import zenengine.nativeaccess.SyntheticIconExtractor;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class PngEncoderTest {
+
+    private static BufferedImage decode(byte[] bytes) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(bytes));
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "Pixel " + x + "," + y);
+            }
+        }
+    }
+
+    /**
+     * Builds an image of random pixels, which deflate cannot compress and so spans several IDAT chunks.
+     */
+    private static BufferedImage noise(int width, int height) {
+        Random random = new Random(width * 31 + height);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    @Test
+    void everyFilterRoundTripsThroughImageIo() throws IOException {
+        BufferedImage icon = SyntheticIconExtractor.generateIcon(7, 48);
+        for (PngEncoder.Filter filter : PngEncoder.Filter.values()) {
+            for (int level : new int[] {0, 1, 9}) {
+                byte[] bytes = new PngEncoder(level, filter).encode(icon);
+                assertSamePixels(icon, decode(bytes));
+            }
+        }
+    }
+
+    @Test
+    void largeAndOddSizedImagesRoundTrip() throws IOException {
+        BufferedImage wide = noise(257, 3);
+        assertSamePixels(wide, decode(new PngEncoder().encode(wide)));
+
+        BufferedImage large = noise(256, 256);
+        byte[] bytes = new PngEncoder(0, PngEncoder.Filter.NONE).encode(large);
+        assertTrue(bytes.length > 256 * 1024);
+        assertTrue(bytes.length <= PngEncoder.getMaxEncodedSize(256, 256));
+        assertSamePixels(large, decode(bytes));
+
+        BufferedImage premultiplied = new BufferedImage(5, 5, BufferedImage.TYPE_INT_ARGB_PRE);
+        premultiplied.setRGB(2, 2, 0x80ff0000);
+        assertSamePixels(premultiplied, decode(new PngEncoder().encode(premultiplied)));
+    }
+
+    @Test
+    void streamAndBufferReceiveTheSameEncoding() throws IOException {
+        BufferedImage icon = SyntheticIconExtractor.generateIcon(3, 128);
+        PngEncoder encoder = new PngEncoder(6, PngEncoder.Filter.PAETH);
+        byte[] expected = encoder.encode(icon);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(icon, out);
+        assertArrayEquals(expected, out.toByteArray());
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(PngEncoder.getMaxEncodedSize(128, 128) + 3);
+        buffer.position(3);
+        assertEquals(expected.length, encoder.encode(icon, buffer));
+        assertEquals(3 + expected.length, buffer.position());
+        byte[] written = new byte[expected.length];
+        buffer.flip().position(3);
+        buffer.get(written);
+        assertArrayEquals(expected, written);
+    }
+
+    @Test
+    void concurrentEncodingsOnShortLivedThreadsMatch() throws InterruptedException {
+        BufferedImage small = SyntheticIconExtractor.generateIcon(5, 32);
+        BufferedImage large = noise(300, 40);
+        PngEncoder encoder = new PngEncoder(1, PngEncoder.Filter.ADAPTIVE);
+        byte[] expectedSmall = encoder.encode(small);
+        byte[] expectedLarge = encoder.encode(large);
+
+        Thread[] threads = new Thread[64];
+        byte[][] encodings = new byte[threads.length][];
+        for (int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> encodings[index] = encoder.encode(index % 2 == 0 ? small : large));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            assertArrayEquals(i % 2 == 0 ? expectedSmall : expectedLarge, encodings[i]);
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package zenengine.codec;
+
+import org.junit.jupiter.api.Test;
+import zenengine.nativeaccess.SyntheticIconExtractor;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class QoiCodecTest {
+
+    private static void assertRoundTrips(BufferedImage image) throws IOException {
+        BufferedImage decoded = QoiCodec.decode(QoiCodec.encode(image));
+        assertEquals(BufferedImage.TYPE_INT_ARGB, decoded.getType());
+        assertArrayEquals(image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth()),
+                decoded.getRGB(0, 0, decoded.getWidth(), decoded.getHeight(), null, 0, decoded.getWidth()));
+    }
+
+    @Test
+    void iconsRoundTrip() throws IOException {
+        for (int size : new int[] {1, 16, 48, 256}) {
+            assertRoundTrips(SyntheticIconExtractor.generateIcon(size, size));
+        }
+    }
+
+    @Test
+    void concurrentEncodingsOnShortLivedThreadsMatch() throws InterruptedException {
+        // The large icon does not fit the pooled scratch buffers
+        BufferedImage small = SyntheticIconExtractor.generateIcon(3, 64);
+        BufferedImage large = SyntheticIconExtractor.generateIcon(4, 300);
+        byte[] expectedSmall = QoiCodec.encode(small);
+        byte[] expectedLarge = QoiCodec.encode(large);
+
+        Thread[] threads = new Thread[32];
+        byte[][] encodings = new byte[threads.length][];
+        for (int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> encodings[index] = QoiCodec.encode(index % 2 == 0 ? small : large));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            assertArrayEquals(i % 2 == 0 ? expectedSmall : expectedLarge, encodings[i]);
+        }
+    }
+
+    @Test
+    void everyOperationRoundTrips() throws IOException {
+        // Runs longer than the maximum run, small and large colour steps, alpha changes and repeated colours
+        BufferedImage image = new BufferedImage(100, 7, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(42);
+        for (int y = 0; y < 7; y++) {
+            for (int x = 0; x < 100; x++) {
+                int pixel;
+                switch (y) {
+                    case 0:
+                        pixel = 0xff000000;
+                        break;
+                    case 1:
+                        pixel = 0xff102030 + x % 2 * 0x010101;
+                        break;
+                    case 2:
+                        pixel = 0xff102030 + x * 0x0a0c0e;
+                        break;
+                    case 3:
+                        pixel = x << 24 | 0x808080;
+                        break;
+                    case 4:
+                        pixel = x % 3 == 0 ? 0x80ff0000 : 0x4000ff00;
+                        break;
+                    default:
+                        pixel = random.nextInt();
+                }
+                image.setRGB(x, y, pixel);
+            }
+        }
+        assertRoundTrips(image);
+    }
+
+    @Test
+    void encodingMatchesTheSpecification() {
+        BufferedImage image = new BufferedImage(3, 1, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, 0xff000000);
+        image.setRGB(1, 0, 0xff010203);
+        image.setRGB(2, 0, 0x80010203);
+        byte[] bytes = QoiCodec.encode(image);
+
+        byte[] header = {'q', 'o', 'i', 'f', 0, 0, 0, 3, 0, 0, 0, 1, 4, 0};
+        assertArrayEquals(header, Arrays.copyOf(bytes, 14));
+        byte[] body = {(byte) 0xc0, (byte) 0x80 | 34, (byte) 0x79, (byte) 0xff, 1, 2, 3, (byte) 0x80,
+                0, 0, 0, 0, 0, 0, 0, 1};
+        assertArrayEquals(body, Arrays.copyOfRange(bytes, 14, bytes.length));
+    }
+
+    @Test
+    void corruptEncodingsAreRejected() {
+        byte[] bytes = QoiCodec.encode(SyntheticIconExtractor.generateIcon(1, 32));
+        assertThrows(IOException.class, () -> QoiCodec.decode(Arrays.copyOf(bytes, bytes.length / 2)));
+        assertThrows(IOException.class, () -> QoiCodec.decode(new byte[32]));
+    }
+
+}
@@ -0,0 +1,55 @@
+package zenengine.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class RawArgbCodecTest {
+
+    @Test
+    void pixelsArePremultipliedBgraAfterTheHeader() throws IOException {
+        BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, 0xff112233);
+        image.setRGB(1, 0, 0x80ff8040);
+        byte[] bytes = RawArgbCodec.encode(image);
+
+        assertEquals(RawArgbCodec.HEADER_SIZE + 8, bytes.length);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals('A', buffer.get(0));
+        assertEquals('B', buffer.get(3));
+        assertEquals(2, buffer.getInt(4));
+        assertEquals(1, buffer.getInt(8));
+        assertEquals(8, buffer.getInt(12));
+        assertArrayEquals(new byte[] {0x33, 0x22, 0x11, (byte) 0xff, 0x20, 0x40, (byte) 0x80, (byte) 0x80},
+                Arrays.copyOfRange(bytes, 16, 24));
+
+        BufferedImage decoded = RawArgbCodec.decode(bytes);
+        assertEquals(BufferedImage.TYPE_INT_ARGB_PRE, decoded.getType());
+        assertEquals(0xff112233, decoded.getRGB(0, 0));
+        int[] premultiplied = (int[]) decoded.getRaster().getDataElements(1, 0, null);
+        assertEquals(0x80804020, premultiplied[0]);
+    }
+
+    @Test
+    void premultipliedImagesAreNotConvertedTwice() throws IOException {
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE);
+        image.getRaster().setDataElements(0, 0, new int[] {0x40102030});
+        BufferedImage decoded = RawArgbCodec.decode(RawArgbCodec.encode(image));
+        assertArrayEquals(new int[] {0x40102030}, (int[]) decoded.getRaster().getDataElements(0, 0, null));
+    }
+
+    @Test
+    void truncatedEncodingsAreRejected() {
+        byte[] bytes = RawArgbCodec.encode(new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB));
+        assertThrows(IOException.class, () -> RawArgbCodec.decode(Arrays.copyOf(bytes, 40)));
+        assertThrows(IOException.class, () -> RawArgbCodec.decode(new byte[8]));
+    }
+
+}
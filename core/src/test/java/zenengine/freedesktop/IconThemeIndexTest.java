@@ -0,0 +1,54 @@
+package zenengine.freedesktop;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class IconThemeIndexTest {
+
+    private static IconThemeIndex index;
+
+    @BeforeAll
+    static void buildIndex() throws URISyntaxException {
+        Path root = Paths.get(IconThemeIndexTest.class.getClassLoader().getResource("freedesktop").toURI());
+        index = IconThemeIndex.build("TestTheme", List.of(root.resolve("icons")), List.of(root.resolve("pixmaps")));
+    }
+
+    @Test
+    void resolvesInheritanceChain() {
+        assertEquals(List.of("TestTheme", "hicolor"), index.getThemeChain());
+    }
+
+    @Test
+    void selectsDirectoryMatchingSize() {
+        assertEquals("256x256", directoryOf(index.lookup(List.of("text-plain"), 256, 1)));
+        assertEquals("32x32", directoryOf(index.lookup(List.of("text-plain"), 32, 1)));
+        assertEquals("32x32", directoryOf(index.lookup(List.of("text-plain"), 48, 1)));
+    }
+
+    @Test
+    void prefersThemeOverNameOrder() {
+        Path icon = index.lookup(List.of("text-x-generic", "text-plain"), 256, 1);
+
+        assertTrue(icon.toString().contains("TestTheme"));
+    }
+
+    @Test
+    void fallsBackToParentThemeAndPixmaps() {
+        assertTrue(index.lookup(List.of("application-pdf"), 256, 1).toString().contains("hicolor"));
+        assertTrue(index.lookup(List.of("unknown"), 256, 1).toString().contains("pixmaps"));
+        assertNull(index.lookup(List.of("missing-icon"), 256, 1));
+    }
+
+    private static String directoryOf(Path icon) {
+        return icon.getParent().getParent().getFileName().toString();
+    }
+
+}
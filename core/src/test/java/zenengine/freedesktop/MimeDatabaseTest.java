@@ -0,0 +1,125 @@
+package zenengine.freedesktop;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class MimeDatabaseTest {
+
+    private static MimeDatabase database;
+
+    @BeforeAll
+    static void loadDatabase() throws URISyntaxException {
+        Path mime = Paths.get(MimeDatabaseTest.class.getClassLoader().getResource("freedesktop/mime").toURI());
+        database = MimeDatabase.load(List.of(mime));
+    }
+
+    @Test
+    void matchesGlobs() {
+        assertEquals("text/plain", database.getMimeTypeForName("notes.TXT"));
+        assertEquals("application/x-compressed-tar", database.getMimeTypeForName("archive.tar.gz"));
+        assertEquals("application/gzip", database.getMimeTypeForName("archive.gz"));
+        assertEquals("text/x-readme", database.getMimeTypeForName("README.md"));
+        assertNull(database.getMimeTypeForName("unknown.xyz"));
+    }
+
+    @Test
+    void honoursCaseSensitiveGlobs() {
+        assertEquals("text/x-makefile", database.getMimeTypeForName("Makefile"));
+        assertNull(database.getMimeTypeForName("makefile"));
+        assertEquals("text/x-csrc", database.getMimeTypeForName("main.c"));
+        assertEquals("text/x-c++src", database.getMimeTypeForName("main.C"));
+    }
+
+    @Test
+    void sniffsMagicWhenNoGlobMatches() throws IOException {
+        Path directory = Files.createTempDirectory("MimeDatabaseTest");
+        try {
+            Path pdf = Files.write(directory.resolve("document"), "%PDF-1.4".getBytes());
+            Path png = Files.write(directory.resolve("image"), new byte[] {(byte) 0x89, 'P', 'N', 'G', 0, 0, 0, 0,
+                    0, 0, 0, 13, 'I', 'H', 'D', 'R'});
+            Path truncatedPng = Files.write(directory.resolve("broken"), new byte[] {(byte) 0x89, 'P', 'N', 'G', 0});
+            Path text = Files.write(directory.resolve("text"), "plain words\n".getBytes());
+
+            assertEquals("application/pdf", database.getMimeType(pdf, false));
+            assertEquals("image/png", database.getMimeType(png, false));
+            assertEquals(MimeDatabase.OCTET_STREAM, database.getMimeType(truncatedPng, false));
+            assertEquals(MimeDatabase.PLAIN_TEXT, database.getMimeType(text, false));
+            assertEquals(MimeDatabase.DIRECTORY, database.getMimeType(directory, true));
+        } finally {
+            for (String name : List.of("document", "image", "broken", "text")) {
+                Files.deleteIfExists(directory.resolve(name));
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void typesEmptyFilesAsZeroSize() throws IOException {
+        Path empty = Files.createTempFile("MimeDatabaseTest", null);
+        try {
+            assertEquals(MimeDatabase.ZERO_SIZE, database.getMimeTypeForContent(empty));
+        } finally {
+            Files.delete(empty);
+        }
+    }
+
+    @Test
+    void noGlobsDiscardsGlobsOfLessPreferredDirectories() throws IOException {
+        Path preferred = Files.createTempDirectory("MimeDatabaseTest");
+        Path system = Files.createTempDirectory("MimeDatabaseTest");
+        try {
+            Files.write(preferred.resolve("globs2"), List.of("0:text/plain:__NOGLOBS__", "50:text/plain:*.text"));
+            Files.write(system.resolve("globs2"), List.of("50:text/plain:*.txt", "50:text/x-readme:README*"));
+            MimeDatabase layered = MimeDatabase.load(List.of(preferred, system));
+
+            assertNull(layered.getMimeTypeForName("notes.txt"));
+            assertEquals("text/plain", layered.getMimeTypeForName("notes.text"));
+            assertEquals("text/x-readme", layered.getMimeTypeForName("README"));
+            assertNull(layered.getMimeTypeForName("__NOGLOBS__"));
+        } finally {
+            Files.delete(preferred.resolve("globs2"));
+            Files.delete(system.resolve("globs2"));
+            Files.delete(preferred);
+            Files.delete(system);
+        }
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    void typesSpecialFilesWithoutReadingThem() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("MimeDatabaseTest");
+        Path fifo = directory.resolve("pipe");
+        try {
+            assertEquals(0, new ProcessBuilder("mkfifo", fifo.toString()).start().waitFor());
+
+            assertEquals(MimeDatabase.FIFO, database.getMimeType(fifo, false));
+            assertEquals(MimeDatabase.CHARACTER_DEVICE, database.getMimeType(Paths.get("/dev/null"), false));
+        } finally {
+            Files.deleteIfExists(fifo);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void resolvesIconNames() {
+        assertEquals(List.of("text-plain", "text-x-readme", "text-x-generic", "unknown"),
+                database.getIconNames("text/x-readme"));
+        assertEquals(List.of("text-x-csrc", "text-plain", "text-x-generic", "unknown"),
+                database.getIconNames("text/x-csrc"));
+        assertEquals(List.of("application-pdf", "x-office-document", "unknown"),
+                database.getIconNames("application/pdf"));
+    }
+
+}
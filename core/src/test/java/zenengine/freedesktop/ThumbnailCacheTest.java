@@ -0,0 +1,137 @@
+package zenengine.freedesktop;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import zenengine.base.IconEngine;
+import zenengine.codec.IconFormat;
+import zenengine.nativeaccess.SyntheticIconExtractor;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ThumbnailCacheTest {
+
+    private Path directory;
+    private Path photo;
+    private ThumbnailCache cache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("ThumbnailCacheTest");
+        photo = directory.resolve("holiday photo.png");
+        BufferedImage image = new BufferedImage(300, 200, BufferedImage.TYPE_INT_ARGB);
+        image.getGraphics().drawImage(SyntheticIconExtractor.generateIcon(1, 300), 0, -50, null);
+        ImageIO.write(image, "png", photo.toFile());
+        cache = new ThumbnailCache(directory.resolve("thumbnails"));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        IconEngine.setThumbnailCache(null);
+        IconEngine.setIconExtractor(null);
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    void thumbnailsAreNamedAfterTheEscapedUri() {
+        assertEquals("c6ee772d9e49320e97ec29a7eb5b1697.png",
+                ThumbnailCache.getThumbnailName("file:///home/jens/photos/me.png"));
+        assertEquals("file:///home/jens/a%20b/100%25%231(2)~%5Bx%5D%3B=.png",
+                ThumbnailCache.getUri(Paths.get("/home/jens/a b/100%#1(2)~[x];=.png")));
+        assertEquals(ThumbnailCache.Size.LARGE, ThumbnailCache.Size.forPixels(256));
+        assertEquals(ThumbnailCache.Size.NORMAL, ThumbnailCache.Size.forPixels(48));
+        assertEquals(ThumbnailCache.Size.XX_LARGE, ThumbnailCache.Size.forPixels(4096));
+    }
+
+    @Test
+    void generatedThumbnailsAreValidUntilTheFileChanges() throws IOException {
+        assertNull(cache.getThumbnailBytes(photo, 256));
+        Path thumbnail = cache.generate(photo, ThumbnailCache.Size.NORMAL);
+        assertEquals(cache.getThumbnailPath(photo, ThumbnailCache.Size.NORMAL), thumbnail);
+
+        byte[] bytes = cache.getThumbnailBytes(photo, 256);
+        assertArrayEquals(Files.readAllBytes(thumbnail), bytes);
+        Map<String, String> text = ThumbnailCache.readTextChunks(bytes);
+        assertEquals(ThumbnailCache.getUri(photo), text.get("Thumb::URI"));
+        assertEquals(Long.toString(Files.size(photo)), text.get("Thumb::Size"));
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bytes));
+        assertEquals(128, decoded.getWidth());
+        assertEquals(85, decoded.getHeight());
+
+        Files.setLastModifiedTime(photo, FileTime.fromMillis(Files.getLastModifiedTime(photo).toMillis() + 5000));
+        assertNull(cache.getThumbnailBytes(photo, 256));
+        assertNull(cache.getThumbnailBytes(photo, ThumbnailCache.Size.NORMAL));
+    }
+
+    @Test
+    void thumbnailsOfOtherFilesAreRejected() throws IOException {
+        Path other = directory.resolve("other.png");
+        Files.copy(photo, other);
+        Files.setLastModifiedTime(other, Files.getLastModifiedTime(photo));
+        Path thumbnail = cache.generate(other, ThumbnailCache.Size.LARGE);
+        Files.copy(thumbnail, cache.getThumbnailPath(photo, ThumbnailCache.Size.LARGE));
+
+        assertNotNull(cache.getThumbnailBytes(other, ThumbnailCache.Size.LARGE));
+        assertNull(cache.getThumbnailBytes(photo, ThumbnailCache.Size.LARGE));
+        assertNull(cache.getThumbnailBytes(directory, 256));
+        assertNull(ThumbnailCache.readTextChunks(new byte[64]));
+    }
+
+    @Test
+    void missingThumbnailsAreGeneratedInTheBackground() {
+        cache.setGenerator(Runnable::run);
+        assertNull(cache.getThumbnailBytes(photo, 200));
+        assertTrue(Files.isRegularFile(cache.getThumbnailPath(photo, ThumbnailCache.Size.LARGE)));
+        assertNotNull(cache.getThumbnailBytes(photo, 200));
+
+        Path text = directory.resolve("notes.txt");
+        assertNull(cache.getThumbnailBytes(text, 200));
+        assertFalse(Files.exists(cache.getThumbnailPath(text, ThumbnailCache.Size.LARGE)));
+    }
+
+    @Test
+    void engineServesThumbnailsBeforeExtracting() throws IOException {
+        IconEngine.setIconExtractor(IconEngine.findIconExtractor("synthetic"));
+        Path thumbnail = cache.generate(photo, ThumbnailCache.Size.LARGE);
+        byte[] icon = IconEngine.getIconByteArray(photo.toFile());
+
+        IconEngine.setThumbnailCache(cache);
+        assertArrayEquals(Files.readAllBytes(thumbnail), IconEngine.getIconByteArray(photo.toFile()));
+        assertEquals(256, IconEngine.getIconBufferedImage(photo.toFile()).getWidth());
+        assertEquals(171, IconEngine.getIconBufferedImage(photo.toFile()).getHeight());
+
+        Files.delete(thumbnail);
+        assertArrayEquals(icon, IconEngine.getIconByteArray(photo.toFile()));
+    }
+
+    @Test
+    void engineServesTheSameThumbnailInEveryFormat() throws IOException {
+        IconEngine.setIconExtractor(IconEngine.findIconExtractor("synthetic"));
+        cache.generate(photo, ThumbnailCache.Size.LARGE);
+        IconEngine.setThumbnailCache(cache);
+
+        byte[] png = IconEngine.getIconBytes(photo.toFile(), IconFormat.PNG);
+        assertSame(png, IconEngine.getIconByteArray(photo.toFile()));
+        BufferedImage image = IconEngine.getIconBufferedImage(photo.toFile());
+        assertSame(image, IconEngine.getIconBufferedImage(photo.toFile()));
+        byte[] qoi = IconEngine.getIconBytes(photo.toFile(), IconFormat.QOI);
+        assertSame(qoi, IconEngine.getIconBytes(photo.toFile(), IconFormat.QOI));
+        BufferedImage decoded = IconFormat.QOI.decode(qoi);
+        assertEquals(image.getWidth(), decoded.getWidth());
+        assertEquals(image.getHeight(), decoded.getHeight());
+        assertEquals(image.getRGB(128, 85), decoded.getRGB(128, 85));
+    }
+
+}
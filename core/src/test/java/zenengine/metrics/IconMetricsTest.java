@@ -0,0 +1,100 @@
+package zenengine.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.io.FileNotFoundException;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class IconMetricsTest {
+
+    @BeforeEach
+    void setUp() {
+        IconMetrics.reset();
+    }
+
+    @AfterEach
+    void tearDown() {
+        IconMetrics.setEnabled(false);
+        IconMetrics.reset();
+    }
+
+    @Test
+    void histogramBucketsLatenciesByPowerOfTwo() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(50));
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1000);
+        }
+        histogram.record(1_000_000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        assertEquals(99, histogram.getBuckets()[10]);
+        assertEquals(1, histogram.getBuckets()[20]);
+        assertEquals(1023, histogram.getPercentileNanos(50));
+        assertEquals(1023, histogram.getPercentileNanos(99));
+        assertEquals(1_000_000, histogram.getPercentileNanos(100));
+        assertEquals((99 * 1000 + 1_000_000) / 100.0, histogram.getMeanNanos());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+    }
+
+    @Test
+    void recordsOnlyWhileEnabled() {
+        IconMetrics.setEnabled(false);
+        long start = IconMetrics.start();
+        assertEquals(0, start);
+        IconMetrics.record(IconStage.ENCODE, start, 100);
+        IconMetrics.recordFailure(IconStage.EXTRACT, IconMetrics.NOT_FOUND);
+        assertEquals(0, IconMetrics.getHistogram(IconStage.ENCODE).getCount());
+        assertEquals(0, IconMetrics.getBytes(IconStage.ENCODE));
+        assertTrue(IconMetrics.getFailures().isEmpty());
+
+        IconMetrics.setEnabled(true);
+        IconMetrics.record(IconStage.ENCODE, IconMetrics.start(), 100);
+        IconMetrics.record(IconStage.ENCODE, IconMetrics.start(), 50);
+        assertEquals(2, IconMetrics.getHistogram(IconStage.ENCODE).getCount());
+        assertEquals(150, IconMetrics.getBytes(IconStage.ENCODE));
+        assertEquals(2, IconMetrics.getStageStatistics().get("ENCODE").getCount());
+        assertEquals(150, IconMetrics.getStageStatistics().get("ENCODE").getBytes());
+    }
+
+    @Test
+    void countsFailuresByStageAndReason() {
+        IconMetrics.setEnabled(true);
+        IconMetrics.recordFailure(IconStage.EXTRACT, IconMetrics.NOT_FOUND);
+        IconMetrics.recordFailure(IconStage.EXTRACT, IconMetrics.NOT_FOUND);
+        IconMetrics.recordFailure(IconStage.DECODE, new FileNotFoundException());
+
+        assertEquals(Long.valueOf(2), IconMetrics.getFailures().get("EXTRACT: not found"));
+        assertEquals(Long.valueOf(1), IconMetrics.getFailures().get("DECODE: java.io.FileNotFoundException"));
+    }
+
+    @Test
+    void publishesStatisticsThroughJmx() throws Exception {
+        IconMetrics.setEnabled(true);
+        IconMetrics.registerCache("test", () -> "hits=1");
+        IconMetrics.record(IconStage.SCALE, IconMetrics.start(), 64);
+
+        ObjectName name = new ObjectName(IconMetrics.OBJECT_NAME);
+        TabularData stages = (TabularData) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Stages");
+        CompositeData scale = (CompositeData) stages.get(new Object[] {"SCALE"}).get("value");
+        assertEquals(1L, scale.get("count"));
+        assertEquals(64L, scale.get("bytes"));
+
+        TabularData caches = (TabularData) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Caches");
+        assertEquals("hits=1", caches.get(new Object[] {"test"}).get("value"));
+        assertEquals(true, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Enabled"));
+    }
+
+}
@@ -0,0 +1,67 @@
+package zenengine.nativeaccess;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import zenengine.base.IconCacheKey;
+import zenengine.freedesktop.IconThemeIndex;
+import zenengine.freedesktop.MimeDatabase;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class LinuxIconExtractorTest {
+
+    private static Path root;
+    private static LinuxIconExtractor extractor;
+
+    @BeforeAll
+    static void createExtractor() throws URISyntaxException {
+        root = Paths.get(LinuxIconExtractorTest.class.getClassLoader().getResource("freedesktop").toURI());
+        extractor = new LinuxIconExtractor(MimeDatabase.load(List.of(root.resolve("mime"))),
+                IconThemeIndex.build("TestTheme", List.of(root.resolve("icons")), List.of(root.resolve("pixmaps"))));
+    }
+
+    @Test
+    void getIconForFileType() {
+        BufferedImage icon = extractor.getIcon(new File("notes.txt"));
+
+        assertEquals(256, icon.getWidth());
+        assertEquals(BufferedImage.TYPE_INT_ARGB, icon.getType());
+        assertEquals(0xFF0000FF, icon.getRGB(0, 0));
+    }
+
+    @Test
+    void keysFilesByTheirMimeType() {
+        assertEquals(IconCacheKey.forMimeType("text/x-csrc"), extractor.getCacheKey(new File("main.c"), false));
+        assertEquals(IconCacheKey.forMimeType("text/x-c++src"), extractor.getCacheKey(new File("main.C"), false));
+        assertEquals(IconCacheKey.forMimeType("application/x-compressed-tar"),
+                extractor.getCacheKey(new File("archive.tar.gz"), false));
+        assertEquals(IconCacheKey.forMimeType("application/gzip"), extractor.getCacheKey(new File("archive.gz"), false));
+        assertEquals(IconCacheKey.Type.PATH, extractor.getCacheKey(new File("document"), false).getType());
+        assertNotEquals(extractor.getCacheKey(new File("document"), false),
+                extractor.getCacheKey(new File("image"), false));
+        assertEquals(IconCacheKey.Type.PATH, extractor.getCacheKey(root.resolve("test.desktop").toFile(), false)
+                .getType());
+        assertEquals(IconCacheKey.Type.DIRECTORY, extractor.getCacheKey(root.toFile(), true).getType());
+    }
+
+    @Test
+    void getIconForDirectory() {
+        assertTrue(extractor.findIconFile(root, true).endsWith("256x256/places/folder.png"));
+    }
+
+    @Test
+    void getIconForDesktopEntry() {
+        Path icon = extractor.findIconFile(root.resolve("test.desktop"), false);
+
+        assertTrue(icon.endsWith("48x48/apps/test-app.png"));
+    }
+
+}
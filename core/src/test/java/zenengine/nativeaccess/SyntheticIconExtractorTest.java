@@ -0,0 +1,44 @@
+package zenengine.nativeaccess;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class SyntheticIconExtractorTest {
+
+    @Test
+    void iconsAreDeterministicPerCacheKey() {
+        SyntheticIconExtractor extractor = new SyntheticIconExtractor(64, 0);
+        BufferedImage first = extractor.getIcon(new File("a/notes.txt"));
+        BufferedImage second = extractor.getIcon(new File("b/other.txt"));
+        BufferedImage third = extractor.getIcon(new File("a/notes.pdf"));
+
+        assertEquals(64, first.getWidth());
+        assertEquals(64, first.getHeight());
+        assertArrayEquals(pixels(first), pixels(second));
+        assertFalse(java.util.Arrays.equals(pixels(first), pixels(third)));
+    }
+
+    @Test
+    void iconsHaveTransparentCornersAndOpaqueCentre() {
+        BufferedImage icon = SyntheticIconExtractor.generateIcon(42, 256);
+
+        assertEquals(0, icon.getRGB(0, 0) >>> 24);
+        assertEquals(255, icon.getRGB(128, 128) >>> 24);
+    }
+
+    @Test
+    void isNeverSelectedAutomatically() {
+        assertFalse(new SyntheticIconExtractor().isSupported());
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+}
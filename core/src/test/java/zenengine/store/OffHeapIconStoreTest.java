@@ -0,0 +1,126 @@
+package zenengine.store;
+
+import org.junit.jupiter.api.Test;
+import zenengine.nativeaccess.SyntheticIconExtractor;
+
+import java.awt.image.BufferedImage;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class OffHeapIconStoreTest {
+
+    private static final int SLAB_SIZE = OffHeapIconStore.DEFAULT_SLAB_SIZE;
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "Pixel " + x + ", " + y);
+            }
+        }
+    }
+
+    @Test
+    void handlesMaterialiseStoredPixels() {
+        OffHeapIconStore<String> store = new OffHeapIconStore<>(4 * SLAB_SIZE);
+        BufferedImage icon = SyntheticIconExtractor.generateIcon(1, 256);
+        BufferedImage small = SyntheticIconExtractor.generateIcon(2, 48);
+        BufferedImage rgb = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        rgb.getGraphics().drawImage(SyntheticIconExtractor.generateIcon(3, 16), 0, 0, null);
+
+        OffHeapIconStore.Handle handle = store.put("icon", icon);
+        store.put("small", small);
+        store.put("rgb", rgb);
+        assertSamePixels(icon, handle.toBufferedImage());
+        assertSamePixels(small, store.get("small").toBufferedImage());
+        assertSamePixels(rgb, store.get("rgb").toBufferedImage());
+
+        assertEquals(icon.getRGB(100, 140), (int) handle.readPixels(pixels -> pixels.get(140 * 256 + 100)));
+        assertEquals(256 * 256, (int) handle.readPixels(IntBuffer::remaining));
+
+        assertEquals(3, store.size());
+        assertEquals(3, store.getSlabCount());
+        // A 48x48 icon takes a 12 KB block, and a slab only holds whole blocks
+        assertEquals(2L * SLAB_SIZE + SLAB_SIZE / 12288 * 12288, store.getAllocatedBytes());
+        assertEquals(4L * (256 * 256 + 48 * 48 + 16 * 16), store.getUsedBytes());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOfTheSameSize() {
+        OffHeapIconStore<Integer> store = new OffHeapIconStore<>(SLAB_SIZE);
+        List<Integer> evicted = new ArrayList<>();
+        store.setEvictionListener(evicted::add);
+        OffHeapIconStore.Handle[] handles = new OffHeapIconStore.Handle[4];
+        for (int i = 0; i < 4; i++) {
+            handles[i] = store.put(i, SyntheticIconExtractor.generateIcon(i, 256));
+        }
+        assertEquals(0, store.getEvictionCount());
+        assertNotNull(store.get(0));
+
+        OffHeapIconStore.Handle fifth = store.put(4, SyntheticIconExtractor.generateIcon(4, 256));
+        assertNotNull(fifth);
+        assertEquals(1, store.getEvictionCount());
+        assertEquals(List.of(1), evicted);
+        assertFalse(store.contains(1));
+        assertNull(store.get(1));
+        assertFalse(handles[1].isValid());
+        assertNull(handles[1].toBufferedImage());
+        assertTrue(handles[0].isValid());
+        assertEquals(SLAB_SIZE, store.getAllocatedBytes());
+        assertSamePixels(SyntheticIconExtractor.generateIcon(4, 256), fifth.toBufferedImage());
+    }
+
+    @Test
+    void evictsOtherSizesToFreeASlab() {
+        OffHeapIconStore<String> store = new OffHeapIconStore<>(SLAB_SIZE);
+        for (int i = 0; i < 3; i++) {
+            store.put("small" + i, SyntheticIconExtractor.generateIcon(i, 16));
+        }
+        assertEquals(1, store.getSlabCount());
+
+        assertNotNull(store.put("large", SyntheticIconExtractor.generateIcon(9, 256)));
+        assertEquals(3, store.getEvictionCount());
+        assertEquals(1, store.size());
+        assertEquals(1, store.getSlabCount());
+        assertEquals(SLAB_SIZE, store.getAllocatedBytes());
+    }
+
+    @Test
+    void iconsLargerThanTheSizeClassesGetTheirOwnSlab() {
+        OffHeapIconStore<String> store = new OffHeapIconStore<>(2 * SLAB_SIZE);
+        BufferedImage huge = SyntheticIconExtractor.generateIcon(1, 512);
+        OffHeapIconStore.Handle handle = store.put("huge", huge);
+        assertSamePixels(huge, handle.toBufferedImage());
+        assertEquals(4L * 512 * 512, store.getAllocatedBytes());
+
+        assertTrue(store.remove("huge"));
+        assertFalse(handle.isValid());
+        assertEquals(0, store.getAllocatedBytes());
+        assertNull(store.put("huger", SyntheticIconExtractor.generateIcon(1, 1024)));
+    }
+
+    @Test
+    void removedIconsLeaveEmptySlabsUntilTrimmed() {
+        OffHeapIconStore<String> store = new OffHeapIconStore<>(4 * SLAB_SIZE);
+        OffHeapIconStore.Handle handle = store.put("a", SyntheticIconExtractor.generateIcon(1, 32));
+        store.put("b", SyntheticIconExtractor.generateIcon(2, 64));
+        assertTrue(store.remove("a"));
+        assertFalse(store.remove("a"));
+        assertNull(handle.readPixels(IntBuffer::remaining));
+        assertEquals(2, store.getSlabCount());
+
+        store.trim();
+        assertEquals(1, store.getSlabCount());
+        assertEquals(SLAB_SIZE, store.getAllocatedBytes());
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(0, store.getAllocatedBytes());
+        assertEquals(0, store.getUsedBytes());
+    }
+
+}
@@ -0,0 +1,128 @@
+package zenengine.store;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class PersistentIconStoreTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("PersistentIconStoreTest");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    private static byte[] icon(int seed, int length) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) seed);
+        bytes[0] = (byte) (seed >> 8);
+        return bytes;
+    }
+
+    private static Path findPack(Path directory) throws IOException {
+        return Files.list(directory).filter(file -> file.toString().endsWith(".pack")).findFirst().orElseThrow();
+    }
+
+    @Test
+    void storedIconsSurviveReopen() throws IOException {
+        try (PersistentIconStore store = PersistentIconStore.open(directory)) {
+            store.put("extension:txt", 0, 0, icon(1, 100));
+            store.put("path:/home/user/app.desktop", 1234, 56, icon(2, 200));
+        }
+
+        try (PersistentIconStore store = PersistentIconStore.open(directory)) {
+            assertEquals(2, store.size());
+            ByteBuffer text = store.get("extension:txt", 0, 0);
+            assertTrue(text.isReadOnly());
+            assertEquals(100, text.remaining());
+            assertArrayEquals(icon(2, 200), store.getBytes("path:/home/user/app.desktop", 1234, 56));
+            assertNull(store.get("path:/home/user/app.desktop", 1235, 56));
+            assertNull(store.get("path:/home/user/app.desktop", 1234, 57));
+            assertNull(store.get("extension:pdf", 0, 0));
+        }
+    }
+
+    @Test
+    void storeCannotBeOpenedTwice() throws IOException {
+        try (PersistentIconStore store = PersistentIconStore.open(directory)) {
+            assertThrows(IOException.class, () -> PersistentIconStore.open(directory));
+        }
+    }
+
+    @Test
+    void recoversRecordsMissingFromIndexAndDiscardsTornRecord() throws IOException {
+        try (PersistentIconStore store = PersistentIconStore.open(directory)) {
+            store.put("extension:txt", 0, 0, icon(1, 100));
+            store.flush();
+            store.put("extension:pdf", 0, 0, icon(2, 100));
+            store.remove("extension:txt");
+        }
+        // Simulates a crash part way through an append after the index was last written
+        Files.delete(directory.resolve("icons.index"));
+        Files.write(findPack(directory), new byte[] {0x5A, 0x49, 0x52, 0x43, 0, 0, 1, 0, 7}, StandardOpenOption.APPEND);
+
+        try (PersistentIconStore store = PersistentIconStore.open(directory)) {
+            assertEquals(1, store.size());
+            assertNull(store.get("extension:txt", 0, 0));
+            assertArrayEquals(icon(2, 100), store.getBytes("extension:pdf", 0, 0));
+            store.put("extension:png", 0, 0, icon(3, 50));
+        }
+
+        try (PersistentIconStore store = PersistentIconStore.open(directory)) {
+            assertEquals(2, store.size());
+            assertArrayEquals(icon(3, 50), store.getBytes("extension:png", 0, 0));
+        }
+    }
+
+    @Test
+    void compactionDiscardsReplacedRecords() throws IOException {
+        try (PersistentIconStore store = PersistentIconStore.open(directory)) {
+            for (int i = 0; i < 10; i++) {
+                store.put("extension:txt", 0, 0, icon(i, 1000));
+            }
+            long sizeBeforeCompaction = store.getPackSize();
+            store.compact();
+
+            assertTrue(store.getPackSize() < sizeBeforeCompaction / 5);
+            assertEquals(store.getLiveSize() + 8, store.getPackSize());
+            assertArrayEquals(icon(9, 1000), store.getBytes("extension:txt", 0, 0));
+        }
+
+        try (PersistentIconStore store = PersistentIconStore.open(directory)) {
+            assertArrayEquals(icon(9, 1000), store.getBytes("extension:txt", 0, 0));
+            assertEquals(1, Files.list(directory).filter(file -> file.toString().endsWith(".pack")).count());
+        }
+    }
+
+    @Test
+    void maximumSizeEvictsLeastRecentlyUsedIcons() throws IOException {
+        try (PersistentIconStore store = PersistentIconStore.open(directory, 8 * 1024)) {
+            store.put("extension:keep", 0, 0, icon(0, 1000));
+            for (int i = 1; i < 20; i++) {
+                store.put("extension:" + i, 0, 0, icon(i, 1000));
+                assertNotNull(store.get("extension:keep", 0, 0));
+                assertTrue(store.getPackSize() <= 8 * 1024);
+            }
+            assertNull(store.get("extension:1", 0, 0));
+            assertArrayEquals(icon(19, 1000), store.getBytes("extension:19", 0, 0));
+        }
+    }
+
+}
@@ -0,0 +1,10 @@
+module ZenNativeIconEngine.fx {
+
+    requires transitive ZenNativeIconEngine;
+    requires transitive javafx.graphics;
+    requires java.desktop;
+    requires java.logging;
+
+    exports zenengine.fx;
+
+}
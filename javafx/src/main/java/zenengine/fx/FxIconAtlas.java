@@ -0,0 +1,84 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.fx;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import zenengine.atlas.AtlasRegion;
+import zenengine.atlas.IconAtlas;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Copies the pages of an {@link IconAtlas} into JavaFX images, uploading only the regions of each page that changed
+ * since the previous copy.  The same image is returned for a page every time, so a view can keep displaying it.
+ */
+public final class FxIconAtlas {
+
+    private final IconAtlas<?> atlas;
+    private final List<WritableImage> pages = new ArrayList<>();
+
+    /**
+     * @param atlas The atlas whose pages are copied.  No other view may take the atlas' dirty regions.
+     */
+    public FxIconAtlas(IconAtlas<?> atlas) {
+        this.atlas = atlas;
+    }
+
+    public IconAtlas<?> getAtlas() {
+        return atlas;
+    }
+
+    /**
+     * Returns a page as a JavaFX image, first copying the regions that changed since the previous call into it.  Once
+     * the image is displayed, this method must be called on the JavaFX application thread.
+     * @param index The index of the page.
+     * @return The JavaFX image of the page.
+     */
+    public WritableImage getPage(int index) {
+        synchronized (atlas) {
+            BufferedImage page = atlas.getPage(index);
+            // The images of pages released by a repack are dropped, since new pages are reported dirty in full
+            while (pages.size() > atlas.getPageCount()) {
+                pages.remove(pages.size() - 1);
+            }
+            while (pages.size() <= index) {
+                pages.add(null);
+            }
+            WritableImage image = pages.get(index);
+            if (image == null) {
+                image = new WritableImage(atlas.getPageSize(), atlas.getPageSize());
+                pages.set(index, image);
+            }
+            PixelWriter writer = image.getPixelWriter();
+            for (AtlasRegion region : atlas.takeDirtyRegions(index)) {
+                write(page, writer, region.getX(), region.getY(), region.getWidth(), region.getHeight());
+            }
+            return image;
+        }
+    }
+
+    private static void write(BufferedImage page, PixelWriter writer, int x, int y, int width, int height) {
+        int[] pixels = (int[]) page.getRaster().getDataElements(x, y, width, height, null);
+        writer.setPixels(x, y, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+    }
+
+}
@@ -0,0 +1,266 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.fx;
+
+import javafx.scene.image.Image;
+import zenengine.base.IconCache;
+import zenengine.base.IconCacheKey;
+import zenengine.base.IconCacheListener;
+import zenengine.base.IconEngine;
+import zenengine.base.IconPyramid;
+import zenengine.base.ImageScaler;
+import zenengine.metrics.IconMetrics;
+import zenengine.metrics.IconStage;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+
+/**
+ * Returns the icons of the {@link IconEngine} as JavaFX Images.  The icons are extracted, deduplicated and cached by
+ * the engine, and only converted into JavaFX Images here, so applications that never display icons through JavaFX do
+ * not need the JavaFX runtime.  The JavaFX Images are cached as well, and are dropped whenever the engine invalidates
+ * their icons.
+ */
+public final class FxIconEngine {
+
+    private static final Logger logger = Logger.getLogger(FxIconEngine.class.getName());
+
+    private static final long DEFAULT_IMAGE_CACHE_SIZE = 64L * 1024 * 1024;
+    private static final long DEFAULT_LEVEL_CACHE_SIZE = 32L * 1024 * 1024;
+
+    private static final IconCache<IconCacheKey, Image> imageCache =
+            new IconCache<>(DEFAULT_IMAGE_CACHE_SIZE, image -> 4L * (long) image.getWidth() * (long) image.getHeight());
+
+    private static final IconCache<IconPyramid.Level, Image> imageLevelCache =
+            new IconCache<>(DEFAULT_LEVEL_CACHE_SIZE, image -> 4L * (long) image.getWidth() * (long) image.getHeight());
+
+    /**
+     * The JavaFX Image converted from each interned BufferedImage, so that cache keys sharing a BufferedImage also
+     * share its JavaFX Image.  Both keys and values are weakly held, and entries disappear with their images.
+     */
+    private static final Map<BufferedImage, WeakReference<Image>> fxImages =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    static {
+        IconEngine.registerCacheMetrics("image", imageCache);
+        IconEngine.registerCacheMetrics("imageLevel", imageLevelCache);
+        IconEngine.addCacheListener(new IconCacheListener() {
+            @Override
+            public void invalidated(IconCacheKey key) {
+                imageCache.invalidate(key);
+                imageLevelCache.invalidateIf(level -> level.getKey().equals(key));
+            }
+
+            @Override
+            public void cleared() {
+                imageCache.invalidateAll();
+                imageLevelCache.invalidateAll();
+                fxImages.clear();
+            }
+        });
+    }
+
+    private FxIconEngine() {
+    }
+
+    /**
+     * Quarries the host file system for the icon the system uses to represent the supplied file/directory and returns
+     * a fully drawn JavaFX Image of the icon using the supplied parameters.  When the icon is scaled smoothly, it is
+     * reduced from the nearest level of its icon pyramid, and square sizes are served from the cached pyramid levels.
+     * @param file The file or directory for which the icon is requested.
+     * @param requestedWidth The requested width that the returned image should have.
+     * @param requestedHeight The requested height that the returned image should have.
+     * @param preserveRatio Indicates whether to preserve the aspect ratio of the original icon when scaling the image
+     *                      to fit the supplied requested width and height.
+     * @param smooth Indicates whether to enable the images smooth scaling option when scaling the icon to fit the
+     *               specified requested width and height.
+     * @return A JavaFX Image of the icon the system uses to represent the supplied file/directory.  If the supplied
+     *         file/directory does not exist or an icon cannot be retrieved from the system, this method returns null;
+     * @throws IOException if the BufferedImage returned from the native icon extractor cannot be read.
+     */
+    public static Image getIconImage(File file, int requestedWidth, int requestedHeight, boolean preserveRatio,
+                                     boolean smooth) throws IOException {
+        IconCacheKey key = IconEngine.getCacheKey(file);
+        if (key == null) {
+            return null;
+        }
+        BufferedImage bufferedImage = IconEngine.getIconBufferedImage(file, key);
+        if (bufferedImage == null) {
+            return null;
+        }
+        if (! smooth) {
+            long start = IconMetrics.start();
+            Image image = FxImageConverter.toFxImage(bufferedImage, requestedWidth, requestedHeight, preserveRatio,
+                    false);
+            IconMetrics.record(IconStage.FX_IMAGE, start, 4L * (long) image.getWidth() * (long) image.getHeight());
+            return image;
+        }
+        int[] size = ImageScaler.fitSize(bufferedImage.getWidth(), bufferedImage.getHeight(), requestedWidth,
+                requestedHeight, preserveRatio);
+        int levelSize = Math.max(size[0], size[1]);
+        int[] levelDimensions = ImageScaler.fitSize(bufferedImage.getWidth(), bufferedImage.getHeight(), levelSize,
+                levelSize, true);
+        if (levelDimensions[0] == size[0] && levelDimensions[1] == size[1]) {
+            return getIconImage(key, bufferedImage, levelSize);
+        }
+        int sourceSize = Math.max(bufferedImage.getWidth(), bufferedImage.getHeight());
+        int parentSize = IconPyramid.getParentSize(levelSize, sourceSize);
+        BufferedImage parent = IconPyramid.getLevel(IconEngine.getLevelCache(), key, bufferedImage, parentSize);
+        return toFxImage(ImageScaler.scale(parent, size[0], size[1], true));
+    }
+
+    /**
+     * Converts the supplied icon into a JavaFX Image, timing the conversion in the icon metrics.
+     */
+    private static Image toFxImage(BufferedImage bufferedImage) {
+        long start = IconMetrics.start();
+        Image image = FxImageConverter.toFxImage(bufferedImage);
+        IconMetrics.record(IconStage.FX_IMAGE, start, 4L * bufferedImage.getWidth() * bufferedImage.getHeight());
+        return image;
+    }
+
+    /**
+     * Returns a JavaFX Image of the icon for the supplied file or directory at the supplied size, taken from the
+     * icon's pyramid.  The larger dimension of the image is the supplied size and the aspect ratio of the icon is
+     * preserved.  Images are cached per size, so every caller requesting the same icon at the same size shares one
+     * image.
+     * @param file The file or directory for which the icon is requested.
+     * @param size The size of the requested image, normally one of {@link IconPyramid#getStandardSizes()}.
+     * @return A JavaFX Image of the icon at the requested size, or null if the supplied file/directory does not exist
+     *         or an icon cannot be retrieved from the system.
+     */
+    public static Image getIconImage(File file, int size) {
+        IconCacheKey key = IconEngine.getCacheKey(file);
+        if (key == null) {
+            return null;
+        }
+        BufferedImage bufferedImage = IconEngine.getIconBufferedImage(file, key);
+        return bufferedImage == null ? null : getIconImage(key, bufferedImage, size);
+    }
+
+    private static Image getIconImage(IconCacheKey key, BufferedImage source, int size) {
+        if (size == Math.max(source.getWidth(), source.getHeight())) {
+            Image image = imageCache.get(key);
+            return image != null ? image : getFxImage(key, source);
+        }
+        IconPyramid.Level level = new IconPyramid.Level(key, size);
+        Image image = imageLevelCache.get(level);
+        if (image == null) {
+            image = toFxImage(IconPyramid.getLevel(IconEngine.getLevelCache(), key, source, size));
+            imageLevelCache.put(level, image);
+        }
+        return image;
+    }
+
+    /**
+     * Quarries the host file system for the icon the system uses to represent the supplied file/directory and returns
+     * a fully drawn JavaFX Image of the icon.
+     * @param file The file or directory for which the icon is requested.
+     * @return A JavaFX Image of the icon the system uses to represent the supplied file/directory.  If the supplied
+     *         file/directory does not exist or an icon cannot be retrieved from the system, this method returns null;
+     * @throws IOException if the BufferedImage returned from the native icon extractor cannot be read.
+     */
+    public static Image getIconImage(File file) throws IOException {
+        IconCacheKey key = IconEngine.getCacheKey(file);
+        Image image = key != null ? getIconImage(file, key) : null;
+        if (image == null) {
+            logger.warning("Failed to retrieve icon for file: " + file.getName());
+        }
+        return image;
+    }
+
+    private static Image getIconImage(File file, IconCacheKey key) {
+        Image image = imageCache.get(key);
+        if (image == null) {
+            BufferedImage bufferedImage = IconEngine.getIconBufferedImage(file, key);
+            if (bufferedImage != null) {
+                image = getFxImage(key, bufferedImage);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Returns the JavaFX Image converted from the supplied interned icon, converting the icon only if no other cache
+     * key shares it, and caches the JavaFX Image under the supplied key.
+     */
+    private static Image getFxImage(IconCacheKey key, BufferedImage bufferedImage) {
+        WeakReference<Image> reference = fxImages.get(bufferedImage);
+        Image image = reference == null ? null : reference.get();
+        if (image == null) {
+            image = toFxImage(bufferedImage);
+            fxImages.put(bufferedImage, new WeakReference<>(image));
+        }
+        imageCache.put(key, image);
+        return image;
+    }
+
+    /**
+     * Asynchronously queries the file system for the icon that represents the supplied file or directory and returns
+     * it as a JavaFX Image.  The request is executed on the executor returned by {@link IconEngine#getExecutor()}.
+     * @param path The file or directory for which an icon is requested.
+     * @return A future that completes with the JavaFX Image, or with null if the file does not exist or no icon could
+     *         be retrieved.
+     * @see IconEngine#getIconBufferedImageAsync(Path)
+     */
+    public static CompletableFuture<Image> getIconImageAsync(Path path) {
+        File file = path.toFile();
+        Executor executor = IconEngine.getExecutor();
+        return CompletableFuture.supplyAsync(() -> IconEngine.getCacheKey(file), executor).thenCompose(key -> {
+            if (key == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            Image cached = imageCache.get(key);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+            return IconEngine.getIconBufferedImageAsync(file, key).thenApplyAsync(image -> {
+                if (image == null) {
+                    return null;
+                }
+                return getFxImage(key, image);
+            }, executor);
+        });
+    }
+
+    /**
+     * @return The cache holding the JavaFX Images returned by {@link #getIconImage(File)}.  The maximum weight of
+     * the cache is measured in bytes of pixel data.
+     */
+    public static IconCache<IconCacheKey, Image> getImageCache() {
+        return imageCache;
+    }
+
+    /**
+     * @return The cache holding the scaled JavaFX Images returned by {@link #getIconImage(File, int)}.  The maximum
+     * weight of the cache is measured in bytes of pixel data.
+     */
+    public static IconCache<IconPyramid.Level, Image> getImageLevelCache() {
+        return imageLevelCache;
+    }
+
+}
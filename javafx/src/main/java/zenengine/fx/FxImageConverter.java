@@ -0,0 +1,133 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.fx;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import zenengine.base.ImageScaler;
+import zenengine.store.OffHeapIconStore;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.nio.IntBuffer;
+
+
+/**
+ * Converts BufferedImages into JavaFX Images by writing their pixels directly through a PixelWriter, instead of
+ * encoding them to PNG and decoding the PNG again.  Pixels are written in the premultiplied IntArgbPre format, which
+ * is the native format of JavaFX images and so avoids a conversion inside JavaFX.
+ */
+public final class FxImageConverter {
+
+    private static final PixelFormat<IntBuffer> ARGB_PRE = PixelFormat.getIntArgbPreInstance();
+    private static final PixelFormat<IntBuffer> ARGB = PixelFormat.getIntArgbInstance();
+
+    private FxImageConverter() {
+    }
+
+    /**
+     * Converts the supplied image into a JavaFX Image of the same size.
+     * @param image The image to convert.
+     * @return A JavaFX Image holding the pixels of the supplied image.
+     */
+    public static WritableImage toFxImage(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = getArgbPrePixels(image);
+        WritableImage fxImage = new WritableImage(width, height);
+        fxImage.getPixelWriter().setPixels(0, 0, width, height, ARGB_PRE, pixels, 0, width);
+        return fxImage;
+    }
+
+    /**
+     * Converts the supplied image into a JavaFX Image scaled to the requested size, following the same sizing rules
+     * as the JavaFX Image constructors.  The image is resampled once, in high quality, before it is converted.
+     * @param image The image to convert.
+     * @param requestedWidth The requested width, or zero to keep the original width.
+     * @param requestedHeight The requested height, or zero to keep the original height.
+     * @param preserveRatio Indicates whether to preserve the aspect ratio of the image when fitting it to the
+     *                      requested size.
+     * @param smooth Indicates whether to filter the image while scaling.
+     * @return A JavaFX Image holding the scaled pixels of the supplied image.
+     */
+    public static WritableImage toFxImage(BufferedImage image, double requestedWidth, double requestedHeight,
+                                          boolean preserveRatio, boolean smooth) {
+        int[] size = ImageScaler.fitSize(image.getWidth(), image.getHeight(), requestedWidth, requestedHeight,
+                preserveRatio);
+        return toFxImage(ImageScaler.scale(image, size[0], size[1], smooth));
+    }
+
+    /**
+     * Copies the pixels of an icon held in an off heap store into a new JavaFX Image, straight from the store's direct
+     * buffer.
+     * @param handle The handle on the icon.
+     * @return A JavaFX Image holding the pixels of the icon, or null if the icon is no longer held by the store.
+     */
+    public static WritableImage toFxImage(OffHeapIconStore.Handle handle) {
+        int width = handle.getWidth();
+        int height = handle.getHeight();
+        WritableImage fxImage = new WritableImage(width, height);
+        return handle.readPixels(pixels -> {
+            fxImage.getPixelWriter().setPixels(0, 0, width, height, ARGB, pixels, width);
+            return fxImage;
+        });
+    }
+
+    /**
+     * Returns a copy of the pixels of the supplied image as premultiplied ARGB ints.  Int packed images are copied
+     * through their raster in bulk; other image types are converted through getRGB.
+     */
+    private static int[] getArgbPrePixels(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int type = image.getType();
+        WritableRaster raster = image.getRaster();
+        if ((type == BufferedImage.TYPE_INT_ARGB_PRE || type == BufferedImage.TYPE_INT_ARGB)
+                && raster.getDataBuffer().getDataType() == DataBuffer.TYPE_INT) {
+            int[] pixels = (int[]) raster.getDataElements(0, 0, width, height, null);
+            if (type == BufferedImage.TYPE_INT_ARGB) {
+                premultiply(pixels);
+            }
+            return pixels;
+        }
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        premultiply(pixels);
+        return pixels;
+    }
+
+    /**
+     * Converts straight ARGB pixels into premultiplied ARGB pixels in place.
+     */
+    static void premultiply(int[] pixels) {
+        for (int i = 0; i < pixels.length; i++) {
+            int argb = pixels[i];
+            int a = argb >>> 24;
+            if (a == 0) {
+                pixels[i] = 0;
+            } else if (a != 255) {
+                int r = ((argb >> 16) & 0xFF) * a + 128;
+                int g = ((argb >> 8) & 0xFF) * a + 128;
+                int b = (argb & 0xFF) * a + 128;
+                // Rounded division by 255, which is exact for the product of two bytes plus 128
+                pixels[i] = (a << 24) | (((r + (r >> 8)) >> 8) << 16) | (((g + (g >> 8)) >> 8) << 8)
+                        | ((b + (b >> 8)) >> 8);
+            }
+        }
+    }
+
+}
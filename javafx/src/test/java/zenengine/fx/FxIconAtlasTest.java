@@ -0,0 +1,64 @@
+package zenengine.fx;
+
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+import org.junit.jupiter.api.Test;
+import zenengine.atlas.AtlasRegion;
+import zenengine.atlas.IconAtlas;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class FxIconAtlasTest {
+
+    private static BufferedImage icon(int seed, int size) {
+        BufferedImage icon = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                icon.setRGB(x, y, 0xFF000000 | (seed * 0x1F3D5B + x * 0x0901 + y * 0x2300) & 0xFFFFFF);
+            }
+        }
+        return icon;
+    }
+
+    @Test
+    void pagesReceiveAddedIcons() {
+        IconAtlas<String> atlas = new IconAtlas<>(16, 64);
+        FxIconAtlas fxAtlas = new FxIconAtlas(atlas);
+        atlas.add("first", icon(1, 16));
+        WritableImage page = fxAtlas.getPage(0);
+        PixelReader reader = page.getPixelReader();
+        AtlasRegion first = atlas.getRegion("first");
+        assertEquals(icon(1, 16).getRGB(8, 8), reader.getArgb(first.getX() + 8, first.getY() + 8));
+
+        AtlasRegion second = atlas.add("second", icon(2, 16));
+        assertSame(page, fxAtlas.getPage(0));
+        assertEquals(icon(2, 16).getRGB(3, 12), reader.getArgb(second.getX() + 3, second.getY() + 12));
+    }
+
+    @Test
+    void repackedPagesAreCopiedAgain() {
+        IconAtlas<Integer> atlas = new IconAtlas<>(16, 40);
+        FxIconAtlas fxAtlas = new FxIconAtlas(atlas);
+        for (int i = 0; i < 8; i++) {
+            atlas.add(i, icon(i, 16));
+        }
+        assertEquals(2, atlas.getPageCount());
+        fxAtlas.getPage(0);
+        fxAtlas.getPage(1);
+        for (int i = 0; i < 6; i++) {
+            atlas.remove(i);
+        }
+        atlas.repack();
+
+        assertEquals(1, atlas.getPageCount());
+        PixelReader reader = fxAtlas.getPage(0).getPixelReader();
+        for (int i = 6; i < 8; i++) {
+            AtlasRegion region = atlas.getRegion(i);
+            assertEquals(icon(i, 16).getRGB(9, 4), reader.getArgb(region.getX() + 9, region.getY() + 4));
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+package zenengine.fx;
+
+import javafx.scene.image.Image;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import zenengine.base.IconCacheKey;
+import zenengine.base.IconEngine;
+import zenengine.base.IconExtractor;
+import zenengine.base.IconPyramid;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class FxIconEngineTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("FxIconEngineTest");
+        IconEngine.setIconExtractor(IconEngine.findIconExtractor("synthetic"));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        IconEngine.setIconExtractor(null);
+        for (File file : directory.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    @EnabledOnOs(OS.WINDOWS)
+    void getIconImage() throws IOException {
+        File testFile = Files.createFile(directory.resolve("test_icon.png")).toFile();
+        IconEngine.setIconExtractor(null);
+
+        assertTrue(IconEngine.getIconBufferedImage(testFile) instanceof BufferedImage);
+        assertTrue(FxIconEngine.getIconImage(testFile) instanceof Image);
+    }
+
+    @Test
+    void getIconImageNonExistentFileReturn() throws IOException {
+        File testFile = new File("C:/Path/To/NoWhere/fakefile.jpg");
+
+        assertNull(FxIconEngine.getIconImage(testFile));
+        assertNull(FxIconEngine.getIconImage(testFile, 32));
+        assertNull(FxIconEngine.getIconImage(testFile, 32, 32, true, true));
+    }
+
+    @Test
+    void imagesMatchTheEngineIcons() throws IOException {
+        File testFile = Files.createFile(directory.resolve("notes.txt")).toFile();
+
+        BufferedImage icon = IconEngine.getIconBufferedImage(testFile);
+        Image image = FxIconEngine.getIconImage(testFile);
+        assertTrue(image instanceof Image);
+        assertEquals(icon.getWidth(), image.getWidth());
+        assertEquals(icon.getRGB(128, 128), image.getPixelReader().getArgb(128, 128));
+        assertSame(image, FxIconEngine.getIconImage(testFile));
+
+        Image scaled = FxIconEngine.getIconImage(testFile, 40, 20, true, true);
+        assertEquals(20, scaled.getWidth());
+        assertEquals(20, scaled.getHeight());
+    }
+
+    @Test
+    void identicalIconsShareInstances() throws IOException {
+        File text = Files.createFile(directory.resolve("notes.txt")).toFile();
+        File log = Files.createFile(directory.resolve("server.log")).toFile();
+        IconEngine.setIconExtractor(new IconExtractor() {
+            @Override
+            public String getName() {
+                return "generic";
+            }
+
+            @Override
+            public boolean isSupported() {
+                return false;
+            }
+
+            @Override
+            public BufferedImage getIcon(File file) {
+                BufferedImage icon = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+                icon.setRGB(5, 7, 0xFF336699);
+                return icon;
+            }
+        });
+
+        assertSame(FxIconEngine.getIconImage(text), FxIconEngine.getIconImage(log));
+    }
+
+    @Test
+    void sizedImagesAreCachedPerLevel() throws IOException {
+        File testFile = Files.createFile(directory.resolve("notes.txt")).toFile();
+
+        Image image = FxIconEngine.getIconImage(testFile, 32);
+        assertEquals(32, image.getWidth());
+        assertSame(image, FxIconEngine.getIconImage(testFile, 32));
+        IconCacheKey key = IconEngine.getCacheKey(testFile);
+        assertSame(image, FxIconEngine.getImageLevelCache().get(new IconPyramid.Level(key, 32)));
+    }
+
+    @Test
+    void engineInvalidationDropsImages() throws IOException {
+        File testFile = Files.createFile(directory.resolve("notes.txt")).toFile();
+        IconCacheKey key = IconEngine.getCacheKey(testFile);
+        Image image = FxIconEngine.getIconImage(testFile);
+        FxIconEngine.getIconImage(testFile, 48);
+        assertSame(image, FxIconEngine.getImageCache().get(key));
+
+        IconEngine.invalidate(key);
+        assertNull(FxIconEngine.getImageCache().get(key));
+        assertNull(FxIconEngine.getImageLevelCache().get(new IconPyramid.Level(key, 48)));
+
+        FxIconEngine.getIconImage(testFile);
+        IconEngine.clearCaches();
+        assertEquals(0, FxIconEngine.getImageCache().size());
+    }
+
+    @Test
+    void asyncImageSharesCachedIcon() throws Exception {
+        Path text = Files.createFile(directory.resolve("notes.txt"));
+
+        Image image = FxIconEngine.getIconImageAsync(text).get(10, TimeUnit.SECONDS);
+        assertNotNull(image);
+        assertSame(image, FxIconEngine.getIconImage(text.toFile()));
+        assertNull(FxIconEngine.getIconImageAsync(directory.resolve("missing.txt")).get(10, TimeUnit.SECONDS));
+    }
+
+}
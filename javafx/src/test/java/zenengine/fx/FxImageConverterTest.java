@@ -0,0 +1,82 @@
+package zenengine.fx;
+
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+import org.junit.jupiter.api.Test;
+import zenengine.store.OffHeapIconStore;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class FxImageConverterTest {
+
+    @Test
+    void convertsPixelsWithoutCodecRoundTrip() {
+        BufferedImage image = new BufferedImage(3, 2, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, 0xFF102030);
+        image.setRGB(1, 0, 0x80FF8000);
+        image.setRGB(2, 1, 0x00123456);
+
+        WritableImage fxImage = FxImageConverter.toFxImage(image);
+        PixelReader reader = fxImage.getPixelReader();
+
+        assertEquals(3, fxImage.getWidth());
+        assertEquals(2, fxImage.getHeight());
+        assertEquals(0xFF102030, reader.getArgb(0, 0));
+        assertEquals(0x80FF8000, reader.getArgb(1, 0));
+        assertEquals(0, reader.getArgb(2, 1));
+    }
+
+    @Test
+    void premultipliesWithRounding() {
+        int[] pixels = {0x80FF8040, 0xFFABCDEF, 0x00FFFFFF};
+        FxImageConverter.premultiply(pixels);
+
+        assertEquals(0x80804020, pixels[0]);
+        assertEquals(0xFFABCDEF, pixels[1]);
+        assertEquals(0, pixels[2]);
+    }
+
+    @Test
+    void convertsOtherImageTypes() {
+        BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(1, 1, 0x445566);
+
+        assertEquals(0xFF445566, FxImageConverter.toFxImage(image).getPixelReader().getArgb(1, 1));
+    }
+
+    @Test
+    void scalesToRequestedSize() {
+        BufferedImage image = new BufferedImage(256, 128, BufferedImage.TYPE_INT_ARGB);
+
+        WritableImage exact = FxImageConverter.toFxImage(image, 32, 32, false, true);
+        WritableImage fitted = FxImageConverter.toFxImage(image, 32, 32, true, true);
+        WritableImage widthOnly = FxImageConverter.toFxImage(image, 64, 0, true, false);
+
+        assertEquals(32, exact.getWidth());
+        assertEquals(32, exact.getHeight());
+        assertEquals(32, fitted.getWidth());
+        assertEquals(16, fitted.getHeight());
+        assertEquals(64, widthOnly.getWidth());
+        assertEquals(32, widthOnly.getHeight());
+    }
+
+    @Test
+    void convertsOffHeapHandles() {
+        BufferedImage image = new BufferedImage(48, 32, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(40, 30, 0x80FF8000);
+        OffHeapIconStore<String> store = new OffHeapIconStore<>(OffHeapIconStore.DEFAULT_SLAB_SIZE);
+        OffHeapIconStore.Handle handle = store.put("icon", image);
+
+        WritableImage fxImage = FxImageConverter.toFxImage(handle);
+        assertEquals(48, fxImage.getWidth());
+        assertEquals(32, fxImage.getHeight());
+        assertEquals(0x80FF8000, fxImage.getPixelReader().getArgb(40, 30));
+
+        store.remove("icon");
+        assertNull(FxImageConverter.toFxImage(handle));
+    }
+
+}
@@ -0,0 +1,10 @@
+module ZenNativeIconEngine.server {
+
+    requires transitive ZenNativeIconEngine;
+    requires transitive jdk.httpserver;
+    requires java.desktop;
+    requires java.logging;
+
+    exports zenengine.server;
+
+}
@@ -0,0 +1,798 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.server;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import zenengine.base.IconCache;
+import zenengine.base.IconCacheKey;
+import zenengine.base.IconCacheListener;
+import zenengine.base.IconEngine;
+import zenengine.base.IconPyramid;
+import zenengine.metrics.IconMetrics;
+import zenengine.metrics.IconStage;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+
+/**
+ * Serves icons over HTTP from the {@link IconEngine}, so that services on other hosts can fetch the icons of one host
+ * without linking the engine themselves.  The server runs on the JDK's built in HTTP server and answers:
+ * <ul>
+ *     <li>{@code GET /icon?path=<path>[&size=<pixels>]} with the PNG icon of a file or directory,</li>
+ *     <li>{@code GET /icon/ext/<extension>[?size=<pixels>]} with the PNG icon shared by files with an extension,
+ *     without requiring such a file to exist, and</li>
+ *     <li>{@code POST /icons[?size=<pixels>]} with a {@code multipart/mixed} response holding the icon of each path
+ *     listed in the request body, one per line, in the order they were listed.</li>
+ * </ul>
+ * Without a size the full size icon is returned; with one, the level of the icon's pyramid at that size.
+ * <p>
+ * Encoded icons are cached by the server along with a strong entity tag derived from a hash of their bytes, so a
+ * repeated request sends the same bytes without encoding them again, and a request whose {@code If-None-Match} header
+ * names the current tag is answered with 304 Not Modified and no body.  Cached responses are dropped whenever the
+ * engine invalidates their icons.  Each part of a batch response carries the {@code ETag} of its icon and, as its
+ * {@code Content-Location}, the URI the icon can be revalidated at.
+ * <p>
+ * At most {@link IconServerOptions#getMaxConcurrentRequests()} requests are served at once, and requests over the
+ * limit are answered with 503 Service Unavailable and a {@code Retry-After} header straight away.  A request counts
+ * against the limit while its icons are looked up, and no longer once its response is being written, so a client
+ * that has received a response can send its next request straight away.
+ * <p>
+ * Without {@link IconServerOptions#getAllowedRoots() allowed roots} the icon of any path is served, which is only
+ * permitted on the loopback interface.  A server listening on any other address must be given the roots it serves.
+ */
+public final class IconServer implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(IconServer.class.getName());
+
+    /**
+     * The path of the endpoint returning the icon of a file or directory.
+     */
+    public static final String ICON_PATH = "/icon";
+
+    /**
+     * The path prefix of the endpoint returning the icon shared by the files with an extension.
+     */
+    public static final String EXTENSION_PATH = "/icon/ext/";
+
+    /**
+     * The path of the endpoint returning the icons of many files at once.
+     */
+    public static final String BATCH_PATH = "/icons";
+
+    /**
+     * The largest icon size that may be requested.
+     */
+    public static final int MAX_SIZE = 1024;
+
+    /**
+     * The header of the parts of a batch response holding the status code of each icon, since parts have no status
+     * line of their own.
+     */
+    public static final String ICON_STATUS_HEADER = "X-Icon-Status";
+
+    /**
+     * The longest line of a batch request, which bounds the memory a request can take before it is rejected.
+     */
+    private static final int MAX_BATCH_LINE = 32 * 1024;
+
+    private static final Pattern EXTENSION = Pattern.compile("[A-Za-z0-9_+-]{1,32}");
+
+    private static final String PNG = "image/png";
+    private static final String TEXT = "text/plain; charset=utf-8";
+
+    /**
+     * Icons of single files may change whenever their file does, so clients revalidate them on every use, which the
+     * entity tags keep cheap.  Icons by extension only change with the desktop's file associations.
+     */
+    private static final String PATH_CACHE_CONTROL = "no-cache";
+    private static final String EXTENSION_CACHE_CONTROL = "max-age=3600";
+
+    private static final AtomicInteger serverCount = new AtomicInteger();
+
+    private final IconServerOptions options;
+    private final List<Path> allowedRoots = new ArrayList<>();
+    private final HttpServer server;
+    private final ExecutorService ownExecutor;
+    private final Semaphore permits;
+    private final Path placeholders;
+    private final String boundary;
+
+    /**
+     * The encoded responses, keyed by the icon and the requested size, where a size of zero is the full size icon.
+     */
+    private final IconCache<IconPyramid.Level, IconResponse> responses;
+    private final IconCacheListener cacheListener;
+
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder notModifiedCount = new LongAdder();
+
+    private volatile boolean closed;
+
+    /**
+     * An encoded icon and its entity tag.
+     */
+    private static final class IconResponse {
+
+        private final byte[] bytes;
+        private final String etag;
+
+        private IconResponse(byte[] bytes) {
+            this.bytes = bytes;
+            this.etag = getEntityTag(bytes);
+        }
+
+    }
+
+    /**
+     * A request's claim on one of the server's permits, which is released once, either as soon as the response is
+     * ready to be written or when the request fails.
+     */
+    private final class Permit {
+
+        private final AtomicBoolean held = new AtomicBoolean(true);
+
+        private void release() {
+            if (held.compareAndSet(true, false)) {
+                permits.release();
+            }
+        }
+
+    }
+
+    /**
+     * An error that is answered with the supplied status code and message.
+     */
+    private static final class HttpError extends Exception {
+
+        private final int status;
+
+        private HttpError(int status, String message) {
+            super(message, null, false, false);
+            this.status = status;
+        }
+
+    }
+
+    private IconServer(IconServerOptions options) throws IOException {
+        this.options = options;
+        if (options.getAllowedRoots().isEmpty() && ! isLoopback(options.getAddress())) {
+            throw new IllegalArgumentException("Allowed roots are required to listen on " + options.getAddress());
+        }
+        for (Path root : options.getAllowedRoots()) {
+            // Requests are checked against the root as given before they are resolved, and against its real path after
+            Path absolute = root.toAbsolutePath().normalize();
+            Path real = root.toRealPath();
+            allowedRoots.add(absolute);
+            if (! real.equals(absolute)) {
+                allowedRoots.add(real);
+            }
+        }
+        permits = new Semaphore(options.getMaxConcurrentRequests());
+        responses = new IconCache<>(options.getCacheSize(), response -> response.bytes.length);
+        cacheListener = new IconCacheListener() {
+            @Override
+            public void invalidated(IconCacheKey key) {
+                responses.invalidateIf(level -> level.getKey().equals(key));
+            }
+
+            @Override
+            public void cleared() {
+                responses.invalidateAll();
+            }
+        };
+        byte[] random = new byte[16];
+        new SecureRandom().nextBytes(random);
+        boundary = "zenengine-" + toHex(random);
+        placeholders = Files.createTempDirectory("zenengine-server");
+
+        int id = serverCount.incrementAndGet();
+        if (options.getExecutor() == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            // Threads are only created for connections that arrive at once, and requests over the limit finish quickly
+            ownExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "zenengine-server-" + id + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            ownExecutor = null;
+        }
+        try {
+            server = HttpServer.create(options.getAddress(), 0);
+        } catch (IOException e) {
+            deletePlaceholders();
+            if (ownExecutor != null) {
+                ownExecutor.shutdown();
+            }
+            throw e;
+        }
+        server.setExecutor(ownExecutor != null ? ownExecutor : options.getExecutor());
+        server.createContext("/", this::handle);
+        IconEngine.addCacheListener(cacheListener);
+        IconEngine.registerCacheMetrics("server-" + id, responses);
+    }
+
+    /**
+     * Starts a server with the supplied options.
+     * @param options The options of the server.
+     * @return The started server, which runs until it is closed.
+     * @throws IOException if the server cannot listen on its address, or an allowed root does not exist.
+     * @throws IllegalArgumentException if the server would listen on an address other than the loopback interface
+     * without allowed roots.
+     */
+    public static IconServer start(IconServerOptions options) throws IOException {
+        IconServer iconServer = new IconServer(options);
+        iconServer.server.start();
+        logger.info("Serving icons on http://" + iconServer.getAddress().getHostString() + ":"
+                + iconServer.getAddress().getPort());
+        return iconServer;
+    }
+
+    /**
+     * Runs a server from the command line, listening on the loopback interface.
+     * @param args The port to listen on, which defaults to {@link IconServerOptions#DEFAULT_PORT}, followed by the
+     *             directories whose icons may be served, which default to every directory.
+     * @throws IOException if the server cannot be started.
+     */
+    public static void main(String[] args) throws IOException {
+        IconServerOptions options = new IconServerOptions();
+        if (args.length > 0) {
+            options.setAddress(new InetSocketAddress(options.getAddress().getAddress(), Integer.parseInt(args[0])));
+        }
+        List<Path> roots = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            roots.add(Path.of(args[i]));
+        }
+        start(options.setAllowedRoots(roots));
+    }
+
+    /**
+     * @return The address the server listens on, which holds the actual port when the server was started on port zero.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public IconServerOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * @return The number of encoded responses the server holds ready to send.
+     */
+    public int getCachedResponseCount() {
+        return responses.size();
+    }
+
+    /**
+     * @return The number of requests received.
+     */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * @return The number of requests answered with 503 Service Unavailable because the server was saturated.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * @return The number of requests answered with 304 Not Modified.
+     */
+    public long getNotModifiedCount() {
+        return notModifiedCount.sum();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops the server, waiting up to a second for the requests being served to complete.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        server.stop(1);
+        if (ownExecutor != null) {
+            ownExecutor.shutdownNow();
+        }
+        IconEngine.removeCacheListener(cacheListener);
+        responses.invalidateAll();
+        deletePlaceholders();
+    }
+
+    private static boolean isLoopback(InetSocketAddress address) {
+        return address.getAddress() != null && address.getAddress().isLoopbackAddress();
+    }
+
+    private void handle(HttpExchange exchange) {
+        requestCount.increment();
+        try {
+            if (! permits.tryAcquire()) {
+                rejectedCount.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, new HttpError(503, "Too many concurrent requests"));
+                return;
+            }
+            Permit permit = new Permit();
+            try {
+                route(exchange, permit);
+            } catch (HttpError e) {
+                permit.release();
+                sendError(exchange, e);
+            } catch (IOException e) {
+                permit.release();
+                if (exchange.getResponseCode() != -1) {
+                    // The response was already started, so the client can only see the connection drop
+                    throw e;
+                }
+                HttpError error = toHttpError(e);
+                if (error.status == 500) {
+                    logger.log(Level.WARNING, "Failed to serve " + exchange.getRequestURI(), e);
+                }
+                sendError(exchange, error);
+            } catch (RuntimeException e) {
+                permit.release();
+                logger.log(Level.WARNING, "Failed to serve " + exchange.getRequestURI(), e);
+                sendError(exchange, new HttpError(500, "Failed to serve the icon"));
+            } finally {
+                permit.release();
+            }
+        } catch (IOException e) {
+            logger.fine("Failed to answer " + exchange.getRequestURI() + ": " + e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Returns the error a failure to look up an icon is answered with: 403 Forbidden if the file system denied access
+     * to the file, and 500 Internal Server Error otherwise.
+     */
+    private static HttpError toHttpError(IOException e) {
+        if (e instanceof AccessDeniedException) {
+            return new HttpError(403, "Access denied: " + e.getMessage());
+        }
+        return new HttpError(500, "Failed to serve the icon");
+    }
+
+    /**
+     * Answers the supplied request, releasing its permit once the response is ready to be written.
+     */
+    private void route(HttpExchange exchange, Permit permit) throws IOException, HttpError {
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        int size = parseSize(query.get("size"));
+        if (path.equals(ICON_PATH)) {
+            requireMethod(exchange, "GET", "HEAD");
+            String filePath = query.get("path");
+            if (filePath == null || filePath.isEmpty()) {
+                throw new HttpError(400, "Missing path parameter");
+            }
+            IconResponse response = getPathResponse(filePath, size);
+            permit.release();
+            sendIcon(exchange, response, PATH_CACHE_CONTROL);
+        } else if (path.startsWith(EXTENSION_PATH)) {
+            requireMethod(exchange, "GET", "HEAD");
+            IconResponse response = getExtensionResponse(path.substring(EXTENSION_PATH.length()), size);
+            permit.release();
+            sendIcon(exchange, response, EXTENSION_CACHE_CONTROL);
+        } else if (path.equals(BATCH_PATH)) {
+            requireMethod(exchange, "POST");
+            sendBatch(exchange, readBatch(exchange.getRequestBody()), size, permit);
+        } else {
+            throw new HttpError(404, "No such endpoint: " + path);
+        }
+    }
+
+    private static void requireMethod(HttpExchange exchange, String... methods) throws HttpError {
+        for (String method : methods) {
+            if (method.equals(exchange.getRequestMethod())) {
+                return;
+            }
+        }
+        exchange.getResponseHeaders().set("Allow", String.join(", ", methods));
+        throw new HttpError(405, "Method not allowed: " + exchange.getRequestMethod());
+    }
+
+    /**
+     * Parses the size parameter.
+     * @return The requested size, or zero for the full size icon.
+     */
+    private static int parseSize(String value) throws HttpError {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            int size = Integer.parseInt(value);
+            if (size > 0 && size <= MAX_SIZE) {
+                return size;
+            }
+        } catch (NumberFormatException e) {
+            // Answered below
+        }
+        throw new HttpError(400, "Size must be between 1 and " + MAX_SIZE + ": " + value);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws HttpError {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        try {
+            for (String parameter : rawQuery.split("&")) {
+                int index = parameter.indexOf('=');
+                String name = index < 0 ? parameter : parameter.substring(0, index);
+                String value = index < 0 ? "" : parameter.substring(index + 1);
+                query.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                        URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new HttpError(400, "Malformed query: " + e.getMessage());
+        }
+        return query;
+    }
+
+    /**
+     * Returns the response holding the icon of the file or directory at the supplied path.  The path is checked
+     * against the allowed roots before it is resolved, so that paths outside them are forbidden whether or not they
+     * exist, and again once symbolic links have been resolved.
+     */
+    private IconResponse getPathResponse(String filePath, int size) throws IOException, HttpError {
+        File file = new File(filePath);
+        try {
+            if (! isAllowed(file.toPath().toAbsolutePath().normalize()) || ! isAllowed(file.toPath().toRealPath())) {
+                throw new HttpError(403, "Path is outside the allowed roots: " + filePath);
+            }
+        } catch (NoSuchFileException | InvalidPathException e) {
+            throw new HttpError(404, "No such file: " + filePath);
+        }
+        IconCacheKey key = IconEngine.getCacheKey(file);
+        if (key == null) {
+            throw new HttpError(404, "No such file: " + filePath);
+        }
+        return getResponse(file, key, size);
+    }
+
+    private boolean isAllowed(Path path) {
+        if (allowedRoots.isEmpty()) {
+            return true;
+        }
+        for (Path root : allowedRoots) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the response holding the icon shared by files with the supplied extension.  Extractors need a file to
+     * query, and may key the icon by more than the extension, so an empty file with the extension is created in the
+     * server's own directory and keyed like any other file.
+     */
+    private IconResponse getExtensionResponse(String extension, int size) throws IOException, HttpError {
+        if (! EXTENSION.matcher(extension).matches()) {
+            throw new HttpError(400, "Invalid extension: " + extension);
+        }
+        Path placeholder = placeholders.resolve("icon." + extension);
+        if (! Files.exists(placeholder)) {
+            try {
+                Files.createFile(placeholder);
+            } catch (FileAlreadyExistsException e) {
+                // Created by a concurrent request
+            }
+        }
+        IconCacheKey key = IconEngine.getCacheKey(placeholder.toFile());
+        if (key == null) {
+            throw new HttpError(404, "No icon for extension: " + extension);
+        }
+        return getResponse(placeholder.toFile(), key, size);
+    }
+
+    /**
+     * Returns the cached response holding the icon of the supplied key at the supplied size, or encodes the icon and
+     * caches the response.
+     */
+    private IconResponse getResponse(File file, IconCacheKey key, int size) throws IOException, HttpError {
+        IconPyramid.Level responseKey = new IconPyramid.Level(key, size);
+        IconResponse response = responses.get(responseKey);
+        if (response == null) {
+            byte[] bytes = encode(file, key, size);
+            if (bytes == null) {
+                throw new HttpError(404, "No icon for " + file.getName());
+            }
+            response = new IconResponse(bytes);
+            responses.put(responseKey, response);
+        }
+        return response;
+    }
+
+    /**
+     * Returns the PNG encoding of the icon at the supplied size.  Full size icons are encoded, and cached, by the
+     * engine, so only the smaller levels are encoded here.
+     */
+    private static byte[] encode(File file, IconCacheKey key, int size) throws IOException {
+        if (size == 0) {
+            return IconEngine.getIconByteArray(file, key);
+        }
+        BufferedImage icon = IconEngine.getIconBufferedImage(file, key);
+        if (icon == null) {
+            return null;
+        }
+        BufferedImage level = IconPyramid.getLevel(IconEngine.getLevelCache(), key, icon, size);
+        if (level == icon) {
+            return IconEngine.getIconByteArray(file, key);
+        }
+        long start = IconMetrics.start();
+        byte[] bytes = IconEngine.getPngEncoder().encode(level);
+        IconMetrics.record(IconStage.ENCODE, start, bytes.length);
+        return bytes;
+    }
+
+    private void sendIcon(HttpExchange exchange, IconResponse response, String cacheControl) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", response.etag);
+        headers.set("Cache-Control", cacheControl);
+        if (matches(exchange.getRequestHeaders().get("If-None-Match"), response.etag)) {
+            notModifiedCount.increment();
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        headers.set("Content-Type", PNG);
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, response.bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(response.bytes);
+        }
+    }
+
+    /**
+     * Checks whether the supplied If-None-Match header values name the supplied entity tag.  The comparison is weak,
+     * as the header requires, so a weak tag with the same value matches.
+     */
+    static boolean matches(List<String> ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String value : ifNoneMatch) {
+            for (String tag : value.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the paths listed by a batch request, one per line, skipping empty lines.
+     */
+    private List<String> readBatch(InputStream body) throws IOException, HttpError {
+        List<String> paths = new ArrayList<>();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = body.read(buffer)) >= 0) {
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    addBatchLine(paths, line);
+                } else if (line.size() == MAX_BATCH_LINE) {
+                    throw new HttpError(413, "Batch line too long");
+                } else {
+                    line.write(buffer[i]);
+                }
+            }
+        }
+        addBatchLine(paths, line);
+        return paths;
+    }
+
+    private void addBatchLine(List<String> paths, ByteArrayOutputStream line) throws HttpError {
+        String path = line.toString(StandardCharsets.UTF_8);
+        line.reset();
+        if (path.endsWith("\r")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (path.isEmpty()) {
+            return;
+        }
+        if (paths.size() == options.getMaxBatchSize()) {
+            throw new HttpError(413, "Batch requests may list at most " + options.getMaxBatchSize() + " paths");
+        }
+        paths.add(path);
+    }
+
+    /**
+     * Sends the icons of the supplied paths as the parts of a multipart response.  The icons are looked up on the
+     * engine's executor, so the extractions of a batch overlap, and written in the order the paths were listed.  The
+     * permit is released once every icon has been looked up, before the response is written.
+     */
+    private void sendBatch(HttpExchange exchange, List<String> paths, int size, Permit permit) throws IOException {
+        List<CompletableFuture<IconResponse>> futures = new ArrayList<>();
+        for (String path : paths) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return getPathResponse(path, size);
+                } catch (IOException | HttpError e) {
+                    throw new CompletionException(e);
+                }
+            }, IconEngine.getExecutor()));
+        }
+        List<String> locations = new ArrayList<>();
+        List<IconResponse> results = new ArrayList<>();
+        List<HttpError> errors = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i++) {
+            String location = ICON_PATH + "?path=" + URLEncoder.encode(paths.get(i), StandardCharsets.UTF_8)
+                    + (size > 0 ? "&size=" + size : "");
+            locations.add(location);
+            try {
+                results.add(futures.get(i).join());
+                errors.add(null);
+            } catch (CompletionException e) {
+                HttpError error;
+                if (e.getCause() instanceof HttpError) {
+                    error = (HttpError) e.getCause();
+                } else if (e.getCause() instanceof IOException) {
+                    error = toHttpError((IOException) e.getCause());
+                } else {
+                    error = new HttpError(500, "Failed to serve the icon");
+                }
+                if (error.status == 500) {
+                    logger.log(Level.WARNING, "Failed to serve " + location, e.getCause());
+                }
+                results.add(null);
+                errors.add(error);
+            }
+        }
+        permit.release();
+
+        exchange.getResponseHeaders().set("Content-Type", "multipart/mixed; boundary=" + boundary);
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream body = exchange.getResponseBody()) {
+            for (int i = 0; i < paths.size(); i++) {
+                IconResponse response = results.get(i);
+                if (response != null) {
+                    writePart(body, locations.get(i), 200, PNG, response.etag, response.bytes);
+                } else {
+                    HttpError error = errors.get(i);
+                    writePart(body, locations.get(i), error.status, TEXT, null,
+                            error.getMessage().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            body.write(("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private void writePart(OutputStream body, String location, int status, String contentType, String etag,
+                           byte[] bytes) throws IOException {
+        StringBuilder headers = new StringBuilder();
+        headers.append("--").append(boundary).append("\r\n");
+        headers.append("Content-Location: ").append(location).append("\r\n");
+        headers.append(ICON_STATUS_HEADER).append(": ").append(status).append("\r\n");
+        headers.append("Content-Type: ").append(contentType).append("\r\n");
+        headers.append("Content-Length: ").append(bytes.length).append("\r\n");
+        if (etag != null) {
+            headers.append("ETag: ").append(etag).append("\r\n");
+        }
+        headers.append("\r\n");
+        body.write(headers.toString().getBytes(StandardCharsets.UTF_8));
+        body.write(bytes);
+        body.write('\r');
+        body.write('\n');
+    }
+
+    private static void sendError(HttpExchange exchange, HttpError error) throws IOException {
+        byte[] message = error.getMessage().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", TEXT);
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(error.status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(error.status, message.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(message);
+        }
+    }
+
+    /**
+     * Returns the strong entity tag of the supplied bytes: the first 128 bits of their SHA-256 hash in hex, quoted.
+     */
+    static String getEntityTag(byte[] bytes) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+            byte[] prefix = new byte[16];
+            System.arraycopy(hash, 0, prefix, 0, prefix.length);
+            return '"' + toHex(prefix) + '"';
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private void deletePlaceholders() {
+        try {
+            File[] files = placeholders.toFile().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            }
+            Files.deleteIfExists(placeholders);
+        } catch (IOException e) {
+            logger.fine("Failed to delete " + placeholders + ": " + e);
+        }
+    }
+
+}
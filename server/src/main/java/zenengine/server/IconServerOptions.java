@@ -0,0 +1,165 @@
+/*
+ *    Copyright 2018 Kyle Hickey
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package zenengine.server;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+
+/**
+ * Options controlling how an {@link IconServer} listens and how much work it accepts.  The setters return the options
+ * themselves so that they can be chained.
+ */
+public class IconServerOptions {
+
+    /**
+     * The default port the server listens on.
+     */
+    public static final int DEFAULT_PORT = 8080;
+
+    /**
+     * The default maximum number of requests that are served at once.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 64;
+
+    /**
+     * The default maximum number of icons requested by a single batch request.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 512;
+
+    /**
+     * The default maximum number of bytes of encoded responses the server caches.
+     */
+    public static final long DEFAULT_CACHE_SIZE = 32L * 1024 * 1024;
+
+    private InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), DEFAULT_PORT);
+    private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private long cacheSize = DEFAULT_CACHE_SIZE;
+    private final List<Path> allowedRoots = new ArrayList<>();
+    private Executor executor;
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * @param address The address to listen on, which by default is port {@link #DEFAULT_PORT} of the loopback
+     *                interface.  A port of zero listens on any free port.  Any other address requires
+     *                {@link #setAllowedRoots(Collection) allowed roots}.
+     * @return These options.
+     */
+    public IconServerOptions setAddress(InetSocketAddress address) {
+        if (address == null) {
+            throw new IllegalArgumentException("Address must not be null");
+        }
+        this.address = address;
+        return this;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * @param maxConcurrentRequests The maximum number of requests that are served at once.  Requests received while
+     *                              the limit is reached are answered with 503 Service Unavailable straight away, so a
+     *                              burst of requests cannot queue up behind slow extractions.
+     * @return These options.
+     */
+    public IconServerOptions setMaxConcurrentRequests(int maxConcurrentRequests) {
+        if (maxConcurrentRequests <= 0) {
+            throw new IllegalArgumentException("Maximum concurrent requests must be positive: "
+                    + maxConcurrentRequests);
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        return this;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @param maxBatchSize The maximum number of icons a batch request may ask for.  Larger batches are answered with
+     *                     413 Payload Too Large.
+     * @return These options.
+     */
+    public IconServerOptions setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Maximum batch size must be positive: " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * @param cacheSize The maximum number of bytes of encoded icons, along with their entity tags, that the server
+     *                  keeps ready to send.
+     * @return These options.
+     */
+    public IconServerOptions setCacheSize(long cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative: " + cacheSize);
+        }
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    public List<Path> getAllowedRoots() {
+        return List.copyOf(allowedRoots);
+    }
+
+    /**
+     * @param roots The directories whose files and subdirectories the icons may be requested for, or an empty
+     *              collection to serve the icon of any path, which is only permitted on the loopback interface.
+     *              Requests for other paths, whether or not they exist, including paths that only appear to be below
+     *              a root through symbolic links or {@code ..} segments, are answered with 403 Forbidden.  Icons by
+     *              extension are always served.
+     * @return These options.
+     */
+    public IconServerOptions setAllowedRoots(Collection<Path> roots) {
+        allowedRoots.clear();
+        allowedRoots.addAll(roots);
+        return this;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @param executor The executor that handles the requests, or null to use a pool of daemon threads owned by the
+     *                 server.  The executor must be able to run more tasks at once than the maximum number of
+     *                 concurrent requests, or requests over the limit wait for a thread instead of being rejected.
+     * @return These options.
+     */
+    public IconServerOptions setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+}
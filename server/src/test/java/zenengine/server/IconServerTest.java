@@ -0,0 +1,275 @@
+package zenengine.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import zenengine.base.IconEngine;
+import zenengine.base.IconExtractor;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class IconServerTest {
+
+    private Path directory;
+    private IconServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("IconServerTest");
+        IconEngine.setIconExtractor(IconEngine.findIconExtractor("synthetic"));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+        IconEngine.setIconExtractor(null);
+        for (File file : directory.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(directory);
+    }
+
+    private IconServer start(IconServerOptions options) throws IOException {
+        server = IconServer.start(options.setAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)));
+        return server;
+    }
+
+    private HttpURLConnection open(String pathAndQuery) throws IOException {
+        URL url = new URL("http", "127.0.0.1", server.getAddress().getPort(), pathAndQuery);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection(Proxy.NO_PROXY);
+        connection.setConnectTimeout(10000);
+        connection.setReadTimeout(10000);
+        return connection;
+    }
+
+    private static String iconQuery(Path path) {
+        return IconServer.ICON_PATH + "?path=" + URLEncoder.encode(path.toString(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] read(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream()
+                : connection.getErrorStream()) {
+            return in == null ? new byte[0] : in.readAllBytes();
+        }
+    }
+
+    @Test
+    void servesPathIconsWithEntityTags() throws IOException {
+        start(new IconServerOptions());
+        Path text = Files.createFile(directory.resolve("notes.txt"));
+
+        HttpURLConnection first = open(iconQuery(text));
+        assertEquals(200, first.getResponseCode());
+        assertEquals("image/png", first.getContentType());
+        assertArrayEquals(IconEngine.getIconByteArray(text.toFile()), read(first));
+        String etag = first.getHeaderField("ETag");
+        assertTrue(etag.matches("\"[0-9a-f]{32}\""), etag);
+
+        HttpURLConnection revalidation = open(iconQuery(text));
+        revalidation.setRequestProperty("If-None-Match", "\"other\", " + etag);
+        assertEquals(304, revalidation.getResponseCode());
+        assertEquals(etag, revalidation.getHeaderField("ETag"));
+        assertEquals(0, read(revalidation).length);
+        assertEquals(1, server.getNotModifiedCount());
+
+        HttpURLConnection sized = open(iconQuery(text) + "&size=48");
+        assertEquals(200, sized.getResponseCode());
+        BufferedImage level = ImageIO.read(new ByteArrayInputStream(read(sized)));
+        assertEquals(48, level.getWidth());
+        assertNotEquals(etag, sized.getHeaderField("ETag"));
+        assertEquals(2, server.getCachedResponseCount());
+
+        IconEngine.invalidate(IconEngine.getCacheKey(text.toFile()));
+        assertEquals(0, server.getCachedResponseCount());
+    }
+
+    @Test
+    void servesExtensionIconsWithoutFiles() throws IOException {
+        start(new IconServerOptions());
+        Path text = Files.createFile(directory.resolve("notes.txt"));
+
+        HttpURLConnection connection = open(IconServer.EXTENSION_PATH + "TXT");
+        assertEquals(200, connection.getResponseCode());
+        assertArrayEquals(IconEngine.getIconByteArray(text.toFile()), read(connection));
+        assertEquals("max-age=3600", connection.getHeaderField("Cache-Control"));
+
+        assertEquals(400, open(IconServer.EXTENSION_PATH + "a.b").getResponseCode());
+    }
+
+    @Test
+    void batchReturnsIconsInRequestOrder() throws IOException {
+        start(new IconServerOptions().setMaxBatchSize(3));
+        Path text = Files.createFile(directory.resolve("notes.txt"));
+        Path pdf = Files.createFile(directory.resolve("report.pdf"));
+        Path missing = directory.resolve("missing.doc");
+
+        HttpURLConnection single = open(iconQuery(pdf) + "&size=32");
+        assertEquals(200, single.getResponseCode());
+        String pdfTag = single.getHeaderField("ETag");
+
+        HttpURLConnection batch = open(IconServer.BATCH_PATH + "?size=32");
+        batch.setRequestMethod("POST");
+        batch.setDoOutput(true);
+        try (OutputStream out = batch.getOutputStream()) {
+            out.write((text + "\r\n" + missing + "\n\n" + pdf + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(200, batch.getResponseCode());
+        String contentType = batch.getContentType();
+        assertTrue(contentType.startsWith("multipart/mixed; boundary="), contentType);
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+
+        String body = new String(read(batch), StandardCharsets.ISO_8859_1);
+        assertTrue(body.endsWith("--" + boundary + "--\r\n"));
+        List<String> parts = new ArrayList<>(List.of(body.split("--" + boundary)));
+        parts.remove(0);
+        parts.remove(parts.size() - 1);
+        assertEquals(3, parts.size());
+        assertTrue(parts.get(0).contains(IconServer.ICON_STATUS_HEADER + ": 200\r\n"));
+        assertTrue(parts.get(0).contains("\r\n\r\n\u0089PNG"));
+        assertTrue(parts.get(1).contains(IconServer.ICON_STATUS_HEADER + ": 404\r\n"));
+        assertTrue(parts.get(2).contains("ETag: " + pdfTag + "\r\n"));
+        assertTrue(parts.get(2).contains("Content-Location: " + iconQuery(pdf) + "&size=32\r\n"));
+
+        HttpURLConnection tooLarge = open(IconServer.BATCH_PATH);
+        tooLarge.setRequestMethod("POST");
+        tooLarge.setDoOutput(true);
+        try (OutputStream out = tooLarge.getOutputStream()) {
+            out.write("a\nb\nc\nd\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(413, tooLarge.getResponseCode());
+    }
+
+    @Test
+    void rejectsRequestsOverTheConcurrencyLimit() throws Exception {
+        CountDownLatch extracting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IconExtractor synthetic = IconEngine.findIconExtractor("synthetic");
+        IconEngine.setIconExtractor(new IconExtractor() {
+            @Override
+            public String getName() {
+                return "blocking";
+            }
+
+            @Override
+            public boolean isSupported() {
+                return false;
+            }
+
+            @Override
+            public BufferedImage getIcon(File file) {
+                if (file.getName().endsWith(".pdf")) {
+                    extracting.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return synthetic.getIcon(file);
+            }
+        });
+        start(new IconServerOptions().setMaxConcurrentRequests(1));
+        Path text = Files.createFile(directory.resolve("notes.txt"));
+        Path pdf = Files.createFile(directory.resolve("report.pdf"));
+
+        CompletableFuture<Integer> slow = CompletableFuture.supplyAsync(() -> {
+            try {
+                return open(iconQuery(pdf)).getResponseCode();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(extracting.await(10, TimeUnit.SECONDS));
+
+        HttpURLConnection rejected = open(iconQuery(text));
+        assertEquals(503, rejected.getResponseCode());
+        assertEquals("1", rejected.getHeaderField("Retry-After"));
+        assertEquals(1, server.getRejectedCount());
+
+        release.countDown();
+        assertEquals(200, (int) slow.get(10, TimeUnit.SECONDS));
+        assertEquals(200, open(iconQuery(text)).getResponseCode());
+    }
+
+    @Test
+    void answersInvalidRequestsWithErrors() throws IOException {
+        Path allowed = Files.createDirectory(directory.resolve("allowed"));
+        Path inside = Files.createFile(allowed.resolve("notes.txt"));
+        Path outside = Files.createFile(directory.resolve("secret.txt"));
+        start(new IconServerOptions().setAllowedRoots(List.of(allowed)));
+
+        assertEquals(200, open(iconQuery(inside)).getResponseCode());
+        assertEquals(403, open(iconQuery(outside)).getResponseCode());
+        assertEquals(403, open(iconQuery(allowed.resolve("..").resolve("secret.txt"))).getResponseCode());
+        assertEquals(404, open(iconQuery(allowed.resolve("missing.txt"))).getResponseCode());
+        assertEquals(403, open(iconQuery(directory.resolve("missing.txt"))).getResponseCode());
+        assertEquals(400, open(IconServer.ICON_PATH).getResponseCode());
+        assertEquals(400, open(iconQuery(inside) + "&size=0").getResponseCode());
+        assertEquals(404, open("/unknown").getResponseCode());
+
+        HttpURLConnection post = open(iconQuery(inside));
+        post.setRequestMethod("POST");
+        post.setDoOutput(true);
+        post.getOutputStream().close();
+        assertEquals(405, post.getResponseCode());
+        assertEquals("GET, HEAD", post.getHeaderField("Allow"));
+        for (File file : allowed.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(allowed);
+    }
+
+    @Test
+    @EnabledOnOs({OS.LINUX, OS.MAC})
+    void answersFileSystemFailuresWithErrors() throws IOException {
+        start(new IconServerOptions());
+        Path loop = Files.createSymbolicLink(directory.resolve("loop"), directory.resolve("loop"));
+
+        HttpURLConnection connection = open(iconQuery(loop));
+        assertEquals(500, connection.getResponseCode());
+        assertEquals("Failed to serve the icon", new String(read(connection), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void requiresAllowedRootsOffTheLoopbackInterface() {
+        assertThrows(IllegalArgumentException.class,
+                () -> IconServer.start(new IconServerOptions().setAddress(new InetSocketAddress(0))));
+    }
+
+    @Test
+    void matchesEntityTagsWeakly() {
+        assertTrue(IconServer.matches(List.of("W/\"abc\""), "\"abc\""));
+        assertTrue(IconServer.matches(List.of("*"), "\"abc\""));
+        assertFalse(IconServer.matches(List.of("\"abcd\""), "\"abc\""));
+        assertFalse(IconServer.matches(null, "\"abc\""));
+        assertEquals(IconServer.getEntityTag(new byte[] {1, 2, 3}), IconServer.getEntityTag(new byte[] {1, 2, 3}));
+    }
+
+}
@@ -1,13 +0,0 @@
-module ZenNativeIconEngine {
-
-    requires javafx.base;
-    requires javafx.controls;
-    requires org.apache.commons.io;
-    requires jna;
-    requires jna.platform;
-    requires java.logging;
-    requires java.desktop;
-
-    exports zenengine.base;
-
-}
\ No newline at end of file